@@ -4,6 +4,9 @@
  */
 package ca.craigthomas.neuralnetwork.commandline;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 
@@ -31,6 +34,9 @@ public class TrainArguments
     @Parameter(names={"-n", "--negativedir"}, description="specifies negative image directory")
     public String negativeDir = "";
 
+    @Parameter(names={"--classdirs"}, description="comma separated image directories, one per class, for multi-class training")
+    public List<String> classDirs = new ArrayList<>();
+
     @Parameter(names={"-w", "--width"}, description="ensure images have specified width in pixels")
     public Integer requiredWidth = 10;
 
@@ -40,13 +46,13 @@ public class TrainArguments
     @Parameter(names={"--savedir"}, description="save prediction results into specified directory")
     public String saveDir = "";
 
-    @Parameter(names={"-s", "--split"}, description="splits the data between training and testing")
+    @Parameter(names={"-s", "--split"}, description="splits the data between training and testing, when only one fold is used")
     public Integer split = 80;
 
     @Parameter(names={"-t", "--threshold"}, description="prediction threshold")
     public Double predictionThreshold = 0.5;
 
-    @Parameter(names={"-f", "--folds"}, description="generate this many folds for cross-validation")
+    @Parameter(names={"-f", "--folds"}, description="generate this many stratified folds for cross-validation")
     public Integer folds = 1;
 
     @Parameter(names={"-l1", "--layer1neurons"}, description="specifies number of neurons in first hidden layer")
@@ -55,7 +61,7 @@ public class TrainArguments
     @Parameter(names={"-l2", "--layer2neurons"}, description="specifies number of neurons in second hidden layer")
     public Integer layer2 = 0;
 
-    @Parameter(names={"-o", "--outputneurons"}, description="specifies number of neurons in output layer")
+    @Parameter(names={"-o", "--outputneurons"}, description="specifies number of neurons in output layer (more than 1 trains a softmax classifier, with class numbers as the truth)")
     public Integer outputLayer = 1;
 
     @Parameter(names={"--lambda"}, description="specifies lambda value")
@@ -63,4 +69,28 @@ public class TrainArguments
 
     @Parameter(names={"-i", "--iterations"}, description="number of iterations")
     public Integer iterations = 500;
+
+    @Parameter(names={"--batchsize"}, description="number of samples in each mini-batch (0 trains on the full batch)")
+    public Integer batchSize = 0;
+
+    @Parameter(names={"--optimizer"}, description="optimizer to use (sign, sgd, momentum, rmsprop, adam)")
+    public String optimizer = "sign";
+
+    @Parameter(names={"--threads"}, description="number of threads used to compute gradients during training")
+    public Integer threads = 1;
+
+    @Parameter(names={"--hogwild"}, description="train asynchronously, with each thread updating the weights without locking (sign or sgd optimizers only)")
+    public boolean hogwild = false;
+
+    @Parameter(names={"--float"}, description="load the samples and train with single precision (float32) activations and matrix products")
+    public boolean singlePrecision = false;
+
+    @Parameter(names={"--quantize"}, description="quantize each trained model to 8-bit weights, and report the drift in its metrics")
+    public boolean quantize = false;
+
+    @Parameter(names={"--backend"}, description="linear algebra backend to use (jblas, java); defaults to jblas when its native libraries can be loaded")
+    public String backend = "";
+
+    @Parameter(names={"--activation"}, description="activation function to use (sigmoid, tanh, fast-sigmoid, fast-tanh, relu, leaky-relu)")
+    public String activation = "sigmoid";
 }
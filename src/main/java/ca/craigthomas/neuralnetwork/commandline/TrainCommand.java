@@ -19,8 +19,27 @@ import org.jblas.DoubleMatrix;
 
 import ca.craigthomas.neuralnetwork.dataset.DataSet;
 import ca.craigthomas.neuralnetwork.dataset.Prediction;
+import ca.craigthomas.neuralnetwork.dataset.QuantizationDrift;
 import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+import ca.craigthomas.neuralnetwork.components.activation.FastHyperbolicTangent;
+import ca.craigthomas.neuralnetwork.components.activation.FastSigmoid;
+import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
+import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.activation.LeakyReLU;
+import ca.craigthomas.neuralnetwork.components.activation.ReLU;
+import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
+import ca.craigthomas.neuralnetwork.components.activation.Softmax;
+import ca.craigthomas.neuralnetwork.components.backend.Backends;
+import ca.craigthomas.neuralnetwork.components.backend.IBackend;
 import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.Precision;
+import ca.craigthomas.neuralnetwork.components.network.QuantizedNeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.optimizer.Adam;
+import ca.craigthomas.neuralnetwork.components.optimizer.GradientDescent;
+import ca.craigthomas.neuralnetwork.components.optimizer.IOptimizer;
+import ca.craigthomas.neuralnetwork.components.optimizer.Momentum;
+import ca.craigthomas.neuralnetwork.components.optimizer.RMSProp;
+import ca.craigthomas.neuralnetwork.components.optimizer.SignDescent;
 import ca.craigthomas.neuralnetwork.components.trainer.Trainer;
 
 /**
@@ -40,13 +59,23 @@ public class TrainCommand
         this.arguments = arguments;
     }
     
+    /**
+     * Returns the precision to train in, which is also the precision that
+     * the samples are loaded in.
+     * 
+     * @return the precision to train in
+     */
+    public Precision getPrecision() {
+        return arguments.singlePrecision ? Precision.FLOAT : Precision.DOUBLE;
+    }
+    
     /**
      * Load the data from a CSV file.
      */
     public void loadFromCSV() {
-        mDataSet = new DataSet(true);
+        mDataSet = new DataSet(true, getPrecision());
         try {
-            mDataSet.addFromCSVFile(arguments.csvFile);
+            mDataSet.addFromCSVFile(arguments.csvFile, Runtime.getRuntime().availableProcessors());
             LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
         } catch(IOException e) {
             LOGGER.log(Level.SEVERE, e.getMessage());
@@ -79,6 +108,36 @@ public class TrainCommand
         }
     }
     
+    /**
+     * Loads up the files from the class directories. The samples in each
+     * directory are labelled with the position of the directory in the list.
+     */
+    public void loadFromClassDirectories() {
+        for (String classDir : arguments.classDirs) {
+            if (!new File(classDir).isDirectory()) {
+                LOGGER.log(Level.SEVERE, "class directory [" + classDir + "] is not a directory");
+                return;
+            }
+        }
+        
+        mDataSet = new DataSet(true, getPrecision());
+        for (int label = 0; label < arguments.classDirs.size(); label++) {
+            loadFromDirectory(new File(arguments.classDirs.get(label)), label);
+        }
+        LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s) in " + arguments.classDirs.size() + " classes");
+    }
+    
+    /**
+     * Returns the number of classes to train for. Each class directory is a
+     * class, otherwise each output neuron is a class. A single output 
+     * neuron means that the network decides between positive and negative.
+     * 
+     * @return the number of classes
+     */
+    public int getNumClasses() {
+        return arguments.classDirs.isEmpty() ? arguments.outputLayer : arguments.classDirs.size();
+    }
+    
     /**
      * Loads up the files from the specified directories.
      */
@@ -96,7 +155,7 @@ public class TrainCommand
             return;
         }
         
-        mDataSet = new DataSet(true);
+        mDataSet = new DataSet(true, getPrecision());
         loadFromDirectory(positiveDir, 1.0);
         loadFromDirectory(negativeDir, 0.0);
         LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
@@ -122,16 +181,101 @@ public class TrainCommand
         predictions.predict(bestFold);
         DoubleMatrix falsePositives = predictions.getFalsePositiveSamples();
         DoubleMatrix falseNegatives = predictions.getFalseNegativeSamples();
-        for (int i = 0; i < falsePositives.rows; i++) {
-            Image image = new Image(falsePositives.getRow(i), arguments.requiredWidth, arguments.requiredHeight, arguments.color);
-            saveImage(image, directory, "fp" + (i+1) + ".png");
+        
+        // With several classes every misclassified sample is both a false
+        // positive and a false negative, so it is only saved once
+        if (falsePositives != null && predictions.getNumClasses() == 2) {
+            for (int i = 0; i < falsePositives.rows; i++) {
+                Image image = new Image(falsePositives.getRow(i), arguments.requiredWidth, arguments.requiredHeight, arguments.color);
+                saveImage(image, directory, "fp" + (i+1) + ".png");
+            }
         }
-        for (int i = 0; i < falseNegatives.rows; i++) {
+        for (int i = 0; falseNegatives != null && i < falseNegatives.rows; i++) {
             Image image = new Image(falseNegatives.getRow(i), arguments.requiredWidth, arguments.requiredHeight, arguments.color);
             saveImage(image, directory, "fn" + (i+1) + ".png");
         }
     }
     
+    /**
+     * Creates a new optimizer based upon the optimizer name in the arguments.
+     * Returns null if the name is not recognized.
+     * 
+     * @return the new optimizer
+     */
+    public IOptimizer createOptimizer() {
+        switch (arguments.optimizer.toLowerCase()) {
+            case "sign":
+                return new SignDescent(arguments.learningRate);
+            case "sgd":
+                return new GradientDescent(arguments.learningRate);
+            case "momentum":
+                return new Momentum(arguments.learningRate);
+            case "rmsprop":
+                return new RMSProp(arguments.learningRate);
+            case "adam":
+                return new Adam(arguments.learningRate);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Creates a new activation function based upon the activation name in
+     * the arguments. Returns null if the name is not recognized.
+     * 
+     * @return the new activation function
+     */
+    public IActivationFunction createActivationFunction() {
+        switch (arguments.activation.toLowerCase()) {
+            case "sigmoid":
+                return new Sigmoid();
+            case "tanh":
+                return new HyperbolicTangent();
+            case "fast-sigmoid":
+                return new FastSigmoid();
+            case "fast-tanh":
+                return new FastHyperbolicTangent();
+            case "relu":
+                return new ReLU();
+            case "leaky-relu":
+                return new LeakyReLU();
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Returns the linear algebra backend named in the arguments, or the
+     * default backend if none was named. Returns null if the name is not
+     * recognized, and throws an IllegalStateException if the named backend
+     * cannot run on this machine.
+     * 
+     * @return the backend to use
+     */
+    public IBackend createBackend() {
+        if (arguments.backend.isEmpty()) {
+            return Backends.getDefault();
+        }
+        return Backends.create(arguments.backend);
+    }
+    
+    /**
+     * Prints a confusion matrix, with one row for each true class and one
+     * column for each predicted class.
+     * 
+     * @param confusionMatrix the confusion matrix to print
+     */
+    public void printConfusionMatrix(int [][] confusionMatrix) {
+        System.out.println("Confusion Matrix (rows are true classes, columns are predicted classes)");
+        for (int [] row : confusionMatrix) {
+            StringBuilder line = new StringBuilder();
+            for (int count : row) {
+                line.append(String.format("%8d", count));
+            }
+            System.out.println(line);
+        }
+    }
+    
     public void execute() {
         NeuralNetwork bestModel = null;
         DataSet bestFold = null;
@@ -144,9 +288,39 @@ public class TrainCommand
         double [] f1 = new double [arguments.folds];
         double bestF1 = 0;
         
+        if (createOptimizer() == null) {
+            LOGGER.log(Level.SEVERE, "unknown optimizer [" + arguments.optimizer + "], exiting");
+            return;
+        }
+        
+        if (arguments.hogwild && !createOptimizer().isStateless()) {
+            LOGGER.log(Level.SEVERE, "optimizer [" + arguments.optimizer + "] keeps state, and cannot be used with --hogwild, exiting");
+            return;
+        }
+        
+        if (createActivationFunction() == null) {
+            LOGGER.log(Level.SEVERE, "unknown activation function [" + arguments.activation + "], exiting");
+            return;
+        }
+        
+        IBackend backend;
+        try {
+            backend = createBackend();
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage() + ", exiting");
+            return;
+        }
+        if (backend == null) {
+            LOGGER.log(Level.SEVERE, "unknown backend [" + arguments.backend + "], exiting");
+            return;
+        }
+        LOGGER.log(Level.INFO, "using " + backend.getName() + " backend");
+        
         // Step 1: create the dataset
         if (!arguments.csvFile.isEmpty()) {
             loadFromCSV();
+        } else if (!arguments.classDirs.isEmpty()) {
+            loadFromClassDirectories();
         } else {
             loadFromDirectories();
         }
@@ -165,25 +339,66 @@ public class TrainCommand
         if (arguments.layer2 != 0) {
             layerSizes.add(arguments.layer2);
         }
-        layerSizes.add(arguments.outputLayer);
+        int numClasses = getNumClasses();
+        layerSizes.add(numClasses);
         
-        // Step 3: generate the folds and train the model
-        for (int fold = 0; fold < arguments.folds; fold++) {
-            LOGGER.log(Level.INFO, "processing fold " + (fold+1));
+        // Step 3: generate the folds and train the model. With more than one
+        // fold, the dataset is randomized once and every sample is tested in
+        // exactly one stratified fold
+        List<Pair<DataSet, DataSet>> folds = null;
+        if (arguments.folds > 1) {
             LOGGER.log(Level.INFO, "randomizing dataset");
             mDataSet.randomize();
-            LOGGER.log(Level.INFO, "generating training and testing sets");
-            Pair<DataSet, DataSet> split = mDataSet.splitEqually(arguments.split);
+            LOGGER.log(Level.INFO, "generating " + arguments.folds + " stratified folds");
+            folds = mDataSet.stratifiedFolds(arguments.folds);
+        }
+        for (int fold = 0; fold < arguments.folds; fold++) {
+            LOGGER.log(Level.INFO, "processing fold " + (fold+1));
+            Pair<DataSet, DataSet> split;
+            if (folds != null) {
+                split = folds.get(fold);
+            } else {
+                LOGGER.log(Level.INFO, "randomizing dataset");
+                mDataSet.randomize();
+                LOGGER.log(Level.INFO, "generating training and testing sets");
+                // Splitting equally only balances positive and negative samples,
+                // so several classes are split from the randomized order instead
+                split = (numClasses > 1) ? 
+                        mDataSet.splitSequentially(arguments.split) : mDataSet.splitEqually(arguments.split);
+            }
             DataSet trainingData = split.getLeft();
             DataSet testingData = split.getRight();
             LOGGER.log(Level.INFO, "training neural network...");   
             trainingData.randomize();
-            Trainer trainer = new Trainer.Builder(layerSizes, trainingData)
+            // Rectified linear units are only used in the hidden layers, since
+            // the output layer has to produce values between 0 and 1
+            IActivationFunction activationFunction = createActivationFunction();
+            Trainer.Builder trainerBuilder = new Trainer.Builder(layerSizes, trainingData)
                     .maxIterations(arguments.iterations)
                     .heartBeat(arguments.heartBeat)
                     .learningRate(arguments.learningRate)
-                    .lambda(arguments.lambda).build();
+                    .batchSize(arguments.batchSize)
+                    .optimizer(createOptimizer())
+                    .threads(arguments.threads)
+                    .hogwild(arguments.hogwild)
+                    .precision(getPrecision())
+                    .backend(backend)
+                    .lambda(arguments.lambda);
+            if (activationFunction instanceof LeakyReLU) {
+                trainerBuilder.hiddenActivationFunction(activationFunction);
+            } else {
+                trainerBuilder.activationFunction(activationFunction);
+            }
+            if (numClasses > 1) {
+                trainerBuilder.outputActivationFunction(new Softmax());
+            }
+            Trainer trainer = trainerBuilder.build();
             trainer.train();
+            LOGGER.log(Level.INFO, "final training cost " + trainer.getFinalCost());
+            List<Double> throughputs = trainer.getThroughputs();
+            for (int thread = 0; thread < throughputs.size(); thread++) {
+                LOGGER.log(Level.INFO, "thread " + (thread+1) + " trained " + String.format("%.1f", throughputs.get(thread)) + " samples/s");
+            }
             
             // Step 4: evaluate each model
             NeuralNetwork model = trainer.getNeuralNetwork();
@@ -196,6 +411,10 @@ public class TrainCommand
             System.out.println("Precision " + prediction.getPrecision());
             System.out.println("Recall " + prediction.getRecall());
             System.out.println("F1 " + prediction.getF1());
+            if (numClasses > 1) {
+                System.out.println("Accuracy " + prediction.getAccuracy());
+                printConfusionMatrix(prediction.getConfusionMatrix());
+            }
             
             tp[fold] = prediction.getTruePositives();
             fp[fold] = prediction.getFalsePositives();
@@ -204,9 +423,18 @@ public class TrainCommand
             precision[fold] = prediction.getPrecision();
             recall[fold] = prediction.getRecall();
             f1[fold] = prediction.getF1();
+            
+            if (arguments.quantize) {
+                QuantizationDrift drift = new QuantizationDrift(model, new QuantizedNeuralNetwork(model), arguments.predictionThreshold);
+                drift.measure(testingData);
+                System.out.println("Quantized Precision " + drift.getQuantized().getPrecision() + " (drift " + drift.getPrecisionDrift() + ")");
+                System.out.println("Quantized Recall " + drift.getQuantized().getRecall() + " (drift " + drift.getRecallDrift() + ")");
+                System.out.println("Quantized F1 " + drift.getQuantized().getF1() + " (drift " + drift.getF1Drift() + ")");
+                System.out.println("Quantized Agreement " + drift.getAgreement() + " (max output error " + drift.getMaxOutputError() + ")");
+            }
             if (f1[fold] > bestF1) {
                 bestModel = model;
-                bestFold = mDataSet.dup();
+                bestFold = mDataSet.view();
                 bestF1 = f1[fold];
             }
         }
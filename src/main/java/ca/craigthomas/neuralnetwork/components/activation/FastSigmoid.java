@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import ca.craigthomas.neuralnetwork.components.backend.Kernels;
+
+/**
+ * An approximation of the Sigmoid function that looks up its values in a 
+ * table instead of evaluating e^(-t). The table covers [-16, 16] with 64 
+ * points per unit (16 KB), and values between the points are linearly
+ * interpolated. The largest value of |S''(t)| is about 0.0962, so the
+ * interpolation error is at most 0.0962 / (8 * 64^2), or 2.9e-6. Outside of
+ * the table, the error is at most 1 - S(16), or 1.1e-7. The error of any 
+ * value is therefore less than MAX_ERROR. 
+ * 
+ * The gradient is computed from the approximate values in the same way as
+ * for the Sigmoid.
+ * 
+ * @author thomas
+ */
+public class FastSigmoid implements IActivationFunction {
+
+    // The largest difference between an approximate value and the sigmoid
+    public static final double MAX_ERROR = 3.0e-6;
+    
+    // The table is shared, since it never changes
+    private static final LookupTable TABLE = new LookupTable(t -> 1.0 / (1.0 + Math.exp(-t)), 16.0, 64);
+    
+    public FastSigmoid() {
+    }
+    
+    /**
+     * Calculate the approximate Sigmoid value for every element in the 
+     * specified matrix, storing the values in the result matrix.
+     * 
+     * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the sigmoid values in
+     * @return the approximate sigmoid value of the input matrix
+     */
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result) {
+        TABLE.apply(input.data, result.data, input.length);
+        return result;
+    }
+    
+    /**
+     * Computes the gradient of the sigmoid function from the sigmoid values.
+     * 
+     * @param output the sigmoid values
+     * @param result the DoubleMatrix to store the gradient in
+     * @return the gradient of the sigmoid
+     */
+    public DoubleMatrix gradientFromOutputi(DoubleMatrix output, DoubleMatrix result) {
+        Kernels.sigmoidGradient(output.data, result.data, output.length);
+        return result;
+    }
+
+    /**
+     * Calculate the approximate Sigmoid value for every element in the 
+     * specified single precision matrix, storing the values in the result
+     * matrix.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the sigmoid values in
+     * @return the approximate sigmoid value of the input matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result) {
+        TABLE.apply(input.data, result.data, input.length);
+        return result;
+    }
+    
+    /**
+     * Computes the gradient of the sigmoid function from the single 
+     * precision sigmoid values.
+     * 
+     * @param output the sigmoid values
+     * @param result the FloatMatrix to store the gradient in
+     * @return the gradient of the sigmoid
+     */
+    public FloatMatrix gradientFromOutputi(FloatMatrix output, FloatMatrix result) {
+        Kernels.sigmoidGradient(output.data, result.data, output.length);
+        return result;
+    }
+
+    /**
+     * Calculate the approximate Sigmoid value for a single double.
+     * 
+     * @param input the double to use as input
+     * @return the approximate sigmoid value of the input
+     */
+    public double apply(double input) {
+        return TABLE.get(input);
+    }
+}
@@ -5,6 +5,7 @@
 package ca.craigthomas.neuralnetwork.components.activation;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 import org.jblas.MatrixFunctions;
 
 /**
@@ -24,33 +25,71 @@ public class HyperbolicTangent implements IActivationFunction {
     
     /**
      * Calculate the HyperbolicTangent value for every element in the specified 
-     * matrix.
+     * matrix, storing the values in the result matrix.
      * 
      * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the tanh values in
      * @return the tanh value of the input matrix
      */
-    public DoubleMatrix apply(DoubleMatrix input) {
-        return MatrixFunctions.tanh(input);
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result) {
+        if (result != input) {
+            result.copy(input);
+        }
+        return MatrixFunctions.tanhi(result);
     }
     
     /**
-     * Computes the gradient of the hyperbolic tangent function with the 
-     * specified input. The gradient is simply:
+     * Computes the gradient of the hyperbolic tangent function from the 
+     * tanh values themselves. The gradient is usually written as 1 / cosh^2(t),
+     * which is the same as:
      * 
-     *           1
-     *     -------------
-     *     cosh^2(input)
+     *     1 - tanh^2(t)
      *     
-     *  Where cosh is the hyperbolic cosine.
+     *  Computing it from the tanh values avoids evaluating cosh, which 
+     *  overflows for large inputs.
      *  
-     *  @param input the DoubleMatrix to use as input
+     *  @param output the tanh values
+     *  @param result the DoubleMatrix to store the gradient in
      *  @return the gradient of the hyperbolic tangent
      */
-    public DoubleMatrix gradient(DoubleMatrix input) {
-        DoubleMatrix result = MatrixFunctions.cosh(input);
-        result = result.muli(result);
-        DoubleMatrix ones = DoubleMatrix.ones(input.rows, input.columns);
-        return ones.divi(result);
+    public DoubleMatrix gradientFromOutputi(DoubleMatrix output, DoubleMatrix result) {
+        for (int index = 0; index < output.length; index++) {
+            double value = output.data[index];
+            result.data[index] = 1.0 - (value * value);
+        }
+        return result;
+    }
+
+    /**
+     * Calculate the HyperbolicTangent value for every element in the 
+     * specified single precision matrix, storing the values in the result
+     * matrix.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the tanh values in
+     * @return the tanh value of the input matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result) {
+        if (result != input) {
+            result.copy(input);
+        }
+        return MatrixFunctions.tanhi(result);
+    }
+    
+    /**
+     * Computes the gradient of the hyperbolic tangent function from the 
+     * single precision tanh values.
+     * 
+     * @param output the tanh values
+     * @param result the FloatMatrix to store the gradient in
+     * @return the gradient of the hyperbolic tangent
+     */
+    public FloatMatrix gradientFromOutputi(FloatMatrix output, FloatMatrix result) {
+        for (int index = 0; index < output.length; index++) {
+            float value = output.data[index];
+            result.data[index] = 1.0f - (value * value);
+        }
+        return result;
     }
 
     /**
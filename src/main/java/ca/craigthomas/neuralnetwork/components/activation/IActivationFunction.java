@@ -5,6 +5,7 @@
 package ca.craigthomas.neuralnetwork.components.activation;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 
 /**
  * An interface to capture an activation function. There are several different
@@ -12,13 +13,75 @@ import org.jblas.DoubleMatrix;
  * a minimum, each activation function can be applied to a particular matrix,
  * as well as return the gradient for that function along a given input.
  * 
+ * The in-place variants write into a caller-supplied result matrix so that
+ * training does not allocate. The result may be the same matrix as the 
+ * input. The gradient is computed from the output of the activation function
+ * (the activation), rather than from its input, so that the activation does
+ * not have to be evaluated twice.
+ * 
  * @author thomas
  */
 public interface IActivationFunction {
 
-    public DoubleMatrix apply(DoubleMatrix input);
+    /**
+     * Applies the activation function to every element of the input, and
+     * stores the values in the result matrix.
+     * 
+     * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the values in
+     * @return the result matrix
+     */
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result);
+    
+    /**
+     * Computes the gradient of the activation function given the values
+     * that the function produced, and stores the values in the result matrix.
+     * 
+     * @param output the activation values produced by applyi
+     * @param result the DoubleMatrix to store the gradient in
+     * @return the result matrix
+     */
+    public DoubleMatrix gradientFromOutputi(DoubleMatrix output, DoubleMatrix result);
+    
+    /**
+     * Single precision version of applyi.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the values in
+     * @return the result matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result);
     
-    public DoubleMatrix gradient(DoubleMatrix input);
+    /**
+     * Single precision version of gradientFromOutputi.
+     * 
+     * @param output the activation values produced by applyi
+     * @param result the FloatMatrix to store the gradient in
+     * @return the result matrix
+     */
+    public FloatMatrix gradientFromOutputi(FloatMatrix output, FloatMatrix result);
     
     public double apply(double input);
+    
+    /**
+     * Applies the activation function in place to the first length values
+     * of the array, which hold the nodes of a single sample.
+     * 
+     * @param values the values to apply the activation function to
+     * @param length the number of values
+     */
+    public default void applyi(double [] values, int length) {
+        for (int index = 0; index < length; index++) {
+            values[index] = apply(values[index]);
+        }
+    }
+    
+    public default DoubleMatrix apply(DoubleMatrix input) {
+        return applyi(input, new DoubleMatrix(input.rows, input.columns));
+    }
+    
+    public default DoubleMatrix gradient(DoubleMatrix input) {
+        DoubleMatrix output = apply(input);
+        return gradientFromOutputi(output, output);
+    }
 }
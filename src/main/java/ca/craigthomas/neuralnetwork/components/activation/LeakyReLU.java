@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import ca.craigthomas.neuralnetwork.components.backend.Kernels;
+
+/**
+ * A class used to calculate the leaky rectified linear function of all of
+ * the elements in a DoubleMatrix. Positive values are passed through, and
+ * negative values are scaled down by a small slope:
+ * 
+ *   L(t) = t            if t > 0
+ *          slope * t    otherwise
+ * 
+ * Unlike the plain rectified linear function, nodes with negative inputs
+ * still have a small gradient, so they can recover during training.
+ * 
+ * @author thomas
+ */
+public class LeakyReLU implements IActivationFunction {
+
+    // The default slope for negative values
+    public static final double DEFAULT_SLOPE = 0.01;
+    
+    private final double mSlope;
+    
+    public LeakyReLU() {
+        this(DEFAULT_SLOPE);
+    }
+    
+    /**
+     * Creates a leaky rectified linear function with the specified slope for
+     * negative values. The slope must be at least 0, and less than 1.
+     * 
+     * @param slope the slope for negative values
+     */
+    public LeakyReLU(double slope) {
+        if (slope < 0.0 || slope >= 1.0) {
+            throw new IllegalArgumentException("slope must be at least 0 and less than 1");
+        }
+        mSlope = slope;
+    }
+    
+    /**
+     * Returns the slope for negative values.
+     * 
+     * @return the slope
+     */
+    public double getSlope() {
+        return mSlope;
+    }
+    
+    /**
+     * Calculate the leaky rectified value for every element in the specified
+     * matrix, storing the values in the result matrix.
+     * 
+     * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the rectified values in
+     * @return the rectified value of the input matrix
+     */
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result) {
+        Kernels.leakyRelu(input.data, result.data, mSlope, input.length);
+        return result;
+    }
+    
+    /**
+     * Computes the gradient of the leaky rectified linear function from the
+     * rectified values. Since the slope is positive, the rectified values 
+     * have the same sign as the inputs, so the gradient is 1 for positive 
+     * values and the slope otherwise.
+     * 
+     * @param output the rectified values
+     * @param result the DoubleMatrix to store the gradient in
+     * @return the gradient of the function
+     */
+    public DoubleMatrix gradientFromOutputi(DoubleMatrix output, DoubleMatrix result) {
+        Kernels.leakyReluGradient(output.data, result.data, mSlope, output.length);
+        return result;
+    }
+
+    /**
+     * Calculate the leaky rectified value for every element in the specified
+     * single precision matrix, storing the values in the result matrix.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the rectified values in
+     * @return the rectified value of the input matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result) {
+        Kernels.leakyRelu(input.data, result.data, (float)mSlope, input.length);
+        return result;
+    }
+    
+    /**
+     * Computes the gradient of the leaky rectified linear function from the
+     * single precision rectified values.
+     * 
+     * @param output the rectified values
+     * @param result the FloatMatrix to store the gradient in
+     * @return the gradient of the function
+     */
+    public FloatMatrix gradientFromOutputi(FloatMatrix output, FloatMatrix result) {
+        Kernels.leakyReluGradient(output.data, result.data, (float)mSlope, output.length);
+        return result;
+    }
+
+    /**
+     * Calculate the leaky rectified value for a single double.
+     * 
+     * @param input the double to use as input
+     * @return the rectified value of the input
+     */
+    public double apply(double input) {
+        return Math.max(input, mSlope * input);
+    }
+}
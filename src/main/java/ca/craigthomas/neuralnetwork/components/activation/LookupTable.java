@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A table of the values of a function at evenly spaced points, used to
+ * approximate the function by linear interpolation between the two nearest
+ * points. Inputs outside of the range of the table return the value at the
+ * nearest end of the table.
+ * 
+ * For a function f with points spaced h apart, the error of interpolation
+ * inside the range is at most h^2 / 8 times the largest value of |f''|. 
+ * Outside of the range, the error is the distance between the function and
+ * its value at the end of the table.
+ * 
+ * @author thomas
+ */
+public final class LookupTable {
+
+    private final double [] mValues;
+    private final double mMin;
+    private final double mStepsPerUnit;
+    private final int mLast;
+    
+    /**
+     * Builds a table of the function over the range [-range, range].
+     * 
+     * @param function the function to tabulate
+     * @param range the largest magnitude of input in the table
+     * @param stepsPerUnit the number of points for each unit of input
+     */
+    public LookupTable(DoubleUnaryOperator function, double range, int stepsPerUnit) {
+        mMin = -range;
+        mStepsPerUnit = stepsPerUnit;
+        mLast = (int)Math.round(2 * range * stepsPerUnit);
+        mValues = new double [mLast + 1];
+        for (int index = 0; index <= mLast; index++) {
+            mValues[index] = function.applyAsDouble(mMin + ((double)index / stepsPerUnit));
+        }
+    }
+    
+    /**
+     * Returns the interpolated value of the function at the input.
+     * 
+     * @param input the input to the function
+     * @return the approximate value of the function
+     */
+    public double get(double input) {
+        double position = (input - mMin) * mStepsPerUnit;
+        if (position <= 0.0) {
+            return mValues[0];
+        }
+        if (position >= mLast) {
+            return mValues[mLast];
+        }
+        int index = (int)position;
+        double fraction = position - index;
+        double value = mValues[index];
+        return value + (fraction * (mValues[index + 1] - value));
+    }
+    
+    /**
+     * Computes the interpolated values of the function for the first length
+     * inputs, and stores them in output. The output may be the same array
+     * as the input.
+     * 
+     * @param input the inputs to the function
+     * @param output the array to store the values in
+     * @param length the number of values
+     */
+    public void apply(double [] input, double [] output, int length) {
+        for (int index = 0; index < length; index++) {
+            output[index] = get(input[index]);
+        }
+    }
+    
+    /**
+     * Single precision version of apply.
+     * 
+     * @param input the inputs to the function
+     * @param output the array to store the values in
+     * @param length the number of values
+     */
+    public void apply(float [] input, float [] output, int length) {
+        for (int index = 0; index < length; index++) {
+            output[index] = (float)get(input[index]);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+/**
+ * A class used to calculate the rectified linear function of all of the 
+ * elements in a DoubleMatrix. The rectified linear function is simply:
+ * 
+ *   R(t) = max(0, t)
+ * 
+ * It is much cheaper to evaluate than the Sigmoid, and its gradient does
+ * not vanish for large inputs. Since its values are not limited to (0, 1), 
+ * it should only be used for the hidden layers of a network. It is the 
+ * same as a LeakyReLU with a slope of 0.
+ * 
+ * @author thomas
+ */
+public class ReLU extends LeakyReLU {
+
+    public ReLU() {
+        super(0.0);
+    }
+}
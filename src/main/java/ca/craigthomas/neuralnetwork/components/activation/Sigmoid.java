@@ -5,6 +5,7 @@
 package ca.craigthomas.neuralnetwork.components.activation;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 import org.jblas.MatrixFunctions;
 
 /**
@@ -23,30 +24,67 @@ public class Sigmoid implements IActivationFunction {
     }
     
     /**
-     * Calculate the Sigmoid value for every element in the specified matrix.
+     * Calculate the Sigmoid value for every element in the specified matrix,
+     * storing the values in the result matrix.
      * 
      * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the sigmoid values in
      * @return the sigmoid value of the input matrix
      */
-    public DoubleMatrix apply(DoubleMatrix input) {
-        DoubleMatrix result = new DoubleMatrix().copy(input);
-        DoubleMatrix ones = DoubleMatrix.ones(result.rows, result.columns);
-        result.muli(-1);
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result) {
+        input.muli(-1, result);
         MatrixFunctions.expi(result);
         result.addi(1);
-        return ones.divi(result);
+        return result.rdivi(1);
     }
     
     /**
-     * Computes the gradient of the sigmoid function with the specified inputs.
+     * Computes the gradient of the sigmoid function from the sigmoid values
+     * themselves. The gradient is simply:
      * 
-     * @param input the DoubleMatrix to use as input
+     *   S'(t) = S(t) * (1 - S(t))
+     * 
+     * @param output the sigmoid values
+     * @param result the DoubleMatrix to store the gradient in
+     * @return the gradient of the sigmoid
+     */
+    public DoubleMatrix gradientFromOutputi(DoubleMatrix output, DoubleMatrix result) {
+        for (int index = 0; index < output.length; index++) {
+            double value = output.data[index];
+            result.data[index] = value * (1.0 - value);
+        }
+        return result;
+    }
+
+    /**
+     * Calculate the Sigmoid value for every element in the specified single
+     * precision matrix, storing the values in the result matrix.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the sigmoid values in
+     * @return the sigmoid value of the input matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result) {
+        input.muli(-1.0f, result);
+        MatrixFunctions.expi(result);
+        result.addi(1.0f);
+        return result.rdivi(1.0f);
+    }
+    
+    /**
+     * Computes the gradient of the sigmoid function from the single 
+     * precision sigmoid values.
+     * 
+     * @param output the sigmoid values
+     * @param result the FloatMatrix to store the gradient in
      * @return the gradient of the sigmoid
      */
-    public DoubleMatrix gradient(DoubleMatrix input) {
-        DoubleMatrix sigmoid = apply(input);
-        DoubleMatrix ones = DoubleMatrix.ones(input.rows, input.columns);
-        return sigmoid.mul(ones.sub(sigmoid));
+    public FloatMatrix gradientFromOutputi(FloatMatrix output, FloatMatrix result) {
+        for (int index = 0; index < output.length; index++) {
+            float value = output.data[index];
+            result.data[index] = value * (1.0f - value);
+        }
+        return result;
     }
 
     /**
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import ca.craigthomas.neuralnetwork.components.backend.Kernels;
+
+/**
+ * A class used to calculate the softmax of each row of a DoubleMatrix. The
+ * softmax turns the values of a row into probabilities that sum to 1:
+ * 
+ *   S(t_i) =    e^(t_i)
+ *            -------------
+ *             sum_j e^(t_j)
+ * 
+ * Unlike the other activation functions, each value depends on the whole
+ * row, so the softmax can only be used on the output layer of a network. 
+ * There, it is paired with the cross-entropy cost, whose gradient with 
+ * respect to the inputs of the softmax is simply the softmax minus the 
+ * expected values. The network computes that directly, so the gradient 
+ * methods here are only the diagonal of the full Jacobian.
+ * 
+ * @author thomas
+ */
+public class Softmax implements IActivationFunction {
+
+    public Softmax() {
+    }
+    
+    /**
+     * Calculate the softmax of each row of the specified matrix, storing 
+     * the values in the result matrix.
+     * 
+     * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the softmax values in
+     * @return the softmax of the input matrix
+     */
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result) {
+        Kernels.softmax(input.data, result.data, input.rows, input.columns);
+        return result;
+    }
+    
+    /**
+     * Calculate the softmax of each row of the specified matrix, storing 
+     * the values in the result matrix, and the log of the values in the
+     * log result matrix. The log is computed without taking the log of the
+     * softmax, so it is accurate even for values that round to 0.
+     * 
+     * @param input the DoubleMatrix to use as input
+     * @param result the DoubleMatrix to store the softmax values in
+     * @param logResult the DoubleMatrix to store the log of the softmax in
+     * @return the softmax of the input matrix
+     */
+    public DoubleMatrix applyi(DoubleMatrix input, DoubleMatrix result, DoubleMatrix logResult) {
+        Kernels.logSoftmax(input.data, result.data, logResult.data, input.rows, input.columns);
+        return result;
+    }
+    
+    /**
+     * Computes the diagonal of the Jacobian of the softmax from the softmax
+     * values, which is:
+     * 
+     *   S'(t_i) = S(t_i) * (1 - S(t_i))
+     * 
+     * @param output the softmax values
+     * @param result the DoubleMatrix to store the gradient in
+     * @return the gradient of the softmax
+     */
+    public DoubleMatrix gradientFromOutputi(DoubleMatrix output, DoubleMatrix result) {
+        Kernels.sigmoidGradient(output.data, result.data, output.length);
+        return result;
+    }
+
+    /**
+     * Calculate the softmax of each row of the specified single precision
+     * matrix, storing the values in the result matrix.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the softmax values in
+     * @return the softmax of the input matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result) {
+        Kernels.softmax(input.data, result.data, input.rows, input.columns);
+        return result;
+    }
+    
+    /**
+     * Single precision version of applyi that also stores the log of the
+     * softmax values.
+     * 
+     * @param input the FloatMatrix to use as input
+     * @param result the FloatMatrix to store the softmax values in
+     * @param logResult the FloatMatrix to store the log of the softmax in
+     * @return the softmax of the input matrix
+     */
+    public FloatMatrix applyi(FloatMatrix input, FloatMatrix result, FloatMatrix logResult) {
+        Kernels.logSoftmax(input.data, result.data, logResult.data, input.rows, input.columns);
+        return result;
+    }
+    
+    /**
+     * Computes the diagonal of the Jacobian of the softmax from the single
+     * precision softmax values.
+     * 
+     * @param output the softmax values
+     * @param result the FloatMatrix to store the gradient in
+     * @return the gradient of the softmax
+     */
+    public FloatMatrix gradientFromOutputi(FloatMatrix output, FloatMatrix result) {
+        Kernels.sigmoidGradient(output.data, result.data, output.length);
+        return result;
+    }
+
+    /**
+     * The softmax of a single value on its own is always 1.
+     * 
+     * @param input the double to use as input
+     * @return 1
+     */
+    public double apply(double input) {
+        return 1.0;
+    }
+    
+    /**
+     * Calculate the softmax of the first length values of the array in place.
+     * 
+     * @param values the values to apply the softmax to
+     * @param length the number of values
+     */
+    @Override
+    public void applyi(double [] values, int length) {
+        Kernels.softmax(values, values, 1, length);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Chooses the linear algebra backend at runtime. The backend can be named
+ * with the neuralnetwork.backend system property. Otherwise, the jblas
+ * backend is used when its native libraries can be loaded, and the pure
+ * Java backend is used when they cannot.
+ *
+ * @author thomas
+ */
+public final class Backends {
+
+    // The system property used to name the default backend
+    public static final String BACKEND_PROPERTY = "neuralnetwork.backend";
+
+    private static IBackend sDefault;
+
+    private Backends() {
+    }
+
+    /**
+     * Creates a new backend with the specified name. Returns null if the
+     * name is not recognized. Throws an IllegalStateException if the jblas
+     * backend is named but its native libraries cannot be loaded, rather
+     * than failing on the first matrix product.
+     *
+     * @param name the name of the backend (jblas or java)
+     * @return the new backend
+     */
+    public static IBackend create(String name) {
+        switch (name.toLowerCase()) {
+            case JblasBackend.NAME:
+                if (!JblasBackend.isAvailable()) {
+                    throw new IllegalStateException("the native libraries for the jblas backend cannot be loaded");
+                }
+                return new JblasBackend();
+            case JavaBackend.NAME:
+                return new JavaBackend();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the backend used by networks that were not given one. The
+     * backend is chosen the first time this is called, and the same backend
+     * is returned from then on.
+     *
+     * @return the default backend
+     */
+    public static synchronized IBackend getDefault() {
+        if (sDefault == null) {
+            String name = System.getProperty(BACKEND_PROPERTY);
+            if (name != null) {
+                sDefault = create(name);
+                if (sDefault == null) {
+                    throw new IllegalArgumentException("unknown backend [" + name + "]");
+                }
+            } else {
+                sDefault = JblasBackend.isAvailable() ? new JblasBackend() : new JavaBackend();
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Checks that a product of a matrix with the first shape and a matrix
+     * with the second shape fits in a matrix with the result shape.
+     *
+     * @param aRows the rows of the left matrix
+     * @param aColumns the columns of the left matrix
+     * @param bRows the rows of the right matrix
+     * @param bColumns the columns of the right matrix
+     * @param cRows the rows of the result
+     * @param cColumns the columns of the result
+     */
+    static void checkProduct(int aRows, int aColumns, int bRows, int bColumns, int cRows, int cColumns) {
+        if (aColumns != bRows || aRows != cRows || bColumns != cColumns) {
+            throw new IllegalArgumentException("cannot multiply " + aRows + "x" + aColumns + " by "
+                    + bRows + "x" + bColumns + " into " + cRows + "x" + cColumns);
+        }
+    }
+
+    /**
+     * Checks that a product of the two matrices, either of which may be
+     * transposed, fits in the result matrix.
+     *
+     * @param transposeA whether the left matrix is transposed
+     * @param transposeB whether the right matrix is transposed
+     * @param aRows the stored rows of the left matrix
+     * @param aColumns the stored columns of the left matrix
+     * @param bRows the stored rows of the right matrix
+     * @param bColumns the stored columns of the right matrix
+     * @param cRows the rows of the result
+     * @param cColumns the columns of the result
+     */
+    static void checkProduct(boolean transposeA, boolean transposeB, int aRows, int aColumns, 
+            int bRows, int bColumns, int cRows, int cColumns) {
+        checkProduct(transposeA ? aColumns : aRows, transposeA ? aRows : aColumns,
+                transposeB ? bColumns : bRows, transposeB ? bRows : bColumns, cRows, cColumns);
+    }
+
+    /**
+     * Checks that a matrix with the specified shape, stored in column-major
+     * order at the specified offset and with the specified distance between
+     * its columns, fits inside an array of the specified length.
+     *
+     * @param length the length of the array
+     * @param offset the index of the first element of the matrix
+     * @param ld the distance between the columns of the matrix
+     * @param rows the rows of the matrix as stored
+     * @param columns the columns of the matrix as stored
+     */
+    static void checkStored(int length, int offset, int ld, int rows, int columns) {
+        if (rows < 0 || columns < 0 || offset < 0 || ld < Math.max(1, rows)
+                || (rows > 0 && columns > 0 && offset + ((long)ld * (columns - 1)) + rows > length)) {
+            throw new IllegalArgumentException("cannot store " + rows + "x" + columns + " at offset " 
+                    + offset + " with columns " + ld + " apart in " + length + " elements");
+        }
+    }
+
+    /**
+     * Checks that the three matrices of a product on arrays fit inside 
+     * their arrays.
+     *
+     * @param transposeA whether the left matrix is transposed
+     * @param transposeB whether the right matrix is transposed
+     * @param m the rows of op(a) and c
+     * @param n the columns of op(b) and c
+     * @param k the columns of op(a) and the rows of op(b)
+     * @param aLength the length of the array that holds a
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param bLength the length of the array that holds b
+     * @param bOffset the index of the first element of b
+     * @param ldb the distance between the columns of b
+     * @param cLength the length of the array that holds c
+     * @param cOffset the index of the first element of c
+     * @param ldc the distance between the columns of c
+     */
+    static void checkStoredProduct(boolean transposeA, boolean transposeB, int m, int n, int k, 
+            int aLength, int aOffset, int lda, int bLength, int bOffset, int ldb, int cLength, int cOffset, int ldc) {
+        checkStored(aLength, aOffset, lda, transposeA ? k : m, transposeA ? m : k);
+        checkStored(bLength, bOffset, ldb, transposeB ? n : k, transposeB ? k : n);
+        checkStored(cLength, cOffset, ldc, m, n);
+    }
+
+    /**
+     * Checks that two matrices have the same number of elements.
+     *
+     * @param a the first matrix
+     * @param b the second matrix
+     */
+    static void checkSameSize(DoubleMatrix a, DoubleMatrix b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("matrices have " + a.length + " and " + b.length + " elements");
+        }
+    }
+}
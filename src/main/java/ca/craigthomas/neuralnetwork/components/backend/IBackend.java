@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+/**
+ * An interface to capture the linear algebra that the network needs during
+ * training and prediction. The matrices themselves are plain jblas
+ * matrices, which are stored in column-major order in a Java array. A
+ * backend decides how the matrix products, elementwise operations and
+ * reductions over those arrays are computed - for example with the native
+ * BLAS libraries that jblas loads, or in pure Java.
+ *
+ * Every operation writes into a matrix supplied by the caller, and returns
+ * that matrix. Unless stated otherwise, the result may be the same matrix
+ * as one of the inputs. Operations throw an IllegalArgumentException if the
+ * sizes of the matrices do not match. Backends must be safe to call from
+ * several threads at once, as long as the threads write to different
+ * matrices.
+ *
+ * @author thomas
+ */
+public interface IBackend {
+
+    /**
+     * Returns the name of the backend, as used to select it at runtime.
+     *
+     * @return the name of the backend
+     */
+    public String getName();
+
+    /**
+     * Computes c = alpha * op(a) * op(b) + beta * c on matrices that are
+     * stored in column-major order inside larger arrays, in the same way as
+     * the BLAS gemm routine. op(a) is m x k, op(b) is k x n, and c is m x n.
+     * Each matrix starts at its offset into its array, and its columns are 
+     * lda, ldb or ldc elements apart. This lets a block of columns of a
+     * larger matrix, such as the weights of a theta without its bias 
+     * column, be multiplied in place. The result must not overlap a or b.
+     * When beta is 0, the values in c are ignored.
+     *
+     * @param transposeA whether to use the transpose of a
+     * @param transposeB whether to use the transpose of b
+     * @param m the rows of op(a) and c
+     * @param n the columns of op(b) and c
+     * @param k the columns of op(a) and the rows of op(b)
+     * @param alpha the scale of the product
+     * @param a the array that holds the left matrix
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param b the array that holds the right matrix
+     * @param bOffset the index of the first element of b
+     * @param ldb the distance between the columns of b
+     * @param beta the scale of the existing values in c
+     * @param c the array to store the result in
+     * @param cOffset the index of the first element of c
+     * @param ldc the distance between the columns of c
+     */
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k, double alpha, 
+            double [] a, int aOffset, int lda, double [] b, int bOffset, int ldb, 
+            double beta, double [] c, int cOffset, int ldc);
+
+    /**
+     * Single precision version of gemm on arrays.
+     *
+     * @param transposeA whether to use the transpose of a
+     * @param transposeB whether to use the transpose of b
+     * @param m the rows of op(a) and c
+     * @param n the columns of op(b) and c
+     * @param k the columns of op(a) and the rows of op(b)
+     * @param alpha the scale of the product
+     * @param a the array that holds the left matrix
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param b the array that holds the right matrix
+     * @param bOffset the index of the first element of b
+     * @param ldb the distance between the columns of b
+     * @param beta the scale of the existing values in c
+     * @param c the array to store the result in
+     * @param cOffset the index of the first element of c
+     * @param ldc the distance between the columns of c
+     */
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k, float alpha, 
+            float [] a, int aOffset, int lda, float [] b, int bOffset, int ldb, 
+            float beta, float [] c, int cOffset, int ldc);
+
+    /**
+     * Computes c = alpha * op(a) * op(b) + beta * c, where op(x) is either
+     * x or the transpose of x. The transposes are never built - the product
+     * reads the matrices as they are stored. The result must not be the 
+     * same matrix as a or b. When beta is 0, the values in c are ignored.
+     *
+     * @param transposeA whether to use the transpose of a
+     * @param transposeB whether to use the transpose of b
+     * @param alpha the scale of the product
+     * @param a the left matrix
+     * @param b the right matrix
+     * @param beta the scale of the existing values in c
+     * @param c the matrix to store the result in
+     * @return the result matrix
+     */
+    public default DoubleMatrix gemm(boolean transposeA, boolean transposeB, double alpha, DoubleMatrix a, DoubleMatrix b, double beta, DoubleMatrix c) {
+        Backends.checkProduct(transposeA, transposeB, a.rows, a.columns, b.rows, b.columns, c.rows, c.columns);
+        gemm(transposeA, transposeB, c.rows, c.columns, transposeA ? a.rows : a.columns, alpha,
+                a.data, 0, Math.max(1, a.rows), b.data, 0, Math.max(1, b.rows), beta, c.data, 0, Math.max(1, c.rows));
+        return c;
+    }
+
+    /**
+     * Single precision version of gemm with transposes.
+     *
+     * @param transposeA whether to use the transpose of a
+     * @param transposeB whether to use the transpose of b
+     * @param alpha the scale of the product
+     * @param a the left matrix
+     * @param b the right matrix
+     * @param beta the scale of the existing values in c
+     * @param c the matrix to store the result in
+     * @return the result matrix
+     */
+    public default FloatMatrix gemm(boolean transposeA, boolean transposeB, float alpha, FloatMatrix a, FloatMatrix b, float beta, FloatMatrix c) {
+        Backends.checkProduct(transposeA, transposeB, a.rows, a.columns, b.rows, b.columns, c.rows, c.columns);
+        gemm(transposeA, transposeB, c.rows, c.columns, transposeA ? a.rows : a.columns, alpha,
+                a.data, 0, Math.max(1, a.rows), b.data, 0, Math.max(1, b.rows), beta, c.data, 0, Math.max(1, c.rows));
+        return c;
+    }
+
+    /**
+     * Computes c = alpha * a * b + beta * c. The result must not be the same
+     * matrix as a or b. When beta is 0, the values in c are ignored.
+     *
+     * @param alpha the scale of the product
+     * @param a the left matrix
+     * @param b the right matrix
+     * @param beta the scale of the existing values in c
+     * @param c the matrix to store the result in
+     * @return the result matrix
+     */
+    public default DoubleMatrix gemm(double alpha, DoubleMatrix a, DoubleMatrix b, double beta, DoubleMatrix c) {
+        return gemm(false, false, alpha, a, b, beta, c);
+    }
+
+    /**
+     * Single precision version of gemm.
+     *
+     * @param alpha the scale of the product
+     * @param a the left matrix
+     * @param b the right matrix
+     * @param beta the scale of the existing values in c
+     * @param c the matrix to store the result in
+     * @return the result matrix
+     */
+    public default FloatMatrix gemm(float alpha, FloatMatrix a, FloatMatrix b, float beta, FloatMatrix c) {
+        return gemm(false, false, alpha, a, b, beta, c);
+    }
+
+    /**
+     * Computes y = alpha * a * x + beta * y, where x and y are vectors. The
+     * result must not be the same matrix as x. When beta is 0, the values in
+     * y are ignored.
+     *
+     * @param alpha the scale of the product
+     * @param a the matrix
+     * @param x the vector to multiply by
+     * @param beta the scale of the existing values in y
+     * @param y the vector to store the result in
+     * @return the result vector
+     */
+    public default DoubleMatrix gemv(double alpha, DoubleMatrix a, DoubleMatrix x, double beta, DoubleMatrix y) {
+        Backends.checkProduct(a.rows, a.columns, x.length, 1, y.length, 1);
+        gemv(a.rows, a.columns, alpha, a.data, 0, Math.max(1, a.rows), x.data, 0, beta, y.data, 0);
+        return y;
+    }
+
+    /**
+     * Computes y = alpha * a * x + beta * y on a matrix that is stored in 
+     * column-major order inside a larger array, in the same way as the BLAS
+     * gemv routine. a is m x n, starts at its offset into its array, and 
+     * its columns are lda elements apart. x holds n values and y holds m 
+     * values, one after the other from their offsets. This lets the weights
+     * of a theta without its bias column be multiplied by a single sample
+     * in place. The result must not overlap a or x. When beta is 0, the 
+     * values in y are ignored.
+     *
+     * @param m the rows of a and the length of y
+     * @param n the columns of a and the length of x
+     * @param alpha the scale of the product
+     * @param a the array that holds the matrix
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param x the array that holds the vector to multiply by
+     * @param xOffset the index of the first element of x
+     * @param beta the scale of the existing values in y
+     * @param y the array to store the result in
+     * @param yOffset the index of the first element of y
+     */
+    public void gemv(int m, int n, double alpha, double [] a, int aOffset, int lda, 
+            double [] x, int xOffset, double beta, double [] y, int yOffset);
+
+    /**
+     * Single precision version of gemv on arrays.
+     *
+     * @param m the rows of a and the length of y
+     * @param n the columns of a and the length of x
+     * @param alpha the scale of the product
+     * @param a the array that holds the matrix
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param x the array that holds the vector to multiply by
+     * @param xOffset the index of the first element of x
+     * @param beta the scale of the existing values in y
+     * @param y the array to store the result in
+     * @param yOffset the index of the first element of y
+     */
+    public void gemv(int m, int n, float alpha, float [] a, int aOffset, int lda, 
+            float [] x, int xOffset, float beta, float [] y, int yOffset);
+
+    /**
+     * Computes y = alpha * x + y, element by element.
+     *
+     * @param alpha the scale of x
+     * @param x the matrix to add
+     * @param y the matrix to add to
+     * @return the result matrix
+     */
+    public DoubleMatrix axpy(double alpha, DoubleMatrix x, DoubleMatrix y);
+
+    /**
+     * Subtracts b from a element by element, and stores the values in the
+     * result matrix.
+     *
+     * @param a the matrix to subtract from
+     * @param b the matrix to subtract
+     * @param result the matrix to store the values in
+     * @return the result matrix
+     */
+    public DoubleMatrix subi(DoubleMatrix a, DoubleMatrix b, DoubleMatrix result);
+
+    /**
+     * Multiplies a by b element by element, and stores the values in the
+     * result matrix.
+     *
+     * @param a the first matrix
+     * @param b the second matrix
+     * @param result the matrix to store the values in
+     * @return the result matrix
+     */
+    public DoubleMatrix muli(DoubleMatrix a, DoubleMatrix b, DoubleMatrix result);
+
+    /**
+     * Multiplies every element of x by alpha in place.
+     *
+     * @param alpha the value to multiply by
+     * @param x the matrix to scale
+     * @return the scaled matrix
+     */
+    public DoubleMatrix scali(double alpha, DoubleMatrix x);
+
+    /**
+     * Returns the sum of all of the elements of x.
+     *
+     * @param x the matrix to sum
+     * @return the sum of the elements
+     */
+    public double sum(DoubleMatrix x);
+
+    /**
+     * Returns the sum of the products of the matching elements of x and y.
+     *
+     * @param x the first matrix
+     * @param y the second matrix
+     * @return the dot product
+     */
+    public double dot(DoubleMatrix x, DoubleMatrix y);
+}
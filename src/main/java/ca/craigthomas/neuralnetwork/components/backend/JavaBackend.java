@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * A backend written entirely in Java, for machines where the native
+ * libraries of jblas cannot be loaded. Matrix products are split into tiles
+ * of the result, and each tile is computed a block of the inner dimension
+ * at a time, so that the parts of the matrices being multiplied stay in the
+ * cache. Large products compute their tiles on several threads. Since each
+ * tile of the result is owned by a single thread, and the inner dimension
+ * is always summed in the same order, the results do not depend on the
+ * number of threads. Transposed matrices, and matrices that are part of a
+ * larger array, are read in place with the matching strides rather than
+ * being copied. Every backend computes its tiles on one pool of daemon 
+ * threads that is shared by the whole process, so backends can be created
+ * freely and never need to be shut down.
+ *
+ * @author thomas
+ */
+public class JavaBackend implements IBackend {
+
+    public static final String NAME = "java";
+
+    // The number of rows of the result in each tile
+    private static final int TILE_ROWS = 128;
+    // The number of columns of the result in each tile
+    private static final int TILE_COLUMNS = 64;
+    // The number of elements of the inner dimension in each block
+    private static final int BLOCK_SIZE = 128;
+    // Products with fewer multiplications than this run on the calling thread
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    // The pool that computes the tiles of every backend, with one thread 
+    // for each processor. Threads are only started when a product needs them
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "java-backend");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final int mThreads;
+
+    /**
+     * Creates a backend that uses one thread for each available processor.
+     */
+    public JavaBackend() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a backend that splits large matrix products between the 
+     * specified number of threads. The threads come from the shared pool,
+     * which has one thread for each processor.
+     *
+     * @param threads the number of threads to use
+     */
+    public JavaBackend(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        mThreads = threads;
+    }
+
+    /**
+     * Returns the number of threads used for large matrix products.
+     *
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return mThreads;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void gemm(final boolean transposeA, final boolean transposeB, final int m, final int n, final int k, 
+            final double alpha, final double [] a, final int aOffset, final int lda, 
+            final double [] b, final int bOffset, final int ldb, 
+            final double beta, final double [] c, final int cOffset, final int ldc) {
+        Backends.checkStoredProduct(transposeA, transposeB, m, n, k, 
+                a.length, aOffset, lda, b.length, bOffset, ldb, c.length, cOffset, ldc);
+        List<Callable<Void>> tiles = new ArrayList<Callable<Void>>();
+        for (int row = 0; row < m; row += TILE_ROWS) {
+            for (int col = 0; col < n; col += TILE_COLUMNS) {
+                final int rowStart = row;
+                final int rowEnd = Math.min(row + TILE_ROWS, m);
+                final int colStart = col;
+                final int colEnd = Math.min(col + TILE_COLUMNS, n);
+                tiles.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        gemmTile(transposeA, transposeB, k, alpha, a, aOffset, lda, b, bOffset, ldb, 
+                                beta, c, cOffset, ldc, rowStart, rowEnd, colStart, colEnd);
+                        return null;
+                    }
+                });
+            }
+        }
+        runTiles(tiles, (long)m * n * k);
+    }
+
+    /**
+     * Computes a single tile of c = alpha * op(a) * op(b) + beta * c, from 
+     * the start row and column of c up to, but not including, the end row
+     * and column. The element of op(b) in row p and column col is read from
+     * b at offset bStart + (p * bStride), so b is read in place whether or
+     * not it is transposed.
+     *
+     * When a is not transposed, each column of a is added into the tile 
+     * scaled by the matching element of op(b), so that the inner loop walks
+     * down a column of a and a column of c. When a is transposed, each 
+     * element of the tile is instead the dot product of a column of a with
+     * a column of op(b), so that the inner loop still walks down a column 
+     * of a.
+     *
+     * @param transposeA whether to use the transpose of a
+     * @param transposeB whether to use the transpose of b
+     * @param k the columns of op(a) and the rows of op(b)
+     * @param alpha the scale of the product
+     * @param a the array that holds the left matrix
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param b the array that holds the right matrix
+     * @param bOffset the index of the first element of b
+     * @param ldb the distance between the columns of b
+     * @param beta the scale of the existing values in c
+     * @param c the array to store the result in
+     * @param cOffset the index of the first element of c
+     * @param ldc the distance between the columns of c
+     * @param rowStart the first row of the tile
+     * @param rowEnd the row after the last row of the tile
+     * @param colStart the first column of the tile
+     * @param colEnd the column after the last column of the tile
+     */
+    private static void gemmTile(boolean transposeA, boolean transposeB, int k, double alpha, 
+            double [] a, int aOffset, int lda, double [] b, int bOffset, int ldb, 
+            double beta, double [] c, int cOffset, int ldc, int rowStart, int rowEnd, int colStart, int colEnd) {
+        int bStride = transposeB ? ldb : 1;
+        for (int col = colStart; col < colEnd; col++) {
+            int offset = cOffset + (col * ldc);
+            for (int row = rowStart; row < rowEnd; row++) {
+                c[offset + row] = (beta == 0.0) ? 0.0 : beta * c[offset + row];
+            }
+        }
+        if (transposeA) {
+            for (int col = colStart; col < colEnd; col++) {
+                int cColumn = cOffset + (col * ldc);
+                int bStart = bOffset + (transposeB ? col : col * ldb);
+                for (int row = rowStart; row < rowEnd; row++) {
+                    int aColumn = aOffset + (row * lda);
+                    double sum = 0.0;
+                    for (int p = 0; p < k; p++) {
+                        sum += a[aColumn + p] * b[bStart + (p * bStride)];
+                    }
+                    c[cColumn + row] += alpha * sum;
+                }
+            }
+            return;
+        }
+        for (int blockStart = 0; blockStart < k; blockStart += BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, k);
+            for (int col = colStart; col < colEnd; col++) {
+                int cColumn = cOffset + (col * ldc);
+                int bStart = bOffset + (transposeB ? col : col * ldb);
+                for (int p = blockStart; p < blockEnd; p++) {
+                    double scale = alpha * b[bStart + (p * bStride)];
+                    int aColumn = aOffset + (p * lda);
+                    for (int row = rowStart; row < rowEnd; row++) {
+                        c[cColumn + row] += a[aColumn + row] * scale;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemm(final boolean transposeA, final boolean transposeB, final int m, final int n, final int k, 
+            final float alpha, final float [] a, final int aOffset, final int lda, 
+            final float [] b, final int bOffset, final int ldb, 
+            final float beta, final float [] c, final int cOffset, final int ldc) {
+        Backends.checkStoredProduct(transposeA, transposeB, m, n, k, 
+                a.length, aOffset, lda, b.length, bOffset, ldb, c.length, cOffset, ldc);
+        List<Callable<Void>> tiles = new ArrayList<Callable<Void>>();
+        for (int row = 0; row < m; row += TILE_ROWS) {
+            for (int col = 0; col < n; col += TILE_COLUMNS) {
+                final int rowStart = row;
+                final int rowEnd = Math.min(row + TILE_ROWS, m);
+                final int colStart = col;
+                final int colEnd = Math.min(col + TILE_COLUMNS, n);
+                tiles.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        gemmTile(transposeA, transposeB, k, alpha, a, aOffset, lda, b, bOffset, ldb, 
+                                beta, c, cOffset, ldc, rowStart, rowEnd, colStart, colEnd);
+                        return null;
+                    }
+                });
+            }
+        }
+        runTiles(tiles, (long)m * n * k);
+    }
+
+    /**
+     * Single precision version of gemmTile.
+     *
+     * @param transposeA whether to use the transpose of a
+     * @param transposeB whether to use the transpose of b
+     * @param k the columns of op(a) and the rows of op(b)
+     * @param alpha the scale of the product
+     * @param a the array that holds the left matrix
+     * @param aOffset the index of the first element of a
+     * @param lda the distance between the columns of a
+     * @param b the array that holds the right matrix
+     * @param bOffset the index of the first element of b
+     * @param ldb the distance between the columns of b
+     * @param beta the scale of the existing values in c
+     * @param c the array to store the result in
+     * @param cOffset the index of the first element of c
+     * @param ldc the distance between the columns of c
+     * @param rowStart the first row of the tile
+     * @param rowEnd the row after the last row of the tile
+     * @param colStart the first column of the tile
+     * @param colEnd the column after the last column of the tile
+     */
+    private static void gemmTile(boolean transposeA, boolean transposeB, int k, float alpha, 
+            float [] a, int aOffset, int lda, float [] b, int bOffset, int ldb, 
+            float beta, float [] c, int cOffset, int ldc, int rowStart, int rowEnd, int colStart, int colEnd) {
+        int bStride = transposeB ? ldb : 1;
+        for (int col = colStart; col < colEnd; col++) {
+            int offset = cOffset + (col * ldc);
+            for (int row = rowStart; row < rowEnd; row++) {
+                c[offset + row] = (beta == 0.0f) ? 0.0f : beta * c[offset + row];
+            }
+        }
+        if (transposeA) {
+            for (int col = colStart; col < colEnd; col++) {
+                int cColumn = cOffset + (col * ldc);
+                int bStart = bOffset + (transposeB ? col : col * ldb);
+                for (int row = rowStart; row < rowEnd; row++) {
+                    int aColumn = aOffset + (row * lda);
+                    float sum = 0.0f;
+                    for (int p = 0; p < k; p++) {
+                        sum += a[aColumn + p] * b[bStart + (p * bStride)];
+                    }
+                    c[cColumn + row] += alpha * sum;
+                }
+            }
+            return;
+        }
+        for (int blockStart = 0; blockStart < k; blockStart += BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, k);
+            for (int col = colStart; col < colEnd; col++) {
+                int cColumn = cOffset + (col * ldc);
+                int bStart = bOffset + (transposeB ? col : col * ldb);
+                for (int p = blockStart; p < blockEnd; p++) {
+                    float scale = alpha * b[bStart + (p * bStride)];
+                    int aColumn = aOffset + (p * lda);
+                    for (int row = rowStart; row < rowEnd; row++) {
+                        c[cColumn + row] += a[aColumn + row] * scale;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the tiles of a matrix product. Small products, and products
+     * with a single tile, are computed on the calling thread. Otherwise the
+     * tiles are dealt out in turn to one task for each thread, and the 
+     * tasks are run on the shared pool.
+     *
+     * @param tiles the tiles to compute
+     * @param multiplications the number of multiplications in the product
+     */
+    private void runTiles(final List<Callable<Void>> tiles, long multiplications) {
+        if (mThreads == 1 || tiles.size() == 1 || multiplications < PARALLEL_THRESHOLD) {
+            runTiles(tiles, 0, 1);
+            return;
+        }
+
+        final int tasks = Math.min(mThreads, tiles.size());
+        List<Callable<Void>> work = new ArrayList<Callable<Void>>();
+        for (int task = 0; task < tasks; task++) {
+            final int first = task;
+            work.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    runTiles(tiles, first, tasks);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : POOL.invokeAll(work)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while computing tiles", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("could not compute tile", e.getCause());
+        }
+    }
+
+    /**
+     * Computes every tile from the first one onwards, stepping over the 
+     * specified number of tiles each time, on the calling thread.
+     *
+     * @param tiles the tiles to compute
+     * @param first the index of the first tile to compute
+     * @param step the distance between the tiles to compute
+     */
+    private static void runTiles(List<Callable<Void>> tiles, int first, int step) {
+        for (int index = first; index < tiles.size(); index += step) {
+            try {
+                tiles.get(index).call();
+            } catch (Exception e) {
+                throw new IllegalStateException("could not compute tile", e);
+            }
+        }
+    }
+
+    @Override
+    public void gemv(int m, int n, double alpha, double [] a, int aOffset, int lda, 
+            double [] x, int xOffset, double beta, double [] y, int yOffset) {
+        Backends.checkStoredProduct(false, false, m, 1, n, 
+                a.length, aOffset, lda, x.length, xOffset, Math.max(1, n), y.length, yOffset, Math.max(1, m));
+        for (int row = 0; row < m; row++) {
+            y[yOffset + row] = (beta == 0.0) ? 0.0 : beta * y[yOffset + row];
+        }
+        for (int col = 0; col < n; col++) {
+            double scale = alpha * x[xOffset + col];
+            int offset = aOffset + (col * lda);
+            for (int row = 0; row < m; row++) {
+                y[yOffset + row] += a[offset + row] * scale;
+            }
+        }
+    }
+
+    @Override
+    public void gemv(int m, int n, float alpha, float [] a, int aOffset, int lda, 
+            float [] x, int xOffset, float beta, float [] y, int yOffset) {
+        Backends.checkStoredProduct(false, false, m, 1, n, 
+                a.length, aOffset, lda, x.length, xOffset, Math.max(1, n), y.length, yOffset, Math.max(1, m));
+        for (int row = 0; row < m; row++) {
+            y[yOffset + row] = (beta == 0.0f) ? 0.0f : beta * y[yOffset + row];
+        }
+        for (int col = 0; col < n; col++) {
+            float scale = alpha * x[xOffset + col];
+            int offset = aOffset + (col * lda);
+            for (int row = 0; row < m; row++) {
+                y[yOffset + row] += a[offset + row] * scale;
+            }
+        }
+    }
+
+    @Override
+    public DoubleMatrix axpy(double alpha, DoubleMatrix x, DoubleMatrix y) {
+        Backends.checkSameSize(x, y);
+        for (int element = 0; element < x.length; element++) {
+            y.data[element] += alpha * x.data[element];
+        }
+        return y;
+    }
+
+    @Override
+    public DoubleMatrix subi(DoubleMatrix a, DoubleMatrix b, DoubleMatrix result) {
+        Backends.checkSameSize(a, b);
+        Backends.checkSameSize(a, result);
+        for (int element = 0; element < a.length; element++) {
+            result.data[element] = a.data[element] - b.data[element];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix muli(DoubleMatrix a, DoubleMatrix b, DoubleMatrix result) {
+        Backends.checkSameSize(a, b);
+        Backends.checkSameSize(a, result);
+        for (int element = 0; element < a.length; element++) {
+            result.data[element] = a.data[element] * b.data[element];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix scali(double alpha, DoubleMatrix x) {
+        for (int element = 0; element < x.length; element++) {
+            x.data[element] *= alpha;
+        }
+        return x;
+    }
+
+    @Override
+    public double sum(DoubleMatrix x) {
+        return Kernels.sum(x.data, 0, x.length);
+    }
+
+    @Override
+    public double dot(DoubleMatrix x, DoubleMatrix y) {
+        Backends.checkSameSize(x, y);
+        return Kernels.dot(x.data, y.data, 0, x.length);
+    }
+}
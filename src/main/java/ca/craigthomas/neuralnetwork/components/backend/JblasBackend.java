@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.NativeBlas;
+import org.jblas.SimpleBlas;
+
+/**
+ * A backend that computes matrix products with the native BLAS libraries
+ * that jblas extracts and loads the first time they are used. Transposed 
+ * products are passed to BLAS with its transpose flags, and products on
+ * parts of larger arrays with its offsets and leading dimensions. The
+ * elementwise operations and reductions are the ones jblas implements in
+ * Java.
+ *
+ * @author thomas
+ */
+public class JblasBackend implements IBackend {
+
+    public static final String NAME = "jblas";
+
+    /**
+     * Checks whether the native libraries of jblas can be loaded on this
+     * machine, by running a tiny product through them.
+     *
+     * @return true if the native libraries are available
+     */
+    public static boolean isAvailable() {
+        try {
+            double [] x = new double [] {1.0};
+            NativeBlas.ddot(1, x, 0, 1, x, 0, 1);
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Returns the BLAS flag for a matrix that is or is not transposed.
+     *
+     * @param transpose whether the matrix is transposed
+     * @return the BLAS transpose flag
+     */
+    private static char flag(boolean transpose) {
+        return transpose ? 'T' : 'N';
+    }
+
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k, double alpha, 
+            double [] a, int aOffset, int lda, double [] b, int bOffset, int ldb, 
+            double beta, double [] c, int cOffset, int ldc) {
+        Backends.checkStoredProduct(transposeA, transposeB, m, n, k, 
+                a.length, aOffset, lda, b.length, bOffset, ldb, c.length, cOffset, ldc);
+        if (m == 0 || n == 0) {
+            return;
+        }
+        NativeBlas.dgemm(flag(transposeA), flag(transposeB), m, n, k, alpha, 
+                a, aOffset, lda, b, bOffset, ldb, beta, c, cOffset, ldc);
+    }
+
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k, float alpha, 
+            float [] a, int aOffset, int lda, float [] b, int bOffset, int ldb, 
+            float beta, float [] c, int cOffset, int ldc) {
+        Backends.checkStoredProduct(transposeA, transposeB, m, n, k, 
+                a.length, aOffset, lda, b.length, bOffset, ldb, c.length, cOffset, ldc);
+        if (m == 0 || n == 0) {
+            return;
+        }
+        NativeBlas.sgemm(flag(transposeA), flag(transposeB), m, n, k, alpha, 
+                a, aOffset, lda, b, bOffset, ldb, beta, c, cOffset, ldc);
+    }
+
+    @Override
+    public void gemv(int m, int n, double alpha, double [] a, int aOffset, int lda, 
+            double [] x, int xOffset, double beta, double [] y, int yOffset) {
+        Backends.checkStoredProduct(false, false, m, 1, n, 
+                a.length, aOffset, lda, x.length, xOffset, Math.max(1, n), y.length, yOffset, Math.max(1, m));
+        if (m == 0) {
+            return;
+        }
+        NativeBlas.dgemv('N', m, n, alpha, a, aOffset, lda, x, xOffset, 1, beta, y, yOffset, 1);
+    }
+
+    @Override
+    public void gemv(int m, int n, float alpha, float [] a, int aOffset, int lda, 
+            float [] x, int xOffset, float beta, float [] y, int yOffset) {
+        Backends.checkStoredProduct(false, false, m, 1, n, 
+                a.length, aOffset, lda, x.length, xOffset, Math.max(1, n), y.length, yOffset, Math.max(1, m));
+        if (m == 0) {
+            return;
+        }
+        NativeBlas.sgemv('N', m, n, alpha, a, aOffset, lda, x, xOffset, 1, beta, y, yOffset, 1);
+    }
+
+    @Override
+    public DoubleMatrix axpy(double alpha, DoubleMatrix x, DoubleMatrix y) {
+        Backends.checkSameSize(x, y);
+        return SimpleBlas.axpy(alpha, x, y);
+    }
+
+    @Override
+    public DoubleMatrix subi(DoubleMatrix a, DoubleMatrix b, DoubleMatrix result) {
+        Backends.checkSameSize(a, b);
+        Backends.checkSameSize(a, result);
+        return a.subi(b, result);
+    }
+
+    @Override
+    public DoubleMatrix muli(DoubleMatrix a, DoubleMatrix b, DoubleMatrix result) {
+        Backends.checkSameSize(a, b);
+        Backends.checkSameSize(a, result);
+        return a.muli(b, result);
+    }
+
+    @Override
+    public DoubleMatrix scali(double alpha, DoubleMatrix x) {
+        return x.muli(alpha);
+    }
+
+    @Override
+    public double sum(DoubleMatrix x) {
+        return x.sum();
+    }
+
+    @Override
+    public double dot(DoubleMatrix x, DoubleMatrix y) {
+        Backends.checkSameSize(x, y);
+        return SimpleBlas.dot(x, y);
+    }
+}
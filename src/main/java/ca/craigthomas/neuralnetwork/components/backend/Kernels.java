@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+/**
+ * Elementwise kernels over primitive arrays, shared by the activation
+ * functions, the optimizers and the backends. Each kernel makes a single
+ * pass over its arrays without allocating. Only the kernels made of plain
+ * arithmetic - the sigmoid and tanh gradients, leakyRelu, signStep, sum
+ * and dot - leave the JIT compiler free to unroll the loop and use SIMD
+ * instructions. The softmax and logLikelihood kernels call Math.exp or
+ * Math.log for every value, and those calls take most of the time, so they
+ * gain little over a plain loop. There are no sigmoid or tanh kernels for
+ * the same reason - a single pass over Math.exp or Math.tanh measured no
+ * faster than the jblas operations that Sigmoid and HyperbolicTangent 
+ * use. sum and dot keep four separate running sums,
+ * and the double precision logLikelihood keeps two, so that each addition
+ * does not have to wait for the one before it.
+ *
+ * @author thomas
+ */
+public final class Kernels {
+
+    private Kernels() {
+    }
+
+    /**
+     * Computes the gradient of the sigmoid from the first length sigmoid
+     * values, and stores it in output.
+     *
+     * @param values the sigmoid values
+     * @param output the array to store the gradient in
+     * @param length the number of values
+     */
+    public static void sigmoidGradient(double [] values, double [] output, int length) {
+        for (int index = 0; index < length; index++) {
+            double value = values[index];
+            output[index] = value * (1.0 - value);
+        }
+    }
+
+    /**
+     * Single precision version of sigmoidGradient.
+     *
+     * @param values the sigmoid values
+     * @param output the array to store the gradient in
+     * @param length the number of values
+     */
+    public static void sigmoidGradient(float [] values, float [] output, int length) {
+        for (int index = 0; index < length; index++) {
+            float value = values[index];
+            output[index] = value * (1.0f - value);
+        }
+    }
+
+    /**
+     * Computes the gradient of tanh from the first length tanh values, and
+     * stores it in output.
+     *
+     * @param values the tanh values
+     * @param output the array to store the gradient in
+     * @param length the number of values
+     */
+    public static void tanhGradient(double [] values, double [] output, int length) {
+        for (int index = 0; index < length; index++) {
+            double value = values[index];
+            output[index] = 1.0 - (value * value);
+        }
+    }
+
+    /**
+     * Single precision version of tanhGradient.
+     *
+     * @param values the tanh values
+     * @param output the array to store the gradient in
+     * @param length the number of values
+     */
+    public static void tanhGradient(float [] values, float [] output, int length) {
+        for (int index = 0; index < length; index++) {
+            float value = values[index];
+            output[index] = 1.0f - (value * value);
+        }
+    }
+
+    /**
+     * Computes the leaky rectified linear function of the first length 
+     * values of input, and stores them in output. Positive values are kept,
+     * and negative values are multiplied by the slope, which must be less
+     * than 1. A slope of 0 gives the plain rectified linear function. The
+     * output may be the same array as the input.
+     *
+     * @param input the values to rectify
+     * @param output the array to store the values in
+     * @param slope the slope for negative values
+     * @param length the number of values
+     */
+    public static void leakyRelu(double [] input, double [] output, double slope, int length) {
+        for (int index = 0; index < length; index++) {
+            double value = input[index];
+            output[index] = Math.max(value, slope * value);
+        }
+    }
+
+    /**
+     * Single precision version of leakyRelu.
+     *
+     * @param input the values to rectify
+     * @param output the array to store the values in
+     * @param slope the slope for negative values
+     * @param length the number of values
+     */
+    public static void leakyRelu(float [] input, float [] output, float slope, int length) {
+        for (int index = 0; index < length; index++) {
+            float value = input[index];
+            output[index] = Math.max(value, slope * value);
+        }
+    }
+
+    /**
+     * Computes the gradient of the leaky rectified linear function from the
+     * first length rectified values, and stores it in output. The gradient
+     * is 1 for positive values, and the slope otherwise. As in signStep, 
+     * the sign bit of (0 - value) is only set for positive values, so the
+     * negated copySign is 1 for positive values and -1 otherwise, and the
+     * larger of it and the slope is taken without any branches.
+     *
+     * @param values the rectified values
+     * @param output the array to store the gradient in
+     * @param slope the slope for negative values
+     * @param length the number of values
+     */
+    public static void leakyReluGradient(double [] values, double [] output, double slope, int length) {
+        for (int index = 0; index < length; index++) {
+            output[index] = Math.max(slope, -Math.copySign(1.0, 0.0 - values[index]));
+        }
+    }
+
+    /**
+     * Single precision version of leakyReluGradient.
+     *
+     * @param values the rectified values
+     * @param output the array to store the gradient in
+     * @param slope the slope for negative values
+     * @param length the number of values
+     */
+    public static void leakyReluGradient(float [] values, float [] output, float slope, int length) {
+        for (int index = 0; index < length; index++) {
+            output[index] = Math.max(slope, -Math.copySign(1.0f, 0.0f - values[index]));
+        }
+    }
+
+    /**
+     * Computes the softmax of each row of a column major matrix with the
+     * specified number of rows and columns, and stores it in output. The
+     * largest value of each row is subtracted before the exponentials are
+     * taken, so that they cannot overflow. The output may be the same array
+     * as the input.
+     *
+     * @param input the values to apply the softmax to
+     * @param output the array to store the values in
+     * @param rows the number of rows
+     * @param columns the number of columns
+     */
+    public static void softmax(double [] input, double [] output, int rows, int columns) {
+        int length = rows * columns;
+        for (int row = 0; row < rows; row++) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int index = row; index < length; index += rows) {
+                max = Math.max(max, input[index]);
+            }
+            double sum = 0.0;
+            for (int index = row; index < length; index += rows) {
+                double value = Math.exp(input[index] - max);
+                output[index] = value;
+                sum += value;
+            }
+            double scale = 1.0 / sum;
+            for (int index = row; index < length; index += rows) {
+                output[index] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Computes both the softmax and the log of the softmax of each row of a
+     * column major matrix. The log is computed directly from the inputs as
+     * (x - max) - log(sum(exp(x - max))), so it stays finite even when the 
+     * softmax itself underflows to 0. The output may be the same array as 
+     * the input, but the log output may not.
+     *
+     * @param input the values to apply the softmax to
+     * @param output the array to store the softmax in
+     * @param logOutput the array to store the log of the softmax in
+     * @param rows the number of rows
+     * @param columns the number of columns
+     */
+    public static void logSoftmax(double [] input, double [] output, double [] logOutput, int rows, int columns) {
+        int length = rows * columns;
+        for (int row = 0; row < rows; row++) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int index = row; index < length; index += rows) {
+                max = Math.max(max, input[index]);
+            }
+            double sum = 0.0;
+            for (int index = row; index < length; index += rows) {
+                double shifted = input[index] - max;
+                double value = Math.exp(shifted);
+                logOutput[index] = shifted;
+                output[index] = value;
+                sum += value;
+            }
+            double logSum = Math.log(sum);
+            double scale = 1.0 / sum;
+            for (int index = row; index < length; index += rows) {
+                logOutput[index] -= logSum;
+                output[index] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Single precision version of softmax. The sum of each row is 
+     * accumulated in double precision.
+     *
+     * @param input the values to apply the softmax to
+     * @param output the array to store the values in
+     * @param rows the number of rows
+     * @param columns the number of columns
+     */
+    public static void softmax(float [] input, float [] output, int rows, int columns) {
+        int length = rows * columns;
+        for (int row = 0; row < rows; row++) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int index = row; index < length; index += rows) {
+                max = Math.max(max, input[index]);
+            }
+            double sum = 0.0;
+            for (int index = row; index < length; index += rows) {
+                float value = (float)Math.exp(input[index] - max);
+                output[index] = value;
+                sum += value;
+            }
+            float scale = (float)(1.0 / sum);
+            for (int index = row; index < length; index += rows) {
+                output[index] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Single precision version of logSoftmax. The sum of each row is 
+     * accumulated in double precision.
+     *
+     * @param input the values to apply the softmax to
+     * @param output the array to store the softmax in
+     * @param logOutput the array to store the log of the softmax in
+     * @param rows the number of rows
+     * @param columns the number of columns
+     */
+    public static void logSoftmax(float [] input, float [] output, float [] logOutput, int rows, int columns) {
+        int length = rows * columns;
+        for (int row = 0; row < rows; row++) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int index = row; index < length; index += rows) {
+                max = Math.max(max, input[index]);
+            }
+            double sum = 0.0;
+            for (int index = row; index < length; index += rows) {
+                float shifted = input[index] - max;
+                float value = (float)Math.exp(shifted);
+                logOutput[index] = shifted;
+                output[index] = value;
+                sum += value;
+            }
+            float logSum = (float)Math.log(sum);
+            float scale = (float)(1.0 / sum);
+            for (int index = row; index < length; index += rows) {
+                logOutput[index] -= logSum;
+                output[index] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the logistic log likelihood terms
+     * y * log(h) + (1 - y) * log(1 - h) over the first length outputs h and
+     * their expected values y. The cost of a sigmoid output layer is the 
+     * negative of this sum, averaged over the samples.
+     *
+     * @param output the output values, each between 0 and 1
+     * @param expected the expected values
+     * @param length the number of values
+     * @return the sum of the log likelihood terms
+     */
+    public static double logLikelihood(double [] output, double [] expected, int length) {
+        double sum0 = 0.0;
+        double sum1 = 0.0;
+        int index = 0;
+        for (; index + 1 < length; index += 2) {
+            double y0 = expected[index];
+            double y1 = expected[index + 1];
+            sum0 += (y0 * Math.log(output[index])) + ((1.0 - y0) * Math.log(1.0 - output[index]));
+            sum1 += (y1 * Math.log(output[index + 1])) + ((1.0 - y1) * Math.log(1.0 - output[index + 1]));
+        }
+        for (; index < length; index++) {
+            double y = expected[index];
+            sum0 += (y * Math.log(output[index])) + ((1.0 - y) * Math.log(1.0 - output[index]));
+        }
+        return sum0 + sum1;
+    }
+
+    /**
+     * Version of logLikelihood for single precision outputs. The terms are
+     * computed and summed in double precision.
+     *
+     * @param output the output values, each between 0 and 1
+     * @param expected the expected values
+     * @param length the number of values
+     * @return the sum of the log likelihood terms
+     */
+    public static double logLikelihood(float [] output, double [] expected, int length) {
+        double sum = 0.0;
+        for (int index = 0; index < length; index++) {
+            double h = output[index];
+            double y = expected[index];
+            sum += (y * Math.log(h)) + ((1.0 - y) * Math.log(1.0 - h));
+        }
+        return sum;
+    }
+
+    /**
+     * Moves each value by step against the sign of its gradient. Values
+     * with a gradient of 0 move up. The direction is taken from the sign 
+     * bit of (0 - gradient), which is only set for positive gradients, so
+     * that the loop has no branches to mispredict.
+     *
+     * @param values the values to move
+     * @param gradients the gradients of the values
+     * @param step the amount to move each value by
+     * @param length the number of values
+     */
+    public static void signStep(double [] values, double [] gradients, double step, int length) {
+        for (int index = 0; index < length; index++) {
+            values[index] += Math.copySign(step, 0.0 - gradients[index]);
+        }
+    }
+
+    /**
+     * Returns the sum of the values from the start index up to, but not
+     * including, the end index.
+     *
+     * @param values the values to sum
+     * @param start the first index to sum
+     * @param end the index to stop at
+     * @return the sum of the values
+     */
+    public static double sum(double [] values, int start, int end) {
+        double sum0 = 0.0;
+        double sum1 = 0.0;
+        double sum2 = 0.0;
+        double sum3 = 0.0;
+        int index = start;
+        for (; index + 3 < end; index += 4) {
+            sum0 += values[index];
+            sum1 += values[index + 1];
+            sum2 += values[index + 2];
+            sum3 += values[index + 3];
+        }
+        for (; index < end; index++) {
+            sum0 += values[index];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Returns the sum of the products of the matching values of x and y,
+     * from the start index up to, but not including, the end index.
+     *
+     * @param x the first values
+     * @param y the second values
+     * @param start the first index to sum
+     * @param end the index to stop at
+     * @return the dot product of the values
+     */
+    public static double dot(double [] x, double [] y, int start, int end) {
+        double sum0 = 0.0;
+        double sum1 = 0.0;
+        double sum2 = 0.0;
+        double sum3 = 0.0;
+        int index = start;
+        for (; index + 3 < end; index += 4) {
+            sum0 += x[index] * y[index];
+            sum1 += x[index + 1] * y[index + 1];
+            sum2 += x[index + 2] * y[index + 2];
+            sum3 += x[index + 3] * y[index + 3];
+        }
+        for (; index < end; index++) {
+            sum0 += x[index] * y[index];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * An interface to capture anything that can compute output values for a
+ * set of samples. Both the trained NeuralNetwork and its quantized form can
+ * predict, which lets a Prediction measure either of them.
+ *
+ * @author thomas
+ */
+public interface IPredictor {
+
+    /**
+     * Computes the output values for the data. Each row of the data is a
+     * single sample, and each row of the result holds the output values for
+     * the matching sample.
+     *
+     * @param data the examples to predict
+     * @return the predicted values (classes)
+     */
+    public DoubleMatrix predict(DoubleMatrix data);
+}
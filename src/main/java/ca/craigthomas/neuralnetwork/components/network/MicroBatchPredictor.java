@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Collects single samples submitted by many threads into batches, so that
+ * they can be predicted with one forward pass through the network. A
+ * dispatcher thread waits for the first sample of a batch, and then keeps
+ * collecting samples until either the maximum batch size is reached, or the
+ * maximum wait time has passed since the first sample arrived. Each caller
+ * receives a future that completes with the outputs for its own sample.
+ *
+ * @author thomas
+ */
+public class MicroBatchPredictor {
+
+    // The default maximum number of samples in a batch
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    // The default maximum time to wait for a batch to fill, in microseconds
+    public static final long DEFAULT_MAX_WAIT_MICROS = 1000;
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final int mMaxBatchSize;
+    private final long mMaxWaitNanos;
+    private final int mNumInputs;
+    private final BlockingQueue<Request> mQueue;
+    private final Thread mDispatcher;
+    private final DoubleMatrix [] mInputs;
+    private final Workspace [] mWorkspaces;
+    private final AtomicLong mMaxQueueDepth;
+    private final AtomicLong mNumRequests;
+    private final AtomicLong mNumBatches;
+    private final AtomicLong mNumPredicted;
+    private volatile boolean mRunning;
+
+    /**
+     * A single sample waiting to be predicted, along with the future to
+     * complete once it has been.
+     */
+    private static class Request {
+
+        private final double [] mSample;
+        private final CompletableFuture<double []> mResult;
+
+        public Request(double [] sample) {
+            mSample = sample;
+            mResult = new CompletableFuture<double []>();
+        }
+    }
+
+    public static class Builder {
+
+        private NeuralNetwork mNeuralNetwork;
+        private int mMaxBatchSize;
+        private long mMaxWaitNanos;
+
+        /**
+         * Initialize a builder for a predictor that uses the specified
+         * network.
+         *
+         * @param network the network to predict with
+         */
+        public Builder(NeuralNetwork network) {
+            mNeuralNetwork = network;
+            mMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+            mMaxWaitNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_MAX_WAIT_MICROS);
+        }
+
+        /**
+         * Sets the maximum number of samples predicted in a single batch.
+         * Defaults to 32.
+         *
+         * @param maxBatchSize the maximum number of samples in a batch
+         * @return the builder for the predictor
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            mMaxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a batch to fill once its first
+         * sample has arrived. Defaults to 1 millisecond.
+         *
+         * @param maxWait the maximum time to wait
+         * @param unit the unit of the time
+         * @return the builder for the predictor
+         */
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            mMaxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        /**
+         * Builds the predictor and starts its dispatcher thread.
+         *
+         * @return the new MicroBatchPredictor
+         */
+        public MicroBatchPredictor build() {
+            if (mMaxBatchSize < 1) {
+                throw new IllegalArgumentException("max batch size must be at least 1");
+            }
+            return new MicroBatchPredictor(this);
+        }
+    }
+
+    /**
+     * Builds the predictor based on the values set by the builder.
+     *
+     * @param builder the builder with instructions on building the predictor
+     */
+    private MicroBatchPredictor(Builder builder) {
+        mNeuralNetwork = builder.mNeuralNetwork;
+        mMaxBatchSize = builder.mMaxBatchSize;
+        mMaxWaitNanos = builder.mMaxWaitNanos;
+        mNumInputs = mNeuralNetwork.getTheta(0).columns - 1;
+        mQueue = new LinkedBlockingQueue<Request>();
+        mInputs = new DoubleMatrix[mMaxBatchSize + 1];
+        mWorkspaces = new Workspace[mMaxBatchSize + 1];
+        mMaxQueueDepth = new AtomicLong();
+        mNumRequests = new AtomicLong();
+        mNumBatches = new AtomicLong();
+        mNumPredicted = new AtomicLong();
+        mRunning = true;
+        mDispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "micro-batch-predictor");
+        mDispatcher.setDaemon(true);
+        mDispatcher.start();
+    }
+
+    /**
+     * Submits a sample to be predicted. The returned future completes with
+     * the output values for the sample once the batch it belongs to has
+     * been predicted. The sample is copied, so the caller may reuse the
+     * array as soon as this returns.
+     *
+     * @param sample the values of the sample, one per input node
+     * @return a future holding the output values for the sample
+     */
+    public CompletableFuture<double []> submit(double [] sample) {
+        if (sample.length != mNumInputs) {
+            throw new IllegalArgumentException("expected " + mNumInputs + " inputs, got " + sample.length);
+        }
+        if (!mRunning) {
+            throw new IllegalStateException("predictor has been shut down");
+        }
+        Request request = new Request(sample.clone());
+        
+        // Count the depth as the request joins the queue, since the
+        // dispatcher may take it straight away
+        long depth = mQueue.size() + 1;
+        mQueue.add(request);
+        mNumRequests.incrementAndGet();
+        
+        // The dispatcher may have drained the queue for the last time 
+        // between the check above and adding the request
+        if (!mRunning && mQueue.remove(request)) {
+            request.mResult.completeExceptionally(new IllegalStateException("predictor has been shut down"));
+            return request.mResult;
+        }
+
+        long maxDepth = mMaxQueueDepth.get();
+        while (depth > maxDepth && !mMaxQueueDepth.compareAndSet(maxDepth, depth)) {
+            maxDepth = mMaxQueueDepth.get();
+        }
+        return request.mResult;
+    }
+
+    /**
+     * The main loop of the dispatcher thread. Collects each batch of
+     * requests and predicts it, until the predictor is shut down.
+     */
+    private void dispatch() {
+        List<Request> batch = new ArrayList<Request>(mMaxBatchSize);
+        while (mRunning) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+            predictBatch(batch);
+            batch.clear();
+        }
+
+        List<Request> remaining = new ArrayList<Request>(batch);
+        mQueue.drainTo(remaining);
+        for (Request request : remaining) {
+            request.mResult.completeExceptionally(new IllegalStateException("predictor has been shut down"));
+        }
+    }
+
+    /**
+     * Waits for the first request of a batch, and then collects further
+     * requests until the batch is full or the maximum wait time has passed.
+     *
+     * @param batch the list to add the requests to
+     * @throws InterruptedException if the dispatcher is interrupted
+     */
+    private void collectBatch(List<Request> batch) throws InterruptedException {
+        batch.add(mQueue.take());
+        long deadline = System.nanoTime() + mMaxWaitNanos;
+        while (batch.size() < mMaxBatchSize) {
+            mQueue.drainTo(batch, mMaxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == mMaxBatchSize || remaining <= 0) {
+                break;
+            }
+            Request request = mQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (request == null) {
+                break;
+            }
+            batch.add(request);
+        }
+    }
+
+    /**
+     * Predicts a batch of requests with a single forward pass, and completes
+     * the future of each request with its row of the output. The input matrix
+     * and workspace for each batch size are kept and reused.
+     *
+     * @param batch the requests to predict
+     */
+    private void predictBatch(List<Request> batch) {
+        int rows = batch.size();
+        try {
+            if (mInputs[rows] == null) {
+                mInputs[rows] = new DoubleMatrix(rows, mNumInputs);
+            }
+            if (mWorkspaces[rows] == null) {
+                mWorkspaces[rows] = mNeuralNetwork.createWorkspace(rows);
+            }
+
+            DoubleMatrix inputs = mInputs[rows];
+            for (int row = 0; row < rows; row++) {
+                double [] sample = batch.get(row).mSample;
+                for (int col = 0; col < mNumInputs; col++) {
+                    inputs.data[(col * rows) + row] = sample[col];
+                }
+            }
+
+            DoubleMatrix outputs = mNeuralNetwork.predict(inputs, mWorkspaces[rows]);
+            mNumBatches.incrementAndGet();
+            mNumPredicted.addAndGet(rows);
+            for (int row = 0; row < rows; row++) {
+                double [] result = new double[outputs.columns];
+                for (int col = 0; col < outputs.columns; col++) {
+                    result[col] = outputs.data[(col * rows) + row];
+                }
+                batch.get(row).mResult.complete(result);
+            }
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.mResult.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread. Any requests that have not yet been
+     * predicted complete exceptionally with an IllegalStateException.
+     */
+    public void shutdown() {
+        mRunning = false;
+        mDispatcher.interrupt();
+    }
+
+    /**
+     * Returns the number of requests currently waiting to be batched.
+     *
+     * @return the current queue depth
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * Returns the largest number of requests that have been waiting to be
+     * batched at once.
+     *
+     * @return the maximum queue depth
+     */
+    public long getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * Returns the number of requests that have been submitted.
+     *
+     * @return the number of requests
+     */
+    public long getNumRequests() {
+        return mNumRequests.get();
+    }
+
+    /**
+     * Returns the number of batches that have been predicted.
+     *
+     * @return the number of batches
+     */
+    public long getNumBatches() {
+        return mNumBatches.get();
+    }
+
+    /**
+     * Returns the average number of requests in each predicted batch.
+     *
+     * @return the average batch size
+     */
+    public double getAverageBatchSize() {
+        long batches = mNumBatches.get();
+        return (batches == 0) ? 0.0 : (double)mNumPredicted.get() / batches;
+    }
+}
@@ -10,12 +10,16 @@ import java.util.List;
 import java.lang.IllegalArgumentException;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.MatrixFunctions;
-import org.jblas.ranges.*;
+import org.jblas.FloatMatrix;
 import org.jblas.util.Random;
 
 import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.activation.LeakyReLU;
 import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
+import ca.craigthomas.neuralnetwork.components.activation.Softmax;
+import ca.craigthomas.neuralnetwork.components.backend.Backends;
+import ca.craigthomas.neuralnetwork.components.backend.IBackend;
+import ca.craigthomas.neuralnetwork.components.backend.Kernels;
 
 /**
  * Implements a neural network. Multiple layers can be specified in the 
@@ -27,15 +31,26 @@ import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
  * 
  * @author thomas
  */
-public class NeuralNetwork {
+public class NeuralNetwork implements IPredictor {
 
     private int[] mLayerSizes;
     private DoubleMatrix[] mThetas;
-    private final IActivationFunction mActivationFunction;
+    // The single precision copies of the thetas, only kept when the network
+    // propagates in single precision
+    private FloatMatrix[] mFloatThetas;
+    private final IActivationFunction[] mActivationFunctions;
+    private final Softmax mSoftmax;
+    // Null while the workspace holds single precision activations, use 
+    // getActivation to read the activations of either precision
     public DoubleMatrix[] mActivations;
     private DoubleMatrix[] mDeltas;
     private DoubleMatrix mIdentities;
     private final double mLambda;
+    private final Precision mPrecision;
+    private final IBackend mBackend;
+    private Workspace mWorkspace;
+    private final ThreadLocal<Workspace> mPredictWorkspace;
+    private final ThreadLocal<Workspace> mSampleWorkspace;
     
     public static class Builder {
         
@@ -44,7 +59,9 @@ public class NeuralNetwork {
         private DoubleMatrix mInputs;
         private DoubleMatrix mExpected;
         private double mLambda;
-        private IActivationFunction mActivationFunction;
+        private IActivationFunction[] mActivationFunctions;
+        private Precision mPrecision;
+        private IBackend mBackend;
         
         /**
          * Constructs a neural network with the specified layers and their
@@ -65,6 +82,8 @@ public class NeuralNetwork {
                 mLayerSizes[index] = layerSizes.get(index).intValue();
             }
             mLambda = 0.0;
+            mPrecision = Precision.DOUBLE;
+            mActivationFunctions = new IActivationFunction[mLayerSizes.length];
         }
         
         /**
@@ -116,14 +135,90 @@ public class NeuralNetwork {
         }
         
         /**
-         * Sets the activation function for the neural network. If none is 
-         * specified, the Sigmoid activation function is used by default.
+         * Sets the activation function for every layer of the neural network.
+         * If none is specified, the Sigmoid activation function is used by 
+         * default.
          * 
          * @param activationFunction the activation function to use
          * @return the builder for the neural network
          */
         public Builder activationFunction(IActivationFunction activationFunction) {
-            mActivationFunction = activationFunction;
+            for (int layer = 1; layer < mLayerSizes.length; layer++) {
+                mActivationFunctions[layer] = activationFunction;
+            }
+            return this;
+        }
+        
+        /**
+         * Sets the activation function for the hidden layers of the neural
+         * network, leaving the output layer alone. This is how rectified 
+         * linear units are normally used, since the output layer needs values
+         * between 0 and 1.
+         * 
+         * @param activationFunction the activation function to use
+         * @return the builder for the neural network
+         */
+        public Builder hiddenActivationFunction(IActivationFunction activationFunction) {
+            for (int layer = 1; layer < mLayerSizes.length - 1; layer++) {
+                mActivationFunctions[layer] = activationFunction;
+            }
+            return this;
+        }
+        
+        /**
+         * Sets the activation function for the output layer of the neural
+         * network. Use a Softmax to classify each sample into one of 
+         * several classes, with one output node per class.
+         * 
+         * @param activationFunction the activation function to use
+         * @return the builder for the neural network
+         */
+        public Builder outputActivationFunction(IActivationFunction activationFunction) {
+            mActivationFunctions[mLayerSizes.length - 1] = activationFunction;
+            return this;
+        }
+        
+        /**
+         * Sets the activation function for a single layer of the neural 
+         * network. Layer 1 is the first hidden layer, and the last layer is 
+         * the output layer. The input layer has no activation function.
+         * 
+         * @param layer the layer to set the activation function for
+         * @param activationFunction the activation function to use
+         * @return the builder for the neural network
+         */
+        public Builder activationFunction(int layer, IActivationFunction activationFunction) {
+            if (layer < 1 || layer >= mLayerSizes.length) {
+                throw new IllegalArgumentException("layer must be between 1 and " + (mLayerSizes.length - 1));
+            }
+            mActivationFunctions[layer] = activationFunction;
+            return this;
+        }
+        
+        /**
+         * Sets the precision that the network uses for its activations, 
+         * deltas and matrix products. Single precision halves the memory 
+         * used during forward and back propagation. The thetas are kept in
+         * double precision either way. Defaults to double precision.
+         * 
+         * @param precision the precision to use
+         * @return the builder for the neural network
+         */
+        public Builder precision(Precision precision) {
+            mPrecision = precision;
+            return this;
+        }
+        
+        /**
+         * Sets the linear algebra backend that computes the matrix products
+         * of the network. If none is specified, the default backend chosen
+         * by Backends is used.
+         * 
+         * @param backend the backend to use
+         * @return the builder for the neural network
+         */
+        public Builder backend(IBackend backend) {
+            mBackend = backend;
             return this;
         }
         
@@ -133,8 +228,25 @@ public class NeuralNetwork {
          * @return the NeuralNetwork built by the builder
          */
         public NeuralNetwork build() {
-            if (mActivationFunction == null) {
-                mActivationFunction = new Sigmoid();
+            for (int layer = 1; layer < mLayerSizes.length; layer++) {
+                if (mActivationFunctions[layer] == null) {
+                    mActivationFunctions[layer] = new Sigmoid();
+                }
+            }
+            int outputLayer = mLayerSizes.length - 1;
+            if (mActivationFunctions[outputLayer] instanceof LeakyReLU) {
+                throw new IllegalArgumentException("rectified linear units cannot be used on the output layer");
+            }
+            for (int layer = 1; layer < outputLayer; layer++) {
+                if (mActivationFunctions[layer] instanceof Softmax) {
+                    throw new IllegalArgumentException("softmax can only be used on the output layer");
+                }
+            }
+            if (mActivationFunctions[outputLayer] instanceof Softmax && mLayerSizes[outputLayer] < 2) {
+                throw new IllegalArgumentException("softmax needs at least 2 output nodes");
+            }
+            if (mBackend == null) {
+                mBackend = Backends.getDefault();
             }
             return new NeuralNetwork(this);
         }
@@ -148,17 +260,25 @@ public class NeuralNetwork {
     private NeuralNetwork(Builder builder) {
         mLayerSizes = builder.mLayerSizes;
         mThetas = builder.mThetas;
-        mActivationFunction = builder.mActivationFunction;
+        mActivationFunctions = builder.mActivationFunctions.clone();
+        IActivationFunction outputFunction = mActivationFunctions[mActivationFunctions.length - 1];
+        mSoftmax = (outputFunction instanceof Softmax) ? (Softmax) outputFunction : null;
         mActivations = new DoubleMatrix[mLayerSizes.length];
         mDeltas = new DoubleMatrix[mLayerSizes.length];
         mIdentities = builder.mExpected;
         mLambda = builder.mLambda;
-        if (builder.mInputs != null) {
-            setInputs(builder.mInputs);
-        }
-        
+        mPrecision = builder.mPrecision;
+        mBackend = builder.mBackend;
+        mPredictWorkspace = new ThreadLocal<Workspace>();
+        mSampleWorkspace = new ThreadLocal<Workspace>();
         if (mThetas == null) {
             initThetas();
+        } else {
+            narrowThetas();
+        }
+        
+        if (builder.mInputs != null) {
+            setInputs(builder.mInputs);
         }
     }
 
@@ -182,44 +302,249 @@ public class NeuralNetwork {
             thetas.add(theta);
         }
         mThetas = thetas.toArray(new DoubleMatrix[thetas.size()]);
+        narrowThetas();
+    }
+    
+    /**
+     * Refreshes the single precision copies of the thetas that a single 
+     * precision network propagates with. Must be called whenever the thetas
+     * are changed in place, as an optimizer does, so that the thetas are
+     * narrowed once per change rather than on every forward pass. Does 
+     * nothing for a double precision network.
+     */
+    public void thetasChanged() {
+        narrowThetas();
+    }
+    
+    /**
+     * Copies the thetas into their single precision copies, allocating the
+     * copies first if the shapes of the thetas have changed.
+     */
+    private void narrowThetas() {
+        if (mPrecision != Precision.FLOAT) {
+            return;
+        }
+        if (mFloatThetas == null || mFloatThetas.length != mThetas.length) {
+            mFloatThetas = new FloatMatrix[mThetas.length];
+        }
+        for (int index = 0; index < mThetas.length; index++) {
+            DoubleMatrix theta = mThetas[index];
+            FloatMatrix floatTheta = mFloatThetas[index];
+            if (floatTheta == null || floatTheta.rows != theta.rows || floatTheta.columns != theta.columns) {
+                floatTheta = new FloatMatrix(theta.rows, theta.columns);
+                mFloatThetas[index] = floatTheta;
+            }
+            for (int element = 0; element < theta.length; element++) {
+                floatTheta.data[element] = (float)theta.data[element];
+            }
+        }
+    }
+    
+    /**
+     * Makes sure that the workspace is sized for the specified number of
+     * rows, and for the current thetas. The workspace is only rebuilt when
+     * one of those changes.
+     * 
+     * @param rows the number of rows that will be processed at once
+     */
+    private void ensureWorkspace(int rows) {
+        if (mWorkspace != null && mWorkspace.getRows() == rows && mWorkspace.fits(mThetas)) {
+            return;
+        }
+        mWorkspace = new Workspace(mThetas, rows, mPrecision, mSoftmax != null);
+        mActivations = mWorkspace.getActivations();
+        mDeltas = mWorkspace.getDeltas();
+    }
+    
+    /**
+     * Returns the workspace that holds the buffers used for forward and back
+     * propagation. Will be null until inputs are set on the network.
+     * 
+     * @return the current workspace
+     */
+    public Workspace getWorkspace() {
+        return mWorkspace;
     }
     
     /**
-     * Adds a bias unit on to the specified matrix. This essentially adds a 
-     * column of 1's to the input matrix.
+     * Makes the specified workspace the network's own, along with the 
+     * expected values for the rows it holds. The methods that do not take
+     * a workspace, such as forwardPropagation, backPropagation and getCost,
+     * then work on it. The workspace must have been created by this network.
      * 
-     * @param input the matrix to add on to
-     * @return a new matrix with a bias unit
+     * @param workspace the workspace to use
+     * @param expected the true values for the rows in the workspace
      */
-    public DoubleMatrix addBias(DoubleMatrix input) {
-        int length = input.rows;
-        DoubleMatrix ones = DoubleMatrix.ones(length, 1);
-        return DoubleMatrix.concatHorizontally(ones, input.dup());
+    public void setWorkspace(Workspace workspace, DoubleMatrix expected) {
+        mWorkspace = workspace;
+        mActivations = workspace.getActivations();
+        mDeltas = workspace.getDeltas();
+        mIdentities = expected;
+    }
+    
+    /**
+     * Returns the workspace of the network, or throws an exception if the
+     * network has not been given any inputs.
+     * 
+     * @return the workspace of the network
+     */
+    private Workspace requireWorkspace() {
+        if (mWorkspace == null) {
+            throw new IllegalStateException("network has no inputs, use the methods that take a workspace");
+        }
+        return mWorkspace;
     }
     
     /**
-     * Sets the inputs for the neural network. Will add a bias unit to 
-     * the set of inputs.
+     * Creates a new workspace sized for the current thetas that can process 
+     * the specified number of rows at a time. Workspaces created this way 
+     * are owned by the caller, and are used with the methods that accept a
+     * workspace, such as when training on mini-batches.
+     * 
+     * @param rows the number of rows that will be processed at once
+     * @return the new workspace
+     */
+    public Workspace createWorkspace(int rows) {
+        return new Workspace(mThetas, rows, mPrecision, mSoftmax != null);
+    }
+    
+    /**
+     * Returns the precision that the network uses for propagation.
+     * 
+     * @return the precision of the network
+     */
+    public Precision getPrecision() {
+        return mPrecision;
+    }
+
+    /**
+     * Returns the linear algebra backend that computes the matrix products
+     * of the network.
+     *
+     * @return the backend of the network
+     */
+    public IBackend getBackend() {
+        return mBackend;
+    }
+
+    /**
+     * Sets the inputs for the neural network. The inputs are copied into 
+     * the input layer of the workspace, which is only reallocated if the 
+     * number of rows changes.
      * 
      * @param input the matrix to treat as input
      */
     public void setInputs(DoubleMatrix input) {
-        mActivations[0] = addBias(input);
+        ensureWorkspace(input.rows);
+        mWorkspace.loadInputs(input);
     }
     
     /**
      * Apply forward propagation to the neural network, updating the activations
      * as it moves through the network. Save the activations in mActivations.
+     * The activation function is applied in place on the z buffer of each
+     * layer, which is also the activation buffer that the next layer and 
+     * back propagation read from.
      */
     public void forwardPropagation() {
-        for (int index = 0; index < mActivations.length - 1; index++) {
-            DoubleMatrix theta = mThetas[index];
-            DoubleMatrix activation = mActivations[index];
-            DoubleMatrix z = activation.mmul(theta.transpose());
-            mActivations[index+1] = mActivationFunction.apply(z);
-            if (index+1 != mActivations.length - 1) {
-                mActivations[index+1] = addBias(mActivations[index+1]);
-            } 
+        forwardPropagation(requireWorkspace());
+    }
+    
+    /**
+     * Apply forward propagation to the inputs held by the specified workspace,
+     * saving the activations in the workspace.
+     * 
+     * @param workspace the workspace that holds the inputs
+     */
+    public void forwardPropagation(Workspace workspace) {
+        forwardPropagation(mThetas, workspace);
+    }
+    
+    /**
+     * Apply forward propagation with the specified thetas to the inputs held
+     * by the specified workspace. Only reads the thetas, and only writes to
+     * the workspace. A single precision workspace is propagated with the 
+     * single precision copies of the network's own thetas instead.
+     * 
+     * @param thetas the thetas to propagate with
+     * @param workspace the workspace that holds the inputs
+     */
+    private void forwardPropagation(DoubleMatrix [] thetas, Workspace workspace) {
+        if (workspace.isFloat()) {
+            forwardPropagationFloat(workspace);
+            return;
+        }
+        DoubleMatrix [] activations = workspace.getActivations();
+        DoubleMatrix [] zs = workspace.getZ();
+        int outputLayer = activations.length - 1;
+        for (int index = 0; index < outputLayer; index++) {
+            DoubleMatrix z = zs[index+1];
+            weightedInputs(activations[index], thetas[index], z);
+            if (index+1 == outputLayer && mSoftmax != null) {
+                mSoftmax.applyi(z, z, workspace.getLogOutput());
+            } else {
+                mActivationFunctions[index+1].applyi(z, z);
+            }
+        }
+    }
+
+    /**
+     * Computes the z values of the next layer from the activations of the
+     * previous layer, as z = a * W' + 1 * b', where b is the first column of
+     * the theta and W is the rest of it. Since the theta is stored in 
+     * column-major order, W starts right after b in the same array, so both
+     * are read in place. Each column of z is filled with its bias, and the
+     * product is then added on top of it.
+     * 
+     * @param input the activations of the previous layer
+     * @param theta the theta between the two layers
+     * @param z the matrix to store the z values in
+     */
+    private void weightedInputs(DoubleMatrix input, DoubleMatrix theta, DoubleMatrix z) {
+        int rows = z.rows;
+        for (int node = 0; node < theta.rows; node++) {
+            Arrays.fill(z.data, node * rows, (node + 1) * rows, theta.data[node]);
+        }
+        mBackend.gemm(false, true, rows, theta.rows, theta.columns - 1, 1.0, input.data, 0, rows,
+                theta.data, theta.rows, theta.rows, 1.0, z.data, 0, rows);
+    }
+
+    /**
+     * Single precision version of weightedInputs.
+     * 
+     * @param input the activations of the previous layer
+     * @param theta the theta between the two layers
+     * @param z the matrix to store the z values in
+     */
+    private void weightedInputs(FloatMatrix input, FloatMatrix theta, FloatMatrix z) {
+        int rows = z.rows;
+        for (int node = 0; node < theta.rows; node++) {
+            Arrays.fill(z.data, node * rows, (node + 1) * rows, theta.data[node]);
+        }
+        mBackend.gemm(false, true, rows, theta.rows, theta.columns - 1, 1.0f, input.data, 0, rows,
+                theta.data, theta.rows, theta.rows, 1.0f, z.data, 0, rows);
+    }
+
+    /**
+     * Single precision version of forward propagation. Propagates with the
+     * single precision copies of the thetas, which are only refreshed when
+     * the thetas change, and which back propagation uses as well.
+     * 
+     * @param workspace the single precision workspace that holds the inputs
+     */
+    private void forwardPropagationFloat(Workspace workspace) {
+        FloatMatrix [] floatThetas = mFloatThetas;
+        FloatMatrix [] activations = workspace.getFloatActivations();
+        FloatMatrix [] zs = workspace.getFloatZ();
+        int outputLayer = activations.length - 1;
+        for (int index = 0; index < outputLayer; index++) {
+            FloatMatrix z = zs[index+1];
+            weightedInputs(activations[index], floatThetas[index], z);
+            if (index+1 == outputLayer && mSoftmax != null) {
+                mSoftmax.applyi(z, z, workspace.getFloatLogOutput());
+            } else {
+                mActivationFunctions[index+1].applyi(z, z);
+            }
         }
     }
 
@@ -227,28 +552,102 @@ public class NeuralNetwork {
      * Perform back propagation on the neural network. In other words,
      * compute the error from the expected values of the network, back to the
      * input values. Save the resulting error amounts back in the mDeltas
-     * structure.
+     * structure. Relies on the activations saved by the last forward 
+     * propagation, since the gradient of the activation function is 
+     * computed from its output.
+     * 
+     * The error of the output layer is the output minus the expected values
+     * for both a sigmoid output with the logistic cost, and a softmax output
+     * with the cross-entropy cost, so the gradient of the output activation
+     * function never has to be computed. The error is propagated back 
+     * through the weights of each theta only, since the bias unit has no
+     * error of its own.
      */
     public void backPropagation() {
-        int outputLayer = mActivations.length - 1;
-        mDeltas[outputLayer] = mActivations[outputLayer].dup().sub(mIdentities);
+        backPropagation(requireWorkspace(), mIdentities);
+    }
+    
+    /**
+     * Perform back propagation on the activations held by the specified 
+     * workspace, using the specified expected values. Saves the resulting
+     * error amounts in the workspace.
+     * 
+     * @param workspace the workspace that holds the activations
+     * @param expected the true values for the rows in the workspace
+     */
+    public void backPropagation(Workspace workspace, DoubleMatrix expected) {
+        if (workspace.isFloat()) {
+            backPropagationFloat(workspace, expected);
+            return;
+        }
+        DoubleMatrix [] activations = workspace.getActivations();
+        DoubleMatrix [] deltas = workspace.getDeltas();
+        DoubleMatrix [] zs = workspace.getZ();
+        DoubleMatrix [] errors = workspace.getErrors();
+        int outputLayer = activations.length - 1;
+        mBackend.subi(activations[outputLayer], expected, deltas[outputLayer]);
+        for (int index = outputLayer - 1; index > 0; index--) {
+            DoubleMatrix theta = mThetas[index];
+            DoubleMatrix error = errors[index];
+            mBackend.gemm(false, false, error.rows, error.columns, theta.rows, 1.0, deltas[index+1].data, 0, error.rows,
+                    theta.data, theta.rows, theta.rows, 0.0, error.data, 0, error.rows);
+            DoubleMatrix delta = mActivationFunctions[index].gradientFromOutputi(zs[index], deltas[index]);
+            mBackend.muli(delta, error, delta);
+        }
+    }
+
+    /**
+     * Single precision version of back propagation. The expected values
+     * are kept in double precision, and are narrowed as the output deltas
+     * are computed.
+     * 
+     * @param workspace the single precision workspace that holds the activations
+     * @param expected the true values for the rows in the workspace
+     */
+    private void backPropagationFloat(Workspace workspace, DoubleMatrix expected) {
+        FloatMatrix [] floatThetas = mFloatThetas;
+        FloatMatrix [] activations = workspace.getFloatActivations();
+        FloatMatrix [] deltas = workspace.getFloatDeltas();
+        FloatMatrix [] zs = workspace.getFloatZ();
+        FloatMatrix [] errors = workspace.getFloatErrors();
+        int outputLayer = activations.length - 1;
+        FloatMatrix output = activations[outputLayer];
+        FloatMatrix outputDelta = deltas[outputLayer];
+        for (int element = 0; element < output.length; element++) {
+            outputDelta.data[element] = output.data[element] - (float)expected.data[element];
+        }
         for (int index = outputLayer - 1; index > 0; index--) {
-            DoubleMatrix temp = getMatrixNoBias(mDeltas[index+1].mmul(mThetas[index]));
-            DoubleMatrix activation = mActivations[index-1];
-            DoubleMatrix theta = mThetas[index-1];
-            // TODO: store the z during forward propagation so we don't have to recompute here!
-            DoubleMatrix z = mActivationFunction.gradient(theta.mmul(activation.transpose()));
-            mDeltas[index] = temp.mul(z.transpose());
+            FloatMatrix theta = floatThetas[index];
+            FloatMatrix error = errors[index];
+            mBackend.gemm(false, false, error.rows, error.columns, theta.rows, 1.0f, deltas[index+1].data, 0, error.rows,
+                    theta.data, theta.rows, theta.rows, 0.0f, error.data, 0, error.rows);
+            FloatMatrix delta = mActivationFunctions[index].gradientFromOutputi(zs[index], deltas[index]);
+            for (int element = 0; element < delta.length; element++) {
+                delta.data[element] *= error.data[element];
+            }
         }
     }
 
     /**
-     * Grab the delta from the specified layer.
+     * Grab the delta from the specified layer. A network that propagates in
+     * single precision only holds float deltas, so for those networks the 
+     * delta is widened into a new double precision matrix.
      * 
      * @param deltaNum the layer to retrieve
      * @return the delta specified
      */
     public DoubleMatrix getDelta(int deltaNum) {
+        if (mDeltas == null) {
+            FloatMatrix [] floatDeltas = mWorkspace.getFloatDeltas();
+            if ((deltaNum >= floatDeltas.length) || (deltaNum < 0)) {
+                throw new ArrayIndexOutOfBoundsException("illegal deltaNum");
+            }
+            if (floatDeltas[deltaNum] == null) {
+                throw new IllegalArgumentException("specified delta is null");
+            }
+            return widen(floatDeltas[deltaNum]);
+        }
+        
         if ((deltaNum > mDeltas.length) || (deltaNum < 0)) {
             throw new ArrayIndexOutOfBoundsException("illegal deltaNum");
         }
@@ -261,22 +660,48 @@ public class NeuralNetwork {
     }
     
     /**
-     * Returns a the specified matrix without a bias unit attached (i.e. the
-     * matrix without the first column of 1's).
+     * Grab the activations of the specified layer from the last forward 
+     * propagation, where layer 0 holds the inputs. A network that propagates
+     * in single precision only holds float activations, so for those 
+     * networks the activations are widened into a new double precision 
+     * matrix.
      * 
-     * @param matrix the matrix to slice
-     * @return the matrix without the first column
+     * @param layer the layer to retrieve
+     * @return the activations of the layer
      */
-    protected DoubleMatrix getMatrixNoBias(DoubleMatrix matrix) {
-        int numRows = matrix.rows;
-        int numCols = matrix.columns;
-        Range rows = new IntervalRange(0, numRows);
-        Range cols = new IntervalRange(1, numCols);
-        return matrix.get(rows, cols);
+    public DoubleMatrix getActivation(int layer) {
+        Workspace workspace = requireWorkspace();
+        if (workspace.isFloat()) {
+            FloatMatrix [] floatActivations = workspace.getFloatActivations();
+            if ((layer >= floatActivations.length) || (layer < 0)) {
+                throw new ArrayIndexOutOfBoundsException("illegal layer");
+            }
+            return widen(floatActivations[layer]);
+        }
+        
+        if ((layer >= mActivations.length) || (layer < 0)) {
+            throw new ArrayIndexOutOfBoundsException("illegal layer");
+        }
+        return mActivations[layer];
     }
     
     /**
-     * Return the specified theta matrix.
+     * Copies a single precision matrix into a new double precision matrix.
+     * 
+     * @param matrix the matrix to widen
+     * @return the double precision copy of the matrix
+     */
+    private static DoubleMatrix widen(FloatMatrix matrix) {
+        DoubleMatrix result = new DoubleMatrix(matrix.rows, matrix.columns);
+        for (int element = 0; element < matrix.length; element++) {
+            result.data[element] = matrix.data[element];
+        }
+        return result;
+    }
+    
+    /**
+     * Return the specified theta matrix. If the theta is changed in place,
+     * call thetasChanged afterwards.
      * 
      * @param thetaNum the theta number to return
      * @return the theta values for that layer
@@ -289,7 +714,8 @@ public class NeuralNetwork {
     }
     
     /**
-     * Get all of the thetas.
+     * Get all of the thetas. If the thetas are changed in place, call 
+     * thetasChanged afterwards.
      * 
      * @return the thetas
      */
@@ -304,6 +730,13 @@ public class NeuralNetwork {
      */
     public void setThetas(List<DoubleMatrix> thetas) {
         mThetas = thetas.toArray(new DoubleMatrix[thetas.size()]);
+        narrowThetas();
+        if (mWorkspace != null && !mWorkspace.fits(mThetas)) {
+            Workspace previous = mWorkspace;
+            mWorkspace = null;
+            ensureWorkspace(previous.getRows());
+            mWorkspace.copyInputs(previous);
+        }
     }
     
     /**
@@ -315,26 +748,102 @@ public class NeuralNetwork {
     public double getThetaRegularization(int numInputs) {
         double thetaSum = 0.0;
         for (int index = 0; index < mThetas.length; index++) {
+            // The bias weights are held in the first column of the theta
             DoubleMatrix theta = mThetas[index];
-            DoubleMatrix thetaNoBias = getMatrixNoBias(theta);
-            thetaSum += thetaNoBias.mul(thetaNoBias).sum();
+            thetaSum += Kernels.dot(theta.data, theta.data, theta.rows, theta.length);
         }
         return (mLambda / (2*numInputs)) * thetaSum;
     }
     
     /** 
-     * Get the gradient of the specified theta.
+     * Get the gradient of the specified theta. The gradient is computed into
+     * a workspace buffer, and will be overwritten by the next call for the
+     * same theta.
      * 
      * @param thetaNum the theta number to fetch
      * @return the gradient of the theta values
      */
     public DoubleMatrix getThetaGradient(int thetaNum) {
-        int numInputs = mActivations[0].rows;
-        DoubleMatrix gradient = mActivations[thetaNum].transpose().mmul(mDeltas[thetaNum + 1]).transpose();
-        DoubleMatrix regularization =  getMatrixNoBias(mThetas[thetaNum]).muli(mLambda / numInputs);
-        DoubleMatrix zeros = DoubleMatrix.zeros(regularization.rows, 1);
-        regularization = DoubleMatrix.concatHorizontally(zeros, regularization);
-        return gradient.divi(numInputs).add(regularization);
+        return getThetaGradient(requireWorkspace(), thetaNum);
+    }
+    
+    /**
+     * Get the gradient of the specified theta from the deltas held by the 
+     * specified workspace. The gradient is computed into a buffer of the 
+     * workspace.
+     * 
+     * @param workspace the workspace that holds the deltas
+     * @param thetaNum the theta number to fetch
+     * @return the gradient of the theta values
+     */
+    public DoubleMatrix getThetaGradient(Workspace workspace, int thetaNum) {
+        DoubleMatrix gradient = getThetaGradientSum(workspace, thetaNum);
+        return regularizeThetaGradient(gradient, thetaNum, workspace.getRows());
+    }
+    
+    /**
+     * Get the sum over the rows in the specified workspace of the gradient 
+     * of the specified theta, before it is averaged and regularized. The sum
+     * is computed into a buffer of the workspace. Sums from workspaces that
+     * each hold part of a batch can be added together, and then passed to 
+     * regularizeThetaGradient to get the gradient for the whole batch.
+     * 
+     * The gradient of the bias weights in the first column is the sum of 
+     * each column of the deltas, and the gradient of the other weights is 
+     * the product of the deltas with the activations, written in place 
+     * after it.
+     * 
+     * @param workspace the workspace that holds the deltas
+     * @param thetaNum the theta number to fetch
+     * @return the summed gradient of the theta values
+     */
+    public DoubleMatrix getThetaGradientSum(Workspace workspace, int thetaNum) {
+        DoubleMatrix gradient = workspace.getGradients()[thetaNum];
+        int rows = workspace.getRows();
+        if (workspace.isFloat()) {
+            FloatMatrix floatGradient = workspace.getFloatGradients()[thetaNum];
+            float [] delta = workspace.getFloatDeltas()[thetaNum + 1].data;
+            for (int node = 0; node < gradient.rows; node++) {
+                double sum = 0.0;
+                for (int element = node * rows; element < (node + 1) * rows; element++) {
+                    sum += delta[element];
+                }
+                gradient.data[node] = sum;
+            }
+            mBackend.gemm(true, false, gradient.rows, gradient.columns - 1, rows, 1.0f, delta, 0, rows,
+                    workspace.getFloatActivations()[thetaNum].data, 0, rows, 0.0f, floatGradient.data, gradient.rows, gradient.rows);
+            for (int element = gradient.rows; element < gradient.length; element++) {
+                gradient.data[element] = floatGradient.data[element];
+            }
+            return gradient;
+        }
+        double [] delta = workspace.getDeltas()[thetaNum + 1].data;
+        for (int node = 0; node < gradient.rows; node++) {
+            gradient.data[node] = Kernels.sum(delta, node * rows, (node + 1) * rows);
+        }
+        mBackend.gemm(true, false, gradient.rows, gradient.columns - 1, rows, 1.0, delta, 0, rows,
+                workspace.getActivations()[thetaNum].data, 0, rows, 0.0, gradient.data, gradient.rows, gradient.rows);
+        return gradient;
+    }
+    
+    /**
+     * Turns a summed gradient of the specified theta into the gradient for
+     * the batch in place, by averaging it over the number of inputs and 
+     * adding the regularization term. The bias weights are not regularized.
+     * 
+     * @param gradient the summed gradient to regularize
+     * @param thetaNum the theta number the gradient belongs to
+     * @param numInputs the number of inputs that were summed over
+     * @return the gradient of the theta values
+     */
+    public DoubleMatrix regularizeThetaGradient(DoubleMatrix gradient, int thetaNum, int numInputs) {
+        DoubleMatrix theta = mThetas[thetaNum];
+        mBackend.scali(1.0 / numInputs, gradient);
+        double scale = mLambda / numInputs;
+        for (int element = theta.rows; element < theta.length; element++) {
+            gradient.data[element] += theta.data[element] * scale;
+        }
+        return gradient;
     }
 
     /**
@@ -343,11 +852,87 @@ public class NeuralNetwork {
      * @return the cost of the thetas
      */
     public double getCostNoRegularization(int numInputs) {
-        DoubleMatrix outputLayer = mActivations[mActivations.length - 1];
-        DoubleMatrix expected = mIdentities.transpose().mul(-1);
-        DoubleMatrix posTerm = expected.mmul(MatrixFunctions.log(outputLayer));
-        DoubleMatrix negTerm = expected.add(1.0).mmul(MatrixFunctions.log(outputLayer.mul(-1).add(1.0)));
-        return (1.0/numInputs) * posTerm.sub(negTerm).sum();
+        requireWorkspace();
+        if (mSoftmax != null) {
+            return getCrossEntropyCost(mWorkspace, mIdentities, numInputs);
+        }
+        if (mWorkspace.isFloat()) {
+            FloatMatrix [] activations = mWorkspace.getFloatActivations();
+            return getCostNoRegularization(activations[activations.length - 1], mIdentities, numInputs);
+        }
+        return getCostNoRegularization(mActivations[mActivations.length - 1], mIdentities, numInputs);
+    }
+    
+    /**
+     * Get the cost of the activations held by the specified workspace, 
+     * without regularization.
+     * 
+     * @param workspace the workspace that holds the activations
+     * @param expected the true values for the rows in the workspace
+     * @return the cost of the thetas
+     */
+    public double getCostNoRegularization(Workspace workspace, DoubleMatrix expected) {
+        if (mSoftmax != null) {
+            return getCrossEntropyCost(workspace, expected, workspace.getRows());
+        }
+        if (workspace.isFloat()) {
+            FloatMatrix [] activations = workspace.getFloatActivations();
+            return getCostNoRegularization(activations[activations.length - 1], expected, workspace.getRows());
+        }
+        DoubleMatrix [] activations = workspace.getActivations();
+        return getCostNoRegularization(activations[activations.length - 1], expected, workspace.getRows());
+    }
+    
+    /**
+     * Get the cost of the specified output layer given the expected values.
+     * Each output is compared with its own expected value in a single pass
+     * over the two buffers, so no temporary matrices are allocated.
+     * 
+     * @param outputLayer the activations of the output layer
+     * @param identities the expected values
+     * @param numInputs the number of inputs
+     * @return the cost of the thetas
+     */
+    private double getCostNoRegularization(DoubleMatrix outputLayer, DoubleMatrix identities, int numInputs) {
+        return -Kernels.logLikelihood(outputLayer.data, identities.data, outputLayer.length) / numInputs;
+    }
+    
+    /**
+     * Get the cost of the specified single precision output layer given the
+     * expected values. The sum is accumulated in double precision.
+     * 
+     * @param outputLayer the activations of the output layer
+     * @param identities the expected values
+     * @param numInputs the number of inputs
+     * @return the cost of the thetas
+     */
+    private double getCostNoRegularization(FloatMatrix outputLayer, DoubleMatrix identities, int numInputs) {
+        return -Kernels.logLikelihood(outputLayer.data, identities.data, outputLayer.length) / numInputs;
+    }
+    
+    /**
+     * Get the cross-entropy cost of a softmax output layer, from the log of
+     * the output activations that forward propagation saved in the 
+     * workspace. Since the expected values are 0 for every class but the 
+     * true one, the cost is just the dot product of the expected values 
+     * with the log outputs, computed in a single pass.
+     * 
+     * @param workspace the workspace that holds the log outputs
+     * @param expected the expected values, one column per class
+     * @param numInputs the number of inputs
+     * @return the cost of the thetas
+     */
+    private double getCrossEntropyCost(Workspace workspace, DoubleMatrix expected, int numInputs) {
+        if (workspace.isFloat()) {
+            float [] logOutput = workspace.getFloatLogOutput().data;
+            double sum = 0.0;
+            for (int element = 0; element < logOutput.length; element++) {
+                sum += expected.data[element] * logOutput[element];
+            }
+            return -sum / numInputs;
+        }
+        DoubleMatrix logOutput = workspace.getLogOutput();
+        return -Kernels.dot(expected.data, logOutput.data, 0, logOutput.length) / numInputs;
     }
     
     /**
@@ -357,32 +942,198 @@ public class NeuralNetwork {
      * @return the cost
      */
     public double getCost() {
-        int numInputs = mActivations[0].rows;
+        int numInputs = requireWorkspace().getRows();
         return getCostNoRegularization(numInputs) + getThetaRegularization(numInputs);
     }
     
+    /**
+     * Calculates cost with regularization for the activations held by the
+     * specified workspace.
+     * 
+     * @param workspace the workspace that holds the activations
+     * @param expected the true values for the rows in the workspace
+     * @return the cost
+     */
+    public double getCost(Workspace workspace, DoubleMatrix expected) {
+        return getCostNoRegularization(workspace, expected) + getThetaRegularization(workspace.getRows());
+    }
+    
     /**
      * Given a trained neural network (i.e. a trained network that has learned
      * the values for theta, or has pre-supplied values for theta), compute the 
      * resulting output values given some data as input. 
      * 
+     * Safe to call from several threads at once. Each thread propagates the
+     * data through its own workspace, which is kept between calls and only
+     * reallocated when the number of rows or the shapes of the thetas change.
+     * The thetas are only read, and the network's own workspace is left as
+     * it is. Use predict with a workspace, followed by getCost with that 
+     * workspace, to find the cost of a prediction.
+     * 
      * @param data the examples to predict
      * @return the predicted values (classes)
      */
     public DoubleMatrix predict(DoubleMatrix data) {
-        setInputs(data);
-        forwardPropagation();
-        return mActivations[mLayerSizes.length - 1];
+        DoubleMatrix [] thetas = mThetas;
+        Workspace workspace = mPredictWorkspace.get();
+        if (workspace == null || workspace.getRows() != data.rows || !workspace.fits(thetas)) {
+            workspace = new Workspace(thetas, data.rows, mPrecision, mSoftmax != null);
+            mPredictWorkspace.set(workspace);
+        }
+        return predict(thetas, data, workspace);
     }
     
     /**
-     * Returns the activation function that computes the activation along 
-     * network edges.
+     * Computes the output values for the data using the specified workspace
+     * for scratch space. The workspace must have one row for each row of 
+     * data, and is owned by the caller. Does not change the state of the
+     * network, so several threads can call it at once as long as each uses
+     * its own workspace.
      * 
-     * @return the current activation function
+     * @param data the examples to predict
+     * @param workspace the workspace to propagate the data through
+     * @return the predicted values (classes)
+     */
+    public DoubleMatrix predict(DoubleMatrix data, Workspace workspace) {
+        return predict(mThetas, data, workspace);
+    }
+    
+    /**
+     * Computes the output values for a single sample. This is a fast path 
+     * for classifying one sample at a time: the sample is propagated with
+     * matrix-vector products against the thetas as they are stored, into a
+     * single row workspace that each thread keeps between calls. Apart from
+     * the first call on a thread, no memory is allocated. Safe to call from
+     * several threads at once. A network with FLOAT precision narrows the 
+     * sample and propagates it through its single precision thetas, so that
+     * the outputs match those of predict on a matrix.
+     * 
+     * @param in the values of the sample, one per input node
+     * @param out the array to write the output values into, one per output node
+     */
+    public void predict(double [] in, double [] out) {
+        DoubleMatrix [] thetas = mThetas;
+        int outputLayer = thetas.length;
+        if (in.length != thetas[0].columns - 1) {
+            throw new IllegalArgumentException("expected " + (thetas[0].columns - 1) + " inputs, got " + in.length);
+        }
+        if (out.length != thetas[outputLayer - 1].rows) {
+            throw new IllegalArgumentException("expected " + thetas[outputLayer - 1].rows + " outputs, got " + out.length);
+        }
+        
+        Workspace workspace = mSampleWorkspace.get();
+        if (workspace == null || !workspace.fits(thetas)) {
+            workspace = new Workspace(thetas, 1, mPrecision, mSoftmax != null);
+            mSampleWorkspace.set(workspace);
+        }
+        if (workspace.isFloat()) {
+            predictFloat(in, out, workspace);
+            return;
+        }
+        
+        // Each layer starts from its bias weights, and the weights of the 
+        // theta are then multiplied by the values of the previous layer, 
+        // read straight from its array - the sample itself is never copied
+        DoubleMatrix [] zs = workspace.getZ();
+        double [] values = in;
+        for (int index = 0; index < outputLayer; index++) {
+            DoubleMatrix theta = thetas[index];
+            DoubleMatrix z = zs[index+1];
+            System.arraycopy(theta.data, 0, z.data, 0, theta.rows);
+            mBackend.gemv(theta.rows, theta.columns - 1, 1.0, theta.data, theta.rows, theta.rows, 
+                    values, 0, 1.0, z.data, 0);
+            mActivationFunctions[index+1].applyi(z, z);
+            values = z.data;
+        }
+        System.arraycopy(zs[outputLayer].data, 0, out, 0, out.length);
+    }
+    
+    /**
+     * Computes the output values for a single sample in single precision,
+     * using the specified single row workspace.
+     * 
+     * @param in the values of the sample, one per input node
+     * @param out the array to write the output values into, one per output node
+     * @param workspace the single precision workspace to propagate the sample through
+     */
+    private void predictFloat(double [] in, double [] out, Workspace workspace) {
+        FloatMatrix [] floatThetas = mFloatThetas;
+        FloatMatrix [] zs = workspace.getFloatZ();
+        int outputLayer = floatThetas.length;
+        float [] values = workspace.getFloatActivations()[0].data;
+        for (int element = 0; element < in.length; element++) {
+            values[element] = (float) in[element];
+        }
+        for (int index = 0; index < outputLayer; index++) {
+            FloatMatrix theta = floatThetas[index];
+            FloatMatrix z = zs[index+1];
+            System.arraycopy(theta.data, 0, z.data, 0, theta.rows);
+            mBackend.gemv(theta.rows, theta.columns - 1, 1.0f, theta.data, theta.rows, theta.rows, 
+                    values, 0, 1.0f, z.data, 0);
+            mActivationFunctions[index+1].applyi(z, z);
+            values = z.data;
+        }
+        for (int element = 0; element < out.length; element++) {
+            out[element] = values[element];
+        }
+    }
+    
+    /**
+     * Computes the output values for the data with the specified thetas, 
+     * using the specified workspace for scratch space.
+     * 
+     * @param thetas the thetas to predict with
+     * @param data the examples to predict
+     * @param workspace the workspace to propagate the data through
+     * @return the predicted values (classes)
+     */
+    private DoubleMatrix predict(DoubleMatrix [] thetas, DoubleMatrix data, Workspace workspace) {
+        if (workspace.getRows() != data.rows) {
+            throw new IllegalArgumentException("workspace has " + workspace.getRows() + " rows, data has " + data.rows);
+        }
+        workspace.loadInputs(data);
+        forwardPropagation(thetas, workspace);
+        if (workspace.isFloat()) {
+            FloatMatrix [] activations = workspace.getFloatActivations();
+            return widen(activations[activations.length - 1]);
+        }
+        DoubleMatrix [] activations = workspace.getActivations();
+        return activations[activations.length - 1].dup();
+    }
+    
+    /**
+     * Returns the activation function of the output layer. When a single
+     * activation function was set for the whole network, this is the 
+     * function used by every layer.
+     * 
+     * @return the activation function of the output layer
      */
     public IActivationFunction getActivationFunction() {
-        return mActivationFunction;
+        return mActivationFunctions[mActivationFunctions.length - 1];
+    }
+    
+    /**
+     * Returns true if the output layer is a softmax, so that the network
+     * classifies each sample into one of several classes.
+     * 
+     * @return true if the output layer is a softmax
+     */
+    public boolean isSoftmaxOutput() {
+        return mSoftmax != null;
+    }
+    
+    /**
+     * Returns the activation function that computes the activations of the
+     * specified layer. Layer 1 is the first hidden layer.
+     * 
+     * @param layer the layer to fetch the activation function for
+     * @return the activation function of the layer
+     */
+    public IActivationFunction getActivationFunction(int layer) {
+        if (layer < 1 || layer >= mActivationFunctions.length) {
+            throw new IllegalArgumentException("layer must be between 1 and " + (mActivationFunctions.length - 1));
+        }
+        return mActivationFunctions[layer];
     }
     
 }
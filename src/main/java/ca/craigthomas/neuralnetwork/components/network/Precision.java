@@ -0,0 +1,22 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+/**
+ * The floating point precision that a neural network uses for its 
+ * activations, deltas and matrix products. The thetas are always kept in
+ * double precision, so that small updates from training are not lost.
+ * 
+ * @author thomas
+ */
+public enum Precision {
+    
+    // 64-bit values backed by DoubleMatrix
+    DOUBLE,
+    
+    // 32-bit values backed by FloatMatrix, which halves the memory used by
+    // the workspace and uses single precision matrix products
+    FLOAT
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+
+/**
+ * An inference only copy of a trained NeuralNetwork, with its weights
+ * quantized to 8 bit integers. Each row of a theta (the weights into a
+ * single node) is quantized symmetrically with its own scale, so that the
+ * largest weight of the row maps to 127. The bias weights are kept in double
+ * precision, since there is only one per node.
+ *
+ * During the forward pass, the activations going into each layer are also
+ * quantized to 8 bits with a scale per sample. The products of the weights
+ * and activations are then accumulated as integers, and converted back to
+ * a real value with the two scales before the bias and the activation
+ * function are applied. Integer accumulation cannot overflow for layers of
+ * up to 133,000 nodes.
+ *
+ * Safe to call from several threads at once. Each thread keeps its own
+ * scratch buffers between calls.
+ *
+ * @author thomas
+ */
+public class QuantizedNeuralNetwork implements IPredictor {
+
+    // The largest magnitude of a quantized value
+    public static final int QUANTIZED_MAX = 127;
+
+    private final int [] mNumInputs;
+    private final int [] mNumOutputs;
+    private final byte [][] mWeights;
+    private final double [][] mScales;
+    private final double [][] mBiases;
+    private final IActivationFunction [] mActivationFunctions;
+    private final ThreadLocal<Scratch> mScratch;
+
+    /**
+     * The buffers used to propagate a single sample through the network.
+     */
+    private class Scratch {
+
+        private final double [] mInput;
+        private final double [][] mActivations;
+        private final byte [] mQuantized;
+
+        public Scratch() {
+            int widest = 0;
+            mInput = new double [mNumInputs[0]];
+            mActivations = new double [mWeights.length][];
+            for (int layer = 0; layer < mWeights.length; layer++) {
+                mActivations[layer] = new double [mNumOutputs[layer]];
+                widest = Math.max(widest, mNumInputs[layer]);
+            }
+            mQuantized = new byte [widest];
+        }
+    }
+
+    /**
+     * Quantizes the thetas of a trained network. Later changes to the
+     * thetas of the network are not reflected in the quantized copy.
+     *
+     * @param network the trained network to quantize
+     */
+    public QuantizedNeuralNetwork(NeuralNetwork network) {
+        List<DoubleMatrix> thetas = network.getThetas();
+        mNumInputs = new int [thetas.size()];
+        mNumOutputs = new int [thetas.size()];
+        mWeights = new byte [thetas.size()][];
+        mScales = new double [thetas.size()][];
+        mBiases = new double [thetas.size()][];
+        mActivationFunctions = new IActivationFunction [thetas.size()];
+        for (int layer = 0; layer < thetas.size(); layer++) {
+            quantizeTheta(layer, thetas.get(layer));
+            mActivationFunctions[layer] = network.getActivationFunction(layer + 1);
+        }
+        mScratch = new ThreadLocal<Scratch>();
+    }
+
+    /**
+     * Quantizes a single theta. The weights are stored row by row, so that
+     * the weights into each node are contiguous during the forward pass.
+     * Column 0 of the theta holds the bias weights.
+     *
+     * @param layer the index of the theta
+     * @param theta the theta to quantize
+     */
+    private void quantizeTheta(int layer, DoubleMatrix theta) {
+        int rows = theta.rows;
+        int inputs = theta.columns - 1;
+        mNumInputs[layer] = inputs;
+        mNumOutputs[layer] = rows;
+        mWeights[layer] = new byte [rows * inputs];
+        mScales[layer] = new double [rows];
+        mBiases[layer] = new double [rows];
+
+        for (int row = 0; row < rows; row++) {
+            mBiases[layer][row] = theta.data[row];
+            double max = 0.0;
+            for (int col = 1; col <= inputs; col++) {
+                max = Math.max(max, Math.abs(theta.data[(col * rows) + row]));
+            }
+            double scale = (max == 0.0) ? 1.0 : max / QUANTIZED_MAX;
+            mScales[layer][row] = scale;
+            for (int col = 1; col <= inputs; col++) {
+                mWeights[layer][(row * inputs) + col - 1] = quantize(theta.data[(col * rows) + row], scale);
+            }
+        }
+    }
+
+    /**
+     * Quantizes a single value with the specified scale, rounding to the
+     * nearest integer and clamping to the quantized range.
+     *
+     * @param value the value to quantize
+     * @param scale the size of one quantization step
+     * @return the quantized value
+     */
+    private static byte quantize(double value, double scale) {
+        long quantized = Math.round(value / scale);
+        return (byte) Math.max(-QUANTIZED_MAX, Math.min(QUANTIZED_MAX, quantized));
+    }
+
+    /**
+     * Quantizes the first count values of the activations into the
+     * destination, with a single scale chosen so that the largest magnitude
+     * maps to 127.
+     *
+     * @param activations the activations to quantize
+     * @param count the number of activations
+     * @param destination the array to store the quantized values in
+     * @return the scale of the quantized values
+     */
+    private static double quantizeActivations(double [] activations, int count, byte [] destination) {
+        double max = 0.0;
+        for (int index = 0; index < count; index++) {
+            max = Math.max(max, Math.abs(activations[index]));
+        }
+        double scale = (max == 0.0) ? 1.0 : max / QUANTIZED_MAX;
+        for (int index = 0; index < count; index++) {
+            destination[index] = quantize(activations[index], scale);
+        }
+        return scale;
+    }
+
+    /**
+     * Returns the scratch buffers for the calling thread.
+     *
+     * @return the scratch buffers
+     */
+    private Scratch getScratch() {
+        Scratch scratch = mScratch.get();
+        if (scratch == null) {
+            scratch = new Scratch();
+            mScratch.set(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * Propagates a single sample through the network with integer
+     * accumulation, and writes the output values into out.
+     *
+     * @param in the values of the sample
+     * @param out the array to write the output values into
+     * @param scratch the scratch buffers of the calling thread
+     */
+    private void forwardPropagation(double [] in, double [] out, Scratch scratch) {
+        byte [] quantized = scratch.mQuantized;
+        double [] activations = in;
+        int outputLayer = mWeights.length - 1;
+        for (int layer = 0; layer <= outputLayer; layer++) {
+            int inputs = mNumInputs[layer];
+            byte [] weights = mWeights[layer];
+            double [] scales = mScales[layer];
+            double [] biases = mBiases[layer];
+            double [] z = (layer == outputLayer) ? out : scratch.mActivations[layer];
+            IActivationFunction activationFunction = mActivationFunctions[layer];
+            double activationScale = quantizeActivations(activations, inputs, quantized);
+            for (int node = 0; node < mNumOutputs[layer]; node++) {
+                int offset = node * inputs;
+                int sum = 0;
+                for (int index = 0; index < inputs; index++) {
+                    sum += weights[offset + index] * quantized[index];
+                }
+                z[node] = (sum * scales[node] * activationScale) + biases[node];
+            }
+            activationFunction.applyi(z, mNumOutputs[layer]);
+            activations = z;
+        }
+    }
+
+    /**
+     * Computes the output values for a single sample. No memory is allocated
+     * apart from the first call on a thread.
+     *
+     * @param in the values of the sample, one per input node
+     * @param out the array to write the output values into, one per output node
+     */
+    public void predict(double [] in, double [] out) {
+        if (in.length != mNumInputs[0]) {
+            throw new IllegalArgumentException("expected " + mNumInputs[0] + " inputs, got " + in.length);
+        }
+        if (out.length != mNumOutputs[mNumOutputs.length - 1]) {
+            throw new IllegalArgumentException("expected " + mNumOutputs[mNumOutputs.length - 1] + " outputs, got " + out.length);
+        }
+        forwardPropagation(in, out, getScratch());
+    }
+
+    /**
+     * Computes the output values for the data. Each sample is propagated
+     * on its own, so that the scale of its activations does not depend on
+     * the other samples in the data.
+     *
+     * @param data the examples to predict
+     * @return the predicted values (classes)
+     */
+    @Override
+    public DoubleMatrix predict(DoubleMatrix data) {
+        if (data.columns != mNumInputs[0]) {
+            throw new IllegalArgumentException("expected " + mNumInputs[0] + " inputs, got " + data.columns);
+        }
+        Scratch scratch = getScratch();
+        int outputs = mNumOutputs[mNumOutputs.length - 1];
+        DoubleMatrix result = new DoubleMatrix(data.rows, outputs);
+        double [] output = new double [outputs];
+        for (int row = 0; row < data.rows; row++) {
+            for (int col = 0; col < data.columns; col++) {
+                scratch.mInput[col] = data.data[(col * data.rows) + row];
+            }
+            forwardPropagation(scratch.mInput, output, scratch);
+            for (int col = 0; col < outputs; col++) {
+                result.data[(col * data.rows) + row] = output[col];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the quantized weights of a theta, stored row by row without
+     * the bias column.
+     *
+     * @param thetaNum the theta to get
+     * @return the quantized weights
+     */
+    public byte [] getWeights(int thetaNum) {
+        return mWeights[thetaNum];
+    }
+
+    /**
+     * Returns the scale of each row of a theta.
+     *
+     * @param thetaNum the theta to get
+     * @return the scale of each row
+     */
+    public double [] getScales(int thetaNum) {
+        return mScales[thetaNum];
+    }
+
+    /**
+     * Converts a quantized theta back into a matrix with the same layout as
+     * the original theta, including the bias column.
+     *
+     * @param thetaNum the theta to convert
+     * @return the dequantized theta
+     */
+    public DoubleMatrix dequantizeTheta(int thetaNum) {
+        int rows = mNumOutputs[thetaNum];
+        int inputs = mNumInputs[thetaNum];
+        DoubleMatrix theta = new DoubleMatrix(rows, inputs + 1);
+        for (int row = 0; row < rows; row++) {
+            theta.data[row] = mBiases[thetaNum][row];
+            for (int col = 1; col <= inputs; col++) {
+                theta.data[(col * rows) + row] = mWeights[thetaNum][(row * inputs) + col - 1] * mScales[thetaNum][row];
+            }
+        }
+        return theta;
+    }
+
+    /**
+     * Returns the number of thetas in the network.
+     *
+     * @return the number of thetas
+     */
+    public int getNumThetas() {
+        return mWeights.length;
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+/**
+ * Holds the preallocated buffers that a neural network uses during forward
+ * and back propagation. The buffers are sized once from the shapes of the
+ * theta values and the number of rows in a batch, and are then reused in
+ * place on every iteration so that training does not have to allocate new
+ * matrices for every step.
+ *
+ * No buffer carries a bias unit. The bias weights are held in the first
+ * column of each theta, and forward propagation adds them to the z values
+ * of the next layer directly, so the activation buffer of every layer 
+ * after the input layer is the same matrix as its z buffer. A workspace for
+ * a network with a softmax output layer also has a separate buffer of the
+ * same shape as the output, which holds the log of the output activations
+ * so that the cross-entropy cost never has to take the log of a 
+ * probability.
+ *
+ * A workspace built with single precision holds its activations, z values,
+ * deltas and errors in FloatMatrix buffers instead. The gradients and the expected values are always kept in
+ * double precision, since they are small and are used to update the thetas.
+ *
+ * @author thomas
+ */
+public class Workspace {
+
+    private final int mRows;
+    private final Precision mPrecision;
+    private DoubleMatrix[] mActivations;
+    private DoubleMatrix[] mZ;
+    private DoubleMatrix[] mDeltas;
+    private DoubleMatrix[] mErrors;
+    private DoubleMatrix mLogOutput;
+    private FloatMatrix[] mFloatActivations;
+    private FloatMatrix[] mFloatZ;
+    private FloatMatrix[] mFloatDeltas;
+    private FloatMatrix[] mFloatErrors;
+    private FloatMatrix mFloatLogOutput;
+    private FloatMatrix[] mFloatGradients;
+    private final DoubleMatrix[] mGradients;
+    private final DoubleMatrix mExpected;
+
+    /**
+     * Builds a workspace for a network with the specified thetas that will
+     * process the specified number of rows at a time. Each theta is expected
+     * to have one row per node in the next layer, and one column per node
+     * in the previous layer plus a bias unit.
+     *
+     * @param thetas the theta values of the network
+     * @param rows the number of rows (samples) in a batch
+     */
+    public Workspace(DoubleMatrix[] thetas, int rows) {
+        this(thetas, rows, Precision.DOUBLE);
+    }
+
+    /**
+     * Builds a workspace with the specified precision for a network with 
+     * the specified thetas that will process the specified number of rows
+     * at a time.
+     *
+     * @param thetas the theta values of the network
+     * @param rows the number of rows (samples) in a batch
+     * @param precision the precision of the propagation buffers
+     */
+    public Workspace(DoubleMatrix[] thetas, int rows, Precision precision) {
+        this(thetas, rows, precision, false);
+    }
+
+    /**
+     * Builds a workspace with the specified precision for a network with 
+     * the specified thetas that will process the specified number of rows
+     * at a time. The log output buffer is only allocated for a network 
+     * with a softmax output layer.
+     *
+     * @param thetas the theta values of the network
+     * @param rows the number of rows (samples) in a batch
+     * @param precision the precision of the propagation buffers
+     * @param softmax whether the output layer of the network is a softmax
+     */
+    public Workspace(DoubleMatrix[] thetas, int rows, Precision precision, boolean softmax) {
+        int numLayers = thetas.length + 1;
+        mRows = rows;
+        mPrecision = precision;
+        mGradients = new DoubleMatrix[thetas.length];
+        for (int index = 0; index < thetas.length; index++) {
+            mGradients[index] = new DoubleMatrix(thetas[index].rows, thetas[index].columns);
+        }
+        mExpected = new DoubleMatrix(rows, thetas[thetas.length - 1].rows);
+
+        if (precision == Precision.FLOAT) {
+            allocateFloat(thetas, rows, numLayers);
+            mFloatLogOutput = softmax ? new FloatMatrix(rows, thetas[thetas.length - 1].rows) : null;
+        } else {
+            allocateDouble(thetas, rows, numLayers);
+            mLogOutput = softmax ? new DoubleMatrix(rows, thetas[thetas.length - 1].rows) : null;
+        }
+    }
+
+    /**
+     * Allocates the double precision propagation buffers.
+     *
+     * @param thetas the theta values of the network
+     * @param rows the number of rows in a batch
+     * @param numLayers the number of layers in the network
+     */
+    private void allocateDouble(DoubleMatrix[] thetas, int rows, int numLayers) {
+        int outputLayer = numLayers - 1;
+        mActivations = new DoubleMatrix[numLayers];
+        mZ = new DoubleMatrix[numLayers];
+        mDeltas = new DoubleMatrix[numLayers];
+        mErrors = new DoubleMatrix[numLayers];
+
+        mActivations[0] = new DoubleMatrix(rows, thetas[0].columns - 1);
+        for (int layer = 1; layer < numLayers; layer++) {
+            int nodes = thetas[layer-1].rows;
+            mZ[layer] = new DoubleMatrix(rows, nodes);
+            mActivations[layer] = mZ[layer];
+            mDeltas[layer] = new DoubleMatrix(rows, nodes);
+            if (layer != outputLayer) {
+                mErrors[layer] = new DoubleMatrix(rows, nodes);
+            }
+        }
+    }
+
+    /**
+     * Allocates the single precision propagation buffers, along with the
+     * single precision gradients of the thetas.
+     *
+     * @param thetas the theta values of the network
+     * @param rows the number of rows in a batch
+     * @param numLayers the number of layers in the network
+     */
+    private void allocateFloat(DoubleMatrix[] thetas, int rows, int numLayers) {
+        int outputLayer = numLayers - 1;
+        mFloatActivations = new FloatMatrix[numLayers];
+        mFloatZ = new FloatMatrix[numLayers];
+        mFloatDeltas = new FloatMatrix[numLayers];
+        mFloatErrors = new FloatMatrix[numLayers];
+        mFloatGradients = new FloatMatrix[thetas.length];
+
+        mFloatActivations[0] = new FloatMatrix(rows, thetas[0].columns - 1);
+        for (int layer = 1; layer < numLayers; layer++) {
+            DoubleMatrix theta = thetas[layer-1];
+            int nodes = theta.rows;
+            mFloatZ[layer] = new FloatMatrix(rows, nodes);
+            mFloatActivations[layer] = mFloatZ[layer];
+            mFloatDeltas[layer] = new FloatMatrix(rows, nodes);
+            if (layer != outputLayer) {
+                mFloatErrors[layer] = new FloatMatrix(rows, nodes);
+            }
+            mFloatGradients[layer-1] = new FloatMatrix(theta.rows, theta.columns);
+        }
+    }
+
+    /**
+     * Returns true if the workspace buffers have the correct shapes for the
+     * specified thetas.
+     *
+     * @param thetas the thetas to check
+     * @return true if the workspace can be used with the thetas
+     */
+    public boolean fits(DoubleMatrix[] thetas) {
+        if (thetas.length != mGradients.length) {
+            return false;
+        }
+        for (int index = 0; index < thetas.length; index++) {
+            if (!mGradients[index].sameSize(thetas[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads a batch of rows into the workspace. The rows are gathered 
+     * directly from the samples and truth matrices into the input layer and
+     * the expected values buffer, starting at the specified position in the
+     * list of row indices. The number of rows loaded is the number of rows 
+     * the workspace was sized for.
+     *
+     * @param samples the matrix of samples to gather from
+     * @param truth the matrix of truth values to gather from
+     * @param indices the row indices to load, in order
+     * @param start the position in indices of the first row to load
+     */
+    public void loadBatch(DoubleMatrix samples, DoubleMatrix truth, int [] indices, int start) {
+        if (isFloat()) {
+            gatherRows(samples, indices, start, mFloatActivations[0], 0);
+        } else {
+            gatherRows(samples, indices, start, mActivations[0], 0);
+        }
+        gatherRows(truth, indices, start, mExpected, 0);
+    }
+
+    /**
+     * Single precision version of loadBatch, for samples that are kept in
+     * single precision. The samples are widened as they are copied into a
+     * double precision workspace.
+     *
+     * @param samples the single precision matrix of samples to gather from
+     * @param truth the matrix of truth values to gather from
+     * @param indices the row indices to load, in order
+     * @param start the position in indices of the first row to load
+     */
+    public void loadBatch(FloatMatrix samples, DoubleMatrix truth, int [] indices, int start) {
+        if (isFloat()) {
+            gatherRows(samples, indices, start, mFloatActivations[0].data);
+        } else {
+            gatherRows(samples, indices, start, mActivations[0].data);
+        }
+        gatherRows(truth, indices, start, mExpected, 0);
+    }
+
+    /**
+     * Copies the specified inputs into the input layer. The inputs must have
+     * the same number of rows as the workspace.
+     *
+     * @param inputs the inputs to copy
+     */
+    public void loadInputs(DoubleMatrix inputs) {
+        if (isFloat()) {
+            float [] destination = mFloatActivations[0].data;
+            for (int index = 0; index < inputs.length; index++) {
+                destination[index] = (float)inputs.data[index];
+            }
+        } else {
+            System.arraycopy(inputs.data, 0, mActivations[0].data, 0, inputs.length);
+        }
+    }
+
+    /**
+     * Copies the inputs held by another workspace of the same size and 
+     * precision into this workspace.
+     *
+     * @param source the workspace to copy the inputs from
+     */
+    public void copyInputs(Workspace source) {
+        if (isFloat()) {
+            float [] inputs = source.mFloatActivations[0].data;
+            System.arraycopy(inputs, 0, mFloatActivations[0].data, 0, inputs.length);
+        } else {
+            double [] inputs = source.mActivations[0].data;
+            System.arraycopy(inputs, 0, mActivations[0].data, 0, inputs.length);
+        }
+    }
+
+    /**
+     * Copies rows of the source matrix into consecutive rows of the 
+     * destination, starting at the specified offset into the destination's
+     * data.
+     *
+     * @param source the matrix to copy rows from
+     * @param indices the row indices to copy
+     * @param start the position in indices of the first row to copy
+     * @param destination the matrix to copy into
+     * @param offset the offset into the destination data to start at
+     */
+    private void gatherRows(DoubleMatrix source, int [] indices, int start, DoubleMatrix destination, int offset) {
+        for (int col = 0; col < source.columns; col++) {
+            int sourceOffset = col * source.rows;
+            int destinationOffset = offset + (col * mRows);
+            for (int row = 0; row < mRows; row++) {
+                destination.data[destinationOffset + row] = source.data[sourceOffset + indices[start + row]];
+            }
+        }
+    }
+
+    /**
+     * Copies rows of the source matrix into consecutive rows of a single
+     * precision destination, starting at the specified offset into the 
+     * destination's data.
+     *
+     * @param source the matrix to copy rows from
+     * @param indices the row indices to copy
+     * @param start the position in indices of the first row to copy
+     * @param destination the matrix to copy into
+     * @param offset the offset into the destination data to start at
+     */
+    private void gatherRows(DoubleMatrix source, int [] indices, int start, FloatMatrix destination, int offset) {
+        for (int col = 0; col < source.columns; col++) {
+            int sourceOffset = col * source.rows;
+            int destinationOffset = offset + (col * mRows);
+            for (int row = 0; row < mRows; row++) {
+                destination.data[destinationOffset + row] = (float)source.data[sourceOffset + indices[start + row]];
+            }
+        }
+    }
+
+    /**
+     * Copies rows of a single precision source matrix into consecutive rows
+     * of the destination array.
+     *
+     * @param source the matrix to copy rows from
+     * @param indices the row indices to copy
+     * @param start the position in indices of the first row to copy
+     * @param destination the array to copy into
+     */
+    private void gatherRows(FloatMatrix source, int [] indices, int start, float [] destination) {
+        for (int col = 0; col < source.columns; col++) {
+            int sourceOffset = col * source.rows;
+            int destinationOffset = col * mRows;
+            for (int row = 0; row < mRows; row++) {
+                destination[destinationOffset + row] = source.data[sourceOffset + indices[start + row]];
+            }
+        }
+    }
+
+    /**
+     * Copies rows of a single precision source matrix into consecutive rows
+     * of a double precision destination array.
+     *
+     * @param source the matrix to copy rows from
+     * @param indices the row indices to copy
+     * @param start the position in indices of the first row to copy
+     * @param destination the array to copy into
+     */
+    private void gatherRows(FloatMatrix source, int [] indices, int start, double [] destination) {
+        for (int col = 0; col < source.columns; col++) {
+            int sourceOffset = col * source.rows;
+            int destinationOffset = col * mRows;
+            for (int row = 0; row < mRows; row++) {
+                destination[destinationOffset + row] = source.data[sourceOffset + indices[start + row]];
+            }
+        }
+    }
+
+    /**
+     * Returns the precision of the propagation buffers.
+     *
+     * @return the precision of the workspace
+     */
+    public Precision getPrecision() {
+        return mPrecision;
+    }
+
+    /**
+     * Returns true if the propagation buffers are single precision.
+     *
+     * @return true if the workspace is single precision
+     */
+    public boolean isFloat() {
+        return mPrecision == Precision.FLOAT;
+    }
+
+    /**
+     * Returns the number of rows that the workspace was sized for.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Returns the activation buffers. The buffer for every layer after the
+     * input layer is the same matrix as its z buffer.
+     *
+     * @return the activation buffers
+     */
+    public DoubleMatrix[] getActivations() {
+        return mActivations;
+    }
+
+    /**
+     * Returns the buffers that hold the weighted inputs (z) of each layer.
+     * Forward propagation applies the activation function in place, so after
+     * it runs these hold the activations of each layer. There is no buffer 
+     * for the input layer.
+     *
+     * @return the z buffers
+     */
+    public DoubleMatrix[] getZ() {
+        return mZ;
+    }
+
+    /**
+     * Returns the buffers that hold the error terms for each layer. There is
+     * no buffer for the input layer.
+     *
+     * @return the delta buffers
+     */
+    public DoubleMatrix[] getDeltas() {
+        return mDeltas;
+    }
+
+    /**
+     * Returns the scratch buffers that hold the error propagated back
+     * through the weights of a theta. Only the hidden layers have a buffer.
+     *
+     * @return the propagated error buffers
+     */
+    public DoubleMatrix[] getErrors() {
+        return mErrors;
+    }
+
+    /**
+     * Returns the buffer that holds the log of the output activations. It
+     * is only filled in by forward propagation through a softmax output 
+     * layer, and is null unless the workspace was built for one.
+     *
+     * @return the log output buffer
+     */
+    public DoubleMatrix getLogOutput() {
+        return mLogOutput;
+    }
+
+    /**
+     * Returns the single precision log output buffer, or null for a double
+     * precision workspace or one without a softmax output layer.
+     *
+     * @return the single precision log output buffer
+     */
+    public FloatMatrix getFloatLogOutput() {
+        return mFloatLogOutput;
+    }
+
+    /**
+     * Returns the single precision activation buffers, or null for a double
+     * precision workspace.
+     *
+     * @return the single precision activation buffers
+     */
+    public FloatMatrix[] getFloatActivations() {
+        return mFloatActivations;
+    }
+
+    /**
+     * Returns the single precision z buffers, or null for a double 
+     * precision workspace.
+     *
+     * @return the single precision z buffers
+     */
+    public FloatMatrix[] getFloatZ() {
+        return mFloatZ;
+    }
+
+    /**
+     * Returns the single precision delta buffers, or null for a double
+     * precision workspace.
+     *
+     * @return the single precision delta buffers
+     */
+    public FloatMatrix[] getFloatDeltas() {
+        return mFloatDeltas;
+    }
+
+    /**
+     * Returns the single precision propagated error buffers, or null for a
+     * double precision workspace.
+     *
+     * @return the single precision propagated error buffers
+     */
+    public FloatMatrix[] getFloatErrors() {
+        return mFloatErrors;
+    }
+
+    /**
+     * Returns the buffers that hold the single precision gradient sums 
+     * before they are widened into the gradient buffers, or null for a 
+     * double precision workspace.
+     *
+     * @return the single precision gradient buffers
+     */
+    public FloatMatrix[] getFloatGradients() {
+        return mFloatGradients;
+    }
+
+    /**
+     * Returns the buffers that hold the gradient of each theta.
+     *
+     * @return the gradient buffers
+     */
+    public DoubleMatrix[] getGradients() {
+        return mGradients;
+    }
+
+    /**
+     * Returns the buffer that holds the expected values for a batch loaded
+     * with loadBatch.
+     *
+     * @return the expected values buffer
+     */
+    public DoubleMatrix getExpected() {
+        return mExpected;
+    }
+}
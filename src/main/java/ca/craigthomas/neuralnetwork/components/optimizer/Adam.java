@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Adam keeps decaying averages of both the gradient and the squared gradient
+ * for every theta value. The averages start at zero, so they are corrected
+ * for that bias based on the number of steps taken so far:
+ * 
+ *   mean = beta1 * mean + (1 - beta1) * gradient
+ *   variance = beta2 * variance + (1 - beta2) * gradient^2
+ *   theta = theta - learningRate * (mean / (1 - beta1^t)) 
+ *                   / (sqrt(variance / (1 - beta2^t)) + epsilon)
+ * 
+ * @author thomas
+ */
+public class Adam implements IOptimizer {
+
+    // The default decay rate of the gradient average
+    public static final double DEFAULT_BETA1 = 0.9;
+    // The default decay rate of the squared gradient average
+    public static final double DEFAULT_BETA2 = 0.999;
+    // The default term used to avoid dividing by zero
+    public static final double DEFAULT_EPSILON = 1e-8;
+    
+    private final double mLearningRate;
+    private final double mBeta1;
+    private final double mBeta2;
+    private final double mEpsilon;
+    private DoubleMatrix [] mMeans;
+    private DoubleMatrix [] mVariances;
+    private int [] mSteps;
+    
+    /**
+     * Creates a new Adam optimizer with the default decay rates and epsilon.
+     * 
+     * @param learningRate the learning rate to scale the step by
+     */
+    public Adam(double learningRate) {
+        this(learningRate, DEFAULT_BETA1, DEFAULT_BETA2, DEFAULT_EPSILON);
+    }
+    
+    /**
+     * Creates a new Adam optimizer.
+     * 
+     * @param learningRate the learning rate to scale the step by
+     * @param beta1 the decay rate of the gradient average
+     * @param beta2 the decay rate of the squared gradient average
+     * @param epsilon the term used to avoid dividing by zero
+     */
+    public Adam(double learningRate, double beta1, double beta2, double epsilon) {
+        mLearningRate = learningRate;
+        mBeta1 = beta1;
+        mBeta2 = beta2;
+        mEpsilon = epsilon;
+    }
+    
+    @Override
+    public void initialize(List<DoubleMatrix> thetas) {
+        mMeans = new DoubleMatrix[thetas.size()];
+        mVariances = new DoubleMatrix[thetas.size()];
+        mSteps = new int[thetas.size()];
+        for (int index = 0; index < thetas.size(); index++) {
+            DoubleMatrix theta = thetas.get(index);
+            mMeans[index] = new DoubleMatrix(theta.rows, theta.columns);
+            mVariances[index] = new DoubleMatrix(theta.rows, theta.columns);
+        }
+    }
+    
+    @Override
+    public void update(int thetaNum, DoubleMatrix theta, DoubleMatrix gradient) {
+        double [] mean = mMeans[thetaNum].data;
+        double [] variance = mVariances[thetaNum].data;
+        mSteps[thetaNum]++;
+        double meanCorrection = 1.0 - Math.pow(mBeta1, mSteps[thetaNum]);
+        double varianceCorrection = 1.0 - Math.pow(mBeta2, mSteps[thetaNum]);
+        for (int index = 0; index < theta.length; index++) {
+            double value = gradient.data[index];
+            mean[index] = (mBeta1 * mean[index]) + ((1.0 - mBeta1) * value);
+            variance[index] = (mBeta2 * variance[index]) + ((1.0 - mBeta2) * value * value);
+            double step = (mean[index] / meanCorrection) / (Math.sqrt(variance[index] / varianceCorrection) + mEpsilon);
+            theta.data[index] -= mLearningRate * step;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Plain gradient descent. Each theta value is moved against its gradient,
+ * scaled by the learning rate:
+ * 
+ *   theta = theta - learningRate * gradient
+ * 
+ * @author thomas
+ */
+public class GradientDescent implements IOptimizer {
+
+    private final double mLearningRate;
+    
+    /**
+     * Creates a new gradient descent optimizer.
+     * 
+     * @param learningRate the learning rate to scale the gradient by
+     */
+    public GradientDescent(double learningRate) {
+        mLearningRate = learningRate;
+    }
+    
+    @Override
+    public void initialize(List<DoubleMatrix> thetas) {
+    }
+    
+    @Override
+    public void update(int thetaNum, DoubleMatrix theta, DoubleMatrix gradient) {
+        double [] values = theta.data;
+        double [] gradients = gradient.data;
+        for (int index = 0; index < values.length; index++) {
+            values[index] -= mLearningRate * gradients[index];
+        }
+    }
+    
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+}
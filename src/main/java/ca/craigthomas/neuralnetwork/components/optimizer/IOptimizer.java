@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * An interface to capture an optimizer. An optimizer decides how the theta
+ * values of a network are adjusted given their gradients. Optimizers that 
+ * keep state between steps (such as a running average of the gradients)
+ * allocate it once for each theta when initialized, and then update both 
+ * the state and the thetas in place.
+ * 
+ * @author thomas
+ */
+public interface IOptimizer {
+
+    /**
+     * Allocates any state that the optimizer needs for the specified thetas.
+     * Must be called before the first update.
+     * 
+     * @param thetas the thetas that will be optimized
+     */
+    public void initialize(List<DoubleMatrix> thetas);
+    
+    /**
+     * Adjusts the specified theta in place using its gradient.
+     * 
+     * @param thetaNum the number of the theta being adjusted
+     * @param theta the theta values to adjust
+     * @param gradient the gradient of the theta values
+     */
+    public void update(int thetaNum, DoubleMatrix theta, DoubleMatrix gradient);
+    
+    /**
+     * Returns true if the optimizer keeps no state between updates, so that
+     * several threads can adjust the same thetas through it at once, as in
+     * Hogwild training. Defaults to false.
+     * 
+     * @return true if the optimizer keeps no state
+     */
+    public default boolean isStateless() {
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Gradient descent with momentum. Keeps a velocity for every theta value
+ * that accumulates past gradients, which smooths out the steps and speeds
+ * up movement along directions with a consistent gradient:
+ * 
+ *   velocity = momentum * velocity - learningRate * gradient
+ *   theta = theta + velocity
+ * 
+ * @author thomas
+ */
+public class Momentum implements IOptimizer {
+
+    // The default momentum term
+    public static final double DEFAULT_MOMENTUM = 0.9;
+    
+    private final double mLearningRate;
+    private final double mMomentum;
+    private DoubleMatrix [] mVelocities;
+    
+    /**
+     * Creates a new momentum optimizer with the default momentum.
+     * 
+     * @param learningRate the learning rate to scale the gradient by
+     */
+    public Momentum(double learningRate) {
+        this(learningRate, DEFAULT_MOMENTUM);
+    }
+    
+    /**
+     * Creates a new momentum optimizer.
+     * 
+     * @param learningRate the learning rate to scale the gradient by
+     * @param momentum the fraction of the velocity kept between steps
+     */
+    public Momentum(double learningRate, double momentum) {
+        mLearningRate = learningRate;
+        mMomentum = momentum;
+    }
+    
+    @Override
+    public void initialize(List<DoubleMatrix> thetas) {
+        mVelocities = new DoubleMatrix[thetas.size()];
+        for (int index = 0; index < thetas.size(); index++) {
+            DoubleMatrix theta = thetas.get(index);
+            mVelocities[index] = new DoubleMatrix(theta.rows, theta.columns);
+        }
+    }
+    
+    @Override
+    public void update(int thetaNum, DoubleMatrix theta, DoubleMatrix gradient) {
+        double [] velocity = mVelocities[thetaNum].data;
+        for (int index = 0; index < theta.length; index++) {
+            velocity[index] = (mMomentum * velocity[index]) - (mLearningRate * gradient.data[index]);
+            theta.data[index] += velocity[index];
+        }
+    }
+}
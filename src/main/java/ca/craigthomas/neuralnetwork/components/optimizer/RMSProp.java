@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * RMSProp keeps a decaying average of the squared gradient for every theta
+ * value, and divides each step by its root. Theta values with consistently
+ * large gradients take smaller steps, and ones with small gradients take
+ * larger steps:
+ * 
+ *   average = decay * average + (1 - decay) * gradient^2
+ *   theta = theta - learningRate * gradient / (sqrt(average) + epsilon)
+ * 
+ * @author thomas
+ */
+public class RMSProp implements IOptimizer {
+
+    // The default decay rate of the squared gradient average
+    public static final double DEFAULT_DECAY = 0.9;
+    // The default term used to avoid dividing by zero
+    public static final double DEFAULT_EPSILON = 1e-8;
+    
+    private final double mLearningRate;
+    private final double mDecay;
+    private final double mEpsilon;
+    private DoubleMatrix [] mAverages;
+    
+    /**
+     * Creates a new RMSProp optimizer with the default decay and epsilon.
+     * 
+     * @param learningRate the learning rate to scale the gradient by
+     */
+    public RMSProp(double learningRate) {
+        this(learningRate, DEFAULT_DECAY, DEFAULT_EPSILON);
+    }
+    
+    /**
+     * Creates a new RMSProp optimizer.
+     * 
+     * @param learningRate the learning rate to scale the gradient by
+     * @param decay the decay rate of the squared gradient average
+     * @param epsilon the term used to avoid dividing by zero
+     */
+    public RMSProp(double learningRate, double decay, double epsilon) {
+        mLearningRate = learningRate;
+        mDecay = decay;
+        mEpsilon = epsilon;
+    }
+    
+    @Override
+    public void initialize(List<DoubleMatrix> thetas) {
+        mAverages = new DoubleMatrix[thetas.size()];
+        for (int index = 0; index < thetas.size(); index++) {
+            DoubleMatrix theta = thetas.get(index);
+            mAverages[index] = new DoubleMatrix(theta.rows, theta.columns);
+        }
+    }
+    
+    @Override
+    public void update(int thetaNum, DoubleMatrix theta, DoubleMatrix gradient) {
+        double [] average = mAverages[thetaNum].data;
+        for (int index = 0; index < theta.length; index++) {
+            double value = gradient.data[index];
+            average[index] = (mDecay * average[index]) + ((1.0 - mDecay) * value * value);
+            theta.data[index] -= mLearningRate * value / (Math.sqrt(average[index]) + mEpsilon);
+        }
+    }
+}
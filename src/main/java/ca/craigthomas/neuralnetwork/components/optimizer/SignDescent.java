@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.backend.Kernels;
+
+/**
+ * Moves every theta value by a fixed learning rate against the sign of its
+ * gradient, so that the thetas are always approaching a minimum. The size of
+ * the gradient is ignored. This is the optimizer that the Trainer uses when 
+ * no other optimizer is specified.
+ * 
+ * @author thomas
+ */
+public class SignDescent implements IOptimizer {
+
+    private final double mLearningRate;
+    
+    /**
+     * Creates a new sign descent optimizer.
+     * 
+     * @param learningRate the amount to move each theta value by
+     */
+    public SignDescent(double learningRate) {
+        mLearningRate = learningRate;
+    }
+    
+    @Override
+    public void initialize(List<DoubleMatrix> thetas) {
+    }
+    
+    @Override
+    public void update(int thetaNum, DoubleMatrix theta, DoubleMatrix gradient) {
+        Kernels.signStep(theta.data, gradient.data, mLearningRate, theta.length);
+    }
+    
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.Workspace;
+
+/**
+ * Splits a batch of rows into shards so that forward and back propagation
+ * can run on several threads at once. Each shard has its own workspace, and
+ * computes the summed gradients for its rows. The sums are then added
+ * together in shard order, which means that the gradients for a batch are
+ * the same no matter how the threads were scheduled.
+ *
+ * @author thomas
+ */
+public class ShardedBatch {
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final ExecutorService mExecutor;
+    private final int mRows;
+    private final int [] mShardStarts;
+    private final Workspace [] mWorkspaces;
+    private final double [] mCosts;
+    private final DoubleMatrix [] mGradients;
+
+    /**
+     * Creates a new sharded batch for the specified network. The rows are
+     * split as evenly as possible between the shards. If there are fewer
+     * rows than shards, then there will be one shard per row.
+     *
+     * @param network the network to compute gradients for
+     * @param rows the number of rows in the batch
+     * @param shards the number of shards to split the batch into
+     * @param executor the executor that will run the shards
+     */
+    public ShardedBatch(NeuralNetwork network, int rows, int shards, ExecutorService executor) {
+        int numShards = Math.min(shards, rows);
+        mNeuralNetwork = network;
+        mExecutor = executor;
+        mRows = rows;
+        mShardStarts = new int [numShards];
+        mWorkspaces = new Workspace [numShards];
+        mCosts = new double [numShards];
+
+        int start = 0;
+        for (int shard = 0; shard < numShards; shard++) {
+            int shardRows = (rows / numShards) + ((shard < rows % numShards) ? 1 : 0);
+            mShardStarts[shard] = start;
+            mWorkspaces[shard] = network.createWorkspace(shardRows);
+            start += shardRows;
+        }
+
+        List<DoubleMatrix> thetas = network.getThetas();
+        mGradients = new DoubleMatrix [thetas.size()];
+        for (int index = 0; index < thetas.size(); index++) {
+            DoubleMatrix theta = thetas.get(index);
+            mGradients[index] = new DoubleMatrix(theta.rows, theta.columns);
+        }
+    }
+
+    /**
+     * Loads the rows of the batch into the shards. Each shard gathers its
+     * own slice of the row indices, starting at the specified position.
+     *
+     * @param samples the matrix of samples to gather from
+     * @param truth the matrix of truth values to gather from
+     * @param indices the row indices to load, in order
+     * @param start the position in indices of the first row of the batch
+     */
+    public void loadBatch(DoubleMatrix samples, DoubleMatrix truth, int [] indices, int start) {
+        for (int shard = 0; shard < mWorkspaces.length; shard++) {
+            mWorkspaces[shard].loadBatch(samples, truth, indices, start + mShardStarts[shard]);
+        }
+    }
+
+    /**
+     * Single precision version of loadBatch, for samples that are kept in
+     * single precision.
+     *
+     * @param samples the single precision matrix of samples to gather from
+     * @param truth the matrix of truth values to gather from
+     * @param indices the row indices to load, in order
+     * @param start the position in indices of the first row of the batch
+     */
+    public void loadBatch(FloatMatrix samples, DoubleMatrix truth, int [] indices, int start) {
+        for (int shard = 0; shard < mWorkspaces.length; shard++) {
+            mWorkspaces[shard].loadBatch(samples, truth, indices, start + mShardStarts[shard]);
+        }
+    }
+
+    /**
+     * Runs forward and back propagation on every shard in parallel, and
+     * then reduces the gradients of the shards into the gradients for the
+     * batch. The cost of the batch is only computed when requested,
+     * otherwise 0 is returned. The cost is the sum of the unregularized
+     * cost of every row in the batch, so that the costs of several batches
+     * can be added up before the regularization is added once.
+     *
+     * @param computeCost whether to compute the cost of the batch
+     * @return the summed unregularized cost of the batch, or 0
+     */
+    public double propagate(final boolean computeCost) {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int shard = 0; shard < mWorkspaces.length; shard++) {
+            final int shardNum = shard;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    propagateShard(shardNum, computeCost);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : mExecutor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while propagating shards", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("could not propagate shard", e.getCause());
+        }
+
+        reduceGradients();
+        if (!computeCost) {
+            return 0.0;
+        }
+        double cost = 0.0;
+        for (int shard = 0; shard < mWorkspaces.length; shard++) {
+            cost += mCosts[shard];
+        }
+        return cost;
+    }
+
+    /**
+     * Runs forward and back propagation on a single shard, and computes the
+     * summed gradients for its rows. When requested, records the cost of the
+     * shard weighted by its number of rows.
+     *
+     * @param shard the shard to propagate
+     * @param computeCost whether to compute the cost of the shard
+     */
+    private void propagateShard(int shard, boolean computeCost) {
+        Workspace workspace = mWorkspaces[shard];
+        mNeuralNetwork.forwardPropagation(workspace);
+        mNeuralNetwork.backPropagation(workspace, workspace.getExpected());
+        for (int index = 0; index < mGradients.length; index++) {
+            mNeuralNetwork.getThetaGradientSum(workspace, index);
+        }
+        if (computeCost) {
+            mCosts[shard] = mNeuralNetwork.getCostNoRegularization(workspace, workspace.getExpected()) * workspace.getRows();
+        }
+    }
+
+    /**
+     * Adds the summed gradients of the shards together in shard order, and
+     * then averages and regularizes them over the rows of the batch.
+     */
+    private void reduceGradients() {
+        for (int index = 0; index < mGradients.length; index++) {
+            double [] gradient = mGradients[index].data;
+            System.arraycopy(mWorkspaces[0].getGradients()[index].data, 0, gradient, 0, gradient.length);
+            for (int shard = 1; shard < mWorkspaces.length; shard++) {
+                double [] shardGradient = mWorkspaces[shard].getGradients()[index].data;
+                for (int element = 0; element < gradient.length; element++) {
+                    gradient[element] += shardGradient[element];
+                }
+            }
+            mNeuralNetwork.regularizeThetaGradient(mGradients[index], index, mRows);
+        }
+    }
+
+    /**
+     * Returns the number of shards that the batch is split into.
+     *
+     * @return the number of shards
+     */
+    public int getNumShards() {
+        return mWorkspaces.length;
+    }
+
+    /**
+     * Returns the gradients for the batch computed by the last call to
+     * propagate.
+     *
+     * @return the gradients of each theta
+     */
+    public DoubleMatrix [] getGradients() {
+        return mGradients;
+    }
+}
@@ -5,13 +5,26 @@
 package ca.craigthomas.neuralnetwork.components.trainer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 
 import ca.craigthomas.neuralnetwork.dataset.DataSet;
 import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.backend.IBackend;
 import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.Precision;
+import ca.craigthomas.neuralnetwork.components.network.Workspace;
+import ca.craigthomas.neuralnetwork.components.optimizer.IOptimizer;
+import ca.craigthomas.neuralnetwork.components.optimizer.SignDescent;
 
 /**
  * The trainer class is responsible for training a neural network. Will
@@ -27,13 +40,32 @@ public class Trainer {
     public static final int DEFAULT_HEARTBEAT = 100;
     // The default learning rate of the network
     public static final double DEFAULT_LEARNING_RATE = 0.01;
+    // The default batch size - 0 means that the full batch is used
+    public static final int DEFAULT_BATCH_SIZE = 0;
+    // The default number of threads used to compute gradients
+    public static final int DEFAULT_THREADS = 1;
+    // The default number of iterations between recorded costs
+    public static final int DEFAULT_COST_INTERVAL = 1;
     
     private NeuralNetwork mNeuralNetwork;
-    private double mLearningRate;
+    private IOptimizer mOptimizer;
     private boolean mRecordCosts;
     private int mMaxIterations;
     private int mHeartBeat;
+    private int mCostInterval;
     private List<Double> mCosts;
+    private int mBatchSize;
+    private DoubleMatrix mInputs;
+    // The inputs when they are kept in single precision, in which case 
+    // mInputs is null
+    private FloatMatrix mFloatInputs;
+    private DoubleMatrix mOutputs;
+    private int [] mRows;
+    private Random mRandom;
+    private int mThreads;
+    private boolean mHogwild;
+    private List<Double> mThroughputs;
+    private double mFinalCost;
 
     public static class Builder {
         
@@ -41,11 +73,22 @@ public class Trainer {
         private double mLambda;
         private double mLearningRate;
         private DoubleMatrix mInputs;
+        private FloatMatrix mFloatInputs;
         private DoubleMatrix mOutputs;
+        private int [] mRows;
         private IActivationFunction mActivationFunction;
+        private IActivationFunction mHiddenActivationFunction;
+        private IActivationFunction mOutputActivationFunction;
         private int mMaxIterations;
         private boolean mRecordCosts;
         private int mHeartBeat;
+        private int mCostInterval;
+        private int mBatchSize;
+        private IOptimizer mOptimizer;
+        private int mThreads;
+        private boolean mHogwild;
+        private Precision mPrecision;
+        private IBackend mBackend;
         
         /**
          * Initialize a builder object which will be used to build a neural
@@ -60,21 +103,49 @@ public class Trainer {
             mLambda = 0.0;
             mMaxIterations = DEFAULT_MAX_ITERATIONS;
             mHeartBeat = DEFAULT_HEARTBEAT;
+            mCostInterval = DEFAULT_COST_INTERVAL;
             mLayerSizes = layerSizes;
             mInputs = inputs;
             mOutputs = outputs;
             mLearningRate = DEFAULT_LEARNING_RATE;
+            mBatchSize = DEFAULT_BATCH_SIZE;
+            mThreads = DEFAULT_THREADS;
+            mPrecision = Precision.DOUBLE;
         }
         
         /**
          * Alternate constructor to build a neural network with a DataSet 
-         * instead of inputs and outputs.
+         * instead of inputs and outputs. If the output layer has more than 
+         * one node, but the DataSet has a single truth column, the truth 
+         * values are taken to be class numbers, and are expanded into one
+         * column per class. When the DataSet is a view, the trainer reads 
+         * the rows of the view straight from the matrices behind it, so the
+         * rows are only copied as they are loaded into the network. The 
+         * samples of a single precision DataSet stay in single precision.
          * 
          * @param layerSizes the sizes of each of the network layers
          * @param trainingData the training data set to use
          */
         public Builder(List<Integer> layerSizes, DataSet trainingData) {
-            this(layerSizes, trainingData.getSamples(), trainingData.getTruth());
+            this(layerSizes, trainingData.getBackingSamples(), 
+                    expectedValues(trainingData.getBackingTruth(), layerSizes.get(layerSizes.size() - 1)));
+            mFloatInputs = trainingData.getBackingFloatSamples();
+            mRows = trainingData.getRowIndices();
+        }
+        
+        /**
+         * Returns the expected values for the output layer from the truth
+         * values of a DataSet.
+         * 
+         * @param truth the truth values of the training data
+         * @param outputs the number of nodes in the output layer
+         * @return the expected values of the output layer
+         */
+        private static DoubleMatrix expectedValues(DoubleMatrix truth, int outputs) {
+            if (outputs > 1 && truth.columns == 1) {
+                return DataSet.oneHot(truth, outputs);
+            }
+            return truth;
         }
         
         /**
@@ -90,7 +161,8 @@ public class Trainer {
         
         /**
          * Sets the learning rate at which the algorithm will adjust the
-         * theta parameters for learning. Default 0.1.
+         * theta parameters for learning. Default 0.01. Only used when no
+         * optimizer is specified.
          * 
          * @param learningRate the learning rate to use
          * @return the builder for the trainer
@@ -111,6 +183,31 @@ public class Trainer {
             return this;
         }
         
+        /**
+         * Sets the activation function for the hidden layers of the network.
+         * The output layer keeps the function set by activationFunction, or
+         * the Sigmoid if none was set.
+         * 
+         * @param activationFunction the activation function to use
+         * @return the builder for the trainer
+         */
+        public Builder hiddenActivationFunction(IActivationFunction activationFunction) {
+            mHiddenActivationFunction = activationFunction;
+            return this;
+        }
+        
+        /**
+         * Sets the activation function for the output layer of the network,
+         * such as a Softmax to classify samples into several classes.
+         * 
+         * @param activationFunction the activation function to use
+         * @return the builder for the trainer
+         */
+        public Builder outputActivationFunction(IActivationFunction activationFunction) {
+            mOutputActivationFunction = activationFunction;
+            return this;
+        }
+        
         /**
          * Sets the maximum number of iterations to use during the training
          * process. Defaults to 500.
@@ -147,6 +244,116 @@ public class Trainer {
             return this;
         }
         
+        /**
+         * Sets how many iterations pass between recorded costs, when costs
+         * are recorded. The cost is only computed on iterations where it is
+         * recorded or shown in a heartbeat, and a single value is used for
+         * both. Defaults to 1, which records the cost of every iteration.
+         * 
+         * @param iterations the number of iterations between recorded costs
+         * @return the builder for the trainer
+         */
+        public Builder costInterval(int iterations) {
+            if (iterations < 1) {
+                throw new IllegalArgumentException("cost interval must be at least 1");
+            }
+            mCostInterval = iterations;
+            return this;
+        }
+        
+        /**
+         * Sets the number of samples in each mini-batch. When set, each 
+         * iteration becomes an epoch: the training data is shuffled, and 
+         * then fed through the network one batch at a time, with the thetas
+         * adjusted after every batch. Defaults to 0, which trains on the 
+         * full batch of inputs at every iteration.
+         * 
+         * @param batchSize the number of samples in each mini-batch
+         * @return the builder for the trainer
+         */
+        public Builder batchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+        
+        /**
+         * Sets the optimizer used to adjust the thetas after each batch. An
+         * optimizer keeps its own state for the thetas it adjusts, so a new
+         * optimizer should be used for every trainer. Defaults to a 
+         * SignDescent optimizer that uses the learning rate.
+         * 
+         * @param optimizer the optimizer to use
+         * @return the builder for the trainer
+         */
+        public Builder optimizer(IOptimizer optimizer) {
+            mOptimizer = optimizer;
+            return this;
+        }
+        
+        /**
+         * Sets the number of threads used to compute the gradients. When 
+         * more than one thread is used, each batch is split into that many
+         * shards, and forward and back propagation run on each shard at the
+         * same time. The gradients of the shards are always added together 
+         * in the same order, so the result does not depend on how the 
+         * threads are scheduled. Defaults to 1.
+         * 
+         * @param threads the number of threads to use
+         * @return the builder for the trainer
+         */
+        public Builder threads(int threads) {
+            mThreads = threads;
+            return this;
+        }
+        
+        /**
+         * Sets whether the trainer uses Hogwild style asynchronous training.
+         * The inputs are shuffled and split between the threads, and each 
+         * thread then trains on its own part in mini-batches, applying its 
+         * updates directly to the shared thetas without any locking. Each 
+         * iteration is an epoch over a thread's part of the inputs. Costs 
+         * are not recorded for each iteration in this mode, but the final
+         * cost and the throughput of each thread are available after 
+         * training. Needs an optimizer that keeps no state, such as 
+         * SignDescent or GradientDescent, since the threads update through
+         * the same optimizer at once - build throws an 
+         * IllegalArgumentException otherwise. Defaults to false.
+         * 
+         * @param hogwild whether to use asynchronous training
+         * @return the builder for the trainer
+         */
+        public Builder hogwild(boolean hogwild) {
+            mHogwild = hogwild;
+            return this;
+        }
+        
+        /**
+         * Sets the precision that the network uses for its activations, 
+         * deltas and matrix products during training. Rows are converted to
+         * single precision as they are loaded into the network, so the 
+         * training inputs themselves are not copied. Defaults to double 
+         * precision.
+         * 
+         * @param precision the precision to use
+         * @return the builder for the trainer
+         */
+        public Builder precision(Precision precision) {
+            mPrecision = precision;
+            return this;
+        }
+        
+        /**
+         * Sets the linear algebra backend that the network uses for its 
+         * matrix products. Defaults to the backend chosen by Backends.
+         * 
+         * @param backend the backend to use
+         * @return the builder for the trainer
+         */
+        public Builder backend(IBackend backend) {
+            mBackend = backend;
+            return this;
+        }
+        
         /**
          * Builds the trainer for the neural network and trains the neural
          * network.
@@ -164,81 +371,469 @@ public class Trainer {
      * @param builder the trainer builder
      */
     private Trainer(Builder builder) {
+        mInputs = builder.mInputs;
+        mFloatInputs = builder.mFloatInputs;
+        mOutputs = builder.mOutputs;
+        mRows = (builder.mRows != null) ? builder.mRows.clone() : identity(mInputs.rows);
+        mBatchSize = builder.mBatchSize;
+        mThreads = builder.mThreads;
+        mHogwild = builder.mHogwild;
         NeuralNetwork.Builder nnBuilder = new NeuralNetwork
                 .Builder(builder.mLayerSizes)
-                .inputs(builder.mInputs)
-                .expectedValues(builder.mOutputs)
-                .lambda(builder.mLambda);
+                .lambda(builder.mLambda)
+                .precision(builder.mPrecision)
+                .backend(builder.mBackend);
         
         if (builder.mActivationFunction != null) {
             nnBuilder = nnBuilder.activationFunction(builder.mActivationFunction);
         }
         
+        if (builder.mHiddenActivationFunction != null) {
+            nnBuilder = nnBuilder.hiddenActivationFunction(builder.mHiddenActivationFunction);
+        }
+        
+        if (builder.mOutputActivationFunction != null) {
+            nnBuilder = nnBuilder.outputActivationFunction(builder.mOutputActivationFunction);
+        }
+        
         mNeuralNetwork = nnBuilder.build();
-        mLearningRate = builder.mLearningRate;
+        mOptimizer = (builder.mOptimizer != null) ? builder.mOptimizer : new SignDescent(builder.mLearningRate);
+        if (mHogwild && !mOptimizer.isStateless()) {
+            throw new IllegalArgumentException("Hogwild training needs an optimizer that keeps no state, such as SignDescent or GradientDescent");
+        }
+        mOptimizer.initialize(mNeuralNetwork.getThetas());
         mRecordCosts = builder.mRecordCosts;
         mMaxIterations = builder.mMaxIterations;
         mHeartBeat = builder.mHeartBeat;
+        mCostInterval = builder.mCostInterval;
         mCosts = new ArrayList<Double>();
+        mThroughputs = new ArrayList<Double>();
+        mRandom = new Random();
+    }
+    
+    /**
+     * Returns true if the trainer feeds the inputs through the network in
+     * mini-batches, rather than as one full batch.
+     * 
+     * @return true if training uses mini-batches
+     */
+    private boolean isMiniBatch() {
+        return mBatchSize > 0 && mBatchSize < mRows.length;
+    }
+    
+    /**
+     * Returns true if the trainer computes the gradients on more than one
+     * thread.
+     * 
+     * @return true if training is data-parallel
+     */
+    private boolean isParallel() {
+        return mThreads > 1;
+    }
+    
+    /**
+     * Returns true if the cost at the end of the specified iteration should
+     * be recorded.
+     * 
+     * @param iteration the iteration, starting from 0
+     * @return true if the cost should be recorded
+     */
+    private boolean isRecordIteration(int iteration) {
+        return mRecordCosts && (iteration + 1) % mCostInterval == 0;
+    }
+    
+    /**
+     * Returns true if a heartbeat should be shown at the end of the 
+     * specified iteration.
+     * 
+     * @param iteration the iteration, starting from 0
+     * @return true if a heartbeat should be shown
+     */
+    private boolean isHeartBeatIteration(int iteration) {
+        return mHeartBeat > 0 && (iteration + 1) % mHeartBeat == 0;
+    }
+    
+    /**
+     * Returns true if the cost needs to be computed for the specified 
+     * iteration, either to record it or to show it in a heartbeat.
+     * 
+     * @param iteration the iteration, starting from 0
+     * @return true if the cost should be computed
+     */
+    private boolean isCostIteration(int iteration) {
+        return isRecordIteration(iteration) || isHeartBeatIteration(iteration);
+    }
+    
+    /**
+     * Records the cost of the specified iteration and shows it in a 
+     * heartbeat, for whichever of the two are due on that iteration.
+     * 
+     * @param iteration the iteration, starting from 0
+     * @param cost the cost of the iteration
+     */
+    private void reportCost(int iteration, double cost) {
+        if (isRecordIteration(iteration)) {
+            mCosts.add(cost);
+        }
+        if (isHeartBeatIteration(iteration)) {
+            System.out.println("Iteration: " + (iteration + 1) + ", Cost: " + cost);
+        }
     }
     
     /**
-     * Trains the neural network.
+     * Trains the neural network. Once training is complete, the cost over 
+     * all of the inputs is computed, along with the throughput of training.
      */
     public void train() {
-        int beat = 0;
+        long startTime = System.nanoTime();
+        if (mHogwild) {
+            trainHogwild();
+        } else {
+            if (isParallel()) {
+                trainParallel();
+            } else if (isMiniBatch()) {
+                trainMiniBatch();
+            } else {
+                trainFullBatch();
+            }
+            double seconds = (System.nanoTime() - startTime) / 1.0e9;
+            mThroughputs.add(((double)mRows.length * mMaxIterations) / seconds);
+        }
+        mFinalCost = computeFinalCost();
+    }
+    
+    /**
+     * Trains the neural network on the full batch of inputs at every 
+     * iteration. The rows are gathered into the workspace once, and every
+     * iteration reuses them.
+     */
+    private void trainFullBatch() {
+        Workspace workspace = loadAllRows();
         
         for (int iteration = 0; iteration < mMaxIterations; iteration++) {
-            mNeuralNetwork.forwardPropagation();
-            mNeuralNetwork.backPropagation();
+            mNeuralNetwork.forwardPropagation(workspace);
+            mNeuralNetwork.backPropagation(workspace, workspace.getExpected());
             
-            if (mRecordCosts) {
-                mCosts.add(mNeuralNetwork.getCost());
+            if (isCostIteration(iteration)) {
+                reportCost(iteration, mNeuralNetwork.getCost(workspace, workspace.getExpected()));
             }
             
-            beat++;
-
-            if (beat == mHeartBeat && mHeartBeat != 0) {
-                System.out.println("Iteration: " + (iteration + 1) + ", Cost: " + mNeuralNetwork.getCost());
-                beat = 0;
+            adjustThetas(workspace);
+        }
+    }
+    
+    /**
+     * Trains the neural network with mini-batch gradient descent. Each 
+     * iteration is an epoch over the inputs. The order of the rows is 
+     * shuffled at the start of every epoch, and each batch is gathered 
+     * directly from the inputs into a preallocated workspace. When the batch
+     * size does not evenly divide the number of inputs, the remaining rows 
+     * form a smaller final batch with its own workspace. The cost recorded
+     * for an epoch is the average cost of its batches, with the regularization
+     * of the thetas added once.
+     */
+    private void trainMiniBatch() {
+        int numInputs = mRows.length;
+        int [] order = mRows.clone();
+        
+        Workspace batchWorkspace = mNeuralNetwork.createWorkspace(mBatchSize);
+        Workspace remainderWorkspace = null;
+        if (numInputs % mBatchSize != 0) {
+            remainderWorkspace = mNeuralNetwork.createWorkspace(numInputs % mBatchSize);
+        }
+        
+        for (int iteration = 0; iteration < mMaxIterations; iteration++) {
+            boolean computeCost = isCostIteration(iteration);
+            double cost = 0.0;
+            shuffle(order, mRandom);
+            
+            for (int start = 0; start < numInputs; start += mBatchSize) {
+                Workspace workspace = (start + mBatchSize <= numInputs) ? batchWorkspace : remainderWorkspace;
+                loadBatch(workspace, order, start);
+                mNeuralNetwork.forwardPropagation(workspace);
+                mNeuralNetwork.backPropagation(workspace, workspace.getExpected());
+                
+                if (computeCost) {
+                    cost += mNeuralNetwork.getCostNoRegularization(workspace, workspace.getExpected()) * workspace.getRows();
+                }
+                
+                adjustThetas(workspace);
             }
             
-            adjustThetas();
+            if (computeCost) {
+                reportCost(iteration, (cost / numInputs) + mNeuralNetwork.getThetaRegularization(numInputs));
+            }
         }
     }
     
     /**
-     * Loop through all of the thetas in the neural network and adjust them so 
-     * that they are always approaching zero.
+     * Trains the neural network with each batch split into shards that are
+     * propagated on a pool of worker threads. Works with both full batch and
+     * mini-batch training. For full batch training, the inputs are loaded 
+     * into the shards once, and every iteration reuses them. For mini-batch
+     * training, each iteration is an epoch over shuffled inputs, as it is in 
+     * trainMiniBatch.
      */
-    private void adjustThetas() {
-        List<DoubleMatrix> newThetas = new ArrayList<DoubleMatrix>();
-        List<DoubleMatrix> thetas = mNeuralNetwork.getThetas();
+    private void trainParallel() {
+        int numInputs = mRows.length;
+        int batchSize = isMiniBatch() ? mBatchSize : numInputs;
+        int [] order = mRows.clone();
         
-        for (int index = 0; index < thetas.size(); index++) {
-            DoubleMatrix gradients = mNeuralNetwork.getThetaGradient(index);
-            DoubleMatrix theta = mNeuralNetwork.getTheta(index);
-            DoubleMatrix newTheta = new DoubleMatrix(theta.rows, theta.columns);
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        try {
+            ShardedBatch batch = new ShardedBatch(mNeuralNetwork, batchSize, mThreads, executor);
+            ShardedBatch remainder = null;
+            if (numInputs % batchSize != 0) {
+                remainder = new ShardedBatch(mNeuralNetwork, numInputs % batchSize, mThreads, executor);
+            }
+            
+            if (!isMiniBatch()) {
+                loadBatch(batch, order, 0);
+            }
             
-            for (int row = 0; row < theta.rows; row++) {
-                for (int col = 0; col < theta.columns; col++) {
-                    double gradient = gradients.get(row, col);
-                    double value = theta.get(row, col);
-                    if (gradient > 0) {
-                        value -= mLearningRate;
-                    } else {
-                        value += mLearningRate;
+            for (int iteration = 0; iteration < mMaxIterations; iteration++) {
+                boolean computeCost = isCostIteration(iteration);
+                double cost = 0.0;
+                if (isMiniBatch()) {
+                    shuffle(order, mRandom);
+                }
+                
+                for (int start = 0; start < numInputs; start += batchSize) {
+                    ShardedBatch shards = (start + batchSize <= numInputs) ? batch : remainder;
+                    if (isMiniBatch()) {
+                        loadBatch(shards, order, start);
                     }
-                    newTheta.put(row, col, value);
+                    cost += shards.propagate(computeCost);
+                    adjustThetas(shards.getGradients());
+                }
+                
+                if (computeCost) {
+                    reportCost(iteration, (cost / numInputs) + mNeuralNetwork.getThetaRegularization(numInputs));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Trains the neural network with Hogwild style asynchronous gradient 
+     * descent. The inputs are shuffled once and split between the threads.
+     * Each thread then runs its own epochs over its part of the inputs, and
+     * adjusts the shared thetas in place after every mini-batch without 
+     * taking any locks. The throughput of each thread is recorded when it
+     * finishes.
+     */
+    private void trainHogwild() {
+        int numInputs = mRows.length;
+        int threads = Math.min(Math.max(mThreads, 1), numInputs);
+        int [] order = mRows.clone();
+        shuffle(order, mRandom);
+        
+        List<Callable<Double>> workers = new ArrayList<Callable<Double>>();
+        for (int thread = 0; thread < threads; thread++) {
+            int start = (int)(((long)thread * numInputs) / threads);
+            int end = (int)(((long)(thread + 1) * numInputs) / threads);
+            workers.add(new HogwildWorker(thread, Arrays.copyOfRange(order, start, end), mRandom.nextLong()));
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Double> future : executor.invokeAll(workers)) {
+                mThroughputs.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("could not train", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * A single thread of Hogwild training. Holds its own part of the inputs,
+     * its own workspaces, and its own random number generator, and shares
+     * only the thetas and the optimizer with the other threads. Returns the
+     * number of samples it processed per second. The heartbeat shows the 
+     * cost of the last mini-batch of the first thread, since computing the
+     * cost over all of the inputs would stall that thread.
+     */
+    private class HogwildWorker implements Callable<Double> {
+        
+        private final int mThread;
+        private final int [] mOrder;
+        private final Random mWorkerRandom;
+        
+        /**
+         * Creates a new worker that trains on the specified rows.
+         * 
+         * @param thread the number of the thread
+         * @param order the rows of the inputs that the worker trains on
+         * @param seed the seed for the worker's random number generator
+         */
+        public HogwildWorker(int thread, int [] order, long seed) {
+            mThread = thread;
+            mOrder = order;
+            mWorkerRandom = new Random(seed);
+        }
+        
+        @Override
+        public Double call() {
+            int numInputs = mOrder.length;
+            int batchSize = (mBatchSize > 0 && mBatchSize < numInputs) ? mBatchSize : numInputs;
+            Workspace batchWorkspace = mNeuralNetwork.createWorkspace(batchSize);
+            Workspace remainderWorkspace = null;
+            if (numInputs % batchSize != 0) {
+                remainderWorkspace = mNeuralNetwork.createWorkspace(numInputs % batchSize);
+            }
+            
+            long startTime = System.nanoTime();
+            for (int iteration = 0; iteration < mMaxIterations; iteration++) {
+                shuffle(mOrder, mWorkerRandom);
+                Workspace workspace = null;
+                for (int start = 0; start < numInputs; start += batchSize) {
+                    workspace = (start + batchSize <= numInputs) ? batchWorkspace : remainderWorkspace;
+                    loadBatch(workspace, mOrder, start);
+                    mNeuralNetwork.forwardPropagation(workspace);
+                    mNeuralNetwork.backPropagation(workspace, workspace.getExpected());
+                    adjustThetas(workspace);
+                }
+                
+                if (mThread == 0 && isHeartBeatIteration(iteration)) {
+                    System.out.println("Iteration: " + (iteration + 1) + ", Batch Cost: " + mNeuralNetwork.getCost(workspace, workspace.getExpected()));
                 }
-            }  
-            newThetas.add(newTheta);
+            }
+            double seconds = (System.nanoTime() - startTime) / 1.0e9;
+            return ((double)numInputs * mMaxIterations) / seconds;
+        }
+    }
+    
+    /**
+     * Computes the cost of the trained network over all of the inputs.
+     * 
+     * @return the cost of the network
+     */
+    private double computeFinalCost() {
+        Workspace workspace = mNeuralNetwork.getWorkspace();
+        if (workspace == null || workspace.getRows() != mRows.length) {
+            workspace = loadAllRows();
         }
-        mNeuralNetwork.setThetas(newThetas);
+        mNeuralNetwork.forwardPropagation(workspace);
+        return mNeuralNetwork.getCost(workspace, workspace.getExpected());
     }
     
     /**
-     * Returns the neural network.
+     * Gathers all of the training rows into a new workspace, and gives it
+     * to the network as its own, so that the network holds its training 
+     * inputs just as one built with them would.
+     * 
+     * @return the workspace holding all of the rows
+     */
+    private Workspace loadAllRows() {
+        Workspace workspace = mNeuralNetwork.createWorkspace(mRows.length);
+        loadBatch(workspace, mRows, 0);
+        mNeuralNetwork.setWorkspace(workspace, workspace.getExpected());
+        return workspace;
+    }
+    
+    /**
+     * Gathers the specified rows of the inputs and outputs into a workspace,
+     * from whichever precision the inputs are kept in.
+     * 
+     * @param workspace the workspace to load
+     * @param indices the row indices to load, in order
+     * @param start the position in indices of the first row to load
+     */
+    private void loadBatch(Workspace workspace, int [] indices, int start) {
+        if (mFloatInputs != null) {
+            workspace.loadBatch(mFloatInputs, mOutputs, indices, start);
+        } else {
+            workspace.loadBatch(mInputs, mOutputs, indices, start);
+        }
+    }
+    
+    /**
+     * Gathers the specified rows of the inputs and outputs into the shards
+     * of a batch, from whichever precision the inputs are kept in.
+     * 
+     * @param shards the sharded batch to load
+     * @param indices the row indices to load, in order
+     * @param start the position in indices of the first row of the batch
+     */
+    private void loadBatch(ShardedBatch shards, int [] indices, int start) {
+        if (mFloatInputs != null) {
+            shards.loadBatch(mFloatInputs, mOutputs, indices, start);
+        } else {
+            shards.loadBatch(mInputs, mOutputs, indices, start);
+        }
+    }
+    
+    /**
+     * Returns the row indices from 0 to count - 1 in order.
+     * 
+     * @param count the number of rows
+     * @return the array of row indices
+     */
+    private static int [] identity(int count) {
+        int [] rows = new int [count];
+        for (int index = 0; index < count; index++) {
+            rows[index] = index;
+        }
+        return rows;
+    }
+    
+    /**
+     * Shuffles the specified row order in place with a Fisher-Yates shuffle.
+     * 
+     * @param order the row order to shuffle
+     * @param random the random number generator to use
+     */
+    private static void shuffle(int [] order, Random random) {
+        for (int index = order.length - 1; index > 0; index--) {
+            int swap = random.nextInt(index + 1);
+            int temp = order[index];
+            order[index] = order[swap];
+            order[swap] = temp;
+        }
+    }
+    
+    /**
+     * Loop through all of the thetas in the neural network and let the 
+     * optimizer adjust them in place using their gradients. The network is
+     * then told that its thetas changed, so that a single precision network
+     * narrows them once for the next batch.
+     * 
+     * @param workspace the workspace that holds the current deltas
+     */
+    private void adjustThetas(Workspace workspace) {
+        List<DoubleMatrix> thetas = mNeuralNetwork.getThetas();
+        for (int index = 0; index < thetas.size(); index++) {
+            DoubleMatrix gradient = mNeuralNetwork.getThetaGradient(workspace, index);
+            mOptimizer.update(index, thetas.get(index), gradient);
+        }
+        mNeuralNetwork.thetasChanged();
+    }
+    
+    /**
+     * Loop through all of the thetas in the neural network and let the 
+     * optimizer adjust them in place using the specified gradients.
+     * 
+     * @param gradients the gradients of each theta
+     */
+    private void adjustThetas(DoubleMatrix [] gradients) {
+        List<DoubleMatrix> thetas = mNeuralNetwork.getThetas();
+        for (int index = 0; index < thetas.size(); index++) {
+            mOptimizer.update(index, thetas.get(index), gradients[index]);
+        }
+        mNeuralNetwork.thetasChanged();
+    }
+    
+    /**
+     * Returns the neural network. Once training is complete, the network
+     * holds all of the training rows, so getCost and the other methods 
+     * that do not take a workspace work on the training data.
      * 
      * @return the neural network
      */
@@ -247,7 +842,8 @@ public class Trainer {
     }
     
     /**
-     * Returns the costs associated with each iteration of training.
+     * Returns the costs recorded during training, one for every cost 
+     * interval iterations.
      * 
      * @return the list of training costs
      */
@@ -255,4 +851,25 @@ public class Trainer {
         return mCosts;
     }
     
+    /**
+     * Returns the number of samples processed per second during training. 
+     * Hogwild training has one entry for each thread, all other training
+     * modes have a single entry.
+     * 
+     * @return the list of training throughputs
+     */
+    public List<Double> getThroughputs() {
+        return mThroughputs;
+    }
+    
+    /**
+     * Returns the cost of the network over all of the inputs once training
+     * is complete.
+     * 
+     * @return the final training cost
+     */
+    public double getFinalCost() {
+        return mFinalCost;
+    }
+    
 }
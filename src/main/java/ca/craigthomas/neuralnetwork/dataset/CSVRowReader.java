@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads rows of numbers from a CSV source one row at a time. The bytes are
+ * read through a fixed size buffer, and each field is parsed straight into
+ * a reused array of doubles, so reading a file of any size only needs a
+ * constant amount of memory beyond what the caller does with the rows.
+ *
+ * Fields are separated by commas and rows by newlines, with an optional
+ * carriage return before each newline. Double quotes around a field are
+ * removed, and blank lines are skipped. Fields that are not numbers cause
+ * a NumberFormatException.
+ *
+ * @author thomas
+ */
+public class CSVRowReader implements Closeable {
+
+    // The number of bytes read from the channel at a time
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    // The largest mantissa that a double holds exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // The powers of ten that a double holds exactly
+    private static final double [] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ReadableByteChannel mChannel;
+    private final ByteBuffer mBuffer;
+    private byte [] mField;
+    private int mFieldLength;
+    private double [] mRow;
+    private int mColumns;
+
+    /**
+     * Creates a reader that reads its bytes from the specified channel.
+     *
+     * @param channel the channel to read from
+     */
+    public CSVRowReader(ReadableByteChannel channel) {
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        mBuffer.flip();
+        mField = new byte [32];
+        mRow = new double [16];
+    }
+
+    /**
+     * Creates a reader that reads the remaining bytes of the specified
+     * buffer, such as part of a memory-mapped file. The position of the
+     * buffer moves as rows are read.
+     *
+     * @param buffer the buffer to read from
+     */
+    public CSVRowReader(ByteBuffer buffer) {
+        mChannel = null;
+        mBuffer = buffer;
+        mField = new byte [32];
+        mRow = new double [16];
+    }
+
+    /**
+     * Reads the next row. Returns false once there are no rows left.
+     *
+     * @return true if a row was read
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        return advance(true);
+    }
+
+    /**
+     * Moves past the next row without parsing any of its values, so that
+     * the rows of a source can be counted cheaply. Returns false once there
+     * are no rows left.
+     *
+     * @return true if a row was skipped
+     * @throws IOException
+     */
+    public boolean skip() throws IOException {
+        return advance(false);
+    }
+
+    /**
+     * Moves past the next row, parsing its values if asked to. Returns 
+     * false once there are no rows left.
+     *
+     * @param parse whether to parse the values of the row
+     * @return true if there was a row
+     * @throws IOException
+     */
+    private boolean advance(boolean parse) throws IOException {
+        mColumns = 0;
+        mFieldLength = 0;
+        boolean inRow = false;
+        boolean quoted = false;
+        while (mBuffer.hasRemaining() || fill()) {
+            byte value = mBuffer.get();
+            if (value == '"') {
+                quoted = !quoted;
+                inRow = true;
+            } else if (quoted) {
+                if (parse) {
+                    appendToField(value);
+                }
+            } else if (value == ',') {
+                if (parse) {
+                    endField();
+                }
+                inRow = true;
+            } else if (value == '\n') {
+                if (inRow) {
+                    if (parse) {
+                        endRow();
+                    }
+                    return true;
+                }
+            } else if (value != '\r') {
+                if (parse) {
+                    appendToField(value);
+                }
+                inRow = true;
+            }
+        }
+        if (inRow) {
+            if (parse) {
+                endRow();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the values of the row that was last read. The array is
+     * reused for the next row, unless the next row has a different number
+     * of values.
+     *
+     * @return the values of the current row
+     */
+    public double [] getRow() {
+        return mRow;
+    }
+
+    /**
+     * Returns the number of values in the row that was last read.
+     *
+     * @return the number of values in the current row
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mChannel != null) {
+            mChannel.close();
+        }
+    }
+
+    /**
+     * Reads more bytes from the channel into the buffer. Returns false when
+     * there are no more bytes to read.
+     *
+     * @return true if there are more bytes in the buffer
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (mChannel == null) {
+            return false;
+        }
+        mBuffer.clear();
+        int read = 0;
+        while (read == 0) {
+            read = mChannel.read(mBuffer);
+        }
+        mBuffer.flip();
+        return read > 0;
+    }
+
+    /**
+     * Adds a byte to the end of the current field.
+     *
+     * @param value the byte to add
+     */
+    private void appendToField(byte value) {
+        if (mFieldLength == mField.length) {
+            mField = Arrays.copyOf(mField, mField.length * 2);
+        }
+        mField[mFieldLength++] = value;
+    }
+
+    /**
+     * Parses the current field into the next value of the row.
+     */
+    private void endField() {
+        if (mColumns == mRow.length) {
+            mRow = Arrays.copyOf(mRow, mRow.length * 2);
+        }
+        mRow[mColumns++] = parseDouble(mField, 0, mFieldLength);
+        mFieldLength = 0;
+    }
+
+    /**
+     * Parses the last field of the row, and trims the row array to the
+     * number of values in the row.
+     */
+    private void endRow() {
+        endField();
+        if (mRow.length != mColumns) {
+            mRow = Arrays.copyOf(mRow, mColumns);
+        }
+    }
+
+    /**
+     * Parses a decimal number from the ASCII bytes between start and end.
+     * Numbers with at most 15 significant digits and a small exponent are
+     * parsed directly, which gives the exact same result as
+     * Double.parseDouble, since both the digits and the power of ten are
+     * held exactly by a double. Anything else, including NaN and Infinity,
+     * is handed to Double.parseDouble.
+     *
+     * @param bytes the array that holds the number
+     * @param start the index of the first byte of the number
+     * @param end the index after the last byte of the number
+     * @return the value of the number
+     */
+    public static double parseDouble(byte [] bytes, int start, int end) {
+        while (start < end && (bytes[start] == ' ' || bytes[start] == '\t')) {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t')) {
+            end--;
+        }
+        int index = start;
+        boolean negative = false;
+        if (index < end && (bytes[index] == '-' || bytes[index] == '+')) {
+            negative = bytes[index] == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        int significant = 0;
+        while (index < end && bytes[index] >= '0' && bytes[index] <= '9') {
+            mantissa = addDigit(mantissa, bytes[index], significant);
+            significant += (mantissa == 0) ? 0 : 1;
+            digits++;
+            index++;
+        }
+        if (index < end && bytes[index] == '.') {
+            index++;
+            while (index < end && bytes[index] >= '0' && bytes[index] <= '9') {
+                mantissa = addDigit(mantissa, bytes[index], significant);
+                significant += (mantissa == 0) ? 0 : 1;
+                exponent--;
+                digits++;
+                index++;
+            }
+        }
+        if (digits > 0 && index < end && (bytes[index] == 'e' || bytes[index] == 'E')) {
+            index++;
+            boolean negativeExponent = false;
+            if (index < end && (bytes[index] == '-' || bytes[index] == '+')) {
+                negativeExponent = bytes[index] == '-';
+                index++;
+            }
+            int exponentStart = index;
+            int value = 0;
+            while (index < end && bytes[index] >= '0' && bytes[index] <= '9' && index - exponentStart < 4) {
+                value = (value * 10) + (bytes[index] - '0');
+                index++;
+            }
+            if (index == exponentStart) {
+                digits = 0;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (digits == 0 || index != end || significant > 15 || mantissa >= MAX_EXACT_MANTISSA
+                || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+        }
+        double result = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -result : result;
+    }
+
+    /**
+     * Adds a decimal digit to the end of a mantissa, unless the mantissa
+     * already has too many significant digits to be parsed directly.
+     *
+     * @param mantissa the mantissa so far
+     * @param digit the ASCII digit to add
+     * @param significant the number of significant digits so far
+     * @return the new mantissa
+     */
+    private static long addDigit(long mantissa, byte digit, int significant) {
+        if (significant > 15) {
+            return mantissa;
+        }
+        return (mantissa * 10) + (digit - '0');
+    }
+}
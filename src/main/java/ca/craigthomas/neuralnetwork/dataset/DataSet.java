@@ -7,21 +7,40 @@ package ca.craigthomas.neuralnetwork.dataset;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.logging.Logger;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 
 import ca.craigthomas.neuralnetwork.commandline.Runner;
+import ca.craigthomas.neuralnetwork.components.network.Precision;
 
 /**
  * The DataSet class is used to read data from various sources. The DataSet
  * class keeps track of two types of data: the actual example inputs called
  * Samples, and their optional output labels called Truth. 
  * 
+ * Rows that are added one at a time are collected in growable row buffers,
+ * and are only turned into the Samples and Truth matrices the next time 
+ * the matrices are needed, so that adding N rows takes time in proportion
+ * to N rather than N squared.
+ * 
+ * A DataSet may also be a view of the rows of another DataSet. A view 
+ * shares the Samples and Truth matrices of the DataSet it was made from,
+ * and keeps only a list of row indices into them, so that shuffling and 
+ * splitting move indices around rather than copying rows. The rows of a 
+ * view are only gathered into matrices of their own when they are asked 
+ * for, or when rows are added to the view.
+ * 
+ * A DataSet built with single precision keeps its Samples in a FloatMatrix
+ * instead, which halves the memory they take. The Truth is always kept in
+ * double precision.
+ * 
  * @author thomas
  */
 public class DataSet {
@@ -30,8 +49,18 @@ public class DataSet {
     private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
 
     private DoubleMatrix mSamples;
+    // The Samples of a single precision DataSet, which has no double 
+    // precision Samples
+    private FloatMatrix mFloatSamples;
     private DoubleMatrix mTruth;
+    private RowBuffer mSampleBuffer;
+    private RowBuffer mTruthBuffer;
+    private int [] mRows;
+    private DoubleMatrix mViewSamples;
+    private FloatMatrix mViewFloatSamples;
+    private DoubleMatrix mViewTruth;
     private final boolean sHasTruth;
+    private final Precision mPrecision;
     private Random mRandom;
     
     /**
@@ -43,10 +72,30 @@ public class DataSet {
      */
     public DataSet(boolean hasTruth, DoubleMatrix samples, DoubleMatrix truth)
     {
+        this(hasTruth, Precision.DOUBLE);
         mSamples = samples;
         mTruth = truth;
-        sHasTruth = hasTruth;
-        mRandom = new Random();
+    }
+    
+    /**
+     * Generates a new view of the specified rows of the samples and truth.
+     * The matrices are shared, not copied. Only one of the double and 
+     * single precision samples is set, depending on the precision.
+     * 
+     * @param hasTruth whether the true values are known for the class
+     * @param precision the precision of the samples
+     * @param samples the double precision samples to view
+     * @param floatSamples the single precision samples to view
+     * @param truth the truth values to view
+     * @param rows the indices of the rows in the view, or null for all rows
+     */
+    private DataSet(boolean hasTruth, Precision precision, DoubleMatrix samples, 
+            FloatMatrix floatSamples, DoubleMatrix truth, int [] rows) {
+        this(hasTruth, precision);
+        mSamples = samples;
+        mFloatSamples = floatSamples;
+        mTruth = truth;
+        mRows = rows;
     }
     
     /**
@@ -56,38 +105,162 @@ public class DataSet {
      * @param hasTruth whether the Samples have ground truth information
      */
     public DataSet(boolean hasTruth) {
+        this(hasTruth, Precision.DOUBLE);
+    }
+    
+    /**
+     * Builds an empty DataSet that keeps its Samples in the specified 
+     * precision. If hasTruth is set to true, then the class will expect 
+     * ground truth to be passed in with the data.
+     * 
+     * @param hasTruth whether the Samples have ground truth information
+     * @param precision the precision to keep the Samples in
+     */
+    public DataSet(boolean hasTruth, Precision precision) {
         sHasTruth = hasTruth;
+        mPrecision = precision;
         mRandom = new Random();
     }
     
     /**
-     * Returns the Samples.
+     * Returns the precision that the Samples are kept in.
+     * 
+     * @return the precision of the Samples
+     */
+    public Precision getPrecision() {
+        return mPrecision;
+    }
+    
+    /**
+     * Returns true if the Samples are kept in single precision.
+     * 
+     * @return true for a single precision DataSet
+     */
+    public boolean isFloat() {
+        return mPrecision == Precision.FLOAT;
+    }
+    
+    /**
+     * Returns the Samples. For a view, the rows are gathered into a new 
+     * matrix the first time they are asked for after the view changes. For
+     * a single precision DataSet, the Samples are widened into a new matrix
+     * on every call, so use getFloatSamples where a FloatMatrix will do.
      * 
      * @return the Samples
      */
     public DoubleMatrix getSamples() {
-        return mSamples;
+        flushRows();
+        if (isFloat()) {
+            FloatMatrix samples = getFloatSamples();
+            return (samples == null) ? null : widen(samples);
+        }
+        if (mRows == null) {
+            return mSamples;
+        }
+        if (mViewSamples == null) {
+            mViewSamples = gatherRows(mSamples, mRows);
+        }
+        return mViewSamples;
+    }
+    
+    /**
+     * Returns the Samples of a single precision DataSet, or null for a 
+     * double precision one. For a view, the rows are gathered into a new 
+     * matrix the first time they are asked for after the view changes.
+     * 
+     * @return the single precision Samples
+     */
+    public FloatMatrix getFloatSamples() {
+        flushRows();
+        if (mRows == null || mFloatSamples == null) {
+            return mFloatSamples;
+        }
+        if (mViewFloatSamples == null) {
+            mViewFloatSamples = gatherRows(mFloatSamples, mRows);
+        }
+        return mViewFloatSamples;
     }
     
     /**
-     * Returns the ground truth.
+     * Returns the ground truth. For a view, the rows are gathered into a 
+     * new matrix the first time they are asked for after the view changes.
      * 
      * @return the ground truth
      */
     public DoubleMatrix getTruth() {
+        flushRows();
+        if (mRows == null || mTruth == null) {
+            return mTruth;
+        }
+        if (mViewTruth == null) {
+            mViewTruth = gatherRows(mTruth, mRows);
+        }
+        return mViewTruth;
+    }
+    
+    /**
+     * Returns the Samples matrix that the rows of the DataSet are taken 
+     * from. For a view, this is the matrix shared with the DataSet it was
+     * made from, and the rows of the view are the ones named by 
+     * getRowIndices. The matrix must not be modified. Returns null for a
+     * single precision DataSet.
+     * 
+     * @return the backing Samples
+     */
+    public DoubleMatrix getBackingSamples() {
+        flushRows();
+        return mSamples;
+    }
+    
+    /**
+     * Returns the single precision Samples matrix that the rows of the 
+     * DataSet are taken from, or null for a double precision DataSet. The
+     * matrix must not be modified.
+     * 
+     * @return the backing single precision Samples
+     */
+    public FloatMatrix getBackingFloatSamples() {
+        flushRows();
+        return mFloatSamples;
+    }
+    
+    /**
+     * Returns the ground truth matrix that the rows of the DataSet are 
+     * taken from. The matrix must not be modified.
+     * 
+     * @return the backing ground truth
+     */
+    public DoubleMatrix getBackingTruth() {
+        flushRows();
         return mTruth;
     }
     
+    /**
+     * Returns the indices of the rows of the DataSet in the backing Samples
+     * and Truth, in the order of the DataSet. The array is a copy, so it
+     * can be shuffled by the caller.
+     * 
+     * @return the row indices of the DataSet
+     */
+    public int [] getRowIndices() {
+        flushRows();
+        if (mRows != null) {
+            return mRows.clone();
+        }
+        return identity(getBackingRows());
+    }
+    
     /**
      * Get the number of columns in the Samples.
      * 
      * @return the number of columns in the Samples
      */
     public int getNumColsSamples() {
-        if (mSamples == null) {
+        flushRows();
+        if (getNumSamples() == 0) {
             return 0;
         }
-        return mSamples.columns;
+        return isFloat() ? mFloatSamples.columns : mSamples.columns;
     }
     
     /**
@@ -96,7 +269,8 @@ public class DataSet {
      * @return return the number of columns in the Truth data
      */
     public int getNumColsTruth() {
-        if (mTruth == null) {
+        flushRows();
+        if (mTruth == null || getNumSamples() == 0) {
             return 0;
         }
         return mTruth.columns;
@@ -108,10 +282,24 @@ public class DataSet {
      * @return the number of samples in the DataSet
      */
     public int getNumSamples() {
-        if (mSamples == null) {
-            return 0;
+        flushRows();
+        if (mRows != null) {
+            return mRows.length;
+        }
+        return getBackingRows();
+    }
+    
+    /**
+     * Returns the number of rows in the backing Samples, or 0 if there are
+     * none yet.
+     * 
+     * @return the number of rows in the backing Samples
+     */
+    private int getBackingRows() {
+        if (isFloat()) {
+            return (mFloatSamples == null) ? 0 : mFloatSamples.rows;
         }
-        return mSamples.rows;
+        return (mSamples == null) ? 0 : mSamples.rows;
     }
     
     /**
@@ -125,16 +313,105 @@ public class DataSet {
     }
     
     /**
-     * Reads samples from a CSV file, and adds them to the DataSet. If header
-     * is set (true), will ignore the first line of the file.
+     * Reads samples from a CSV file, and adds them to the DataSet. The rows
+     * of the file are counted first without parsing them, so that the 
+     * Samples and Truth matrices can be allocated at their final size. The
+     * file is then streamed one row at a time, and each value is written 
+     * straight into its place in the column-major matrices, in the 
+     * precision of the DataSet.
      * 
      * @param filename the name of the file to read from
-     * @param hasHeader whether the file has a header line
      * @throws IOException
      */
     public void addFromCSVFile(String filename) throws IOException {
-        List<List<Double>> data = DataSetReader.readCSVFile(filename);
-        addSamples(data);
+        int rows = DataSetReader.countCSVRows(filename);
+        if (rows == 0) {
+            return;
+        }
+        
+        DoubleMatrix samples = null;
+        FloatMatrix floatSamples = null;
+        DoubleMatrix truth = sHasTruth ? new DoubleMatrix(rows, 1) : null;
+        int sampleColumns = -1;
+        try (CSVRowReader reader = DataSetReader.openCSVFile(filename)) {
+            for (int row = 0; row < rows; row++) {
+                if (!reader.next()) {
+                    throw new IOException("[" + filename + "] changed while it was being read");
+                }
+                double [] values = reader.getRow();
+                int columns = sHasTruth ? reader.getColumns() - 1 : reader.getColumns();
+                if (sampleColumns < 0) {
+                    sampleColumns = columns;
+                    samples = isFloat() ? null : new DoubleMatrix(rows, sampleColumns);
+                    floatSamples = isFloat() ? new FloatMatrix(rows, sampleColumns) : null;
+                } else if (columns != sampleColumns) {
+                    throw new IllegalArgumentException("expected " + sampleColumns + " sample values, got " + columns);
+                }
+                if (isFloat()) {
+                    for (int col = 0; col < sampleColumns; col++) {
+                        floatSamples.data[(col * rows) + row] = (float) values[col];
+                    }
+                } else {
+                    for (int col = 0; col < sampleColumns; col++) {
+                        samples.data[(col * rows) + row] = values[col];
+                    }
+                }
+                if (sHasTruth) {
+                    truth.data[row] = values[sampleColumns];
+                }
+            }
+        }
+        if (isFloat()) {
+            appendMatrices(floatSamples, truth);
+        } else {
+            appendMatrices(samples, truth);
+        }
+    }
+    
+    /**
+     * Reads samples from a CSV file on several threads at once, and adds 
+     * them to the DataSet in the order they appear in the file. The file 
+     * is memory-mapped and parsed in chunks, and the rows of the chunks are
+     * then copied straight into the Samples and Truth matrices.
+     * 
+     * @param filename the name of the file to read from
+     * @param threads the number of threads to parse with
+     * @throws IOException
+     */
+    public void addFromCSVFile(String filename, int threads) throws IOException {
+        List<RowBuffer> chunks = DataSetReader.readCSVChunks(filename, threads);
+        if (chunks.isEmpty()) {
+            return;
+        }
+        int columns = chunks.get(0).getColumns();
+        int sampleColumns = sHasTruth ? columns - 1 : columns;
+        int rows = 0;
+        for (RowBuffer chunk : chunks) {
+            rows += chunk.getRows();
+        }
+        
+        DoubleMatrix samples = isFloat() ? null : new DoubleMatrix(rows, sampleColumns);
+        FloatMatrix floatSamples = isFloat() ? new FloatMatrix(rows, sampleColumns) : null;
+        DoubleMatrix truth = sHasTruth ? new DoubleMatrix(rows, 1) : null;
+        int startRow = 0;
+        for (int index = 0; index < chunks.size(); index++) {
+            RowBuffer chunk = chunks.get(index);
+            if (isFloat()) {
+                chunk.copyTo(0, sampleColumns, floatSamples, startRow);
+            } else {
+                chunk.copyTo(0, sampleColumns, samples, startRow);
+            }
+            if (sHasTruth) {
+                chunk.copyTo(sampleColumns, 1, truth, startRow);
+            }
+            startRow += chunk.getRows();
+            chunks.set(index, null);
+        }
+        if (isFloat()) {
+            appendMatrices(floatSamples, truth);
+        } else {
+            appendMatrices(samples, truth);
+        }
     }
     
     /**
@@ -146,19 +423,16 @@ public class DataSet {
      * @param samples the list of samples to add
      */
     public void addSamples(List<List<Double>> samples) {
+        double [] values = new double [0];
         for (List<Double> row : samples) {
-            Double [] temp = row.toArray(new Double[row.size()]);
-            double [] sampleRow = ArrayUtils.toPrimitive(temp);
-            double [][] matrix = new double[1][sampleRow.length];
-            if (sHasTruth) {
-                matrix[0] = ArrayUtils.subarray(sampleRow, 0, sampleRow.length-1);
-                addSampleRow(new DoubleMatrix(matrix));
-                matrix[0] = ArrayUtils.subarray(sampleRow, sampleRow.length-1, sampleRow.length);
-                addTruthRow(new DoubleMatrix(matrix));
-            } else {
-                matrix[0] = sampleRow;
-                addSampleRow(new DoubleMatrix(matrix));
+            if (values.length != row.size()) {
+                values = new double [row.size()];
+            }
+            int index = 0;
+            for (Double value : row) {
+                values[index++] = value;
             }
+            addRow(values);
         } 
     }
     
@@ -168,77 +442,245 @@ public class DataSet {
      * @param sample the DoubleMatrix column vector to add
      */
     public void addSample(DoubleMatrix sample) {
-        List<List<Double>> newSampleList = new ArrayList<List<Double>>();
-        double [] values = new double [sample.columns];
-        for (int index = 0; index < sample.columns; index++) {
-            values[index] = sample.get(0, index);
-        }
-        newSampleList.add(Arrays.asList(ArrayUtils.toObject(values)));
-        addSamples(newSampleList);
+        addRow((sample.rows == 1) ? sample.data : sample.getRow(0).toArray());
     }
 
     /**
-     * Internal helper function that will add a row of samples to the DataSet.
+     * Adds a row of values to the DataSet. If the DataSet has ground truth,
+     * the last value is the ground truth label, and the rest are the sample.
+     * The values are copied, so the array can be reused by the caller.
      * 
-     * @param samples the matrix of samples to add
+     * @param values the values of the row
      */
-    private void addSampleRow(DoubleMatrix samples) {
+    public void addRow(double [] values) {
+        int sampleColumns = sHasTruth ? values.length - 1 : values.length;
+        if (mSampleBuffer == null) {
+            mSampleBuffer = new RowBuffer(sampleColumns);
+            mTruthBuffer = sHasTruth ? new RowBuffer(1) : null;
+        }
+        if (sampleColumns != mSampleBuffer.getColumns()) {
+            throw new IllegalArgumentException("expected " + mSampleBuffer.getColumns() + " sample values, got " + sampleColumns);
+        }
+        mSampleBuffer.add(values, 0);
+        if (sHasTruth) {
+            mTruthBuffer.add(values[sampleColumns]);
+        }
+    }
+    
+    /**
+     * Appends any rows waiting in the row buffers to the Samples and Truth
+     * matrices, and releases the buffers. A view first gathers its rows 
+     * into matrices of its own, so that the matrices it shares with other
+     * DataSets are never changed.
+     */
+    private void flushRows() {
+        if (mSampleBuffer == null) {
+            return;
+        }
+        detach();
+        if (isFloat()) {
+            mFloatSamples = appendRows(mFloatSamples, mSampleBuffer);
+        } else {
+            mSamples = appendRows(mSamples, mSampleBuffer);
+        }
+        if (sHasTruth) {
+            mTruth = appendRows(mTruth, mTruthBuffer);
+        }
+        mSampleBuffer = null;
+        mTruthBuffer = null;
+    }
+    
+    /**
+     * Gathers the rows of a view into matrices of its own, so that the 
+     * matrices it shares with other DataSets are never changed.
+     */
+    private void detach() {
+        if (mRows != null) {
+            mSamples = (mSamples == null) ? null : gatherRows(mSamples, mRows);
+            mFloatSamples = (mFloatSamples == null) ? null : gatherRows(mFloatSamples, mRows);
+            mTruth = (mTruth == null) ? null : gatherRows(mTruth, mRows);
+            mRows = null;
+            clearView();
+        }
+    }
+    
+    /**
+     * Adds the rows of the specified matrices after the rows already in the
+     * DataSet.
+     * 
+     * @param samples the samples to add
+     * @param truth the truth values to add, or null without truth
+     */
+    private void appendMatrices(DoubleMatrix samples, DoubleMatrix truth) {
+        flushRows();
+        detach();
+        if (mSamples != null && mSamples.columns != samples.columns) {
+            throw new IllegalArgumentException("expected " + mSamples.columns + " sample values, got " + samples.columns);
+        }
         mSamples = (mSamples == null) ? samples : DoubleMatrix.concatVertically(mSamples, samples);
+        if (sHasTruth) {
+            mTruth = (mTruth == null) ? truth : DoubleMatrix.concatVertically(mTruth, truth);
+        }
     }
     
     /**
-     * Internal helper function that will add a row of ground truth labels
-     * to the DataSet.
+     * Single precision version of appendMatrices.
      * 
-     * @param truth the matrix of truth values to add
+     * @param samples the samples to add
+     * @param truth the truth values to add, or null without truth
      */
-    private void addTruthRow(DoubleMatrix truth) {
-        mTruth = (mTruth == null) ? truth : DoubleMatrix.concatVertically(mTruth, truth);
+    private void appendMatrices(FloatMatrix samples, DoubleMatrix truth) {
+        flushRows();
+        detach();
+        if (mFloatSamples != null && mFloatSamples.columns != samples.columns) {
+            throw new IllegalArgumentException("expected " + mFloatSamples.columns + " sample values, got " + samples.columns);
+        }
+        mFloatSamples = (mFloatSamples == null) ? samples : FloatMatrix.concatVertically(mFloatSamples, samples);
+        if (sHasTruth) {
+            mTruth = (mTruth == null) ? truth : DoubleMatrix.concatVertically(mTruth, truth);
+        }
     }
     
     /**
-     * Randomizes the data points within the DataSet.
+     * Returns a matrix with the rows of the buffer added after the rows of
+     * the specified matrix.
+     * 
+     * @param matrix the matrix to add to, may be null
+     * @param buffer the buffer of rows to add
+     * @return the matrix with the rows added
      */
-    public void randomize() {
-        for (int counter = 0; counter < mSamples.rows * 5; counter++) {
-            int firstIndex = mRandom.nextInt(mSamples.rows);
-            int secondIndex = mRandom.nextInt(mSamples.rows);
-            DoubleMatrix tempRow = mSamples.getRow(firstIndex);
-            DoubleMatrix tempRow1 = mSamples.getRow(secondIndex);
-            mSamples.putRow(firstIndex, tempRow1);
-            mSamples.putRow(secondIndex, tempRow);
-            
-            if (sHasTruth) {
-                tempRow = mTruth.getRow(firstIndex);
-                tempRow1 = mTruth.getRow(secondIndex);
-                mTruth.putRow(firstIndex, tempRow1);
-                mTruth.putRow(secondIndex, tempRow);                
+    private static DoubleMatrix appendRows(DoubleMatrix matrix, RowBuffer buffer) {
+        DoubleMatrix rows = buffer.toMatrix();
+        return (matrix == null) ? rows : DoubleMatrix.concatVertically(matrix, rows);
+    }
+    
+    /**
+     * Single precision version of appendRows.
+     * 
+     * @param matrix the matrix to add to, may be null
+     * @param buffer the buffer of rows to add
+     * @return the matrix with the rows added
+     */
+    private static FloatMatrix appendRows(FloatMatrix matrix, RowBuffer buffer) {
+        FloatMatrix rows = buffer.toFloatMatrix();
+        return (matrix == null) ? rows : FloatMatrix.concatVertically(matrix, rows);
+    }
+    
+    /**
+     * Copies the specified rows of a matrix into a new matrix, in the order
+     * they are listed. Returns null if there are no rows to copy.
+     * 
+     * @param matrix the matrix to copy from
+     * @param rows the indices of the rows to copy
+     * @return a new matrix with the rows
+     */
+    private static DoubleMatrix gatherRows(DoubleMatrix matrix, int [] rows) {
+        if (rows.length == 0) {
+            return null;
+        }
+        DoubleMatrix result = new DoubleMatrix(rows.length, matrix.columns);
+        for (int col = 0; col < matrix.columns; col++) {
+            int source = col * matrix.rows;
+            int destination = col * result.rows;
+            for (int row = 0; row < rows.length; row++) {
+                result.data[destination + row] = matrix.data[source + rows[row]];
             }
         }
+        return result;
     }
     
     /**
-     * A workaround for the JBlas library IntervalRange class - specifying 
-     * ranges that don't start at zero have a problem. Copy the given rows
-     * instead.
+     * Single precision version of gatherRows.
      * 
-     * @param a the start of the range (inclusive)
-     * @param b the end of the range (exclusive)
      * @param matrix the matrix to copy from
-     * @return a new matrix with the rows from a to b
+     * @param rows the indices of the rows to copy
+     * @return a new matrix with the rows
      */
-    protected static DoubleMatrix copyRows(int a, int b, DoubleMatrix matrix) {
-        DoubleMatrix result = null;
-        for (int index = a; index < b; index++) {
-            if (result == null) {
-                result = matrix.getRow(index).dup();
-            } else {
-                result = DoubleMatrix.concatVertically(result, matrix.getRow(index).dup());
+    private static FloatMatrix gatherRows(FloatMatrix matrix, int [] rows) {
+        if (rows.length == 0) {
+            return null;
+        }
+        FloatMatrix result = new FloatMatrix(rows.length, matrix.columns);
+        for (int col = 0; col < matrix.columns; col++) {
+            int source = col * matrix.rows;
+            int destination = col * result.rows;
+            for (int row = 0; row < rows.length; row++) {
+                result.data[destination + row] = matrix.data[source + rows[row]];
             }
         }
         return result;
     }
     
+    /**
+     * Copies a single precision matrix into a new double precision matrix.
+     * 
+     * @param matrix the matrix to widen
+     * @return the double precision copy of the matrix
+     */
+    private static DoubleMatrix widen(FloatMatrix matrix) {
+        DoubleMatrix result = new DoubleMatrix(matrix.rows, matrix.columns);
+        for (int element = 0; element < matrix.length; element++) {
+            result.data[element] = matrix.data[element];
+        }
+        return result;
+    }
+    
+    /**
+     * Returns a view of the specified rows of the matrices of this DataSet.
+     * 
+     * @param rows the indices of the rows in the view, or null for all rows
+     * @return the view of the rows
+     */
+    private DataSet viewOf(int [] rows) {
+        return new DataSet(sHasTruth, mPrecision, mSamples, mFloatSamples, mTruth, rows);
+    }
+    
+    /**
+     * Returns the indices from 0 to count - 1 in order.
+     * 
+     * @param count the number of indices
+     * @return the array of indices
+     */
+    private static int [] identity(int count) {
+        int [] rows = new int [count];
+        for (int index = 0; index < count; index++) {
+            rows[index] = index;
+        }
+        return rows;
+    }
+    
+    /**
+     * Forgets the rows gathered for the view, so that they are gathered 
+     * again the next time they are asked for.
+     */
+    private void clearView() {
+        mViewSamples = null;
+        mViewFloatSamples = null;
+        mViewTruth = null;
+    }
+    
+    /**
+     * Randomizes the data points within the DataSet. Only the row indices
+     * are shuffled, with a Fisher-Yates shuffle, so the Samples and Truth
+     * matrices are left as they are.
+     */
+    public void randomize() {
+        flushRows();
+        if (mSamples == null && mFloatSamples == null) {
+            return;
+        }
+        if (mRows == null) {
+            mRows = identity(getBackingRows());
+        }
+        for (int index = mRows.length - 1; index > 0; index--) {
+            int swap = mRandom.nextInt(index + 1);
+            int temp = mRows[index];
+            mRows[index] = mRows[swap];
+            mRows[swap] = temp;
+        }
+        clearView();
+    }
+    
     /**
      * Splits a DataSet into two sets - a training and a testing set - based
      * upon the percentage. For example, a percentage of 60 would allocate 
@@ -248,25 +690,16 @@ public class DataSet {
      * data starting at row 0. The remainder will be shunted to teh testing set.
      * Use splitEqually if you wish to maintain an equal balance between the
      * positive and negative classes when constructing a training data set.
+     * Both sets are views that share the matrices of this DataSet.
      * 
      * @param percentage the percentage to put into the training set
      * @return a pair of DataSets - left is training, right is testing
      */
     public Pair<DataSet, DataSet> splitSequentially(int percentage) {
-        int trainStart = 0; 
-        int trainEnd = (int)Math.ceil(((percentage / 100.0) * (float)mSamples.rows));
-        int testStart = trainEnd;
-        int testEnd = mSamples.rows;
-        DoubleMatrix trainingSamples = copyRows(trainStart, trainEnd, mSamples);
-        DoubleMatrix testingSamples = copyRows(testStart, testEnd, mSamples);
-        DoubleMatrix trainingTruth = null;
-        DoubleMatrix testingTruth = null;
-        if (sHasTruth) {
-            trainingTruth = copyRows(trainStart, trainEnd, mTruth);
-            testingTruth = copyRows(testStart, testEnd, mTruth);
-        }
-        DataSet trainingSet = new DataSet(sHasTruth, trainingSamples, trainingTruth);
-        DataSet testingSet = new DataSet(sHasTruth, testingSamples, testingTruth);
+        int [] rows = getRowIndices();
+        int trainEnd = (int)Math.ceil(((percentage / 100.0) * (float)rows.length));
+        DataSet trainingSet = viewOf(Arrays.copyOfRange(rows, 0, trainEnd));
+        DataSet testingSet = viewOf(Arrays.copyOfRange(rows, trainEnd, rows.length));
         return Pair.of(trainingSet, testingSet);
     }
     
@@ -278,22 +711,24 @@ public class DataSet {
      * testing set. Ensures that half of the examples in the training set are
      * positive cases, and half of the examples in the training set are negative
      * cases. If there are not enough positive or negative samples to build
-     * an equal training DataSet, then fall back to splitSequentially. 
+     * an equal training DataSet, then fall back to splitSequentially. Both
+     * sets are views that share the matrices of this DataSet.
      *  
      * @param percentage the percentage split to make
      * @return the training DataSet, and the testing DataSet
      */
     public Pair<DataSet, DataSet> splitEqually(int percentage) {
-        boolean selectedRows [] = new boolean [mSamples.rows];
-        int half = (int)Math.ceil(((percentage / 100.0) * (float)mSamples.rows) / 2);
+        int [] rows = getRowIndices();
+        boolean selectedRows [] = new boolean [rows.length];
+        int half = (int)Math.ceil(((percentage / 100.0) * (float)rows.length) / 2);
         int negCounter = 0;
         int posCounter = 0;
         
         // First, make sure that the data set has at least 'half' number of
         // negative and positive samples - if we don't have it, default to 
         // splitSequentially.
-        for (int index = 0; index < mTruth.rows; index++) {
-            if (mTruth.get(index, 0) == 1.0) {
+        for (int index = 0; index < rows.length; index++) {
+            if (mTruth.data[rows[index]] == 1.0) {
                 posCounter++;
             } else {
                 negCounter++;
@@ -307,47 +742,165 @@ public class DataSet {
         
         posCounter = 0;
         negCounter = 0;
-        DataSet trainingData = new DataSet(sHasTruth);
-        DataSet testingData = new DataSet(sHasTruth);
+        int [] trainingRows = new int [half * 2];
+        int [] testingRows = new int [rows.length - trainingRows.length];
+        int trainingCount = 0;
         
         // Select an index at random and see if we have already added it to
         // the training DataSet. Loop until we have the desired number of
         // positive and negative cases
         while (negCounter < half || posCounter < half) {
-            int nextIndex = mRandom.nextInt(mSamples.rows);
+            int nextIndex = mRandom.nextInt(rows.length);
             if (!selectedRows[nextIndex]) {
-                DoubleMatrix row = DoubleMatrix.concatHorizontally(mSamples.getRow(nextIndex), mTruth.getRow(nextIndex));
-                if (mTruth.get(nextIndex, 0) == 1.0 && posCounter < half) {
+                double truth = mTruth.data[rows[nextIndex]];
+                if (truth == 1.0 && posCounter < half) {
                     selectedRows[nextIndex] = true;
                     posCounter++;
-                    trainingData.addSample(row);
+                    trainingRows[trainingCount++] = rows[nextIndex];
                 }
                 
-                if (mTruth.get(nextIndex, 0) == 0.0 && negCounter < half) {
+                if (truth == 0.0 && negCounter < half) {
                     selectedRows[nextIndex] = true;
                     negCounter++;
-                    trainingData.addSample(row);
+                    trainingRows[trainingCount++] = rows[nextIndex];
                 }
             }
         }
         
         // Take all the remaining unused samples, and include them in the
         // testing DataSet.
+        int testingCount = 0;
         for (int index = 0; index < selectedRows.length; index++) {
             if (!selectedRows[index]) {
-                DoubleMatrix row = DoubleMatrix.concatHorizontally(mSamples.getRow(index), mTruth.getRow(index));
-                testingData.addSample(row);
+                testingRows[testingCount++] = rows[index];
             }
         }
+        DataSet trainingData = viewOf(trainingRows);
+        DataSet testingData = viewOf(testingRows);
         return Pair.of(trainingData, testingData);
     }
+
+    /**
+     * Splits the DataSet into the specified number of folds for k-fold
+     * cross validation. Returns one pair of DataSets for each fold - the
+     * left is the training set made of every other fold, and the right is
+     * the testing set made of the fold itself. Every row is in exactly one
+     * testing set. The folds are stratified: each distinct truth value is
+     * dealt out in turn across the folds, so every fold has close to the
+     * same share of each class. Rows keep their current order within each
+     * set, so the DataSet should be randomized first. All of the sets are
+     * views that share the matrices of this DataSet. The truth must be a
+     * single column of class values, not one-hot encoded.
+     *
+     * @param folds the number of folds, at least 2
+     * @return the training and testing DataSets of each fold
+     */
+    public List<Pair<DataSet, DataSet>> stratifiedFolds(int folds) {
+        int [] rows = getRowIndices();
+        if (!sHasTruth) {
+            throw new IllegalStateException("cannot stratify a DataSet without truth");
+        }
+        if (mTruth.columns != 1) {
+            throw new IllegalArgumentException("cannot stratify on " + mTruth.columns + " truth columns, expected 1");
+        }
+        if (folds < 2 || folds > rows.length) {
+            throw new IllegalArgumentException("cannot make " + folds + " folds from " + rows.length + " sample(s)");
+        }
+
+        // Number the classes in the order they first appear, and count the
+        // rows in each one
+        Map<Double, Integer> classNumbers = new HashMap<>();
+        int [] classOf = new int [rows.length];
+        int [] classStart = new int [rows.length + 1];
+        for (int index = 0; index < rows.length; index++) {
+            Double value = mTruth.data[rows[index]];
+            Integer number = classNumbers.get(value);
+            if (number == null) {
+                number = classNumbers.size();
+                classNumbers.put(value, number);
+            }
+            classOf[index] = number;
+            classStart[number + 1]++;
+        }
+
+        // Group the rows by class with a counting sort, and deal the grouped
+        // rows out to the folds in turn, so each class is spread evenly and
+        // the remainder of one class starts where the last one left off
+        for (int number = 0; number < classNumbers.size(); number++) {
+            classStart[number + 1] += classStart[number];
+        }
+        int [] foldOf = new int [rows.length];
+        int [] foldSize = new int [folds];
+        for (int index = 0; index < rows.length; index++) {
+            int fold = (classStart[classOf[index]]++) % folds;
+            foldOf[index] = fold;
+            foldSize[fold]++;
+        }
+
+        List<Pair<DataSet, DataSet>> result = new ArrayList<>(folds);
+        for (int fold = 0; fold < folds; fold++) {
+            int [] trainingRows = new int [rows.length - foldSize[fold]];
+            int [] testingRows = new int [foldSize[fold]];
+            int trainingCount = 0;
+            int testingCount = 0;
+            for (int index = 0; index < rows.length; index++) {
+                if (foldOf[index] == fold) {
+                    testingRows[testingCount++] = rows[index];
+                } else {
+                    trainingRows[trainingCount++] = rows[index];
+                }
+            }
+            result.add(Pair.of(viewOf(trainingRows), viewOf(testingRows)));
+        }
+        return result;
+    }
     
     /**
-     * Duplicate this DataSet.
+     * Expands a column of class numbers into a matrix with one column per
+     * class, where each row has a 1 in the column of its class and a 0 in
+     * every other column.
+     * 
+     * @param classes the column of class numbers, from 0 to numClasses - 1
+     * @param numClasses the number of classes
+     * @return the expanded matrix
+     */
+    public static DoubleMatrix oneHot(DoubleMatrix classes, int numClasses) {
+        DoubleMatrix result = new DoubleMatrix(classes.rows, numClasses);
+        for (int row = 0; row < classes.rows; row++) {
+            double value = classes.get(row, 0);
+            int label = (int) value;
+            if (label != value || label < 0 || label >= numClasses) {
+                throw new IllegalArgumentException("class [" + value + "] is not between 0 and " + (numClasses - 1));
+            }
+            result.put(row, label, 1.0);
+        }
+        return result;
+    }
+    
+    /**
+     * Duplicate this DataSet. The rows are copied into new matrices, so the
+     * duplicate does not share anything with this DataSet. Use view when 
+     * the rows do not need to be copied.
      * 
      * @return a duplicate of this DataSet
      */
     public DataSet dup() {
-        return new DataSet(sHasTruth, mSamples.dup(), mTruth.dup());
+        DoubleMatrix samples = isFloat() ? null : getSamples();
+        FloatMatrix floatSamples = getFloatSamples();
+        DoubleMatrix truth = getTruth();
+        return new DataSet(sHasTruth, mPrecision, (samples == null) ? null : samples.dup(), 
+                (floatSamples == null) ? null : floatSamples.dup(), (truth == null) ? null : truth.dup(), null);
+    }
+    
+    /**
+     * Returns a view of the rows of this DataSet, in their current order. 
+     * The view shares the matrices of this DataSet, and only copies the row
+     * indices, so shuffling either one later does not change the other.
+     * 
+     * @return a view of this DataSet
+     */
+    public DataSet view() {
+        flushRows();
+        return viewOf((mRows == null) ? null : mRows.clone());
     }
 }
@@ -4,52 +4,249 @@
  */
 package ca.craigthomas.neuralnetwork.dataset;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.FileUtils;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
- * Contains static methods to read data from various sources, and return 
+ * Contains static methods to read data from various sources, and return
  * them as a list of data points.
- * 
+ *
  * @author thomas
  */
 public class DataSetReader {
 
+    // The smallest part of a file that is given to a thread on its own
+    public static final long MIN_CHUNK_SIZE = 1L << 20;
+    // The largest part of a file that is mapped into memory at once
+    public static final long MAX_CHUNK_SIZE = 1L << 28;
+    // The number of chunks made for each thread, so that threads that 
+    // finish early can take on more of the file
+    private static final int CHUNKS_PER_THREAD = 4;
+
     /**
      * Read from a CSV file, and return the samples as a list of doubles.
-     * 
+     * Use the version that takes a consumer to avoid holding a boxed copy
+     * of every value.
+     *
      * @param filename the name of the file to read from
      * @return the list of samples from the file
      * @throws IOException
      */
     public static List<List<Double>> readCSVFile(String filename) throws IOException {
-        File file = new File(filename);
-        String fileContents = FileUtils.readFileToString(file);
-        Reader reader = new StringReader(fileContents);
-        CSVFormat format = CSVFormat.EXCEL;
-        CSVParser parser = new CSVParser(reader, format);
-
-        List<CSVRecord> records = parser.getRecords();
         List<List<Double>> inputs = new ArrayList<List<Double>>();
-
-        for (CSVRecord record : records) {
-            List<Double> inputLine = new ArrayList<Double>();
-            for (int index = 0; index < record.size(); index++) {
-                String value = record.get(index);
-                inputLine.add(Double.parseDouble(value));
+        readCSVFile(filename, row -> {
+            List<Double> inputLine = new ArrayList<Double>(row.length);
+            for (double value : row) {
+                inputLine.add(value);
             }
             inputs.add(inputLine);
-        }
-        parser.close();
+        });
         return inputs;
     }
+
+    /**
+     * Read from a CSV file one row at a time, and pass the values of each
+     * row to the consumer. The file is streamed through a fixed size
+     * buffer, and the array passed to the consumer is reused for the next
+     * row, so the consumer must copy any values it keeps.
+     *
+     * @param filename the name of the file to read from
+     * @param consumer the consumer of the rows
+     * @throws IOException
+     */
+    public static void readCSVFile(String filename, Consumer<double []> consumer) throws IOException {
+        try (CSVRowReader reader = openCSVFile(filename)) {
+            while (reader.next()) {
+                consumer.accept(reader.getRow());
+            }
+        }
+    }
+
+    /**
+     * Opens a CSV file for reading one row at a time. The caller must close
+     * the reader.
+     *
+     * @param filename the name of the file to read from
+     * @return the reader for the file
+     * @throws IOException
+     */
+    public static CSVRowReader openCSVFile(String filename) throws IOException {
+        return new CSVRowReader(FileChannel.open(Paths.get(filename), StandardOpenOption.READ));
+    }
+
+    /**
+     * Counts the rows of a CSV file without parsing any of their values. 
+     * Blank lines are not counted, in the same way that readCSVFile skips
+     * them.
+     *
+     * @param filename the name of the file to count the rows of
+     * @return the number of rows in the file
+     * @throws IOException
+     */
+    public static int countCSVRows(String filename) throws IOException {
+        try (CSVRowReader reader = openCSVFile(filename)) {
+            int rows = 0;
+            while (reader.skip()) {
+                rows++;
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Read from a CSV file on several threads at once, and return the rows
+     * as a list of row buffers that hold the rows of the file in order. The
+     * file is split into chunks that start and end on line boundaries, and
+     * each chunk is memory-mapped and parsed into its own buffer by a pool
+     * of threads. Every row must have the same number of values. Since 
+     * chunks are split on newlines, quoted fields must not span lines.
+     *
+     * @param filename the name of the file to read from
+     * @param threads the number of threads to parse with
+     * @return the buffers of rows from each chunk, in file order
+     * @throws IOException
+     */
+    public static List<RowBuffer> readCSVChunks(String filename, int threads) throws IOException {
+        return readCSVChunks(filename, threads, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Read from a CSV file on several threads at once, with the specified
+     * smallest chunk size.
+     *
+     * @param filename the name of the file to read from
+     * @param threads the number of threads to parse with
+     * @param minChunkSize the smallest number of bytes in a chunk
+     * @return the buffers of rows from each chunk, in file order
+     * @throws IOException
+     */
+    static List<RowBuffer> readCSVChunks(String filename, int threads, long minChunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long [] starts = findChunkStarts(channel, Math.max(threads, 1), minChunkSize);
+            List<Callable<RowBuffer>> chunks = new ArrayList<Callable<RowBuffer>>();
+            for (int chunk = 0; chunk < starts.length - 1; chunk++) {
+                long start = starts[chunk];
+                long length = starts[chunk + 1] - start;
+                chunks.add(() -> parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, length)));
+            }
+
+            List<RowBuffer> result = new ArrayList<RowBuffer>();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, chunks.size())));
+            try {
+                for (Future<RowBuffer> future : executor.invokeAll(chunks)) {
+                    RowBuffer rows = future.get();
+                    if (rows.getRows() == 0) {
+                        continue;
+                    }
+                    if (!result.isEmpty() && rows.getColumns() != result.get(0).getColumns()) {
+                        throw new IllegalArgumentException("expected " + result.get(0).getColumns() 
+                                + " values in each row, got " + rows.getColumns());
+                    }
+                    result.add(rows);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading [" + filename + "]", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException)e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new IllegalStateException("could not read [" + filename + "]", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Splits a file into chunks for the specified number of threads, and
+     * moves the start of each chunk forward to the start of a line. Returns
+     * the start of each chunk, followed by the size of the file. Chunks may
+     * be empty when a line is longer than a chunk.
+     *
+     * @param channel the channel of the file
+     * @param threads the number of threads the chunks are for
+     * @param minChunkSize the smallest number of bytes in a chunk
+     * @return the start of each chunk, then the size of the file
+     * @throws IOException
+     */
+    private static long [] findChunkStarts(FileChannel channel, int threads, long minChunkSize) throws IOException {
+        long size = channel.size();
+        long chunks = Math.min((long)threads * CHUNKS_PER_THREAD, Math.max(1, size / Math.max(minChunkSize, 1)));
+        chunks = Math.max(chunks, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        long [] starts = new long [(int)chunks + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(CSVRowReader.BUFFER_SIZE);
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            long start = Math.max((size * chunk) / chunks, starts[chunk - 1]);
+            starts[chunk] = (start == 0) ? 0 : nextLineStart(channel, buffer, start - 1, size);
+        }
+        starts[(int)chunks] = size;
+        return starts;
+    }
+
+    /**
+     * Returns the position just after the first newline at or after the 
+     * specified position, or the size of the file if there is none.
+     *
+     * @param channel the channel of the file
+     * @param buffer the buffer to read into
+     * @param position the position to start looking from
+     * @param size the size of the file
+     * @return the position of the start of the next line
+     * @throws IOException
+     */
+    private static long nextLineStart(FileChannel channel, ByteBuffer buffer, long position, long size) throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int index = 0; index < read; index++) {
+                if (buffer.get(index) == '\n') {
+                    return position + index + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the rows in a chunk of a file into a new row buffer.
+     *
+     * @param chunk the bytes of the chunk
+     * @return the rows of the chunk
+     * @throws IOException
+     */
+    private static RowBuffer parseChunk(ByteBuffer chunk) throws IOException {
+        CSVRowReader reader = new CSVRowReader(chunk);
+        if (!reader.next()) {
+            return new RowBuffer(0, 0);
+        }
+        RowBuffer rows = new RowBuffer(reader.getColumns());
+        do {
+            if (reader.getColumns() != rows.getColumns()) {
+                throw new IllegalArgumentException("expected " + rows.getColumns() 
+                        + " values in each row, got " + reader.getColumns());
+            }
+            rows.add(reader.getRow());
+        } while (reader.next());
+        return rows;
+    }
 }
@@ -6,14 +6,23 @@ package ca.craigthomas.neuralnetwork.dataset;
 
 import org.jblas.DoubleMatrix;
 
-import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.IPredictor;
 
 /**
- * Given a NeuralNetwork and a set of data samples to process (with their 
- * associated truth values), makes predictions and measures the correctness
+ * Given a NeuralNetwork (or any other IPredictor, such as a quantized 
+ * network) and a set of data samples to process (with their associated 
+ * truth values), makes predictions and measures the correctness
  * of those predictions. Used to keep track of the precision, recall, and F-1 
  * score of a neural network on a particular dataset .
  * 
+ * A model with several outputs is treated as a classifier with one class 
+ * per output, and the class of each sample is the output with the largest
+ * value. The truth can either be a single column of class numbers, or one
+ * column per class. Each misclassified sample counts as a false positive for
+ * the class it was given, and as a false negative for its true class. The
+ * precision, recall and F-1 score are then the averages over the classes
+ * that appear in the truth or the predictions.
+ * 
  * @author thomas
  */
 public class Prediction {
@@ -23,9 +32,10 @@ public class Prediction {
     protected static final int FALSE_POS = 3;
     protected static final int FALSE_NEG = 4;
 
-    private NeuralNetwork mNeuralNetwork;
+    private IPredictor mPredictor;
     private DoubleMatrix mSamples;
     private DoubleMatrix mTruth;
+    private DoubleMatrix mPredictions;
     private double mTruePositives = 0.0;
     private double mTrueNegatives = 0.0;
     private double mFalsePositives = 0.0;
@@ -34,6 +44,8 @@ public class Prediction {
     private double mPrecision = 0.0;
     private double mRecall = 0.0;
     private double mF1 = 0.0;
+    private int mNumClasses;
+    private int [][] mConfusionMatrix;
     private DoubleMatrix mTruePositiveSamples;
     private DoubleMatrix mTrueNegativeSamples;
     private DoubleMatrix mFalsePositiveSamples;
@@ -49,8 +61,8 @@ public class Prediction {
      * @param model a trained neural network
      * @param predictionThreshold the prediction threshold
      */
-    public Prediction(NeuralNetwork model, double predictionThreshold) {
-        mNeuralNetwork = model;
+    public Prediction(IPredictor model, double predictionThreshold) {
+        mPredictor = model;
         mPredictionThreshold = predictionThreshold;
     }
     
@@ -92,11 +104,19 @@ public class Prediction {
     public void predict(DataSet samples) {
         mSamples = samples.getSamples().dup();
         mTruth = samples.getTruth().dup();
-        DoubleMatrix predictions = mNeuralNetwork.predict(mSamples);
+        DoubleMatrix predictions = mPredictor.predict(mSamples);
+        mPredictions = predictions;
+        mNumClasses = Math.max(2, predictions.columns);
+        mConfusionMatrix = new int [mNumClasses][mNumClasses];
+        if (predictions.columns > 1) {
+            predictClasses(predictions);
+            return;
+        }
                 
         for (int index = 0; index < predictions.rows; index++) {
-            int prediction = (predictions.get(index, 0) > mPredictionThreshold) ? 1 : 0;
-            int actual = (mTruth.get(index, 0) > mPredictionThreshold) ? 1 : 0;
+            int prediction = classOf(predictions, index, 1, mPredictionThreshold);
+            int actual = classOf(mTruth, index, 1, mPredictionThreshold);
+            mConfusionMatrix[actual][prediction]++;
             DoubleMatrix sample = mSamples.getRow(index);
             if (actual == 1) {
                 if (prediction == actual) {
@@ -121,6 +141,135 @@ public class Prediction {
         mF1 = 2 * (mPrecision * mRecall) / (mPrecision + mRecall);
     }
     
+    /**
+     * Makes predictions for a model with one output per class, filling in
+     * the confusion matrix and the averages of the per class scores.
+     * 
+     * @param predictions the outputs of the model, one column per class
+     */
+    private void predictClasses(DoubleMatrix predictions) {
+        for (int index = 0; index < predictions.rows; index++) {
+            int prediction = classOf(predictions, index, mNumClasses, mPredictionThreshold);
+            int actual = classOf(mTruth, index, mNumClasses, mPredictionThreshold);
+            mConfusionMatrix[actual][prediction]++;
+            DoubleMatrix sample = mSamples.getRow(index);
+            if (prediction == actual) {
+                mTruePositives += 1.0;
+                saveSampleToClass(sample, TRUE_POS);
+            } else {
+                mFalsePositives += 1.0;
+                mFalseNegatives += 1.0;
+                saveSampleToClass(sample, FALSE_POS);
+                saveSampleToClass(sample, FALSE_NEG);
+            }
+        }
+        // Each sample is a true negative for every class that it neither 
+        // belongs to nor was given
+        mTrueNegatives = (predictions.rows * mNumClasses) - mTruePositives - mFalsePositives - mFalseNegatives;
+        
+        double precisionSum = 0.0;
+        double recallSum = 0.0;
+        double f1Sum = 0.0;
+        int classes = 0;
+        for (int label = 0; label < mNumClasses; label++) {
+            double truePositives = mConfusionMatrix[label][label];
+            double predicted = 0.0;
+            double actual = 0.0;
+            for (int other = 0; other < mNumClasses; other++) {
+                predicted += mConfusionMatrix[other][label];
+                actual += mConfusionMatrix[label][other];
+            }
+            if (predicted + actual == 0.0) {
+                continue;
+            }
+            double precision = (predicted == 0.0) ? 0.0 : truePositives / predicted;
+            double recall = (actual == 0.0) ? 0.0 : truePositives / actual;
+            precisionSum += precision;
+            recallSum += recall;
+            f1Sum += (precision + recall == 0.0) ? 0.0 : 2 * (precision * recall) / (precision + recall);
+            classes++;
+        }
+        mPrecision = precisionSum / classes;
+        mRecall = recallSum / classes;
+        mF1 = f1Sum / classes;
+    }
+    
+    /**
+     * Returns the class of the specified row of a matrix of outputs or 
+     * truth values. With several columns, the class is the column with the
+     * largest value. With a single column, the value is the class number 
+     * when there are several classes, and is compared to the threshold when
+     * there are only two.
+     * 
+     * @param values the outputs or truth values
+     * @param row the row to classify
+     * @param numClasses the number of classes, or 1 for a single output
+     * @param threshold the prediction threshold for a single output
+     * @return the class of the row
+     */
+    static int classOf(DoubleMatrix values, int row, int numClasses, double threshold) {
+        if (values.columns > 1) {
+            int best = 0;
+            for (int col = 1; col < values.columns; col++) {
+                if (values.get(row, col) > values.get(row, best)) {
+                    best = col;
+                }
+            }
+            return best;
+        }
+        if (numClasses > 1) {
+            return (int) values.get(row, 0);
+        }
+        return (values.get(row, 0) > threshold) ? 1 : 0;
+    }
+    
+    /**
+     * Gets the number of classes. A model with a single output has 2.
+     * 
+     * @return the number of classes
+     */
+    public int getNumClasses() {
+        return mNumClasses;
+    }
+    
+    /**
+     * Gets the confusion matrix. The row is the true class of the samples,
+     * and the column is the class they were given, so the diagonal holds 
+     * the correctly classified samples.
+     * 
+     * @return the confusion matrix
+     */
+    public int [][] getConfusionMatrix() {
+        return mConfusionMatrix;
+    }
+    
+    /**
+     * Gets the fraction of samples that were given their true class.
+     * 
+     * @return the accuracy
+     */
+    public double getAccuracy() {
+        double correct = 0.0;
+        double total = 0.0;
+        for (int actual = 0; actual < mNumClasses; actual++) {
+            for (int predicted = 0; predicted < mNumClasses; predicted++) {
+                total += mConfusionMatrix[actual][predicted];
+            }
+            correct += mConfusionMatrix[actual][actual];
+        }
+        return (total == 0.0) ? 0.0 : correct / total;
+    }
+    
+    /**
+     * Gets the outputs of the model for the samples, one row per sample,
+     * from the last call to predict.
+     * 
+     * @return the outputs of the model
+     */
+    public DoubleMatrix getPredictions() {
+        return mPredictions;
+    }
+    
     /**
      * Gets the overall precision.
      * 
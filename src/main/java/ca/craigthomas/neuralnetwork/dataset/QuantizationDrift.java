@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.QuantizedNeuralNetwork;
+
+/**
+ * Measures how much accuracy a network loses when it is quantized. The
+ * original network and its quantized copy both make predictions on the same
+ * held-out DataSet, and the precision, recall and F-1 score of each are
+ * compared. A negative drift means the quantized network did worse.
+ *
+ * @author thomas
+ */
+public class QuantizationDrift {
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final QuantizedNeuralNetwork mQuantizedNetwork;
+    private final double mPredictionThreshold;
+    private Prediction mReference;
+    private Prediction mQuantized;
+    private double mMaxOutputError = 0.0;
+    private double mAgreement = 0.0;
+
+    /**
+     * Creates a new drift measurement between a network and its quantized
+     * copy.
+     *
+     * @param network the original network
+     * @param quantized the quantized copy of the network
+     * @param predictionThreshold the prediction threshold
+     */
+    public QuantizationDrift(NeuralNetwork network, QuantizedNeuralNetwork quantized, double predictionThreshold) {
+        mNeuralNetwork = network;
+        mQuantizedNetwork = quantized;
+        mPredictionThreshold = predictionThreshold;
+    }
+
+    /**
+     * Makes predictions on the samples with both networks, and records the
+     * metrics of each. Also records the largest difference between the
+     * outputs of the networks, and the fraction of samples for which both
+     * networks predicted the same class, from the same outputs that the
+     * metrics were computed from.
+     *
+     * @param samples the held-out samples to predict
+     */
+    public void measure(DataSet samples) {
+        mReference = new Prediction(mNeuralNetwork, mPredictionThreshold);
+        mReference.predict(samples);
+        mQuantized = new Prediction(mQuantizedNetwork, mPredictionThreshold);
+        mQuantized.predict(samples);
+
+        DoubleMatrix expected = mReference.getPredictions();
+        DoubleMatrix actual = mQuantized.getPredictions();
+        double maxError = 0.0;
+        for (int index = 0; index < expected.length; index++) {
+            maxError = Math.max(maxError, Math.abs(expected.data[index] - actual.data[index]));
+        }
+
+        double agreed = 0.0;
+        for (int row = 0; row < expected.rows; row++) {
+            int expectedClass = Prediction.classOf(expected, row, expected.columns, mPredictionThreshold);
+            int actualClass = Prediction.classOf(actual, row, actual.columns, mPredictionThreshold);
+            if (expectedClass == actualClass) {
+                agreed += 1.0;
+            }
+        }
+        mMaxOutputError = maxError;
+        mAgreement = (expected.rows == 0) ? 0.0 : agreed / expected.rows;
+    }
+
+    /**
+     * Gets the prediction made by the original network.
+     *
+     * @return the prediction of the original network
+     */
+    public Prediction getReference() {
+        return mReference;
+    }
+
+    /**
+     * Gets the prediction made by the quantized network.
+     *
+     * @return the prediction of the quantized network
+     */
+    public Prediction getQuantized() {
+        return mQuantized;
+    }
+
+    /**
+     * Gets the change in precision caused by quantization.
+     *
+     * @return the precision drift
+     */
+    public double getPrecisionDrift() {
+        return mQuantized.getPrecision() - mReference.getPrecision();
+    }
+
+    /**
+     * Gets the change in recall caused by quantization.
+     *
+     * @return the recall drift
+     */
+    public double getRecallDrift() {
+        return mQuantized.getRecall() - mReference.getRecall();
+    }
+
+    /**
+     * Gets the change in F-1 score caused by quantization.
+     *
+     * @return the F1 drift
+     */
+    public double getF1Drift() {
+        return mQuantized.getF1() - mReference.getF1();
+    }
+
+    /**
+     * Gets the largest absolute difference between an output of the original
+     * network and the matching output of the quantized network.
+     *
+     * @return the maximum output error
+     */
+    public double getMaxOutputError() {
+        return mMaxOutputError;
+    }
+
+    /**
+     * Gets the fraction of samples for which both networks predicted the
+     * same class.
+     *
+     * @return the agreement between the networks
+     */
+    public double getAgreement() {
+        return mAgreement;
+    }
+}
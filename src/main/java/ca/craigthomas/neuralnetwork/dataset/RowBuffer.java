@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+/**
+ * A growable buffer of rows with a fixed number of columns, held in a
+ * single primitive array. Rows are appended one after another, and the
+ * array doubles in size whenever it fills up, so adding N rows copies each
+ * value a constant number of times on average. Once all of the rows have
+ * been added, toMatrix converts them into a column-major matrix in a single
+ * pass.
+ *
+ * @author thomas
+ */
+public class RowBuffer {
+
+    // The number of rows to make room for when no capacity is given
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final int mColumns;
+    private double [] mData;
+    private int mRows;
+
+    /**
+     * Creates an empty buffer for rows with the specified number of columns.
+     *
+     * @param columns the number of values in each row
+     */
+    public RowBuffer(int columns) {
+        this(columns, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty buffer for rows with the specified number of columns,
+     * with room for the specified number of rows before it has to grow.
+     *
+     * @param columns the number of values in each row
+     * @param capacity the number of rows to make room for
+     */
+    public RowBuffer(int columns, int capacity) {
+        if (columns < 0 || capacity < 0) {
+            throw new IllegalArgumentException("columns and capacity must not be negative");
+        }
+        mColumns = columns;
+        mData = new double [columns * Math.max(capacity, 1)];
+    }
+
+    /**
+     * Makes sure that there is room for the specified number of rows in
+     * total, doubling the size of the buffer until there is.
+     *
+     * @param rows the number of rows to make room for
+     */
+    public void ensureCapacity(int rows) {
+        long needed = (long)rows * mColumns;
+        if (needed <= mData.length) {
+            return;
+        }
+        long capacity = Math.max(mData.length, mColumns);
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE - 8) {
+            if (needed > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("cannot hold " + rows + " rows of " + mColumns + " columns");
+            }
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        mData = Arrays.copyOf(mData, (int)capacity);
+    }
+
+    /**
+     * Appends a row to the buffer. The row must have the same number of
+     * values as the buffer has columns.
+     *
+     * @param row the values of the row
+     */
+    public void add(double [] row) {
+        add(row, 0);
+    }
+
+    /**
+     * Appends a row to the buffer, taken from the specified array starting
+     * at the specified offset.
+     *
+     * @param values the array that holds the row
+     * @param offset the index of the first value of the row
+     */
+    public void add(double [] values, int offset) {
+        if (offset < 0 || offset + mColumns > values.length) {
+            throw new IllegalArgumentException("row needs " + mColumns + " values, got " + (values.length - offset));
+        }
+        ensureCapacity(mRows + 1);
+        System.arraycopy(values, offset, mData, mRows * mColumns, mColumns);
+        mRows++;
+    }
+
+    /**
+     * Appends a single value as a row. Only allowed for a buffer with a
+     * single column.
+     *
+     * @param value the value of the row
+     */
+    public void add(double value) {
+        if (mColumns != 1) {
+            throw new IllegalArgumentException("row needs " + mColumns + " values, got 1");
+        }
+        ensureCapacity(mRows + 1);
+        mData[mRows] = value;
+        mRows++;
+    }
+
+    /**
+     * Returns the number of rows in the buffer.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Returns the number of columns in each row.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Removes all of the rows, keeping the space that was allocated for
+     * them.
+     */
+    public void clear() {
+        mRows = 0;
+    }
+
+    /**
+     * Copies the rows into a new matrix, with one row of the matrix for
+     * each row in the buffer.
+     *
+     * @return the matrix of rows
+     */
+    public DoubleMatrix toMatrix() {
+        DoubleMatrix result = new DoubleMatrix(mRows, mColumns);
+        copyTo(0, mColumns, result, 0);
+        return result;
+    }
+
+    /**
+     * Copies the rows into a new single precision matrix, with one row of
+     * the matrix for each row in the buffer.
+     *
+     * @return the matrix of rows
+     */
+    public FloatMatrix toFloatMatrix() {
+        FloatMatrix result = new FloatMatrix(mRows, mColumns);
+        copyTo(0, mColumns, result, 0);
+        return result;
+    }
+
+    /**
+     * Copies some of the columns of every row into a matrix, starting at
+     * the specified row of the matrix. The first column copied goes into
+     * the first column of the matrix.
+     *
+     * @param firstColumn the first column of the buffer to copy
+     * @param columns the number of columns to copy
+     * @param matrix the matrix to copy into
+     * @param startRow the row of the matrix that the first row goes into
+     */
+    public void copyTo(int firstColumn, int columns, DoubleMatrix matrix, int startRow) {
+        if (firstColumn < 0 || columns < 0 || firstColumn + columns > mColumns 
+                || columns > matrix.columns || startRow < 0 || startRow + mRows > matrix.rows) {
+            throw new IllegalArgumentException("cannot copy " + mRows + "x" + columns + " into " 
+                    + matrix.rows + "x" + matrix.columns + " at row " + startRow);
+        }
+        double [] destination = matrix.data;
+        for (int row = 0; row < mRows; row++) {
+            int source = (row * mColumns) + firstColumn;
+            int target = startRow + row;
+            for (int col = 0; col < columns; col++) {
+                destination[(col * matrix.rows) + target] = mData[source + col];
+            }
+        }
+    }
+
+    /**
+     * Single precision version of copyTo. The values are narrowed as they
+     * are copied.
+     *
+     * @param firstColumn the first column of the buffer to copy
+     * @param columns the number of columns to copy
+     * @param matrix the matrix to copy into
+     * @param startRow the row of the matrix that the first row goes into
+     */
+    public void copyTo(int firstColumn, int columns, FloatMatrix matrix, int startRow) {
+        if (firstColumn < 0 || columns < 0 || firstColumn + columns > mColumns 
+                || columns > matrix.columns || startRow < 0 || startRow + mRows > matrix.rows) {
+            throw new IllegalArgumentException("cannot copy " + mRows + "x" + columns + " into " 
+                    + matrix.rows + "x" + matrix.columns + " at row " + startRow);
+        }
+        float [] destination = matrix.data;
+        for (int row = 0; row < mRows; row++) {
+            int source = (row * mColumns) + firstColumn;
+            int target = startRow + row;
+            for (int col = 0; col < columns; col++) {
+                destination[(col * matrix.rows) + target] = (float)mData[source + col];
+            }
+        }
+    }
+}
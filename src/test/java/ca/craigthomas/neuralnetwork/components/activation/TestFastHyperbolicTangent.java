@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFastHyperbolicTangent {
+
+    private FastHyperbolicTangent mTanh;
+    private HyperbolicTangent mExact;
+    
+    @Before
+    public void setUp() {
+        mTanh = new FastHyperbolicTangent();
+        mExact = new HyperbolicTangent();
+    }
+    
+    @Test
+    public void testErrorIsBelowMaxError() {
+        double maxError = 0.0;
+        for (int step = -300000; step <= 300000; step++) {
+            double input = step / 10000.0;
+            maxError = Math.max(maxError, Math.abs(mTanh.apply(input) - mExact.apply(input)));
+        }
+        assertTrue("max error was " + maxError, maxError < FastHyperbolicTangent.MAX_ERROR);
+    }
+    
+    @Test
+    public void testLargeInputsAreClamped() {
+        assertEquals(mExact.apply(1000.0), mTanh.apply(1000.0), FastHyperbolicTangent.MAX_ERROR);
+        assertEquals(mExact.apply(-1000.0), mTanh.apply(-1000.0), FastHyperbolicTangent.MAX_ERROR);
+    }
+    
+    @Test
+    public void testMatrixMatchesSingleValues() {
+        DoubleMatrix input = DoubleMatrix.rand(4, 5).sub(0.5).mul(10.0);
+        DoubleMatrix result = mTanh.apply(input);
+        for (int element = 0; element < input.length; element++) {
+            assertEquals(mTanh.apply(input.data[element]), result.data[element], 0.0);
+        }
+        Assert.assertArrayEquals(mExact.apply(input).data, result.data, FastHyperbolicTangent.MAX_ERROR);
+    }
+    
+    @Test
+    public void testFloatMatrixInPlace() {
+        FloatMatrix input = new FloatMatrix(new float [][] {{-2.0f, 0.0f, 0.5f, 3.0f}});
+        FloatMatrix expected = mExact.applyi(input.dup(), new FloatMatrix(1, 4));
+        mTanh.applyi(input, input);
+        Assert.assertArrayEquals(expected.data, input.data, 0.00001f);
+    }
+    
+    @Test
+    public void testGradientMatchesExactGradient() {
+        DoubleMatrix output = mExact.apply(DoubleMatrix.rand(3, 3));
+        DoubleMatrix expected = mExact.gradientFromOutputi(output, new DoubleMatrix(3, 3));
+        DoubleMatrix result = mTanh.gradientFromOutputi(output, new DoubleMatrix(3, 3));
+        Assert.assertArrayEquals(expected.data, result.data, 0.0);
+    }
+}
@@ -7,6 +7,7 @@ package ca.craigthomas.neuralnetwork.components.activation;
 import static org.junit.Assert.*;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -136,4 +137,46 @@ public class TestHyperbolicTangent {
         DoubleMatrix result = mTanH.gradient(doubleMatrix);
         Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.000001);
     }
+    
+    @Test
+    public void testHyperbolicTangentApplyiInPlace() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {-1.0, -5.0, -10.0}});
+        DoubleMatrix expected = new DoubleMatrix(new double[][] {{0.76159, 0.99991, 1.0}, {-0.76159, -0.99991, -1.0}});
+        DoubleMatrix result = mTanH.applyi(input, input);
+        assertSame(input, result);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testHyperbolicTangentGradientFromOutput() {
+        DoubleMatrix input = new DoubleMatrix(new double [][] {
+                {0.0, 1.0, -1.0, 5.0, -5.0, 1000.0}
+        });
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {1.0, 0.41997434, 0.41997434, 0.00018158, 0.00018158, 0.0} 
+        });
+        DoubleMatrix output = mTanH.apply(input);
+        DoubleMatrix result = mTanH.gradientFromOutputi(output, output);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.000001);
+    }
+    
+    @Test
+    public void testHyperbolicTangentFloatApplyiMatchesDouble() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {-1.0, -5.0, -10.0}});
+        FloatMatrix floatInput = new FloatMatrix(new float[][] {{1.0f, 5.0f, 10.0f}, {-1.0f, -5.0f, -10.0f}});
+        DoubleMatrix expected = mTanH.apply(input);
+        FloatMatrix result = mTanH.applyi(floatInput, new FloatMatrix(2, 3));
+        for (int index = 0; index < expected.length; index++) {
+            assertEquals(expected.data[index], result.data[index], 0.00001);
+        }
+    }
+    
+    @Test
+    public void testHyperbolicTangentFloatGradientFromOutput() {
+        FloatMatrix output = new FloatMatrix(new float[][] {{0.0f, 0.5f, -1.0f}});
+        FloatMatrix result = mTanH.gradientFromOutputi(output, output);
+        assertEquals(1.0, result.get(0), 0.00001);
+        assertEquals(0.75, result.get(1), 0.00001);
+        assertEquals(0.0, result.get(2), 0.00001);
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLeakyReLU {
+    
+    private LeakyReLU mLeakyReLU;
+    
+    @Before
+    public void setUp() {
+        mLeakyReLU = new LeakyReLU(0.1);
+    }
+
+    @Test
+    public void testDefaultSlope() {
+        assertEquals(LeakyReLU.DEFAULT_SLOPE, new LeakyReLU().getSlope(), 0.0);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testNegativeSlopeThrowsException() {
+        new LeakyReLU(-0.1);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testSlopeOfOneThrowsException() {
+        new LeakyReLU(1.0);
+    }
+    
+    @Test
+    public void testLeakyReLUSingleValuePositive() {
+        assertEquals(5.0, mLeakyReLU.apply(5.0), 0.0);
+    }
+    
+    @Test
+    public void testLeakyReLUSingleValueZero() {
+        assertEquals(0.0, mLeakyReLU.apply(0.0), 0.0);
+    }
+    
+    @Test
+    public void testLeakyReLUSingleValueNegative() {
+        assertEquals(-0.5, mLeakyReLU.apply(-5.0), 0.0000001);
+    }
+    
+    @Test
+    public void testLeakyReLUMatrixMultipleRowsAndColumns() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {-1.0, -5.0, -10.0}});
+        DoubleMatrix expected = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {-0.1, -0.5, -1.0}});
+        DoubleMatrix result = mLeakyReLU.apply(input);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0000001);
+    }
+    
+    @Test
+    public void testLeakyReLUApplyiInPlace() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{2.0, -2.0}});
+        DoubleMatrix result = mLeakyReLU.applyi(input, input);
+        assertSame(input, result);
+        Assert.assertArrayEquals(new double [] {2.0, -0.2}, result.toArray(), 0.0000001);
+    }
+    
+    @Test
+    public void testLeakyReLUGradient() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{3.0, 0.5, -0.5, -3.0}});
+        DoubleMatrix result = mLeakyReLU.gradient(input);
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 0.1, 0.1}, result.toArray(), 0.0000001);
+    }
+    
+    @Test
+    public void testLeakyReLUGradientFromOutput() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{3.0, 0.5, -0.5, -3.0}});
+        DoubleMatrix output = mLeakyReLU.apply(input);
+        DoubleMatrix result = mLeakyReLU.gradientFromOutputi(output, output);
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 0.1, 0.1}, result.toArray(), 0.0000001);
+    }
+    
+    @Test
+    public void testLeakyReLUFloatApplyiMatchesDouble() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {-1.0, -5.0, -10.0}});
+        FloatMatrix floatInput = new FloatMatrix(new float[][] {{1.0f, 5.0f, 10.0f}, {-1.0f, -5.0f, -10.0f}});
+        DoubleMatrix expected = mLeakyReLU.apply(input);
+        FloatMatrix result = mLeakyReLU.applyi(floatInput, new FloatMatrix(2, 3));
+        for (int index = 0; index < expected.length; index++) {
+            assertEquals(expected.data[index], result.data[index], 0.00001);
+        }
+    }
+    
+    @Test
+    public void testLeakyReLUFloatGradientFromOutput() {
+        FloatMatrix output = new FloatMatrix(new float[][] {{2.0f, 0.0f, -0.2f}});
+        FloatMatrix result = mLeakyReLU.gradientFromOutputi(output, output);
+        assertEquals(1.0, result.get(0), 0.00001);
+        assertEquals(0.1, result.get(1), 0.00001);
+        assertEquals(0.1, result.get(2), 0.00001);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLookupTable {
+
+    @Test
+    public void testExactAtTablePoints() {
+        LookupTable table = new LookupTable(t -> t * t, 2.0, 4);
+        assertEquals(0.0, table.get(0.0), 0.0);
+        assertEquals(0.0625, table.get(0.25), 0.0);
+        assertEquals(2.25, table.get(-1.5), 0.0);
+    }
+    
+    @Test
+    public void testInterpolatesBetweenPoints() {
+        LookupTable table = new LookupTable(t -> t * t, 2.0, 1);
+        assertEquals(2.5, table.get(1.5), 0.0000001);
+        assertEquals(0.5, table.get(-0.5), 0.0000001);
+    }
+    
+    @Test
+    public void testClampsOutsideRange() {
+        LookupTable table = new LookupTable(t -> t, 2.0, 4);
+        assertEquals(2.0, table.get(5.0), 0.0);
+        assertEquals(-2.0, table.get(-100.0), 0.0);
+    }
+    
+    @Test
+    public void testApplyArrays() {
+        LookupTable table = new LookupTable(t -> 2 * t, 4.0, 8);
+        double [] values = {-1.0, 0.5, 3.0};
+        table.apply(values, values, 2);
+        Assert.assertArrayEquals(new double [] {-2.0, 1.0, 3.0}, values, 0.0000001);
+        
+        float [] floats = {0.25f, 10.0f};
+        table.apply(floats, floats, floats.length);
+        Assert.assertArrayEquals(new float [] {0.5f, 8.0f}, floats, 0.000001f);
+    }
+}
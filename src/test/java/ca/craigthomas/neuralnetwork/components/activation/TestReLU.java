@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReLU {
+    
+    private ReLU mReLU;
+    
+    @Before
+    public void setUp() {
+        mReLU = new ReLU();
+    }
+
+    @Test
+    public void testReLUSlopeIsZero() {
+        assertEquals(0.0, mReLU.getSlope(), 0.0);
+    }
+    
+    @Test
+    public void testReLUSingleValuePositive() {
+        assertEquals(5.0, mReLU.apply(5.0), 0.0);
+    }
+    
+    @Test
+    public void testReLUSingleValueZero() {
+        assertEquals(0.0, mReLU.apply(0.0), 0.0);
+    }
+    
+    @Test
+    public void testReLUSingleValueNegative() {
+        assertEquals(0.0, mReLU.apply(-5.0), 0.0);
+    }
+    
+    @Test
+    public void testReLUMatrixMultipleRowsAndColumns() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {-1.0, -5.0, -10.0}});
+        DoubleMatrix expected = new DoubleMatrix(new double[][] {{1.0, 5.0, 10.0}, {0.0, 0.0, 0.0}});
+        DoubleMatrix result = mReLU.apply(input);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0);
+    }
+    
+    @Test
+    public void testReLUGradient() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{3.0, 0.5, 0.0, -0.5, -3.0}});
+        DoubleMatrix result = mReLU.gradient(input);
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 0.0, 0.0, 0.0}, result.toArray(), 0.0);
+    }
+    
+    @Test
+    public void testReLUGradientFromOutput() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{3.0, 0.5, -0.5, -3.0}});
+        DoubleMatrix output = mReLU.apply(input);
+        DoubleMatrix result = mReLU.gradientFromOutputi(output, output);
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 0.0, 0.0}, result.toArray(), 0.0);
+    }
+    
+    @Test
+    public void testReLUFloatApplyi() {
+        FloatMatrix input = new FloatMatrix(new float[][] {{1.5f, -1.5f}});
+        FloatMatrix result = mReLU.applyi(input, input);
+        assertEquals(1.5, result.get(0), 0.0);
+        assertEquals(0.0, result.get(1), 0.0);
+    }
+    
+    @Test
+    public void testReLUFloatGradientFromOutput() {
+        FloatMatrix output = new FloatMatrix(new float[][] {{2.0f, 0.0f}});
+        FloatMatrix result = mReLU.gradientFromOutputi(output, output);
+        assertEquals(1.0, result.get(0), 0.0);
+        assertEquals(0.0, result.get(1), 0.0);
+    }
+}
@@ -7,6 +7,7 @@ package ca.craigthomas.neuralnetwork.components.activation;
 import static org.junit.Assert.*;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -130,4 +131,54 @@ public class TestSigmoid {
         DoubleMatrix result = mSigmoid.gradient(input);
         Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0001);
     }
+    
+    @Test
+    public void testSigmoidDoesNotModifyInput() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 100.0}, {-1.0, -5.0, -100.0}});
+        DoubleMatrix expected = input.dup();
+        mSigmoid.apply(input);
+        mSigmoid.gradient(input);
+        Assert.assertArrayEquals(expected.toArray(), input.toArray(), 0.0);
+    }
+    
+    @Test
+    public void testSigmoidApplyiInPlace() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 100.0}, {-1.0, -5.0, -100.0}});
+        DoubleMatrix expected = new DoubleMatrix(new double[][] {{0.73106, 0.99331, 1.0}, {0.26894, 0.0066929, 0.0}});
+        DoubleMatrix result = mSigmoid.applyi(input, input);
+        assertSame(input, result);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0001);
+    }
+    
+    @Test
+    public void testSigmoidGradientFromOutputMatchesGradient() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {
+                {0.83784, 1.55201, 1.30461, 1.04431, 1.28187, 1.20520, 1.07422, 1.23919}
+        });
+        DoubleMatrix output = mSigmoid.apply(input);
+        DoubleMatrix result = new DoubleMatrix(1, 8);
+        mSigmoid.gradientFromOutputi(output, result);
+        Assert.assertArrayEquals(mSigmoid.gradient(input).toArray(), result.toArray(), 0.000001);
+    }
+    
+    @Test
+    public void testSigmoidFloatApplyiMatchesDouble() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 5.0, 100.0}, {-1.0, -5.0, -100.0}});
+        FloatMatrix floatInput = new FloatMatrix(new float[][] {{1.0f, 5.0f, 100.0f}, {-1.0f, -5.0f, -100.0f}});
+        DoubleMatrix expected = mSigmoid.apply(input);
+        FloatMatrix result = mSigmoid.applyi(floatInput, floatInput);
+        assertSame(floatInput, result);
+        for (int index = 0; index < expected.length; index++) {
+            assertEquals(expected.data[index], result.data[index], 0.00001);
+        }
+    }
+    
+    @Test
+    public void testSigmoidFloatGradientFromOutput() {
+        FloatMatrix output = new FloatMatrix(new float[][] {{0.5f, 0.25f, 1.0f}});
+        FloatMatrix result = mSigmoid.gradientFromOutputi(output, new FloatMatrix(1, 3));
+        assertEquals(0.25, result.get(0), 0.00001);
+        assertEquals(0.1875, result.get(1), 0.00001);
+        assertEquals(0.0, result.get(2), 0.00001);
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.activation;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSoftmax {
+    
+    private Softmax mSoftmax;
+    
+    @Before
+    public void setUp() {
+        mSoftmax = new Softmax();
+    }
+
+    @Test
+    public void testSoftmaxSingleValueIsOne() {
+        assertEquals(1.0, mSoftmax.apply(-3.0), 0.0);
+    }
+    
+    @Test
+    public void testSoftmaxEachRowSumsToOne() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 2.0, 3.0}, {0.0, 0.0, 0.0}});
+        DoubleMatrix result = mSoftmax.apply(input);
+        Assert.assertArrayEquals(new double [] {0.090031, 0.244728, 0.665241}, result.getRow(0).toArray(), 0.000001);
+        Assert.assertArrayEquals(new double [] {0.333333, 0.333333, 0.333333}, result.getRow(1).toArray(), 0.000001);
+    }
+    
+    @Test
+    public void testSoftmaxLargeValuesDoNotOverflow() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1000.0, 1001.0, 1002.0}});
+        DoubleMatrix result = mSoftmax.applyi(input, input);
+        Assert.assertArrayEquals(new double [] {0.090031, 0.244728, 0.665241}, result.toArray(), 0.000001);
+    }
+    
+    @Test
+    public void testSoftmaxLogResultIsFiniteWhenSoftmaxUnderflows() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{0.0, 1000.0}});
+        DoubleMatrix logResult = new DoubleMatrix(1, 2);
+        DoubleMatrix result = mSoftmax.applyi(input, new DoubleMatrix(1, 2), logResult);
+        Assert.assertArrayEquals(new double [] {0.0, 1.0}, result.toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {-1000.0, 0.0}, logResult.toArray(), 0.000001);
+    }
+    
+    @Test
+    public void testSoftmaxLogResultMatchesLogOfSoftmax() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, -2.0}, {0.5, 3.0}, {-1.0, 0.0}});
+        DoubleMatrix logResult = new DoubleMatrix(3, 2);
+        DoubleMatrix result = mSoftmax.applyi(input, new DoubleMatrix(3, 2), logResult);
+        for (int index = 0; index < result.length; index++) {
+            assertEquals(Math.log(result.data[index]), logResult.data[index], 0.000001);
+        }
+    }
+    
+    @Test
+    public void testSoftmaxFloatApplyiMatchesDouble() {
+        DoubleMatrix input = new DoubleMatrix(new double[][] {{1.0, 2.0, 3.0}, {-1.0, 5.0, 0.5}});
+        FloatMatrix floatInput = new FloatMatrix(new float[][] {{1.0f, 2.0f, 3.0f}, {-1.0f, 5.0f, 0.5f}});
+        DoubleMatrix expected = mSoftmax.apply(input);
+        FloatMatrix logResult = new FloatMatrix(2, 3);
+        FloatMatrix result = mSoftmax.applyi(floatInput, new FloatMatrix(2, 3), logResult);
+        for (int index = 0; index < expected.length; index++) {
+            assertEquals(expected.data[index], result.data[index], 0.00001);
+            assertEquals(Math.log(expected.data[index]), logResult.data[index], 0.00001);
+        }
+        Assert.assertArrayEquals(result.toArray(), mSoftmax.applyi(floatInput, new FloatMatrix(2, 3)).toArray(), 0.0f);
+    }
+    
+    @Test
+    public void testSoftmaxApplyiOnArray() {
+        double [] values = {1.0, 2.0, 3.0, 99.0};
+        mSoftmax.applyi(values, 3);
+        Assert.assertArrayEquals(new double [] {0.090031, 0.244728, 0.665241, 99.0}, values, 0.000001);
+    }
+    
+    @Test
+    public void testSoftmaxGradientFromOutputIsDiagonal() {
+        DoubleMatrix output = new DoubleMatrix(new double[][] {{0.25, 0.75}});
+        DoubleMatrix result = mSoftmax.gradientFromOutputi(output, new DoubleMatrix(1, 2));
+        Assert.assertArrayEquals(new double [] {0.1875, 0.1875}, result.toArray(), 0.000001);
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests that every backend must pass. Each backend has a test class
+ * that extends this one and creates the backend to test. Results are 
+ * compared against straightforward implementations of each operation.
+ */
+public abstract class BackendConformanceTest {
+
+    protected IBackend mBackend;
+    
+    protected abstract IBackend createBackend();
+    
+    @Before
+    public void setUp() {
+        mBackend = createBackend();
+    }
+    
+    private static DoubleMatrix multiply(DoubleMatrix a, DoubleMatrix b) {
+        DoubleMatrix result = new DoubleMatrix(a.rows, b.columns);
+        for (int row = 0; row < a.rows; row++) {
+            for (int col = 0; col < b.columns; col++) {
+                double sum = 0.0;
+                for (int k = 0; k < a.columns; k++) {
+                    sum += a.get(row, k) * b.get(k, col);
+                }
+                result.put(row, col, sum);
+            }
+        }
+        return result;
+    }
+    
+    private static DoubleMatrix withoutFirstColumn(DoubleMatrix matrix) {
+        DoubleMatrix result = new DoubleMatrix(matrix.rows, matrix.columns - 1);
+        System.arraycopy(matrix.data, matrix.rows, result.data, 0, result.length);
+        return result;
+    }
+    
+    private static FloatMatrix toFloat(DoubleMatrix matrix) {
+        FloatMatrix result = new FloatMatrix(matrix.rows, matrix.columns);
+        for (int element = 0; element < matrix.length; element++) {
+            result.data[element] = (float)matrix.data[element];
+        }
+        return result;
+    }
+    
+    private static double [] toDouble(FloatMatrix matrix) {
+        double [] result = new double [matrix.length];
+        for (int element = 0; element < matrix.length; element++) {
+            result[element] = matrix.data[element];
+        }
+        return result;
+    }
+    
+    @Test
+    public void testGemmSmallMatrices() {
+        DoubleMatrix a = new DoubleMatrix(new double [][] {
+                {1.0, 2.0, 3.0},
+                {4.0, 5.0, 6.0}
+        });
+        DoubleMatrix b = new DoubleMatrix(new double [][] {
+                {1.0, 0.0},
+                {0.0, 1.0},
+                {2.0, -1.0}
+        });
+        DoubleMatrix c = new DoubleMatrix(2, 2);
+        
+        assertSame(c, mBackend.gemm(1.0, a, b, 0.0, c));
+        Assert.assertArrayEquals(new double [] {7.0, 16.0, -1.0, -1.0}, c.data, 0.0000001);
+    }
+    
+    @Test
+    public void testGemmLargerThanSeveralTiles() {
+        DoubleMatrix a = DoubleMatrix.rand(150, 140).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(140, 130).sub(0.5);
+        DoubleMatrix c = new DoubleMatrix(150, 130);
+        
+        mBackend.gemm(1.0, a, b, 0.0, c);
+        Assert.assertArrayEquals(multiply(a, b).data, c.data, 0.0000001);
+    }
+    
+    @Test
+    public void testGemmScalesProductAndAddsToResult() {
+        DoubleMatrix a = DoubleMatrix.rand(7, 5);
+        DoubleMatrix b = DoubleMatrix.rand(5, 3);
+        DoubleMatrix c = DoubleMatrix.rand(7, 3);
+        DoubleMatrix expected = multiply(a, b).mul(2.0).add(c.mul(0.5));
+        
+        mBackend.gemm(2.0, a, b, 0.5, c);
+        Assert.assertArrayEquals(expected.data, c.data, 0.0000001);
+    }
+    
+    @Test
+    public void testGemmZeroBetaIgnoresResultValues() {
+        DoubleMatrix a = DoubleMatrix.rand(4, 3);
+        DoubleMatrix b = DoubleMatrix.rand(3, 2);
+        DoubleMatrix c = new DoubleMatrix(4, 2);
+        c.fill(Double.NaN);
+        
+        mBackend.gemm(1.0, a, b, 0.0, c);
+        Assert.assertArrayEquals(multiply(a, b).data, c.data, 0.0000001);
+    }
+    
+    @Test
+    public void testGemmVectorResult() {
+        DoubleMatrix a = DoubleMatrix.rand(6, 4);
+        DoubleMatrix b = DoubleMatrix.rand(4, 1);
+        DoubleMatrix c = new DoubleMatrix(6, 1);
+        
+        mBackend.gemm(1.0, a, b, 0.0, c);
+        Assert.assertArrayEquals(multiply(a, b).data, c.data, 0.0000001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGemmWrongInnerSizeThrowsException() {
+        mBackend.gemm(1.0, new DoubleMatrix(2, 3), new DoubleMatrix(2, 2), 0.0, new DoubleMatrix(2, 2));
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGemmWrongResultSizeThrowsException() {
+        mBackend.gemm(1.0, new DoubleMatrix(2, 3), new DoubleMatrix(3, 2), 0.0, new DoubleMatrix(3, 2));
+    }
+    
+    @Test
+    public void testFloatGemmLargerThanSeveralTiles() {
+        DoubleMatrix a = DoubleMatrix.rand(140, 150).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(150, 70).sub(0.5);
+        FloatMatrix c = new FloatMatrix(140, 70);
+        
+        mBackend.gemm(1.0f, toFloat(a), toFloat(b), 0.0f, c);
+        Assert.assertArrayEquals(multiply(a, b).data, toDouble(c), 0.0001);
+    }
+    
+    @Test
+    public void testFloatGemmScalesProductAndAddsToResult() {
+        DoubleMatrix a = DoubleMatrix.rand(5, 4);
+        DoubleMatrix b = DoubleMatrix.rand(4, 6);
+        DoubleMatrix c = DoubleMatrix.rand(5, 6);
+        DoubleMatrix expected = multiply(a, b).mul(-1.0).add(c.mul(2.0));
+        FloatMatrix result = toFloat(c);
+        
+        mBackend.gemm(-1.0f, toFloat(a), toFloat(b), 2.0f, result);
+        Assert.assertArrayEquals(expected.data, toDouble(result), 0.0001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testFloatGemmWrongInnerSizeThrowsException() {
+        mBackend.gemm(1.0f, new FloatMatrix(2, 3), new FloatMatrix(2, 2), 0.0f, new FloatMatrix(2, 2));
+    }
+    
+    @Test
+    public void testGemmTransposeA() {
+        DoubleMatrix a = DoubleMatrix.rand(140, 150).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(140, 130).sub(0.5);
+        DoubleMatrix c = new DoubleMatrix(150, 130);
+        
+        mBackend.gemm(true, false, 1.0, a, b, 0.0, c);
+        Assert.assertArrayEquals(multiply(a.transpose(), b).data, c.data, 0.0000001);
+    }
+    
+    @Test
+    public void testGemmTransposeB() {
+        DoubleMatrix a = DoubleMatrix.rand(150, 140).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(130, 140).sub(0.5);
+        DoubleMatrix c = DoubleMatrix.rand(150, 130);
+        DoubleMatrix expected = multiply(a, b.transpose()).mul(2.0).add(c.mul(0.5));
+        
+        mBackend.gemm(false, true, 2.0, a, b, 0.5, c);
+        Assert.assertArrayEquals(expected.data, c.data, 0.0000001);
+    }
+    
+    @Test
+    public void testGemmTransposeBoth() {
+        DoubleMatrix a = DoubleMatrix.rand(5, 7).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(3, 5).sub(0.5);
+        DoubleMatrix c = new DoubleMatrix(7, 3);
+        
+        mBackend.gemm(true, true, 1.0, a, b, 0.0, c);
+        Assert.assertArrayEquals(multiply(a.transpose(), b.transpose()).data, c.data, 0.0000001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGemmTransposeWrongInnerSizeThrowsException() {
+        mBackend.gemm(false, true, 1.0, new DoubleMatrix(2, 3), new DoubleMatrix(3, 2), 0.0, new DoubleMatrix(2, 3));
+    }
+    
+    @Test
+    public void testFloatGemmTransposeA() {
+        DoubleMatrix a = DoubleMatrix.rand(150, 70).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(150, 60).sub(0.5);
+        FloatMatrix c = new FloatMatrix(70, 60);
+        
+        mBackend.gemm(true, false, 1.0f, toFloat(a), toFloat(b), 0.0f, c);
+        Assert.assertArrayEquals(multiply(a.transpose(), b).data, toDouble(c), 0.0001);
+    }
+    
+    @Test
+    public void testFloatGemmTransposeB() {
+        DoubleMatrix a = DoubleMatrix.rand(140, 150).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(70, 150).sub(0.5);
+        FloatMatrix c = new FloatMatrix(140, 70);
+        
+        mBackend.gemm(false, true, 1.0f, toFloat(a), toFloat(b), 0.0f, c);
+        Assert.assertArrayEquals(multiply(a, b.transpose()).data, toDouble(c), 0.0001);
+    }
+    
+    @Test
+    public void testFloatGemmTransposeBoth() {
+        DoubleMatrix a = DoubleMatrix.rand(4, 6).sub(0.5);
+        DoubleMatrix b = DoubleMatrix.rand(5, 4).sub(0.5);
+        DoubleMatrix c = DoubleMatrix.rand(6, 5);
+        DoubleMatrix expected = multiply(a.transpose(), b.transpose()).mul(-1.0).add(c.mul(2.0));
+        FloatMatrix result = toFloat(c);
+        
+        mBackend.gemm(true, true, -1.0f, toFloat(a), toFloat(b), 2.0f, result);
+        Assert.assertArrayEquals(expected.data, toDouble(result), 0.0001);
+    }
+    
+    @Test
+    public void testGemmOnPartOfArrays() {
+        DoubleMatrix theta = DoubleMatrix.rand(130, 141).sub(0.5);
+        DoubleMatrix weights = withoutFirstColumn(theta);
+        DoubleMatrix a = DoubleMatrix.rand(150, 140).sub(0.5);
+        DoubleMatrix c = new DoubleMatrix(150, 131);
+        DoubleMatrix expected = multiply(a, weights.transpose());
+        
+        mBackend.gemm(false, true, 150, 130, 140, 1.0, a.data, 0, 150, theta.data, 130, 130, 0.0, c.data, 150, 150);
+        Assert.assertArrayEquals(expected.data, withoutFirstColumn(c).data, 0.0000001);
+        Assert.assertArrayEquals(new double [150], c.getColumn(0).data, 0.0);
+    }
+    
+    @Test
+    public void testGemmOnPartOfArraysTransposeA() {
+        DoubleMatrix delta = DoubleMatrix.rand(20, 4).sub(0.5);
+        DoubleMatrix a = DoubleMatrix.rand(20, 6).sub(0.5);
+        DoubleMatrix gradient = DoubleMatrix.rand(4, 7);
+        double [] bias = gradient.getColumn(0).data;
+        
+        mBackend.gemm(true, false, 4, 6, 20, 1.0, delta.data, 0, 20, a.data, 0, 20, 0.0, gradient.data, 4, 4);
+        Assert.assertArrayEquals(multiply(delta.transpose(), a).data, withoutFirstColumn(gradient).data, 0.0000001);
+        Assert.assertArrayEquals(bias, gradient.getColumn(0).data, 0.0);
+    }
+    
+    @Test
+    public void testFloatGemmOnPartOfArrays() {
+        DoubleMatrix theta = DoubleMatrix.rand(5, 4).sub(0.5);
+        DoubleMatrix delta = DoubleMatrix.rand(3, 5).sub(0.5);
+        FloatMatrix c = new FloatMatrix(3, 3);
+        
+        mBackend.gemm(false, false, 3, 3, 5, 1.0f, toFloat(delta).data, 0, 3, toFloat(theta).data, 5, 5, 0.0f, c.data, 0, 3);
+        Assert.assertArrayEquals(multiply(delta, withoutFirstColumn(theta)).data, toDouble(c), 0.0001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGemmOnPartOfArraysPastEndThrowsException() {
+        DoubleMatrix theta = new DoubleMatrix(3, 4);
+        mBackend.gemm(false, true, 2, 3, 4, 1.0, new double [8], 0, 2, theta.data, 3, 3, 0.0, new double [6], 0, 2);
+    }
+    
+    @Test
+    public void testGemv() {
+        DoubleMatrix a = DoubleMatrix.rand(5, 7);
+        DoubleMatrix x = DoubleMatrix.rand(7, 1);
+        DoubleMatrix y = DoubleMatrix.rand(5, 1);
+        DoubleMatrix expected = multiply(a, x).mul(3.0).add(y.mul(-1.0));
+        
+        assertSame(y, mBackend.gemv(3.0, a, x, -1.0, y));
+        Assert.assertArrayEquals(expected.data, y.data, 0.0000001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGemvWrongSizeThrowsException() {
+        mBackend.gemv(1.0, new DoubleMatrix(5, 7), new DoubleMatrix(6, 1), 0.0, new DoubleMatrix(5, 1));
+    }
+    
+    @Test
+    public void testGemvOnPartOfArrays() {
+        DoubleMatrix theta = DoubleMatrix.rand(5, 8).sub(0.5);
+        DoubleMatrix x = DoubleMatrix.rand(7, 1).sub(0.5);
+        DoubleMatrix y = DoubleMatrix.rand(6, 1);
+        DoubleMatrix expected = multiply(withoutFirstColumn(theta), x).add(theta.getColumn(0));
+        System.arraycopy(theta.data, 0, y.data, 1, 5);
+        
+        mBackend.gemv(5, 7, 1.0, theta.data, 5, 5, x.data, 0, 1.0, y.data, 1);
+        Assert.assertArrayEquals(expected.data, Arrays.copyOfRange(y.data, 1, 6), 0.0000001);
+    }
+    
+    @Test
+    public void testFloatGemvOnPartOfArrays() {
+        DoubleMatrix theta = DoubleMatrix.rand(5, 8).sub(0.5);
+        DoubleMatrix x = DoubleMatrix.rand(7, 1).sub(0.5);
+        FloatMatrix y = new FloatMatrix(5, 1);
+        
+        mBackend.gemv(5, 7, 1.0f, toFloat(theta).data, 5, 5, toFloat(x).data, 0, 0.0f, y.data, 0);
+        Assert.assertArrayEquals(multiply(withoutFirstColumn(theta), x).data, toDouble(y), 0.0001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGemvOnPartOfArraysPastEndThrowsException() {
+        mBackend.gemv(3, 4, 1.0, new double [12], 3, 3, new double [4], 0, 0.0, new double [3], 0);
+    }
+    
+    @Test
+    public void testAxpy() {
+        DoubleMatrix x = new DoubleMatrix(new double [][] {{1.0, 2.0}, {3.0, 4.0}});
+        DoubleMatrix y = new DoubleMatrix(new double [][] {{1.0, 1.0}, {1.0, 1.0}});
+        
+        mBackend.axpy(-2.0, x, y);
+        Assert.assertArrayEquals(new double [] {-1.0, -5.0, -3.0, -7.0}, y.data, 0.0000001);
+    }
+    
+    @Test
+    public void testSubiInPlace() {
+        DoubleMatrix a = new DoubleMatrix(new double [][] {{5.0, 6.0}, {7.0, 8.0}});
+        DoubleMatrix b = new DoubleMatrix(new double [][] {{1.0, 2.0}, {3.0, 4.0}});
+        
+        assertSame(a, mBackend.subi(a, b, a));
+        Assert.assertArrayEquals(new double [] {4.0, 4.0, 4.0, 4.0}, a.data, 0.0000001);
+    }
+    
+    @Test
+    public void testMuli() {
+        DoubleMatrix a = new DoubleMatrix(new double [][] {{5.0, 6.0}, {7.0, 8.0}});
+        DoubleMatrix b = new DoubleMatrix(new double [][] {{1.0, 2.0}, {3.0, -4.0}});
+        DoubleMatrix result = new DoubleMatrix(2, 2);
+        
+        mBackend.muli(a, b, result);
+        Assert.assertArrayEquals(new double [] {5.0, 21.0, 12.0, -32.0}, result.data, 0.0000001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testMuliWrongSizeThrowsException() {
+        mBackend.muli(new DoubleMatrix(2, 2), new DoubleMatrix(2, 3), new DoubleMatrix(2, 2));
+    }
+    
+    @Test
+    public void testScali() {
+        DoubleMatrix x = new DoubleMatrix(new double [][] {{1.0, -2.0, 3.0}});
+        
+        mBackend.scali(0.5, x);
+        Assert.assertArrayEquals(new double [] {0.5, -1.0, 1.5}, x.data, 0.0000001);
+    }
+    
+    @Test
+    public void testSum() {
+        DoubleMatrix x = new DoubleMatrix(new double [][] {{1.0, -2.0}, {3.0, 4.5}});
+        assertEquals(6.5, mBackend.sum(x), 0.0000001);
+    }
+    
+    @Test
+    public void testDot() {
+        DoubleMatrix x = new DoubleMatrix(new double [][] {{1.0, -2.0}, {3.0, 4.0}});
+        DoubleMatrix y = new DoubleMatrix(new double [][] {{2.0, 1.0}, {0.5, 1.0}});
+        assertEquals(5.5, mBackend.dot(x, y), 0.0000001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testDotWrongSizeThrowsException() {
+        mBackend.dot(new DoubleMatrix(2, 2), new DoubleMatrix(3, 1));
+    }
+}
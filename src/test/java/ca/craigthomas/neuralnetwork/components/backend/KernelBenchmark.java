@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.MatrixFunctions;
+
+import ca.craigthomas.neuralnetwork.components.activation.FastHyperbolicTangent;
+import ca.craigthomas.neuralnetwork.components.activation.FastSigmoid;
+
+/**
+ * Measures the elementwise kernels against the multi-pass matrix operations
+ * they replaced. Not run as part of the tests - run the main method with the
+ * test classpath, optionally passing the number of elements to use.
+ */
+public class KernelBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    private interface Kernel {
+        double run();
+    }
+
+    private static double time(String name, int elements, Kernel kernel) {
+        double sink = 0.0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            sink += kernel.run();
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            sink += kernel.run();
+        }
+        double nanos = (double)(System.nanoTime() - start) / ((double)ROUNDS * elements);
+        System.out.println(String.format("%-28s %8.3f ns/element", name, nanos));
+        return sink;
+    }
+
+    public static void main(String [] args) {
+        final int elements = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 20;
+        final DoubleMatrix input = DoubleMatrix.rand(1024, elements / 1024).sub(0.5).mul(8.0);
+        final DoubleMatrix result = new DoubleMatrix(input.rows, input.columns);
+        final DoubleMatrix theta = input.dup();
+        final FastSigmoid fastSigmoid = new FastSigmoid();
+        final FastHyperbolicTangent fastTanh = new FastHyperbolicTangent();
+        double sink = 0.0;
+
+        sink += time("sigmoid (4 passes)", elements, new Kernel() {
+            public double run() {
+                input.muli(-1, result);
+                MatrixFunctions.expi(result);
+                result.addi(1);
+                return result.rdivi(1).data[0];
+            }
+        });
+        sink += time("sigmoid (lookup table)", elements, new Kernel() {
+            public double run() {
+                return fastSigmoid.applyi(input, result).data[0];
+            }
+        });
+        sink += time("tanh (copy + tanhi)", elements, new Kernel() {
+            public double run() {
+                result.copy(input);
+                return MatrixFunctions.tanhi(result).data[0];
+            }
+        });
+        sink += time("tanh (lookup table)", elements, new Kernel() {
+            public double run() {
+                return fastTanh.applyi(input, result).data[0];
+            }
+        });
+        sink += time("regularization (mul + sum)", elements, new Kernel() {
+            public double run() {
+                DoubleMatrix noBias = new DoubleMatrix(theta.rows, theta.columns - 1);
+                System.arraycopy(theta.data, theta.rows, noBias.data, 0, noBias.length);
+                return noBias.mul(noBias).sum();
+            }
+        });
+        sink += time("regularization (dot kernel)", elements, new Kernel() {
+            public double run() {
+                return Kernels.dot(theta.data, theta.data, theta.rows, theta.length);
+            }
+        });
+        sink += time("sign update (branches)", elements, new Kernel() {
+            public double run() {
+                for (int index = 0; index < theta.length; index++) {
+                    if (input.data[index] > 0) {
+                        theta.data[index] -= 0.001;
+                    } else {
+                        theta.data[index] += 0.001;
+                    }
+                }
+                return theta.data[0];
+            }
+        });
+        sink += time("sign update (kernel)", elements, new Kernel() {
+            public double run() {
+                Kernels.signStep(theta.data, input.data, 0.001, theta.length);
+                return theta.data[0];
+            }
+        });
+        System.out.println("(checksum " + sink + ")");
+    }
+}
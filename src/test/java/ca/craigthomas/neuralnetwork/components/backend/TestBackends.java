@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestBackends {
+
+    @Test
+    public void testCreateByName() {
+        assertTrue(Backends.create("java") instanceof JavaBackend);
+        assertTrue(Backends.create("Java") instanceof JavaBackend);
+    }
+    
+    @Test
+    public void testCreateJblasChecksNativeLibraries() {
+        try {
+            assertTrue(Backends.create("jblas") instanceof JblasBackend);
+            assertTrue(JblasBackend.isAvailable());
+        } catch (IllegalStateException e) {
+            assertFalse(JblasBackend.isAvailable());
+        }
+    }
+    
+    @Test
+    public void testCreateUnknownNameReturnsNull() {
+        assertNull(Backends.create("fortran"));
+    }
+    
+    @Test
+    public void testGetDefaultReturnsSameBackend() {
+        IBackend backend = Backends.getDefault();
+        assertNotNull(backend);
+        assertSame(backend, Backends.getDefault());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestJavaBackend extends BackendConformanceTest {
+
+    @Override
+    protected IBackend createBackend() {
+        return new JavaBackend(4);
+    }
+    
+    @Test
+    public void testGetName() {
+        assertEquals("java", mBackend.getName());
+        assertEquals(4, ((JavaBackend)mBackend).getThreads());
+    }
+    
+    @Test
+    public void testGemmSameResultForAnyNumberOfThreads() {
+        DoubleMatrix a = DoubleMatrix.rand(300, 200);
+        DoubleMatrix b = DoubleMatrix.rand(200, 150);
+        DoubleMatrix single = new DoubleMatrix(300, 150);
+        DoubleMatrix multiple = new DoubleMatrix(300, 150);
+        
+        new JavaBackend(1).gemm(1.0, a, b, 0.0, single);
+        mBackend.gemm(1.0, a, b, 0.0, multiple);
+        Assert.assertArrayEquals(single.data, multiple.data, 0.0);
+    }
+    
+    @Test
+    public void testBackendsShareThreads() {
+        DoubleMatrix a = DoubleMatrix.rand(300, 200);
+        DoubleMatrix b = DoubleMatrix.rand(200, 150);
+        DoubleMatrix c = new DoubleMatrix(300, 150);
+        
+        for (int backend = 0; backend < 20; backend++) {
+            new JavaBackend(4).gemm(1.0, a, b, 0.0, c);
+        }
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("java-backend")) {
+                threads++;
+            }
+        }
+        assertTrue(threads <= Runtime.getRuntime().availableProcessors());
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testZeroThreadsThrowsException() {
+        new JavaBackend(0);
+    }
+}
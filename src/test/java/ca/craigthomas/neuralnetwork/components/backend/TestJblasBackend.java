@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestJblasBackend extends BackendConformanceTest {
+
+    @Before
+    public void assumeNativesAvailable() {
+        Assume.assumeTrue(JblasBackend.isAvailable());
+    }
+
+    @Override
+    protected IBackend createBackend() {
+        return new JblasBackend();
+    }
+    
+    @Test
+    public void testGetName() {
+        assertEquals("jblas", mBackend.getName());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.backend;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestKernels {
+
+    @Test
+    public void testLeakyReluOnlyTouchesLength() {
+        double [] input = {-2.0, 0.0, 3.0, -1.0};
+        double [] output = {9.0, 9.0, 9.0, 9.0};
+        Kernels.leakyRelu(input, output, 0.5, 3);
+        Assert.assertArrayEquals(new double [] {-1.0, 0.0, 3.0, 9.0}, output, 0.0);
+    }
+    
+    @Test
+    public void testLeakyReluGradientFromValues() {
+        float [] values = {-1.0f, 0.0f, 3.0f};
+        float [] output = new float[3];
+        Kernels.leakyReluGradient(values, output, 0.25f, values.length);
+        Assert.assertArrayEquals(new float [] {0.25f, 0.25f, 1.0f}, output, 0.0f);
+    }
+    
+    @Test
+    public void testLeakyReluGradientOfZeroIsSlope() {
+        double [] values = {-0.0, 0.0, -2.0, 0.5};
+        double [] output = new double[4];
+        Kernels.leakyReluGradient(values, output, 0.0, values.length);
+        Assert.assertArrayEquals(new double [] {0.0, 0.0, 0.0, 1.0}, output, 0.0);
+    }
+    
+    @Test
+    public void testSignStepMovesAgainstSignOfGradient() {
+        double [] values = {0.5, -0.5, 1.0, 2.0};
+        double [] gradients = {2.0, -3.0, 0.0, -0.0};
+        Kernels.signStep(values, gradients, 0.1, values.length);
+        Assert.assertArrayEquals(new double [] {0.4, -0.4, 1.1, 2.1}, values, 0.00001);
+    }
+    
+    @Test
+    public void testSumOfRangeWithRemainder() {
+        double [] values = {100.0, 1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 100.0};
+        assertEquals(21.0, Kernels.sum(values, 1, 7), 0.0);
+        assertEquals(0.0, Kernels.sum(values, 3, 3), 0.0);
+    }
+    
+    @Test
+    public void testDotOfRangeWithRemainder() {
+        double [] x = {100.0, 1.0, 2.0, 3.0, 4.0, 5.0};
+        double [] y = {100.0, 2.0, 2.0, 2.0, 2.0, -1.0};
+        assertEquals(15.0, Kernels.dot(x, y, 1, 6), 0.0);
+    }
+    
+    @Test
+    public void testLogLikelihoodOfEachOutput() {
+        double [] output = {0.9, 0.2, 0.6};
+        double [] expected = {1.0, 0.0, 0.0};
+        double likelihood = Math.log(0.9) + Math.log(0.8) + Math.log(0.4);
+        assertEquals(likelihood, Kernels.logLikelihood(output, expected, 3), 0.0000001);
+        assertEquals(likelihood, Kernels.logLikelihood(new float [] {0.9f, 0.2f, 0.6f}, expected, 3), 0.000001);
+    }
+}
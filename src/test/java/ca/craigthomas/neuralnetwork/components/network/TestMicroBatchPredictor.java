@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jblas.DoubleMatrix;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMicroBatchPredictor {
+
+    private NeuralNetwork mNeuralNetwork;
+    private MicroBatchPredictor mPredictor;
+    
+    @Before
+    public void setUp() {
+        mNeuralNetwork = new NeuralNetwork.Builder(Arrays.asList(3, 4, 2)).build();
+    }
+    
+    @After
+    public void tearDown() {
+        if (mPredictor != null) {
+            mPredictor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testMicroBatchPredictorResultsMatchPredict() throws Exception {
+        DoubleMatrix inputs = DoubleMatrix.rand(10, 3);
+        DoubleMatrix expected = mNeuralNetwork.predict(inputs);
+        mPredictor = new MicroBatchPredictor.Builder(mNeuralNetwork)
+                .maxBatchSize(4).maxWait(1, TimeUnit.SECONDS).build();
+        
+        List<CompletableFuture<double []>> results = new ArrayList<CompletableFuture<double []>>();
+        for (int row = 0; row < inputs.rows; row++) {
+            results.add(mPredictor.submit(inputs.getRow(row).toArray()));
+        }
+        
+        for (int row = 0; row < inputs.rows; row++) {
+            Assert.assertArrayEquals(expected.getRow(row).toArray(), results.get(row).get(5, TimeUnit.SECONDS), 0.000001);
+        }
+        assertEquals(10, mPredictor.getNumRequests());
+        assertEquals(3, mPredictor.getNumBatches());
+        assertEquals(10.0 / 3.0, mPredictor.getAverageBatchSize(), 0.0001);
+        assertEquals(0, mPredictor.getQueueDepth());
+        assertTrue(mPredictor.getMaxQueueDepth() >= 1);
+    }
+    
+    @Test
+    public void testMicroBatchPredictorCopiesSubmittedSample() throws Exception {
+        DoubleMatrix inputs = DoubleMatrix.rand(4, 3);
+        DoubleMatrix expected = mNeuralNetwork.predict(inputs);
+        mPredictor = new MicroBatchPredictor.Builder(mNeuralNetwork)
+                .maxBatchSize(4).maxWait(1, TimeUnit.SECONDS).build();
+        
+        double [] sample = new double [3];
+        List<CompletableFuture<double []>> results = new ArrayList<CompletableFuture<double []>>();
+        for (int row = 0; row < inputs.rows; row++) {
+            System.arraycopy(inputs.getRow(row).toArray(), 0, sample, 0, 3);
+            results.add(mPredictor.submit(sample));
+        }
+        
+        for (int row = 0; row < inputs.rows; row++) {
+            Assert.assertArrayEquals(expected.getRow(row).toArray(), results.get(row).get(5, TimeUnit.SECONDS), 0.000001);
+        }
+    }
+    
+    @Test
+    public void testMicroBatchPredictorDoesNotWaitPastMaxWait() throws Exception {
+        mPredictor = new MicroBatchPredictor.Builder(mNeuralNetwork)
+                .maxBatchSize(64).maxWait(1, TimeUnit.MILLISECONDS).build();
+        double [] result = mPredictor.submit(new double [] {0.1, 0.2, 0.3}).get(5, TimeUnit.SECONDS);
+        assertEquals(2, result.length);
+        assertEquals(1, mPredictor.getNumBatches());
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testMicroBatchPredictorWrongInputSizeThrowsException() {
+        mPredictor = new MicroBatchPredictor.Builder(mNeuralNetwork).build();
+        mPredictor.submit(new double [] {0.1, 0.2});
+    }
+    
+    @Test
+    public void testMicroBatchPredictorShutdownFailsPendingRequests() throws Exception {
+        mPredictor = new MicroBatchPredictor.Builder(mNeuralNetwork)
+                .maxBatchSize(4).maxWait(10, TimeUnit.SECONDS).build();
+        CompletableFuture<double []> result = mPredictor.submit(new double [] {0.1, 0.2, 0.3});
+        mPredictor.shutdown();
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
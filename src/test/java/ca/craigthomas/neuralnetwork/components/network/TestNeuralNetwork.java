@@ -5,6 +5,7 @@
 package ca.craigthomas.neuralnetwork.components.network;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -12,9 +13,18 @@ import java.util.List;
 
 import org.jblas.DoubleMatrix;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
+import ca.craigthomas.neuralnetwork.components.activation.LeakyReLU;
+import ca.craigthomas.neuralnetwork.components.activation.ReLU;
+import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
+import ca.craigthomas.neuralnetwork.components.activation.Softmax;
+import ca.craigthomas.neuralnetwork.components.backend.JavaBackend;
+import ca.craigthomas.neuralnetwork.components.backend.JblasBackend;
+
 public class TestNeuralNetwork {
 
     private NeuralNetwork mNeuralNetwork;
@@ -202,30 +212,13 @@ public class TestNeuralNetwork {
         double expectedCost = 0.88101;
         
         List<DoubleMatrix> thetas = Arrays.asList(theta1);
-        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas).expectedValues(expectedOutputs).build();
-        mNeuralNetwork.predict(testInputs);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas)
+                .inputs(testInputs).expectedValues(expectedOutputs).build();
+        mNeuralNetwork.forwardPropagation();
 
         assertEquals(expectedCost, mNeuralNetwork.getCostNoRegularization(8), 0.0005);
     }
     
-    @Test
-    public void testGetMatrixNoBiasRemovesBiasUnit() {
-        layerSizes = Arrays.asList(2, 1);
-        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
-                {1.000, 0.69149, 0.23113}
-        });
-        
-        DoubleMatrix expectedOutputs = new DoubleMatrix(new double [][] {
-                {0.69149, 0.23113}     
-        });
-
-        List<DoubleMatrix> thetas = Arrays.asList(theta1);
-        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas).build();
-        DoubleMatrix result = mNeuralNetwork.getMatrixNoBias(theta1);
-        
-        Assert.assertArrayEquals(expectedOutputs.toArray(), result.toArray(), 0.0001);
-    }
-    
     @Test
     public void getThetaRegularizationReturnsZeroWithDefaultLambda() {
         layerSizes = Arrays.asList(2, 1);
@@ -285,7 +278,7 @@ public class TestNeuralNetwork {
         List<DoubleMatrix> thetas = Arrays.asList(theta1);
         mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas)
                 .inputs(testInputs).expectedValues(expectedOutputs).build();
-        mNeuralNetwork.predict(testInputs);
+        mNeuralNetwork.forwardPropagation();
 
         assertEquals(expectedCost, mNeuralNetwork.getCost(), 0.0005);
     }
@@ -320,11 +313,34 @@ public class TestNeuralNetwork {
         mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas)
                 .inputs(testInputs).expectedValues(expectedOutputs)
                 .lambda(lambda).build();
-        mNeuralNetwork.predict(testInputs);
+        mNeuralNetwork.forwardPropagation();
 
         assertEquals(expectedCost, mNeuralNetwork.getCost(), 0.0005);
     }
     
+    @Test
+    public void testCostOfSeveralSigmoidOutputsComparesEachOutputWithItsOwnValue() {
+        layerSizes = Arrays.asList(2, 2);
+        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
+                {0.5, -1.0, 2.0},
+                {-0.5, 1.5, -0.25}
+        });
+        DoubleMatrix inputs = new DoubleMatrix(new double [][] {{0.2, 0.7}, {0.9, 0.1}, {0.4, 0.4}});
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {{1.0, 0.0}, {0.0, 1.0}, {1.0, 1.0}});
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(theta1))
+                .inputs(inputs).expectedValues(expected).build();
+        DoubleMatrix output = mNeuralNetwork.predict(inputs);
+        mNeuralNetwork.forwardPropagation();
+        
+        double sum = 0.0;
+        for (int element = 0; element < output.length; element++) {
+            double h = output.data[element];
+            double y = expected.data[element];
+            sum += (y * Math.log(h)) + ((1.0 - y) * Math.log(1.0 - h));
+        }
+        assertEquals(-sum / 3, mNeuralNetwork.getCost(), 0.0000001);
+    }
+    
     @Test
     public void testNewNeuralNetworkHasRandomValuesForThetas() {
         layerSizes = Arrays.asList(2, 1);
@@ -533,4 +549,475 @@ public class TestNeuralNetwork {
         Assert.assertArrayEquals(expectedTheta1Grad.toArray(), theta1Grad.toArray(), 0.0001);
         Assert.assertArrayEquals(expectedTheta2Grad.toArray(), theta2Grad.toArray(), 0.0001);
     }
+    
+    @Test
+    public void testPredictWithWorkspaceMatchesPredict() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).build();
+        DoubleMatrix expected = mNeuralNetwork.predict(inputs);
+        
+        Workspace workspace = mNeuralNetwork.createWorkspace(6);
+        DoubleMatrix result = mNeuralNetwork.predict(inputs, workspace);
+        
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testPredictWithWrongSizeWorkspaceThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).build();
+        mNeuralNetwork.predict(DoubleMatrix.rand(6, 3), mNeuralNetwork.createWorkspace(5));
+    }
+    
+    @Test
+    public void testPredictFromSeveralThreadsAtOnce() throws Exception {
+        layerSizes = Arrays.asList(3, 4, 2);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).build();
+        final DoubleMatrix [] inputs = new DoubleMatrix[8];
+        final DoubleMatrix [] expected = new DoubleMatrix[8];
+        for (int index = 0; index < inputs.length; index++) {
+            inputs[index] = DoubleMatrix.rand(5, 3);
+            expected[index] = mNeuralNetwork.predict(inputs[index]);
+        }
+        
+        final boolean [] correct = new boolean[inputs.length];
+        Thread [] threads = new Thread[inputs.length];
+        for (int index = 0; index < threads.length; index++) {
+            final int thread = index;
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    correct[thread] = true;
+                    for (int count = 0; count < 500; count++) {
+                        DoubleMatrix result = mNeuralNetwork.predict(inputs[thread]);
+                        if (!Arrays.equals(expected[thread].toArray(), result.toArray())) {
+                            correct[thread] = false;
+                        }
+                    }
+                }
+            });
+            threads[index].start();
+        }
+        
+        for (int index = 0; index < threads.length; index++) {
+            threads[index].join();
+            assertTrue(correct[index]);
+        }
+    }
+    
+    @Test
+    public void testPredictSingleSampleMatchesPredict() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        DoubleMatrix inputs = DoubleMatrix.rand(5, 3);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).build();
+        DoubleMatrix expected = mNeuralNetwork.predict(inputs);
+        
+        double [] out = new double[2];
+        for (int row = 0; row < inputs.rows; row++) {
+            mNeuralNetwork.predict(inputs.getRow(row).toArray(), out);
+            Assert.assertArrayEquals(expected.getRow(row).toArray(), out, 0.000001);
+        }
+    }
+    
+    @Test
+    public void testFloatPredictSingleSampleMatchesPredict() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        DoubleMatrix inputs = DoubleMatrix.rand(5, 3);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).precision(Precision.FLOAT).build();
+        DoubleMatrix expected = mNeuralNetwork.predict(inputs);
+        
+        double [] out = new double[2];
+        for (int row = 0; row < inputs.rows; row++) {
+            mNeuralNetwork.predict(inputs.getRow(row).toArray(), out);
+            Assert.assertArrayEquals(expected.getRow(row).toArray(), out, 0.000001);
+            for (double value : out) {
+                assertEquals(value, (float) value, 0.0);
+            }
+        }
+    }
+    
+    @Test
+    public void testPredictSingleSampleANDFunction() {
+        layerSizes = Arrays.asList(2, 1);
+        DoubleMatrix theta = new DoubleMatrix(new double [][] {
+                {-300.0, 200.0, 200.0}
+        });
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(theta)).build();
+        
+        double [] out = new double[1];
+        mNeuralNetwork.predict(new double [] {1.0, 1.0}, out);
+        assertEquals(1.0, out[0], 0.0001);
+        mNeuralNetwork.predict(new double [] {0.0, 1.0}, out);
+        assertEquals(0.0, out[0], 0.0001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testPredictSingleSampleWrongInputSizeThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).build();
+        mNeuralNetwork.predict(new double[2], new double[2]);
+    }
+    
+    @Test
+    public void testFloatPrecisionMatchesDoublePrecision() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = DoubleMatrix.rand(6, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).lambda(1.0)
+                .inputs(inputs).expectedValues(expected).build();
+        NeuralNetwork floatNetwork = new NeuralNetwork.Builder(layerSizes).lambda(1.0)
+                .theta(network.getThetas()).precision(Precision.FLOAT)
+                .inputs(inputs).expectedValues(expected).build();
+        
+        network.forwardPropagation();
+        network.backPropagation();
+        floatNetwork.forwardPropagation();
+        floatNetwork.backPropagation();
+        
+        assertEquals(network.getCost(), floatNetwork.getCost(), 0.0001);
+        for (int index = 0; index < 2; index++) {
+            Assert.assertArrayEquals(network.getThetaGradient(index).toArray(), 
+                    floatNetwork.getThetaGradient(index).toArray(), 0.0001);
+        }
+        Assert.assertArrayEquals(network.predict(inputs).toArray(), floatNetwork.predict(inputs).toArray(), 0.0001);
+    }
+    
+    @Test (expected=IllegalStateException.class)
+    public void testGetCostWithoutInputsThrowsException() {
+        mNeuralNetwork = new NeuralNetwork.Builder(Arrays.asList(2, 1)).build();
+        mNeuralNetwork.getCost();
+    }
+
+    @Test
+    public void testGetDeltaOfFloatNetworkIsWidened() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = DoubleMatrix.rand(6, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes)
+                .inputs(inputs).expectedValues(expected).build();
+        NeuralNetwork floatNetwork = new NeuralNetwork.Builder(layerSizes)
+                .theta(network.getThetas()).precision(Precision.FLOAT)
+                .inputs(inputs).expectedValues(expected).build();
+        
+        network.forwardPropagation();
+        network.backPropagation();
+        floatNetwork.forwardPropagation();
+        floatNetwork.backPropagation();
+        
+        for (int index = 1; index < 3; index++) {
+            Assert.assertArrayEquals(network.getDelta(index).toArray(), 
+                    floatNetwork.getDelta(index).toArray(), 0.0001);
+        }
+    }
+    
+    @Test
+    public void testFloatNetworkOnlySeesInPlaceThetaChangesAfterThetasChanged() {
+        layerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(3, 2);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).build();
+        NeuralNetwork floatNetwork = new NeuralNetwork.Builder(layerSizes)
+                .theta(network.getThetas()).precision(Precision.FLOAT).build();
+        DoubleMatrix before = floatNetwork.predict(inputs);
+        
+        network.getTheta(0).addi(1.0);
+        Assert.assertArrayEquals(before.toArray(), floatNetwork.predict(inputs).toArray(), 0.0);
+        
+        floatNetwork.thetasChanged();
+        Assert.assertArrayEquals(network.predict(inputs).toArray(), floatNetwork.predict(inputs).toArray(), 0.0001);
+    }
+    
+    @Test
+    public void testGetActivationMatchesForBothPrecisions() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = DoubleMatrix.rand(6, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes)
+                .inputs(inputs).expectedValues(expected).build();
+        NeuralNetwork floatNetwork = new NeuralNetwork.Builder(layerSizes)
+                .theta(network.getThetas()).precision(Precision.FLOAT)
+                .inputs(inputs).expectedValues(expected).build();
+        
+        network.forwardPropagation();
+        floatNetwork.forwardPropagation();
+        
+        for (int layer = 0; layer < 3; layer++) {
+            Assert.assertArrayEquals(network.getActivation(layer).toArray(), 
+                    floatNetwork.getActivation(layer).toArray(), 0.0001);
+        }
+    }
+    
+    @Test (expected=ArrayIndexOutOfBoundsException.class)
+    public void testGetDeltaOfFloatNetworkIndexTooLargeThrowsException() {
+        layerSizes = Arrays.asList(2, 1);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).precision(Precision.FLOAT)
+                .inputs(DoubleMatrix.rand(3, 2)).expectedValues(DoubleMatrix.rand(3, 1)).build();
+        mNeuralNetwork.getDelta(2);
+    }
+    
+    @Test
+    public void testJavaBackendMatchesJblasBackend() {
+        Assume.assumeTrue(JblasBackend.isAvailable());
+        layerSizes = Arrays.asList(3, 4, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = DoubleMatrix.rand(6, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).lambda(1.0)
+                .backend(new JblasBackend()).inputs(inputs).expectedValues(expected).build();
+        NeuralNetwork javaNetwork = new NeuralNetwork.Builder(layerSizes).lambda(1.0)
+                .theta(network.getThetas()).backend(new JavaBackend(2))
+                .inputs(inputs).expectedValues(expected).build();
+        
+        network.forwardPropagation();
+        network.backPropagation();
+        javaNetwork.forwardPropagation();
+        javaNetwork.backPropagation();
+        
+        assertEquals(network.getCost(), javaNetwork.getCost(), 0.0000001);
+        for (int index = 0; index < 2; index++) {
+            Assert.assertArrayEquals(network.getThetaGradient(index).toArray(), 
+                    javaNetwork.getThetaGradient(index).toArray(), 0.0000001);
+        }
+        Assert.assertArrayEquals(network.predict(inputs).toArray(), javaNetwork.predict(inputs).toArray(), 0.0000001);
+    }
+    
+    @Test
+    public void testActivationFunctionSetsEveryLayer() {
+        layerSizes = Arrays.asList(3, 4, 4, 1);
+        HyperbolicTangent tanh = new HyperbolicTangent();
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).activationFunction(tanh).build();
+        for (int layer = 1; layer < 4; layer++) {
+            assertSame(tanh, mNeuralNetwork.getActivationFunction(layer));
+        }
+        assertSame(tanh, mNeuralNetwork.getActivationFunction());
+    }
+    
+    @Test
+    public void testHiddenActivationFunctionKeepsSigmoidOutput() {
+        layerSizes = Arrays.asList(3, 4, 4, 1);
+        ReLU relu = new ReLU();
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).hiddenActivationFunction(relu).build();
+        assertSame(relu, mNeuralNetwork.getActivationFunction(1));
+        assertSame(relu, mNeuralNetwork.getActivationFunction(2));
+        assertTrue(mNeuralNetwork.getActivationFunction(3) instanceof Sigmoid);
+    }
+    
+    @Test
+    public void testActivationFunctionForSingleLayer() {
+        layerSizes = Arrays.asList(3, 4, 4, 1);
+        LeakyReLU leakyRelu = new LeakyReLU();
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).activationFunction(2, leakyRelu).build();
+        assertTrue(mNeuralNetwork.getActivationFunction(1) instanceof Sigmoid);
+        assertSame(leakyRelu, mNeuralNetwork.getActivationFunction(2));
+        assertTrue(mNeuralNetwork.getActivationFunction(3) instanceof Sigmoid);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testActivationFunctionForInputLayerThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        new NeuralNetwork.Builder(layerSizes).activationFunction(0, new ReLU());
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testActivationFunctionLayerTooLargeThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        new NeuralNetwork.Builder(layerSizes).activationFunction(3, new ReLU());
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testReLUOutputLayerThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        new NeuralNetwork.Builder(layerSizes).activationFunction(new ReLU()).build();
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testGetActivationFunctionForInputLayerThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).build();
+        mNeuralNetwork.getActivationFunction(0);
+    }
+    
+    @Test
+    public void testPredictXORFunctionWithReLUHiddenLayer() {
+        layerSizes = Arrays.asList(2, 2, 1);
+        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
+                {0.0, 1.0, -1.0},
+                {0.0, -1.0, 1.0}
+        });
+        DoubleMatrix theta2 = new DoubleMatrix(new double [][] {
+                {-5.0, 10.0, 10.0}
+        });
+        DoubleMatrix inputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(theta1, theta2))
+                .hiddenActivationFunction(new ReLU()).build();
+        DoubleMatrix result = mNeuralNetwork.predict(inputs);
+        Assert.assertArrayEquals(new double [] {0.0067, 0.9933, 0.9933, 0.0067}, result.toArray(), 0.0001);
+        
+        double [] out = new double[1];
+        for (int row = 0; row < inputs.rows; row++) {
+            mNeuralNetwork.predict(inputs.getRow(row).toArray(), out);
+            assertEquals(result.get(row), out[0], 0.000001);
+        }
+    }
+    
+    @Test
+    public void testLeakyReLUHiddenLayerGradientMatchesNumericalGradient() {
+        layerSizes = Arrays.asList(3, 5, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(8, 3);
+        DoubleMatrix expected = DoubleMatrix.rand(8, 1);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).lambda(0.5)
+                .hiddenActivationFunction(new LeakyReLU(0.1))
+                .inputs(inputs).expectedValues(expected).build();
+        mNeuralNetwork.forwardPropagation();
+        mNeuralNetwork.backPropagation();
+        
+        double epsilon = 0.00001;
+        for (int index = 0; index < 2; index++) {
+            DoubleMatrix gradient = mNeuralNetwork.getThetaGradient(index).dup();
+            DoubleMatrix theta = mNeuralNetwork.getTheta(index);
+            for (int element = 0; element < theta.length; element++) {
+                double original = theta.data[element];
+                theta.data[element] = original + epsilon;
+                mNeuralNetwork.forwardPropagation();
+                double costPlus = mNeuralNetwork.getCost();
+                theta.data[element] = original - epsilon;
+                mNeuralNetwork.forwardPropagation();
+                double costMinus = mNeuralNetwork.getCost();
+                theta.data[element] = original;
+                assertEquals((costPlus - costMinus) / (2 * epsilon), gradient.data[element], 0.0001);
+            }
+        }
+    }
+    
+    @Test
+    public void testReLUHiddenLayerFloatPrecisionMatchesDoublePrecision() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = DoubleMatrix.rand(6, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).hiddenActivationFunction(new ReLU())
+                .inputs(inputs).expectedValues(expected).build();
+        NeuralNetwork floatNetwork = new NeuralNetwork.Builder(layerSizes).hiddenActivationFunction(new ReLU())
+                .theta(network.getThetas()).precision(Precision.FLOAT)
+                .inputs(inputs).expectedValues(expected).build();
+        
+        network.forwardPropagation();
+        network.backPropagation();
+        floatNetwork.forwardPropagation();
+        floatNetwork.backPropagation();
+        
+        assertEquals(network.getCost(), floatNetwork.getCost(), 0.0001);
+        for (int index = 0; index < 2; index++) {
+            Assert.assertArrayEquals(network.getThetaGradient(index).toArray(), 
+                    floatNetwork.getThetaGradient(index).toArray(), 0.0001);
+        }
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testSoftmaxHiddenLayerThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        new NeuralNetwork.Builder(layerSizes).activationFunction(new Softmax()).build();
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testSoftmaxSingleOutputThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 1);
+        new NeuralNetwork.Builder(layerSizes).outputActivationFunction(new Softmax()).build();
+    }
+    
+    @Test
+    public void testSoftmaxOutputRowsSumToOne() {
+        layerSizes = Arrays.asList(3, 4, 3);
+        DoubleMatrix inputs = DoubleMatrix.rand(5, 3);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).outputActivationFunction(new Softmax()).build();
+        assertTrue(mNeuralNetwork.isSoftmaxOutput());
+        DoubleMatrix result = mNeuralNetwork.predict(inputs);
+        Assert.assertArrayEquals(DoubleMatrix.ones(5, 1).toArray(), result.rowSums().toArray(), 0.000001);
+        
+        double [] out = new double[3];
+        for (int row = 0; row < inputs.rows; row++) {
+            mNeuralNetwork.predict(inputs.getRow(row).toArray(), out);
+            Assert.assertArrayEquals(result.getRow(row).toArray(), out, 0.000001);
+        }
+    }
+    
+    @Test
+    public void testSoftmaxCostIsCrossEntropy() {
+        layerSizes = Arrays.asList(2, 3);
+        DoubleMatrix theta = new DoubleMatrix(new double [][] {
+                {0.1, 1.0, -1.0},
+                {0.0, 0.5, 0.5},
+                {-0.1, -1.0, 2.0}
+        });
+        DoubleMatrix inputs = new DoubleMatrix(new double [][] {
+                {1.0, 0.0}, {0.0, 1.0}
+        });
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {1.0, 0.0, 0.0}, {0.0, 0.0, 1.0}
+        });
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(theta))
+                .outputActivationFunction(new Softmax()).inputs(inputs).expectedValues(expected).build();
+        mNeuralNetwork.forwardPropagation();
+        
+        DoubleMatrix output = mNeuralNetwork.predict(inputs);
+        double cost = -(Math.log(output.get(0, 0)) + Math.log(output.get(1, 2))) / 2;
+        assertEquals(cost, mNeuralNetwork.getCostNoRegularization(2), 0.000001);
+    }
+    
+    @Test
+    public void testSoftmaxGradientMatchesNumericalGradient() {
+        layerSizes = Arrays.asList(3, 4, 3);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {1.0, 0.0, 0.0}, {0.0, 1.0, 0.0}, {0.0, 0.0, 1.0},
+                {1.0, 0.0, 0.0}, {0.0, 1.0, 0.0}, {0.0, 0.0, 1.0}
+        });
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).lambda(0.5)
+                .outputActivationFunction(new Softmax())
+                .inputs(inputs).expectedValues(expected).build();
+        mNeuralNetwork.forwardPropagation();
+        mNeuralNetwork.backPropagation();
+        
+        double epsilon = 0.00001;
+        for (int index = 0; index < 2; index++) {
+            DoubleMatrix gradient = mNeuralNetwork.getThetaGradient(index).dup();
+            DoubleMatrix theta = mNeuralNetwork.getTheta(index);
+            for (int element = 0; element < theta.length; element++) {
+                double original = theta.data[element];
+                theta.data[element] = original + epsilon;
+                mNeuralNetwork.forwardPropagation();
+                double costPlus = mNeuralNetwork.getCost();
+                theta.data[element] = original - epsilon;
+                mNeuralNetwork.forwardPropagation();
+                double costMinus = mNeuralNetwork.getCost();
+                theta.data[element] = original;
+                assertEquals((costPlus - costMinus) / (2 * epsilon), gradient.data[element], 0.0001);
+            }
+        }
+    }
+    
+    @Test
+    public void testSoftmaxFloatPrecisionMatchesDoublePrecision() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        DoubleMatrix inputs = DoubleMatrix.rand(6, 3);
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {1.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {0.0, 1.0}
+        });
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).outputActivationFunction(new Softmax())
+                .inputs(inputs).expectedValues(expected).build();
+        NeuralNetwork floatNetwork = new NeuralNetwork.Builder(layerSizes).outputActivationFunction(new Softmax())
+                .theta(network.getThetas()).precision(Precision.FLOAT)
+                .inputs(inputs).expectedValues(expected).build();
+        
+        network.forwardPropagation();
+        network.backPropagation();
+        floatNetwork.forwardPropagation();
+        floatNetwork.backPropagation();
+        
+        assertEquals(network.getCost(), floatNetwork.getCost(), 0.0001);
+        for (int index = 0; index < 2; index++) {
+            Assert.assertArrayEquals(network.getThetaGradient(index).toArray(), 
+                    floatNetwork.getThetaGradient(index).toArray(), 0.0001);
+        }
+    }
 }
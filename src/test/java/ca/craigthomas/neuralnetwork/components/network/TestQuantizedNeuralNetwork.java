@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.craigthomas.neuralnetwork.components.activation.Softmax;
+
+public class TestQuantizedNeuralNetwork {
+
+    private List<Integer> layerSizes;
+    
+    @Test
+    public void testQuantizedWeightsUseFullRangeOfEachRow() {
+        layerSizes = Arrays.asList(3, 2);
+        DoubleMatrix theta = new DoubleMatrix(new double [][] {
+                {0.5, 1.0, -0.25, 0.5},
+                {-2.0, 0.0, 0.0, 0.0}
+        });
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(theta)).build();
+        QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(network);
+        
+        Assert.assertArrayEquals(new byte [] {127, -32, 64, 0, 0, 0}, quantized.getWeights(0));
+        assertEquals(1.0 / 127, quantized.getScales(0)[0], 0.000001);
+        assertEquals(1.0, quantized.getScales(0)[1], 0.000001);
+    }
+    
+    @Test
+    public void testDequantizedThetaIsWithinHalfAStep() {
+        layerSizes = Arrays.asList(5, 4, 2);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).build();
+        QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(network);
+        
+        assertEquals(2, quantized.getNumThetas());
+        for (int index = 0; index < quantized.getNumThetas(); index++) {
+            DoubleMatrix theta = network.getTheta(index);
+            DoubleMatrix dequantized = quantized.dequantizeTheta(index);
+            double [] scales = quantized.getScales(index);
+            for (int row = 0; row < theta.rows; row++) {
+                assertEquals(theta.get(row, 0), dequantized.get(row, 0), 0.0);
+                for (int col = 1; col < theta.columns; col++) {
+                    assertTrue(Math.abs(theta.get(row, col) - dequantized.get(row, col)) <= (scales[row] / 2) + 0.000001);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testPredictANDFunction() {
+        layerSizes = Arrays.asList(2, 1);
+        DoubleMatrix theta = new DoubleMatrix(new double [][] {
+                {-300.0, 200.0, 200.0}
+        });
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(theta)).build();
+        QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(network);
+        
+        DoubleMatrix result = quantized.predict(testInputs);
+        Assert.assertArrayEquals(new double [] {0.0, 0.0, 0.0, 1.0}, result.toArray(), 0.0001);
+    }
+    
+    @Test
+    public void testPredictIsCloseToOriginalNetwork() {
+        layerSizes = Arrays.asList(6, 5, 2);
+        DoubleMatrix inputs = DoubleMatrix.rand(20, 6);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).build();
+        QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(network);
+        
+        DoubleMatrix expected = network.predict(inputs);
+        DoubleMatrix result = quantized.predict(inputs);
+        assertEquals(expected.rows, result.rows);
+        assertEquals(expected.columns, result.columns);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.02);
+    }
+    
+    @Test
+    public void testPredictSingleSampleMatchesPredict() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        DoubleMatrix inputs = DoubleMatrix.rand(5, 3);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).build();
+        QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(network);
+        DoubleMatrix expected = quantized.predict(inputs);
+        
+        double [] out = new double[2];
+        for (int row = 0; row < inputs.rows; row++) {
+            quantized.predict(inputs.getRow(row).toArray(), out);
+            Assert.assertArrayEquals(expected.getRow(row).toArray(), out, 0.0);
+        }
+    }
+    
+    @Test
+    public void testPredictSoftmaxOutputIsCloseToOriginalNetwork() {
+        layerSizes = Arrays.asList(3, 4, 3);
+        DoubleMatrix inputs = DoubleMatrix.rand(10, 3);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes)
+                .outputActivationFunction(new Softmax()).build();
+        DoubleMatrix expected = network.predict(inputs);
+        DoubleMatrix result = new QuantizedNeuralNetwork(network).predict(inputs);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.02);
+        Assert.assertArrayEquals(DoubleMatrix.ones(10, 1).toArray(), result.rowSums().toArray(), 0.000001);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testPredictSingleSampleWrongInputSizeThrowsException() {
+        layerSizes = Arrays.asList(3, 4, 2);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).build();
+        new QuantizedNeuralNetwork(network).predict(new double[2], new double[2]);
+    }
+}
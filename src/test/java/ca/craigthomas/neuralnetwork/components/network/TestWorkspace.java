@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestWorkspace {
+
+    private DoubleMatrix [] mThetas = new DoubleMatrix [] {
+            new DoubleMatrix(new double [][] {
+                    {0.73258, 0.69149, 0.23113},
+                    {0.12345, 0.54321, 0.67890}
+            }),
+            new DoubleMatrix(new double [][] {
+                    {0.92982, 0.33938, 0.11111}
+            })
+    };
+
+    @Test
+    public void testWorkspaceBuffersSizedFromThetas() {
+        Workspace workspace = new Workspace(mThetas, 8);
+
+        assertEquals(8, workspace.getRows());
+        assertEquals(3, workspace.getActivations().length);
+        assertEquals(2, workspace.getActivations()[0].columns);
+        assertEquals(2, workspace.getActivations()[1].columns);
+        assertEquals(1, workspace.getActivations()[2].columns);
+        assertNull(workspace.getDeltas()[0]);
+        assertEquals(2, workspace.getDeltas()[1].columns);
+        assertEquals(1, workspace.getDeltas()[2].columns);
+        assertTrue(workspace.getGradients()[0].sameSize(mThetas[0]));
+        assertTrue(workspace.getGradients()[1].sameSize(mThetas[1]));
+        for (int index = 0; index < 3; index++) {
+            assertEquals(8, workspace.getActivations()[index].rows);
+        }
+    }
+
+    @Test
+    public void testLogOutputOnlyAllocatedForSoftmax() {
+        assertNull(new Workspace(mThetas, 4).getLogOutput());
+        assertNull(new Workspace(mThetas, 4, Precision.FLOAT).getFloatLogOutput());
+        
+        Workspace workspace = new Workspace(mThetas, 4, Precision.DOUBLE, true);
+        assertEquals(4, workspace.getLogOutput().rows);
+        assertEquals(1, workspace.getLogOutput().columns);
+        workspace = new Workspace(mThetas, 4, Precision.FLOAT, true);
+        assertNull(workspace.getLogOutput());
+        assertEquals(4, workspace.getFloatLogOutput().rows);
+    }
+    
+    @Test
+    public void testWorkspaceActivationsAreZBuffers() {
+        Workspace workspace = new Workspace(mThetas, 4);
+
+        assertSame(workspace.getZ()[1], workspace.getActivations()[1]);
+        assertSame(workspace.getZ()[2], workspace.getActivations()[2]);
+        assertEquals(2, workspace.getErrors()[1].columns);
+    }
+
+    @Test
+    public void testLoadInputsFillsInputLayer() {
+        DoubleMatrix inputs = new DoubleMatrix(new double [][] {{1.0, 2.0}, {3.0, 4.0}});
+        Workspace workspace = new Workspace(mThetas, 2);
+        workspace.loadInputs(inputs);
+
+        Assert.assertArrayEquals(inputs.toArray(), workspace.getActivations()[0].toArray(), 0.0);
+    }
+
+    @Test
+    public void testWorkspaceFits() {
+        Workspace workspace = new Workspace(mThetas, 4);
+
+        assertTrue(workspace.fits(mThetas));
+        assertFalse(workspace.fits(new DoubleMatrix [] {mThetas[0]}));
+        assertFalse(workspace.fits(new DoubleMatrix [] {mThetas[0], DoubleMatrix.ones(2, 3)}));
+    }
+
+    @Test
+    public void testNeuralNetworkReusesWorkspaceBetweenIterations() {
+        List<Integer> layerSizes = Arrays.asList(2, 2, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(8, 2);
+        DoubleMatrix expected = DoubleMatrix.ones(8, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(layerSizes).theta(Arrays.asList(mThetas))
+                .inputs(inputs).expectedValues(expected).build();
+
+        network.forwardPropagation();
+        network.backPropagation();
+        Workspace workspace = network.getWorkspace();
+        DoubleMatrix output = workspace.getActivations()[2];
+        DoubleMatrix gradient = network.getThetaGradient(0);
+
+        network.forwardPropagation();
+        network.backPropagation();
+
+        assertSame(workspace, network.getWorkspace());
+        assertSame(output, network.getWorkspace().getActivations()[2]);
+        assertSame(gradient, network.getThetaGradient(0));
+    }
+
+    @Test
+    public void testFloatWorkspaceBuffers() {
+        Workspace workspace = new Workspace(mThetas, 4, Precision.FLOAT);
+
+        assertTrue(workspace.isFloat());
+        assertNull(workspace.getActivations());
+        assertEquals(3, workspace.getFloatActivations().length);
+        assertEquals(2, workspace.getFloatActivations()[0].columns);
+        assertEquals(1, workspace.getFloatActivations()[2].columns);
+        assertSame(workspace.getFloatZ()[1], workspace.getFloatActivations()[1]);
+        assertTrue(workspace.getGradients()[0].sameSize(mThetas[0]));
+        assertEquals(4, workspace.getExpected().rows);
+        assertTrue(workspace.fits(mThetas));
+    }
+
+    @Test
+    public void testFloatWorkspaceLoadBatchConvertsRows() {
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {{1.0, 2.0}, {3.0, 4.0}, {5.0, 6.0}});
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {{0.0}, {1.0}, {0.0}});
+        Workspace workspace = new Workspace(mThetas, 2, Precision.FLOAT);
+        workspace.loadBatch(samples, truth, new int [] {2, 0}, 0);
+
+        FloatMatrix inputs = workspace.getFloatActivations()[0];
+        assertEquals(5.0f, inputs.get(0, 0), 0.0f);
+        assertEquals(2.0f, inputs.get(1, 1), 0.0f);
+        assertEquals(0.0, workspace.getExpected().get(0, 0), 0.0);
+    }
+}
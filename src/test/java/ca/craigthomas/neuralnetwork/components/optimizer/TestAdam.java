@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAdam {
+
+    private DoubleMatrix mTheta;
+    private DoubleMatrix mGradient;
+    
+    @Before
+    public void setUp() {
+        mTheta = new DoubleMatrix(new double [][] {{0.5, -0.5, 0.25}});
+        mGradient = new DoubleMatrix(new double [][] {{4.0, -0.01, 0.0}});
+    }
+    
+    @Test
+    public void testAdamStepsByLearningRateForConstantGradient() {
+        Adam optimizer = new Adam(0.1);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        double [] expected = {0.4, -0.4, 0.25};
+        Assert.assertArrayEquals(expected, mTheta.toArray(), 0.00001);
+        
+        // With bias correction, a constant gradient always steps by the
+        // learning rate
+        optimizer.update(0, mTheta, mGradient);
+        expected = new double [] {0.3, -0.3, 0.25};
+        Assert.assertArrayEquals(expected, mTheta.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testAdamKeepsSeparateStepCountForEachTheta() {
+        DoubleMatrix other = new DoubleMatrix(new double [][] {{0.5, -0.5, 0.25}});
+        Adam optimizer = new Adam(0.1);
+        optimizer.initialize(Arrays.asList(mTheta, other));
+        optimizer.update(0, mTheta, mGradient);
+        optimizer.update(0, mTheta, mGradient.neg());
+        optimizer.update(1, other, mGradient);
+        double [] expected = {0.4, -0.4, 0.25};
+        Assert.assertArrayEquals(expected, other.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testAdamIsNotStateless() {
+        Assert.assertFalse(new Adam(0.1).isStateless());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestGradientDescent {
+
+    private DoubleMatrix mTheta;
+    private DoubleMatrix mGradient;
+    
+    @Before
+    public void setUp() {
+        mTheta = new DoubleMatrix(new double [][] {{0.5, -0.5}, {1.0, 0.0}});
+        mGradient = new DoubleMatrix(new double [][] {{2.0, -3.0}, {0.0, 1.0}});
+    }
+    
+    @Test
+    public void testGradientDescentScalesGradientByLearningRate() {
+        GradientDescent optimizer = new GradientDescent(0.1);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {{0.3, -0.2}, {1.0, -0.1}});
+        Assert.assertArrayEquals(expected.toArray(), mTheta.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testGradientDescentDoesNotModifyGradient() {
+        GradientDescent optimizer = new GradientDescent(0.1);
+        DoubleMatrix gradient = mGradient.dup();
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        Assert.assertArrayEquals(gradient.toArray(), mGradient.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testGradientDescentIsStateless() {
+        Assert.assertTrue(new GradientDescent(0.1).isStateless());
+    }
+}
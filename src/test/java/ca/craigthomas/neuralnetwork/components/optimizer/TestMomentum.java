@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMomentum {
+
+    private DoubleMatrix mTheta;
+    private DoubleMatrix mGradient;
+    
+    @Before
+    public void setUp() {
+        mTheta = new DoubleMatrix(new double [][] {{0.5, -0.5}});
+        mGradient = new DoubleMatrix(new double [][] {{1.0, -2.0}});
+    }
+    
+    @Test
+    public void testMomentumFirstStepIsGradientDescent() {
+        Momentum optimizer = new Momentum(0.1, 0.9);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        double [] expected = {0.4, -0.3};
+        Assert.assertArrayEquals(expected, mTheta.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testMomentumAccumulatesVelocity() {
+        Momentum optimizer = new Momentum(0.1, 0.9);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        optimizer.update(0, mTheta, mGradient);
+        
+        // velocity after the second step is 0.9 * -0.1 - 0.1 = -0.19
+        double [] expected = {0.21, 0.08};
+        Assert.assertArrayEquals(expected, mTheta.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testMomentumKeepsSeparateStateForEachTheta() {
+        DoubleMatrix other = new DoubleMatrix(new double [][] {{0.5, -0.5}});
+        Momentum optimizer = new Momentum(0.1, 0.9);
+        optimizer.initialize(Arrays.asList(mTheta, other));
+        optimizer.update(0, mTheta, mGradient);
+        optimizer.update(0, mTheta, mGradient);
+        optimizer.update(1, other, mGradient);
+        double [] expected = {0.4, -0.3};
+        Assert.assertArrayEquals(expected, other.toArray(), 0.00001);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRMSProp {
+
+    private DoubleMatrix mTheta;
+    private DoubleMatrix mGradient;
+    
+    @Before
+    public void setUp() {
+        mTheta = new DoubleMatrix(new double [][] {{0.5, -0.5, 0.25}});
+        mGradient = new DoubleMatrix(new double [][] {{4.0, -0.01, 0.0}});
+    }
+    
+    @Test
+    public void testRMSPropFirstStepNormalizesGradient() {
+        RMSProp optimizer = new RMSProp(0.1);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        
+        // average is 0.1 * g^2, so every non-zero step is 0.1 / sqrt(0.1)
+        double step = 0.1 / Math.sqrt(0.1);
+        double [] expected = {0.5 - step, -0.5 + step, 0.25};
+        Assert.assertArrayEquals(expected, mTheta.toArray(), 0.00001);
+    }
+    
+    @Test
+    public void testRMSPropStepShrinksForConstantGradient() {
+        RMSProp optimizer = new RMSProp(0.1);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        double firstStep = 0.5 - mTheta.get(0, 0);
+        optimizer.update(0, mTheta, mGradient);
+        double secondStep = 0.5 - firstStep - mTheta.get(0, 0);
+        Assert.assertTrue(secondStep > 0.0);
+        Assert.assertTrue(secondStep < firstStep);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.optimizer;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSignDescent {
+
+    private DoubleMatrix mTheta;
+    private DoubleMatrix mGradient;
+    
+    @Before
+    public void setUp() {
+        mTheta = new DoubleMatrix(new double [][] {{0.5, -0.5, 1.0}});
+        mGradient = new DoubleMatrix(new double [][] {{2.0, -3.0, 0.0}});
+    }
+    
+    @Test
+    public void testSignDescentMovesAgainstSignOfGradient() {
+        SignDescent optimizer = new SignDescent(0.1);
+        optimizer.initialize(Arrays.asList(mTheta));
+        optimizer.update(0, mTheta, mGradient);
+        double [] expected = {0.4, -0.4, 1.1};
+        Assert.assertArrayEquals(expected, mTheta.toArray(), 0.00001);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jblas.DoubleMatrix;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestShardedBatch {
+
+    private ExecutorService mExecutor;
+    private NeuralNetwork mNetwork;
+    private DoubleMatrix mInputs;
+    private DoubleMatrix mOutputs;
+    private int [] mOrder;
+
+    @Before
+    public void setUp() {
+        List<Integer> layerSizes = Arrays.asList(3, 4, 2);
+        mExecutor = Executors.newFixedThreadPool(4);
+        mInputs = DoubleMatrix.rand(11, 3);
+        mOutputs = DoubleMatrix.rand(11, 2);
+        mNetwork = new NeuralNetwork.Builder(layerSizes).lambda(1.0)
+                .inputs(mInputs).expectedValues(mOutputs).build();
+        mOrder = new int [11];
+        for (int index = 0; index < mOrder.length; index++) {
+            mOrder[index] = index;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void testShardedBatchSplitsRowsBetweenShards() {
+        assertEquals(4, new ShardedBatch(mNetwork, 11, 4, mExecutor).getNumShards());
+        assertEquals(3, new ShardedBatch(mNetwork, 3, 4, mExecutor).getNumShards());
+    }
+
+    @Test
+    public void testShardedBatchGradientsMatchSingleWorkspace() {
+        ShardedBatch batch = new ShardedBatch(mNetwork, 11, 4, mExecutor);
+        batch.loadBatch(mInputs, mOutputs, mOrder, 0);
+        double cost = batch.propagate(true);
+
+        mNetwork.forwardPropagation();
+        mNetwork.backPropagation();
+        assertEquals(mNetwork.getCostNoRegularization(11) * 11, cost, 0.000001);
+        for (int index = 0; index < 2; index++) {
+            Assert.assertArrayEquals(mNetwork.getThetaGradient(index).toArray(), 
+                    batch.getGradients()[index].toArray(), 0.000001);
+        }
+    }
+
+    @Test
+    public void testShardedBatchReductionIsDeterministic() {
+        ShardedBatch batch = new ShardedBatch(mNetwork, 11, 4, mExecutor);
+        batch.loadBatch(mInputs, mOutputs, mOrder, 0);
+        batch.propagate(false);
+        DoubleMatrix first = batch.getGradients()[0].dup();
+        for (int run = 0; run < 10; run++) {
+            batch.propagate(false);
+            Assert.assertArrayEquals(first.toArray(), batch.getGradients()[0].toArray(), 0.0);
+        }
+    }
+}
@@ -19,7 +19,13 @@ import org.junit.Test;
 import ca.craigthomas.neuralnetwork.dataset.DataSet;
 import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
 import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.activation.ReLU;
+import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
+import ca.craigthomas.neuralnetwork.components.activation.Softmax;
 import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.Precision;
+import ca.craigthomas.neuralnetwork.components.optimizer.Adam;
+import ca.craigthomas.neuralnetwork.components.optimizer.GradientDescent;
 
 public class TestTrainer {
 
@@ -237,6 +243,53 @@ public class TestTrainer {
         Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
     }
     
+    @Test
+    public void testTrainerLearnsSeveralClassesWithSoftmax() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 3);
+        double [][] patterns = {{0.0, 0.0}, {1.0, 0.0}, {0.0, 1.0}};
+        DoubleMatrix inputs = new DoubleMatrix(300, 2);
+        DoubleMatrix classes = new DoubleMatrix(300, 1);
+        for (int index = 0; index < 300; index++) {
+            int label = random.nextInt(3);
+            inputs.putRow(index, new DoubleMatrix(patterns[label]).transpose());
+            classes.put(index, 0, label);
+        }
+        
+        mTrainer = new Trainer.Builder(mLayerSizes, new DataSet(true, inputs, classes))
+                .optimizer(new Adam(0.05)).maxIterations(500).heartBeat(0)
+                .outputActivationFunction(new Softmax()).build();
+        mTrainer.train();
+        
+        NeuralNetwork network = mTrainer.getNeuralNetwork();
+        DoubleMatrix predictions = network.predict(new DoubleMatrix(patterns));
+        for (int label = 0; label < 3; label++) {
+            assertEquals(label, predictions.getRow(label).argmax());
+            assertEquals(1.0, predictions.getRow(label).sum(), 0.000001);
+        }
+    }
+    
+    @Test
+    public void testTrainerOnlyTrainsOnRowsOfView() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(100, 2);
+        DoubleMatrix outputs = new DoubleMatrix(100, 1);
+        for (int index = 0; index < 50; index++) {
+            outputs.put(index, 0, 1.0);
+        }
+        DataSet dataSet = new DataSet(true, inputs, outputs);
+        DataSet trainingData = dataSet.splitSequentially(50).getLeft();
+        trainingData.randomize();
+
+        mTrainer = new Trainer.Builder(mLayerSizes, trainingData)
+                .maxIterations(1000).heartBeat(0).build();
+        mTrainer.train();
+
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(DoubleMatrix.ones(1, 2));
+        assertTrue(predictions.get(0, 0) > 0.9);
+        assertTrue(mTrainer.getFinalCost() < 0.1);
+    }
+    
     @Test
     public void testActivationFunctionSentToNeuralNetwork() {
         mLayerSizes = Arrays.asList(2, 1);
@@ -252,6 +305,73 @@ public class TestTrainer {
         assertEquals(activationFunction, mTrainer.getNeuralNetwork().getActivationFunction());
     }
     
+    @Test
+    public void testHiddenActivationFunctionSentToNeuralNetwork() {
+        mLayerSizes = Arrays.asList(2, 3, 1);
+        IActivationFunction activationFunction = new ReLU();
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+        .learningRate(0.001).maxIterations(0).heartBeat(0)
+        .hiddenActivationFunction(activationFunction).build();
+        mTrainer.train();
+
+        assertEquals(activationFunction, mTrainer.getNeuralNetwork().getActivationFunction(1));
+        assertTrue(mTrainer.getNeuralNetwork().getActivationFunction() instanceof Sigmoid);
+    }
+    
+    @Test
+    public void testCostIntervalRecordsEveryNthIteration() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(100, 2);
+        DoubleMatrix outputs = new DoubleMatrix(100, 1);
+        for (int index = 0; index < 100; index++) {
+            outputs.put(index, 0, (inputs.get(index, 0) > 0.5) ? 1.0 : 0.0);
+        }
+        
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+        .learningRate(0.001).maxIterations(200).heartBeat(0)
+        .costInterval(50).recordCosts().build();
+        mTrainer.train();
+        
+        assertEquals(4, mTrainer.getCosts().size());
+    }
+    
+    @Test
+    public void testHeartBeatShowsRecordedCost() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(100, 2);
+        DoubleMatrix outputs = new DoubleMatrix(100, 1);
+        for (int index = 0; index < 100; index++) {
+            outputs.put(index, 0, (inputs.get(index, 0) > 0.5) ? 1.0 : 0.0);
+        }
+        PrintStream original = System.out;
+        ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdOut));
+        
+        try {
+            mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+            .learningRate(0.001).maxIterations(20).heartBeat(10)
+            .costInterval(5).recordCosts().build();
+            mTrainer.train();
+        } finally {
+            System.setOut(original);
+        }
+        
+        String [] strings = stdOut.toString().split("\\n");
+        List<Double> costs = mTrainer.getCosts();
+        assertEquals(4, costs.size());
+        assertEquals(2, strings.length);
+        assertEquals("Iteration: 10, Cost: " + costs.get(1), strings[0].trim());
+        assertEquals("Iteration: 20, Cost: " + costs.get(3), strings[1].trim());
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testCostIntervalMustBePositive() {
+        new Trainer.Builder(Arrays.asList(2, 1), DoubleMatrix.ones(4, 2), DoubleMatrix.ones(4, 1)).costInterval(0);
+    }
+    
     @Test
     public void testRecordCostsRecordsAllIterations() {
         Random random = new Random();
@@ -340,4 +460,268 @@ public class TestTrainer {
             assertTrue(strings[i].contains("Iteration: " + (i+1)));
         }
     }
+    
+    @Test
+    public void testTrainerLearnORFunctionWithMiniBatches() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix testOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}, {1.0}
+        });
+        
+        for (int index = 0; index < 500; index++) {
+            double value1 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            double value2 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            inputs.put(index, 0, value1);
+            inputs.put(index, 1, value2);
+            outputs.put(index, 0, (value1 == 1.0 || value2 == 1.0) ? 1.0 : 0.0);
+        }
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .learningRate(0.001).maxIterations(1500).heartBeat(0)
+                .batchSize(64).recordCosts().build();
+        mTrainer.train();
+
+        assertEquals(1500, mTrainer.getCosts().size());
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(testInputs);
+        Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
+    }
+
+    @Test
+    public void testMiniBatchCostAddsRegularizationOnce() {
+        mLayerSizes = Arrays.asList(2, 3, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(10, 2);
+        DoubleMatrix outputs = DoubleMatrix.rand(10, 1);
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .lambda(5.0).batchSize(3).optimizer(new GradientDescent(0.0))
+                .maxIterations(1).heartBeat(0).recordCosts().build();
+        mTrainer.train();
+
+        assertEquals(mTrainer.getFinalCost(), mTrainer.getCosts().get(0), 0.000001);
+    }
+    
+    @Test
+    public void testParallelMiniBatchCostAddsRegularizationOnce() {
+        mLayerSizes = Arrays.asList(2, 3, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(10, 2);
+        DoubleMatrix outputs = DoubleMatrix.rand(10, 1);
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .lambda(5.0).batchSize(3).threads(2).optimizer(new GradientDescent(0.0))
+                .maxIterations(1).heartBeat(0).recordCosts().build();
+        mTrainer.train();
+
+        assertEquals(mTrainer.getFinalCost(), mTrainer.getCosts().get(0), 0.000001);
+    }
+    
+    @Test
+    public void testTrainerLearnORFunctionWithAdam() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix testOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}, {1.0}
+        });
+        
+        for (int index = 0; index < 500; index++) {
+            double value1 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            double value2 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            inputs.put(index, 0, value1);
+            inputs.put(index, 1, value2);
+            outputs.put(index, 0, (value1 == 1.0 || value2 == 1.0) ? 1.0 : 0.0);
+        }
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .optimizer(new Adam(0.1)).maxIterations(1000).heartBeat(0)
+                .build();
+        mTrainer.train();
+
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(testInputs);
+        Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
+    }
+
+    @Test
+    public void testTrainerLearnORFunctionWithThreads() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix testOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}, {1.0}
+        });
+        
+        for (int index = 0; index < 500; index++) {
+            double value1 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            double value2 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            inputs.put(index, 0, value1);
+            inputs.put(index, 1, value2);
+            outputs.put(index, 0, (value1 == 1.0 || value2 == 1.0) ? 1.0 : 0.0);
+        }
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .learningRate(0.001).maxIterations(10000).heartBeat(0)
+                .threads(4).recordCosts().build();
+        mTrainer.train();
+
+        assertEquals(10000, mTrainer.getCosts().size());
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(testInputs);
+        Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
+    }
+
+    @Test
+    public void testTrainerLearnORFunctionWithHogwild() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix testOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}, {1.0}
+        });
+        
+        for (int index = 0; index < 500; index++) {
+            double value1 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            double value2 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            inputs.put(index, 0, value1);
+            inputs.put(index, 1, value2);
+            outputs.put(index, 0, (value1 == 1.0 || value2 == 1.0) ? 1.0 : 0.0);
+        }
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .optimizer(new GradientDescent(0.5)).maxIterations(500).heartBeat(0)
+                .batchSize(25).threads(4).hogwild(true).build();
+        mTrainer.train();
+
+        assertEquals(4, mTrainer.getThroughputs().size());
+        assertTrue(mTrainer.getFinalCost() < 0.2);
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(testInputs);
+        Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testHogwildWithStatefulOptimizerThrowsException() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(20, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(20, 1);
+
+        new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .optimizer(new Adam(0.01)).threads(2).hogwild(true).build();
+    }
+    
+    @Test
+    public void testTrainerReportsThroughputAndFinalCost() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(20, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(20, 1);
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .maxIterations(10).heartBeat(0).recordCosts().build();
+        mTrainer.train();
+
+        assertEquals(1, mTrainer.getThroughputs().size());
+        assertTrue(mTrainer.getThroughputs().get(0) > 0.0);
+        assertTrue(mTrainer.getFinalCost() > 0.0);
+    }
+    
+    @Test
+    public void testTrainedNetworkGetCostMatchesFinalCost() {
+        mLayerSizes = Arrays.asList(2, 3, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(10, 2);
+        DoubleMatrix outputs = DoubleMatrix.rand(10, 1);
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .lambda(1.0).maxIterations(5).heartBeat(0).build();
+        mTrainer.train();
+        NeuralNetwork network = mTrainer.getNeuralNetwork();
+
+        assertEquals(mTrainer.getFinalCost(), network.getCost(), 0.000001);
+        network.backPropagation();
+        assertEquals(3, network.getThetaGradient(0).rows);
+    }
+    
+    @Test
+    public void testMiniBatchTrainedNetworkGetCostMatchesFinalCost() {
+        mLayerSizes = Arrays.asList(2, 3, 1);
+        DoubleMatrix inputs = DoubleMatrix.rand(10, 2);
+        DoubleMatrix outputs = DoubleMatrix.rand(10, 1);
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .lambda(1.0).batchSize(3).maxIterations(5).heartBeat(0).build();
+        mTrainer.train();
+
+        assertEquals(mTrainer.getFinalCost(), mTrainer.getNeuralNetwork().getCost(), 0.000001);
+    }
+    
+    @Test
+    public void testTrainerLearnORFunctionWithFloatPrecision() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix testOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}, {1.0}
+        });
+        
+        for (int index = 0; index < 500; index++) {
+            double value1 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            double value2 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            inputs.put(index, 0, value1);
+            inputs.put(index, 1, value2);
+            outputs.put(index, 0, (value1 == 1.0 || value2 == 1.0) ? 1.0 : 0.0);
+        }
+
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+                .learningRate(0.001).maxIterations(10000).heartBeat(0)
+                .precision(Precision.FLOAT).build();
+        mTrainer.train();
+
+        assertEquals(Precision.FLOAT, mTrainer.getNeuralNetwork().getPrecision());
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(testInputs);
+        Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
+    }
+    
+    @Test
+    public void testTrainerLearnORFunctionFromFloatDataSet() {
+        Random random = new Random();
+        mLayerSizes = Arrays.asList(2, 1);
+        DataSet dataSet = new DataSet(true, Precision.FLOAT);
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix testOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}, {1.0}
+        });
+        
+        for (int index = 0; index < 500; index++) {
+            double value1 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            double value2 = (random.nextInt(100) + 1 > 50) ? 1.0 : 0.0;
+            dataSet.addRow(new double [] {value1, value2, (value1 == 1.0 || value2 == 1.0) ? 1.0 : 0.0});
+        }
+
+        mTrainer = new Trainer.Builder(mLayerSizes, dataSet)
+                .learningRate(0.001).maxIterations(1500).heartBeat(0)
+                .batchSize(64).precision(Precision.FLOAT).build();
+        mTrainer.train();
+
+        DoubleMatrix predictions = mTrainer.getNeuralNetwork().predict(testInputs);
+        Assert.assertArrayEquals(testOutputs.toArray(), predictions.toArray(), 0.15);
+    }
 }
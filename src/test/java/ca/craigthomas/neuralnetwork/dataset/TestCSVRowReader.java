@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCSVRowReader {
+
+    private static double parse(String value) {
+        byte [] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        return CSVRowReader.parseDouble(bytes, 0, bytes.length);
+    }
+
+    private static CSVRowReader readerFor(String contents) {
+        return new CSVRowReader(ByteBuffer.wrap(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testParseDoubleMatchesDoubleParseDouble() {
+        String [] values = {
+                "0", "1", "-1", "+2.5", "0.1", "-0.0", "3.14159", "1e10", "1E-5",
+                "2.5e+3", "  42  ", "0.30000000000000004", "123456789012345678",
+                "1e300", "4.9e-324", "007.50", "NaN", "-Infinity", ".5", "5."
+        };
+        for (String value : values) {
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(parse(value)));
+        }
+    }
+
+    @Test
+    public void testParseDoubleMatchesRandomValues() {
+        Random random = new Random(1234);
+        for (int index = 0; index < 10000; index++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            String text = (index % 2 == 0) ? Double.toString(value) : String.format("%.6f", value);
+            assertEquals(text, Double.parseDouble(text), parse(text), 0.0);
+        }
+    }
+
+    @Test (expected=NumberFormatException.class)
+    public void testParseDoubleRejectsText() {
+        parse("abc");
+    }
+
+    @Test (expected=NumberFormatException.class)
+    public void testParseDoubleRejectsEmptyField() {
+        parse("");
+    }
+
+    @Test
+    public void testReadsRowsWithQuotesAndLineEndings() throws IOException {
+        CSVRowReader reader = readerFor("1,2,3\r\n\n\"4\",5.5,-6\n7,8,9");
+
+        assertTrue(reader.next());
+        Assert.assertArrayEquals(new double [] {1.0, 2.0, 3.0}, reader.getRow(), 0.0);
+        assertTrue(reader.next());
+        Assert.assertArrayEquals(new double [] {4.0, 5.5, -6.0}, reader.getRow(), 0.0);
+        assertTrue(reader.next());
+        Assert.assertArrayEquals(new double [] {7.0, 8.0, 9.0}, reader.getRow(), 0.0);
+        assertEquals(3, reader.getColumns());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testSkipMovesPastRowsWithoutParsing() throws IOException {
+        CSVRowReader reader = readerFor("1,2,3\r\n\r\n\"a\nb\",5.5\n\n7,8,9");
+
+        assertTrue(reader.skip());
+        assertTrue(reader.skip());
+        assertTrue(reader.next());
+        Assert.assertArrayEquals(new double [] {7.0, 8.0, 9.0}, reader.getRow(), 0.0);
+        assertFalse(reader.skip());
+    }
+    
+    @Test
+    public void testRowsCanChangeWidth() throws IOException {
+        CSVRowReader reader = readerFor("1,2\n3,4,5\n");
+
+        assertTrue(reader.next());
+        assertEquals(2, reader.getRow().length);
+        assertTrue(reader.next());
+        Assert.assertArrayEquals(new double [] {3.0, 4.0, 5.0}, reader.getRow(), 0.0);
+    }
+
+    @Test
+    public void testReadsRowsAcrossBufferBoundaries() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        int rows = (CSVRowReader.BUFFER_SIZE / 10) * 3;
+        for (int row = 0; row < rows; row++) {
+            contents.append(row).append(",").append(row * 0.25).append("\n");
+        }
+        byte [] bytes = contents.toString().getBytes(StandardCharsets.US_ASCII);
+        CSVRowReader reader = new CSVRowReader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+
+        for (int row = 0; row < rows; row++) {
+            assertTrue(reader.next());
+            Assert.assertArrayEquals(new double [] {row, row * 0.25}, reader.getRow(), 0.0);
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+}
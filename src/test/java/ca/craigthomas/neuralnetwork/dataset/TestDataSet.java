@@ -14,10 +14,13 @@ import java.util.List;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import ca.craigthomas.neuralnetwork.components.network.Precision;
+
 import static org.junit.Assert.*;
 
 public class TestDataSet {
@@ -96,46 +99,23 @@ public class TestDataSet {
     }
 
     @Test
-    public void testGenerateRangeZeroRange() {
-        DoubleMatrix initMatrix = new DoubleMatrix(new double [][] {
-                {1.0, 2.0, 3.0},
-                {4.0, 5.0, 6.0},
-                {7.0, 8.0, 9.0},
-                {10.0, 11.0, 12.0}
-        });
-        int start = 0;
-        int end = 3;
+    public void testReadFromCSVFileOnThreadsMatchesSequentialRead() throws IOException {
+        DataSet sequential = new DataSet(true);
+        sequential.addFromCSVFile(sampleFilename);
+        dataSet = new DataSet(true);
+        dataSet.addRow(new double [] {5.0, 6.0, 1.0});
+        dataSet.addFromCSVFile(sampleFilename, 4);
 
-        DoubleMatrix expected = new DoubleMatrix(new double [][] {
-                {1.0, 2.0, 3.0},
-                {4.0, 5.0, 6.0},
-                {7.0, 8.0, 9.0}
-        });
-        
-        DoubleMatrix result = DataSet.copyRows(start, end, initMatrix);
-        
-        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.001);
+        assertEquals(5, dataSet.getNumSamples());
+        assertEquals(2, dataSet.getNumColsSamples());
+        Assert.assertArrayEquals(new double [] {5.0, 6.0}, dataSet.getSamples().getRow(0).toArray(), 0.0);
+        for (int row = 0; row < 4; row++) {
+            Assert.assertArrayEquals(sequential.getSamples().getRow(row).toArray(), 
+                    dataSet.getSamples().getRow(row + 1).toArray(), 0.0);
+            assertEquals(sequential.getTruth().get(row, 0), dataSet.getTruth().get(row + 1, 0), 0.0);
+        }
     }
 
-    @Test
-    public void testGenerateRangeNonZeroBasedRange() {
-        DoubleMatrix initMatrix = new DoubleMatrix(new double [][] {
-                {1.0, 2.0, 3.0},
-                {4.0, 5.0, 6.0},
-                {7.0, 8.0, 9.0},
-                {10.0, 11.0, 12.0}
-        });
-        int start = 3;
-        int end = 4;
-        DoubleMatrix expected = new DoubleMatrix(new double [][] {
-                {10.0, 11.0, 12.0}
-        });
-        
-        DoubleMatrix result = DataSet.copyRows(start, end, initMatrix);
-        
-        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.001);
-    }
-    
     @Test
     public void testSplitWorksCorrectlyWhenTruthExists() throws IOException {
         dataSet = new DataSet(true);
@@ -320,6 +300,287 @@ public class TestDataSet {
         Assert.assertArrayEquals(sample.toArray(), dataSet.getSamples().toArray(), 0.0001);
     }
     
+    @Test
+    public void testAddRowSeparatesTruth() {
+        dataSet = new DataSet(true);
+        double [] row = new double [] {1.0, 2.0, 1.0};
+        dataSet.addRow(row);
+        row[0] = 3.0;
+        row[1] = 4.0;
+        row[2] = 0.0;
+        dataSet.addRow(row);
+        
+        Assert.assertArrayEquals(new double [] {1.0, 3.0, 2.0, 4.0}, dataSet.getSamples().data, 0.0);
+        Assert.assertArrayEquals(new double [] {1.0, 0.0}, dataSet.getTruth().data, 0.0);
+    }
+    
+    @Test
+    public void testAddingAfterReadingKeepsEarlierRows() {
+        dataSet = new DataSet(false);
+        dataSet.addRow(new double [] {1.0, 2.0});
+        assertEquals(1, dataSet.getNumSamples());
+        dataSet.addRow(new double [] {3.0, 4.0});
+        
+        assertEquals(2, dataSet.getNumSamples());
+        Assert.assertArrayEquals(new double [] {1.0, 3.0, 2.0, 4.0}, dataSet.getSamples().data, 0.0);
+    }
+    
+    @Test
+    public void testAddManySamplesKeepsOrder() {
+        dataSet = new DataSet(true);
+        for (int index = 0; index < 5000; index++) {
+            dataSet.addRow(new double [] {index, index % 2});
+        }
+        
+        assertEquals(5000, dataSet.getNumSamples());
+        assertEquals(4999.0, dataSet.getSamples().get(4999, 0), 0.0);
+        assertEquals(1.0, dataSet.getTruth().get(4999, 0), 0.0);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testAddRowWithWrongNumberOfValuesThrowsException() {
+        dataSet = new DataSet(false);
+        dataSet.addRow(new double [] {1.0, 2.0});
+        dataSet.addRow(new double [] {1.0, 2.0, 3.0});
+    }
+    
+    @Test
+    public void testRandomizeDoesNotChangeBackingSamples() {
+        dataSet = new DataSet(true);
+        for (int row = 0; row < 20; row++) {
+            dataSet.addRow(new double [] {row, row * 10.0, row % 2});
+        }
+        DoubleMatrix backing = dataSet.getBackingSamples();
+        double [] before = backing.toArray();
+        dataSet.randomize();
+
+        Assert.assertArrayEquals(before, dataSet.getBackingSamples().toArray(), 0.0);
+        DoubleMatrix samples = dataSet.getSamples();
+        DoubleMatrix truth = dataSet.getTruth();
+        int [] rows = dataSet.getRowIndices();
+        boolean [] seen = new boolean [20];
+        for (int row = 0; row < 20; row++) {
+            seen[rows[row]] = true;
+            assertEquals(rows[row], samples.get(row, 0), 0.0);
+            assertEquals(rows[row] * 10.0, samples.get(row, 1), 0.0);
+            assertEquals(rows[row] % 2, truth.get(row, 0), 0.0);
+        }
+        for (boolean value : seen) {
+            assertTrue(value);
+        }
+    }
+
+    @Test
+    public void testSplitSequentiallySharesBackingSamples() {
+        dataSet = new DataSet(true);
+        for (int row = 0; row < 10; row++) {
+            dataSet.addRow(new double [] {row, 0.0});
+        }
+        dataSet.randomize();
+        int [] rows = dataSet.getRowIndices();
+        Pair<DataSet, DataSet> result = dataSet.splitSequentially(70);
+
+        assertSame(dataSet.getBackingSamples(), result.getLeft().getBackingSamples());
+        assertSame(dataSet.getBackingSamples(), result.getRight().getBackingSamples());
+        assertEquals(7, result.getLeft().getNumSamples());
+        assertEquals(3, result.getRight().getNumSamples());
+        Assert.assertArrayEquals(Arrays.copyOfRange(rows, 0, 7), result.getLeft().getRowIndices());
+        Assert.assertArrayEquals(Arrays.copyOfRange(rows, 7, 10), result.getRight().getRowIndices());
+    }
+
+    @Test
+    public void testFloatDataSetKeepsSamplesInSinglePrecision() {
+        dataSet = new DataSet(true, Precision.FLOAT);
+        for (int row = 0; row < 4; row++) {
+            dataSet.addRow(new double [] {row, row + 0.5, row % 2});
+        }
+
+        assertTrue(dataSet.isFloat());
+        assertNull(dataSet.getBackingSamples());
+        assertEquals(4, dataSet.getNumSamples());
+        assertEquals(2, dataSet.getNumColsSamples());
+        FloatMatrix samples = dataSet.getFloatSamples();
+        Assert.assertArrayEquals(new float [] {0.0f, 1.0f, 2.0f, 3.0f, 0.5f, 1.5f, 2.5f, 3.5f}, samples.toArray(), 0.0f);
+        Assert.assertArrayEquals(new double [] {0.0, 1.0, 2.0, 3.0, 0.5, 1.5, 2.5, 3.5}, dataSet.getSamples().toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {0.0, 1.0, 0.0, 1.0}, dataSet.getTruth().toArray(), 0.0);
+    }
+
+    @Test
+    public void testFloatDataSetSplitsShareBackingSamples() {
+        dataSet = new DataSet(true, Precision.FLOAT);
+        for (int row = 0; row < 10; row++) {
+            dataSet.addRow(new double [] {row, 0.0});
+        }
+        dataSet.randomize();
+        int [] rows = dataSet.getRowIndices();
+        Pair<DataSet, DataSet> result = dataSet.splitSequentially(70);
+
+        assertSame(dataSet.getBackingFloatSamples(), result.getLeft().getBackingFloatSamples());
+        assertTrue(result.getRight().isFloat());
+        for (int row = 0; row < 3; row++) {
+            assertEquals(rows[row + 7], result.getRight().getFloatSamples().get(row, 0), 0.0f);
+        }
+        DataSet copy = result.getRight().dup();
+        assertTrue(copy.isFloat());
+        Assert.assertArrayEquals(result.getRight().getFloatSamples().toArray(), copy.getFloatSamples().toArray(), 0.0f);
+    }
+
+    @Test
+    public void testFloatDataSetReadFromCSVFile() throws IOException {
+        DataSet sequential = new DataSet(true);
+        sequential.addFromCSVFile(sampleFilename);
+        dataSet = new DataSet(true, Precision.FLOAT);
+        dataSet.addFromCSVFile(sampleFilename);
+
+        assertNull(dataSet.getBackingSamples());
+        assertEquals(4, dataSet.getNumSamples());
+        Assert.assertArrayEquals(sequential.getSamples().toArray(), dataSet.getSamples().toArray(), 0.0001);
+        Assert.assertArrayEquals(sequential.getTruth().toArray(), dataSet.getTruth().toArray(), 0.0);
+    }
+
+    @Test
+    public void testReadFromCSVFileKeepsRowsAddedBefore() throws IOException {
+        dataSet = new DataSet(true);
+        dataSet.addRow(new double [] {5.0, 6.0, 1.0});
+        dataSet.addFromCSVFile(sampleFilename);
+        dataSet.addRow(new double [] {7.0, 8.0, 0.0});
+
+        assertEquals(6, dataSet.getNumSamples());
+        Assert.assertArrayEquals(new double [] {5.0, 1.0, 1.0, 0.0, 0.0, 7.0}, dataSet.getSamples().getColumn(0).toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 0.0, 0.0, 0.0, 0.0}, dataSet.getTruth().toArray(), 0.0);
+    }
+
+    @Test
+    public void testFloatDataSetReadFromCSVFileOnThreads() throws IOException {
+        DataSet sequential = new DataSet(true);
+        sequential.addFromCSVFile(sampleFilename);
+        dataSet = new DataSet(true, Precision.FLOAT);
+        dataSet.addFromCSVFile(sampleFilename, 4);
+
+        assertNull(dataSet.getBackingSamples());
+        Assert.assertArrayEquals(sequential.getSamples().toArray(), dataSet.getSamples().toArray(), 0.0001);
+        Assert.assertArrayEquals(sequential.getTruth().toArray(), dataSet.getTruth().toArray(), 0.0);
+    }
+
+    @Test
+    public void testAddingToViewDoesNotChangeSharedSamples() {
+        dataSet = new DataSet(true);
+        for (int row = 0; row < 4; row++) {
+            dataSet.addRow(new double [] {row, 1.0});
+        }
+        Pair<DataSet, DataSet> result = dataSet.splitSequentially(50);
+        DataSet testing = result.getRight();
+        testing.addRow(new double [] {9.0, 0.0});
+
+        Assert.assertArrayEquals(new double [] {2.0, 3.0, 9.0}, testing.getSamples().toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 0.0}, testing.getTruth().toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {0.0, 1.0, 2.0, 3.0}, dataSet.getSamples().toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {0.0, 1.0}, result.getLeft().getSamples().toArray(), 0.0);
+    }
+
+    @Test
+    public void testViewKeepsOrderWhenOriginalIsShuffled() {
+        dataSet = new DataSet(false);
+        for (int row = 0; row < 50; row++) {
+            dataSet.addRow(new double [] {row});
+        }
+        dataSet.randomize();
+        DataSet view = dataSet.view();
+        double [] expected = dataSet.getSamples().toArray();
+        dataSet.randomize();
+
+        assertSame(dataSet.getBackingSamples(), view.getBackingSamples());
+        Assert.assertArrayEquals(expected, view.getSamples().toArray(), 0.0);
+    }
+
+    @Test
+    public void testSplitEquallyViewsBalanceClasses() {
+        dataSet = new DataSet(true);
+        for (int row = 0; row < 20; row++) {
+            dataSet.addRow(new double [] {row, (row < 5) ? 1.0 : 0.0});
+        }
+        Pair<DataSet, DataSet> result = dataSet.splitEqually(40);
+
+        assertSame(dataSet.getBackingSamples(), result.getLeft().getBackingSamples());
+        assertEquals(8, result.getLeft().getNumSamples());
+        assertEquals(12, result.getRight().getNumSamples());
+        assertEquals(4.0, result.getLeft().getTruth().sum(), 0.0);
+        assertEquals(1.0, result.getRight().getTruth().sum(), 0.0);
+    }
+
+    @Test
+    public void testStratifiedFoldsTestEachRowOnce() {
+        dataSet = new DataSet(true);
+        for (int row = 0; row < 23; row++) {
+            dataSet.addRow(new double [] {row, row % 3});
+        }
+        dataSet.randomize();
+        List<Pair<DataSet, DataSet>> folds = dataSet.stratifiedFolds(4);
+
+        assertEquals(4, folds.size());
+        int [] tested = new int [23];
+        for (Pair<DataSet, DataSet> fold : folds) {
+            DataSet training = fold.getLeft();
+            DataSet testing = fold.getRight();
+            assertSame(dataSet.getBackingSamples(), training.getBackingSamples());
+            assertSame(dataSet.getBackingSamples(), testing.getBackingSamples());
+            assertEquals(23, training.getNumSamples() + testing.getNumSamples());
+            assertTrue(testing.getNumSamples() == 5 || testing.getNumSamples() == 6);
+            for (int row : testing.getRowIndices()) {
+                tested[row]++;
+            }
+            boolean [] inTraining = new boolean [23];
+            for (int row : training.getRowIndices()) {
+                inTraining[row] = true;
+            }
+            for (int row : testing.getRowIndices()) {
+                assertFalse(inTraining[row]);
+            }
+        }
+        for (int count : tested) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void testStratifiedFoldsBalanceEachClass() {
+        dataSet = new DataSet(true);
+        for (int row = 0; row < 40; row++) {
+            dataSet.addRow(new double [] {row, (row < 10) ? 2.0 : 0.0});
+        }
+        dataSet.randomize();
+
+        for (Pair<DataSet, DataSet> fold : dataSet.stratifiedFolds(5)) {
+            DoubleMatrix truth = fold.getRight().getTruth();
+            assertEquals(8, truth.rows);
+            assertEquals(4.0, truth.sum(), 0.0);
+        }
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testStratifiedFoldsNeedTwoFolds() {
+        dataSet = new DataSet(true);
+        dataSet.addRow(new double [] {1.0, 1.0});
+        dataSet.addRow(new double [] {2.0, 0.0});
+        dataSet.stratifiedFolds(1);
+    }
+
+    @Test (expected=IllegalStateException.class)
+    public void testStratifiedFoldsNeedTruth() {
+        dataSet = new DataSet(false);
+        dataSet.addRow(new double [] {1.0, 1.0});
+        dataSet.addRow(new double [] {2.0, 0.0});
+        dataSet.stratifiedFolds(2);
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testStratifiedFoldsNeedSingleTruthColumn() {
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {{1.0}, {2.0}, {3.0}, {4.0}});
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {{1.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {0.0, 1.0}});
+        dataSet = new DataSet(true, samples, truth);
+        dataSet.stratifiedFolds(2);
+    }
+
     @Test
     public void testSplitSequentiallyWorksCorrectly() {
         dataSet = new DataSet(true);
@@ -580,4 +841,23 @@ public class TestDataSet {
         Assert.assertArrayEquals(dataSet.getSamples().toArray(), newDataSet.getSamples().toArray(), 0.0001);
         Assert.assertArrayEquals(dataSet.getTruth().toArray(), newDataSet.getTruth().toArray(), 0.0001);
     }
+    
+    @Test
+    public void testOneHotWorksCorrectly() {
+        DoubleMatrix classes = new DoubleMatrix(new double [][] {{2.0}, {0.0}, {1.0}});
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {0.0, 0.0, 1.0}, {1.0, 0.0, 0.0}, {0.0, 1.0, 0.0}
+        });
+        Assert.assertArrayEquals(expected.toArray(), DataSet.oneHot(classes, 3).toArray(), 0.0);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testOneHotClassOutOfRangeThrowsException() {
+        DataSet.oneHot(new DoubleMatrix(new double [][] {{3.0}}), 3);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testOneHotFractionalClassThrowsException() {
+        DataSet.oneHot(new DoubleMatrix(new double [][] {{0.5}}), 3);
+    }
 }
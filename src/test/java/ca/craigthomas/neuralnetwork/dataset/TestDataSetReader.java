@@ -8,9 +8,13 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.jblas.DoubleMatrix;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,4 +57,66 @@ public class TestDataSetReader {
             Assert.assertArrayEquals(expected[index], sampleRow, 0.0001);        
         }
     }
+    
+    @Test
+    public void testReadFromCSVFilePassesEachRowToConsumer() throws IOException {
+        List<double []> rows = new ArrayList<>();
+        DataSetReader.readCSVFile(sampleFilename, row -> rows.add(row.clone()));
+
+        assertEquals(4, rows.size());
+        Assert.assertArrayEquals(new double [] {1.0, 1.0, 1.0}, rows.get(0), 0.0);
+        Assert.assertArrayEquals(new double [] {0.0, 0.0, 0.0}, rows.get(3), 0.0);
+    }
+    
+    private static File writeTempFile(String contents) throws IOException {
+        File file = File.createTempFile("dataset", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+    
+    @Test
+    public void testReadCSVChunksKeepsRowOrder() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int row = 0; row < 1000; row++) {
+            contents.append(row).append(",").append(row * 0.5).append((row % 3 == 0) ? "\r\n" : "\n");
+        }
+        File file = writeTempFile(contents.toString());
+
+        List<RowBuffer> chunks = DataSetReader.readCSVChunks(file.getPath(), 4, 64);
+        
+        assertTrue(chunks.size() > 1);
+        int row = 0;
+        for (RowBuffer chunk : chunks) {
+            DoubleMatrix matrix = chunk.toMatrix();
+            for (int index = 0; index < matrix.rows; index++) {
+                assertEquals(row, matrix.get(index, 0), 0.0);
+                assertEquals(row * 0.5, matrix.get(index, 1), 0.0);
+                row++;
+            }
+        }
+        assertEquals(1000, row);
+    }
+    
+    @Test
+    public void testReadCSVChunksOfEmptyFileIsEmpty() throws IOException {
+        File file = writeTempFile("");
+        assertTrue(DataSetReader.readCSVChunks(file.getPath(), 4).isEmpty());
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testReadCSVChunksWithDifferentRowWidthsThrowsException() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int row = 0; row < 100; row++) {
+            contents.append("1,2,3\n");
+        }
+        contents.append("1,2\n");
+        File file = writeTempFile(contents.toString());
+        DataSetReader.readCSVChunks(file.getPath(), 4, 64);
+    }
+    
+    @Test (expected=IOException.class)
+    public void testReadCSVChunksFromNonExistentCSV() throws IOException {
+        DataSetReader.readCSVChunks(BAD_FILENAME, 4);
+    }
 }
@@ -97,6 +97,7 @@ public class TestPrediction {
         assertEquals(3, mPrediction.getTrueNegatives(), 0.0001);
         assertEquals(2, mPrediction.getFalsePositives(), 0.0001);
         assertEquals(1, mPrediction.getFalseNegatives(), 0.0001);
+        assertSame(predictions, mPrediction.getPredictions());
         
         Assert.assertArrayEquals(expectedTruePositives.toArray(), mPrediction.getTruePositiveSamples().toArray(), 0.0001);
         Assert.assertArrayEquals(expectedFalsePositives.toArray(), mPrediction.getFalsePositiveSamples().toArray(), 0.0001);
@@ -107,5 +108,65 @@ public class TestPrediction {
         assertEquals(0.8, mPrediction.getRecall(), 0.00001);
         assertEquals(0.727272, mPrediction.getF1(), 0.00001);
     }
-
+    
+    @Test
+    public void testPredictSeveralClassesWorksCorrectly() {
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {
+                {1.0}, {2.0}, {3.0}, {4.0}, {5.0}, {6.0}
+        });
+        
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {
+                {0.0}, {0.0}, {1.0}, {1.0}, {2.0}, {2.0}
+        });
+        
+        DoubleMatrix predictions = new DoubleMatrix(new double [][] {
+                {0.8, 0.1, 0.1},
+                {0.3, 0.6, 0.1},
+                {0.2, 0.7, 0.1},
+                {0.1, 0.5, 0.4},
+                {0.1, 0.2, 0.7},
+                {0.5, 0.2, 0.3}
+        });
+        
+        DataSet dataSet = new DataSet(true, samples, truth);
+        mPrediction = new Prediction(data -> predictions, 0.5);
+        mPrediction.predict(dataSet);
+        
+        assertEquals(3, mPrediction.getNumClasses());
+        Assert.assertArrayEquals(new int [] {1, 1, 0}, mPrediction.getConfusionMatrix()[0]);
+        Assert.assertArrayEquals(new int [] {0, 2, 0}, mPrediction.getConfusionMatrix()[1]);
+        Assert.assertArrayEquals(new int [] {1, 0, 1}, mPrediction.getConfusionMatrix()[2]);
+        assertEquals(4, mPrediction.getTruePositives(), 0.0001);
+        assertEquals(10, mPrediction.getTrueNegatives(), 0.0001);
+        assertEquals(2, mPrediction.getFalsePositives(), 0.0001);
+        assertEquals(2, mPrediction.getFalseNegatives(), 0.0001);
+        Assert.assertArrayEquals(new double [] {2.0, 6.0}, mPrediction.getFalseNegativeSamples().toArray(), 0.0001);
+        
+        assertEquals(0.666666, mPrediction.getAccuracy(), 0.00001);
+        assertEquals(0.722222, mPrediction.getPrecision(), 0.00001);
+        assertEquals(0.666666, mPrediction.getRecall(), 0.00001);
+        assertEquals(0.655555, mPrediction.getF1(), 0.00001);
+    }
+    
+    @Test
+    public void testPredictSeveralClassesWithOneColumnPerClassTruth() {
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {
+                {1.0}, {2.0}
+        });
+        
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {
+                {0.0, 1.0}, {1.0, 0.0}
+        });
+        
+        DoubleMatrix predictions = new DoubleMatrix(new double [][] {
+                {0.4, 0.6}, {0.3, 0.7}
+        });
+        
+        mPrediction = new Prediction(data -> predictions, 0.5);
+        mPrediction.predict(new DataSet(true, samples, truth));
+        
+        assertEquals(0.5, mPrediction.getAccuracy(), 0.00001);
+        Assert.assertArrayEquals(new int [] {0, 1}, mPrediction.getConfusionMatrix()[0]);
+        Assert.assertArrayEquals(new int [] {0, 1}, mPrediction.getConfusionMatrix()[1]);
+    }
 }
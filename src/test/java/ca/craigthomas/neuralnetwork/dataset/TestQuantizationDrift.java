@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.network.QuantizedNeuralNetwork;
+
+public class TestQuantizationDrift {
+
+    @Test
+    public void testNoDriftOnANDFunction() {
+        DoubleMatrix theta = new DoubleMatrix(new double [][] {
+                {-300.0, 200.0, 200.0}
+        });
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {
+                {0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}
+        });
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {
+                {0.0}, {0.0}, {0.0}, {1.0}
+        });
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(2, 1)).theta(Arrays.asList(theta)).build();
+        QuantizationDrift drift = new QuantizationDrift(network, new QuantizedNeuralNetwork(network), 0.5);
+        drift.measure(new DataSet(true, samples, truth));
+        
+        assertEquals(1.0, drift.getReference().getF1(), 0.0001);
+        assertEquals(1.0, drift.getQuantized().getF1(), 0.0001);
+        assertEquals(0.0, drift.getPrecisionDrift(), 0.0001);
+        assertEquals(0.0, drift.getRecallDrift(), 0.0001);
+        assertEquals(0.0, drift.getF1Drift(), 0.0001);
+        assertEquals(1.0, drift.getAgreement(), 0.0001);
+        assertTrue(drift.getMaxOutputError() < 0.0001);
+    }
+    
+    @Test
+    public void testDriftIsDifferenceOfMetrics() {
+        DoubleMatrix samples = DoubleMatrix.rand(40, 4);
+        DoubleMatrix truth = new DoubleMatrix(40, 1);
+        for (int row = 0; row < 40; row++) {
+            truth.put(row, 0, (samples.get(row, 0) > 0.5) ? 1.0 : 0.0);
+        }
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(4, 3, 1)).build();
+        QuantizationDrift drift = new QuantizationDrift(network, new QuantizedNeuralNetwork(network), 0.5);
+        drift.measure(new DataSet(true, samples, truth));
+        
+        assertEquals(drift.getQuantized().getRecall() - drift.getReference().getRecall(), drift.getRecallDrift(), 0.0);
+        assertEquals(drift.getQuantized().getTruePositives() + drift.getQuantized().getFalsePositives() 
+                + drift.getQuantized().getTrueNegatives() + drift.getQuantized().getFalseNegatives(), 40.0, 0.0);
+        assertTrue(drift.getAgreement() >= 0.0 && drift.getAgreement() <= 1.0);
+    }
+    
+    @Test
+    public void testMaxOutputErrorFromPredictionOutputs() {
+        DoubleMatrix samples = DoubleMatrix.rand(20, 4);
+        DoubleMatrix truth = DoubleMatrix.ones(20, 1);
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(4, 3, 1)).build();
+        QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(network);
+        QuantizationDrift drift = new QuantizationDrift(network, quantized, 0.5);
+        drift.measure(new DataSet(true, samples, truth));
+        
+        DoubleMatrix expected = drift.getReference().getPredictions();
+        DoubleMatrix actual = drift.getQuantized().getPredictions();
+        Assert.assertArrayEquals(network.predict(samples).data, expected.data, 0.0);
+        Assert.assertArrayEquals(quantized.predict(samples).data, actual.data, 0.0);
+        double maxError = 0.0;
+        for (int index = 0; index < expected.length; index++) {
+            maxError = Math.max(maxError, Math.abs(expected.get(index) - actual.get(index)));
+        }
+        assertEquals(maxError, drift.getMaxOutputError(), 0.0);
+    }
+}
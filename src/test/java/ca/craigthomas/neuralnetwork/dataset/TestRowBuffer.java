@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRowBuffer {
+
+    @Test
+    public void testNewBufferIsEmpty() {
+        RowBuffer buffer = new RowBuffer(3);
+        DoubleMatrix matrix = buffer.toMatrix();
+        
+        assertEquals(0, buffer.getRows());
+        assertEquals(3, buffer.getColumns());
+        assertEquals(0, matrix.rows);
+        assertEquals(3, matrix.columns);
+    }
+    
+    @Test
+    public void testToMatrixKeepsRowOrder() {
+        RowBuffer buffer = new RowBuffer(3);
+        buffer.add(new double [] {1.0, 2.0, 3.0});
+        buffer.add(new double [] {9.0, 4.0, 5.0, 6.0}, 1);
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {1.0, 2.0, 3.0},
+                {4.0, 5.0, 6.0}
+        });
+        
+        Assert.assertArrayEquals(expected.toArray(), buffer.toMatrix().toArray(), 0.0);
+    }
+    
+    @Test
+    public void testToFloatMatrixKeepsRowOrder() {
+        RowBuffer buffer = new RowBuffer(2);
+        buffer.add(new double [] {1.0, 2.0});
+        buffer.add(new double [] {3.0, 4.5});
+        FloatMatrix matrix = buffer.toFloatMatrix();
+        
+        assertEquals(2, matrix.rows);
+        Assert.assertArrayEquals(new float [] {1.0f, 3.0f, 2.0f, 4.5f}, matrix.toArray(), 0.0f);
+    }
+    
+    @Test
+    public void testBufferGrowsPastCapacity() {
+        RowBuffer buffer = new RowBuffer(2, 1);
+        for (int row = 0; row < 1000; row++) {
+            buffer.add(new double [] {row, -row});
+        }
+        DoubleMatrix matrix = buffer.toMatrix();
+        
+        assertEquals(1000, matrix.rows);
+        for (int row = 0; row < 1000; row++) {
+            assertEquals(row, matrix.get(row, 0), 0.0);
+            assertEquals(-row, matrix.get(row, 1), 0.0);
+        }
+    }
+    
+    @Test
+    public void testSingleColumnBufferAddsValues() {
+        RowBuffer buffer = new RowBuffer(1, 0);
+        buffer.add(1.0);
+        buffer.add(0.0);
+        buffer.add(1.0);
+        
+        Assert.assertArrayEquals(new double [] {1.0, 0.0, 1.0}, buffer.toMatrix().data, 0.0);
+    }
+    
+    @Test
+    public void testClearKeepsColumns() {
+        RowBuffer buffer = new RowBuffer(2);
+        buffer.add(new double [] {1.0, 2.0});
+        buffer.clear();
+        buffer.add(new double [] {3.0, 4.0});
+        
+        Assert.assertArrayEquals(new double [] {3.0, 4.0}, buffer.toMatrix().data, 0.0);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testShortRowThrowsException() {
+        new RowBuffer(3).add(new double [] {1.0, 2.0});
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testSingleValueInWideBufferThrowsException() {
+        new RowBuffer(2).add(1.0);
+    }
+
+    @Test
+    public void testCopyToPlacesColumnsAtRow() {
+        RowBuffer buffer = new RowBuffer(3);
+        buffer.add(new double [] {1.0, 2.0, 3.0});
+        buffer.add(new double [] {4.0, 5.0, 6.0});
+        DoubleMatrix matrix = new DoubleMatrix(3, 2);
+        buffer.copyTo(1, 2, matrix, 1);
+
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {{0.0, 0.0}, {2.0, 3.0}, {5.0, 6.0}});
+        Assert.assertArrayEquals(expected.toArray(), matrix.toArray(), 0.0);
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testCopyToPastEndOfMatrixThrowsException() {
+        RowBuffer buffer = new RowBuffer(1);
+        buffer.add(1.0);
+        buffer.add(2.0);
+        buffer.copyTo(0, 1, new DoubleMatrix(2, 1), 1);
+    }
+}